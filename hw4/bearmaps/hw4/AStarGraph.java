@@ -14,6 +14,19 @@ public interface AStarGraph<Vertex> {
      */
     List<WeightedEdge<Vertex>> neighbors(Vertex v);
 
+    /**
+     * Calls action once for every edge that goes out from v. Graphs that can
+     * enumerate their edges directly should override this so that callers such
+     * as AStarSolver do not allocate a list and edge objects per vertex.
+     * @param v
+     * @param action
+     */
+    default void forEachNeighbor(Vertex v, EdgeConsumer<Vertex> action) {
+        for (WeightedEdge<Vertex> e : neighbors(v)) {
+            action.accept(e.to(), e.weight());
+        }
+    }
+
     /**
      * Provides an estimate of the number of moves to reach the
      * goal from the start position. For results to be correct,
@@ -0,0 +1,15 @@
+package bearmaps.hw4;
+
+/**
+ * Callback used to visit the outgoing edges of a vertex without
+ * materializing WeightedEdge objects.
+ */
+@FunctionalInterface
+public interface EdgeConsumer<Vertex> {
+    /**
+     * Called once for every edge that goes out from the visited vertex.
+     * @param to the destination of the edge
+     * @param weight the weight of the edge
+     */
+    void accept(Vertex to, double weight);
+}
@@ -1,6 +1,7 @@
 package bearmaps.hw4.integerhoppuzzle;
 
 import bearmaps.hw4.AStarGraph;
+import bearmaps.hw4.EdgeConsumer;
 import bearmaps.hw4.WeightedEdge;
 
 import java.util.ArrayList;
@@ -23,6 +24,15 @@ public class IntegerHopGraph implements AStarGraph<Integer> {
         return neighbors;
     }
 
+    @Override
+    public void forEachNeighbor(Integer v, EdgeConsumer<Integer> action) {
+        action.accept(v * v, 10);
+        action.accept(v * 2, 5);
+        action.accept(v / 2, 5);
+        action.accept(v - 1, 1);
+        action.accept(v + 1, 1);
+    }
+
     @Override
     public double estimatedDistanceToGoal(Integer s, Integer goal) {
         // possibly fun challenge: Try to find an admissible heuristic that
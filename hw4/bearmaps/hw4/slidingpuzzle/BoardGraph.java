@@ -2,6 +2,7 @@ package bearmaps.hw4.slidingpuzzle;
 
 
 import bearmaps.hw4.AStarGraph;
+import bearmaps.hw4.EdgeConsumer;
 import bearmaps.hw4.WeightedEdge;
 
 import java.util.ArrayList;
@@ -25,6 +26,13 @@ public class BoardGraph implements AStarGraph<Board> {
         return neighborEdges;
     }
 
+    @Override
+    public void forEachNeighbor(Board b, EdgeConsumer<Board> action) {
+        for (Board n : b.neighbors()) {
+            action.accept(n, 1);
+        }
+    }
+
     @Override
     public double estimatedDistanceToGoal(Board s, Board goal) {
         //return 0;
@@ -1,6 +1,7 @@
 package bearmaps.hw4.streetmap;
 
 import bearmaps.hw4.AStarGraph;
+import bearmaps.hw4.EdgeConsumer;
 import bearmaps.hw4.WeightedEdge;
 import org.xml.sax.SAXException;
 
@@ -46,6 +47,13 @@ public class StreetMapGraph implements AStarGraph<Long> {
         return incidentList;
     }
 
+    @Override
+    public void forEachNeighbor(Long v, EdgeConsumer<Long> action) {
+        for (WeightedEdge<Long> e : neighbors.get(v)) {
+            action.accept(e.to(), e.weight());
+        }
+    }
+
     /**
      * Returns the great-circle distance between S and GOAL. Assumes
      * S and GOAL exist in this graph.
@@ -1,6 +1,7 @@
 package bearmaps.hw4.wordladderpuzzle;
 
 import bearmaps.hw4.AStarGraph;
+import bearmaps.hw4.EdgeConsumer;
 import bearmaps.hw4.WeightedEdge;
 import edu.princeton.cs.introcs.In;
 
@@ -79,6 +80,15 @@ public class WordGraph implements AStarGraph<String> {
         return neighbs;
     }
 
+    @Override
+    public void forEachNeighbor(String s, EdgeConsumer<String> action) {
+        for (String w : words) {
+            if (editDistance(s, w) == 1) {
+                action.accept(w, 1);
+            }
+        }
+    }
+
     @Override
     public double estimatedDistanceToGoal(String s, String goal) {
         return editDistance(s, goal);
@@ -9,4 +9,15 @@ import java.util.List;
 public interface AStarGraph<Vertex> {
     List<WeightedEdge<Vertex>> neighbors(Vertex v);
     double estimatedDistanceToGoal(Vertex s, Vertex goal);
+
+    /**
+     * Calls ACTION once for every edge that goes out from V, without
+     * allocating a list of edges. Override when the edges can be
+     * enumerated directly.
+     */
+    default void forEachNeighbor(Vertex v, EdgeConsumer<Vertex> action) {
+        for (WeightedEdge<Vertex> e : neighbors(v)) {
+            action.accept(e.to(), e.weight());
+        }
+    }
 }
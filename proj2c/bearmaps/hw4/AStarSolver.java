@@ -17,6 +17,18 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
     private SolverOutcome result;
     private int dequeueOperation;
 
+    private AStarGraph<Vertex> input;
+    private Vertex end;
+    private ExtrinsicMinPQ<Vertex> pq;
+    // Best known total distance from source to given vertex
+    private Map<Vertex, Double> distTo;
+    // Best known predecessor of vertical
+    private Map<Vertex, Vertex> edgeTo;
+    private HashSet<Vertex> visited;
+    // Vertex currently being expanded, and its best known distance
+    private Vertex curVertex;
+    private double curBestDistToV;
+
     /**
      * Constructor which finds the solution,
      * computing everything necessary for all other methods
@@ -33,12 +45,14 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
         this.solutionWeight = 0.0;
         this.dequeueOperation = 0;
 
-        ExtrinsicMinPQ<Vertex> pq = new ArrayHeapMinPQ<>();
-        // Best known total distance from source to given vertex
-        Map<Vertex, Double> distTo = new HashMap<>();
-        // Best known predecessor of vertical
-        Map<Vertex, Vertex> edgeTo = new HashMap<>();
-        HashSet<Vertex> visited = new HashSet<>();
+        this.input = input;
+        this.end = end;
+        this.pq = new ArrayHeapMinPQ<>();
+        this.distTo = new HashMap<>();
+        this.edgeTo = new HashMap<>();
+        this.visited = new HashSet<>();
+        // Created once so that expanding a vertex does not allocate a new consumer
+        EdgeConsumer<Vertex> relaxer = this::relax;
 
         pq.add(start, input.estimatedDistanceToGoal(start, end));
         distTo.put(start, 0.0);
@@ -65,38 +79,48 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
             this.dequeueOperation++;
             visited.add(v);
 
-            double curBestDistToV = distTo.get(v);
-            for (WeightedEdge<Vertex> e : input.neighbors(v)) {
-                Vertex w = e.to();
-
-                // This is necessary to make sure we dont re-add
-                // visited node to pq
-                // i.e never relax edges that point to already visited vertices
-                if (visited.contains(w)) {
-                    continue;
-                }
-
-                double weight = e.weight();
-                double potentialDistToWUsingV = curBestDistToV + weight;
-                if (pq.contains(w)) {
-                    double curBestKnownDistToW = distTo.get(w);
-                    if (potentialDistToWUsingV < curBestKnownDistToW) {
-                        distTo.put(w, potentialDistToWUsingV);
-                        edgeTo.put(w, v);
-                        pq.changePriority(w, potentialDistToWUsingV + input.estimatedDistanceToGoal(w, end));
-                    }
-                } else {
-                    distTo.put(w, potentialDistToWUsingV);
-                    edgeTo.put(w, v);
-                    pq.add(w, potentialDistToWUsingV + input.estimatedDistanceToGoal(w, end));
-                }
-            }
+            this.curVertex = v;
+            this.curBestDistToV = distTo.get(v);
+            input.forEachNeighbor(v, relaxer);
         }
 
         this.timeSpent = sw.elapsedTime();
         if (this.result == null) {
             this.result = SolverOutcome.UNSOLVABLE;
         }
+        // Search state is only needed while solving
+        this.pq = null;
+        this.distTo = null;
+        this.edgeTo = null;
+        this.visited = null;
+    }
+
+    /**
+     * Relax the edge from the vertex currently being expanded to w.
+     * @param w destination of the edge
+     * @param weight weight of the edge
+     */
+    private void relax(Vertex w, double weight) {
+        // This is necessary to make sure we dont re-add
+        // visited node to pq
+        // i.e never relax edges that point to already visited vertices
+        if (visited.contains(w)) {
+            return;
+        }
+
+        double potentialDistToWUsingV = curBestDistToV + weight;
+        if (pq.contains(w)) {
+            double curBestKnownDistToW = distTo.get(w);
+            if (potentialDistToWUsingV < curBestKnownDistToW) {
+                distTo.put(w, potentialDistToWUsingV);
+                edgeTo.put(w, curVertex);
+                pq.changePriority(w, potentialDistToWUsingV + input.estimatedDistanceToGoal(w, end));
+            }
+        } else {
+            distTo.put(w, potentialDistToWUsingV);
+            edgeTo.put(w, curVertex);
+            pq.add(w, potentialDistToWUsingV + input.estimatedDistanceToGoal(w, end));
+        }
     }
 
     /**
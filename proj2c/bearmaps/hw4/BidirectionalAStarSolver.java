@@ -0,0 +1,216 @@
+package bearmaps.hw4;
+
+import java.util.LinkedList;
+import java.util.List;
+import bearmaps.proj2ab.IntIndexMinPQ;
+import edu.princeton.cs.algs4.Stopwatch;
+
+/**
+ * Bidirectional A* over a graph with dense vertex indices. One search runs
+ * forward from the start and one backward from the end, using the average
+ * potential pf(v) = (h(v, end) - h(v, start)) / 2 for the forward search and
+ * -pf(v) for the backward one. Both potentials are consistent whenever h is,
+ * so every vertex is settled at most once per direction, and the searches can
+ * stop as soon as the two smallest keys add up to at least the best path found.
+ *
+ * The backward search follows outgoing edges, so the graph must be symmetric:
+ * every edge v -> w must have a matching edge w -> v of the same weight, as
+ * the street map's ways are.
+ */
+public class BidirectionalAStarSolver implements ShortestPathsSolver<Long> {
+
+    private double solutionWeight;
+    private LinkedList<Long> solutionList;
+    private double timeSpent;
+    private SolverOutcome result;
+    private int dequeueOperation;
+
+    /** Reusable forward and backward search state, one pair per thread. */
+    private static final ThreadLocal<IndexedSearchState[]> STATE = new ThreadLocal<>();
+
+    private IndexedAStarGraph input;
+    private int start;
+    private int end;
+    // Best path found so far, and the vertex where its two halves meet
+    private double bestPathWeight;
+    private int meetingVertex;
+
+    /**
+     * Constructor which finds the solution,
+     * computing everything necessary for all other methods
+     * to return their results in constant time.
+     * @param input
+     * @param start
+     * @param end
+     * @param timeout timeout limit in seconds
+     */
+    public BidirectionalAStarSolver(IndexedAStarGraph input, long start, long end, double timeout) {
+        Stopwatch sw = new Stopwatch();
+        this.solutionList = new LinkedList<>();
+        this.solutionWeight = 0.0;
+        this.dequeueOperation = 0;
+        this.input = input;
+        this.start = input.indexOf(start);
+        this.end = input.indexOf(end);
+        if (this.start < 0 || this.end < 0) {
+            throw new IllegalArgumentException("start or end is not in the graph");
+        }
+
+        IndexedSearchState[] states = STATE.get();
+        int n = input.vertexCount();
+        if (states == null || !states[0].fits(n)) {
+            states = new IndexedSearchState[]{new IndexedSearchState(n), new IndexedSearchState(n)};
+            STATE.set(states);
+        }
+        IndexedSearchState forward = states[0];
+        IndexedSearchState backward = states[1];
+        forward.nextGeneration();
+        backward.nextGeneration();
+
+        this.bestPathWeight = Double.POSITIVE_INFINITY;
+        this.meetingVertex = -1;
+        forward.update(this.start, 0.0, -1);
+        forward.pq.add(this.start, this.potential(this.start));
+        backward.update(this.end, 0.0, -1);
+        backward.pq.add(this.end, -this.potential(this.end));
+        if (this.start == this.end) {
+            this.bestPathWeight = 0.0;
+            this.meetingVertex = this.start;
+        }
+
+        while (true) {
+            double forwardTop = topKey(forward.pq);
+            double backwardTop = topKey(backward.pq);
+            // Any path through an unsettled vertex is at least forwardTop + backwardTop long
+            if (forwardTop + backwardTop >= this.bestPathWeight) {
+                break;
+            }
+
+            if (sw.elapsedTime() > timeout) {
+                this.result = SolverOutcome.TIMEOUT;
+                break;
+            }
+
+            if (forwardTop <= backwardTop) {
+                this.expand(forward, backward, 1.0);
+            } else {
+                this.expand(backward, forward, -1.0);
+            }
+        }
+
+        if (this.result == null && this.meetingVertex >= 0) {
+            this.result = SolverOutcome.SOLVED;
+            for (int pos = this.meetingVertex; pos != -1; pos = forward.edgeTo[pos]) {
+                this.solutionList.addFirst(input.idAt(pos));
+            }
+            for (int pos = backward.edgeTo[this.meetingVertex]; pos != -1; pos = backward.edgeTo[pos]) {
+                this.solutionList.addLast(input.idAt(pos));
+            }
+            this.solutionWeight = this.bestPathWeight;
+        }
+
+        this.timeSpent = sw.elapsedTime();
+        if (this.result == null) {
+            this.result = SolverOutcome.UNSOLVABLE;
+        }
+        this.input = null;
+    }
+
+    /**
+     * Average potential of v for the forward search; the backward search uses its negation.
+     * @param v dense index of the vertex
+     * @return the forward potential of v
+     */
+    private double potential(int v) {
+        return (input.estimatedDistanceToGoalAt(v, end) - input.estimatedDistanceToGoalAt(v, start)) / 2;
+    }
+
+    private static double topKey(IntIndexMinPQ pq) {
+        if (pq.size() == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return pq.priority(pq.getSmallest());
+    }
+
+    /**
+     * Settle the smallest vertex of one search and relax its edges.
+     * @param self the search being advanced
+     * @param other the search running in the opposite direction
+     * @param sign 1 for the forward search, -1 for the backward search
+     */
+    private void expand(IndexedSearchState self, IndexedSearchState other, double sign) {
+        int v = self.pq.removeSmallest();
+        this.dequeueOperation++;
+        self.visited[v] = self.generation;
+
+        double curBestDistToV = self.distTo[v];
+        for (int e = input.edgeStart(v); e < input.edgeEnd(v); e++) {
+            int w = input.edgeTarget(e);
+            if (self.isVisited(w)) {
+                continue;
+            }
+
+            double potentialDistToWUsingV = curBestDistToV + input.edgeWeight(e);
+            if (!self.isSeen(w)) {
+                self.update(w, potentialDistToWUsingV, v);
+                self.pq.add(w, potentialDistToWUsingV + sign * this.potential(w));
+            } else if (potentialDistToWUsingV < self.distTo[w]) {
+                self.update(w, potentialDistToWUsingV, v);
+                self.pq.changePriority(w, potentialDistToWUsingV + sign * this.potential(w));
+            } else {
+                continue;
+            }
+
+            if (other.isSeen(w) && potentialDistToWUsingV + other.distTo[w] < this.bestPathWeight) {
+                this.bestPathWeight = potentialDistToWUsingV + other.distTo[w];
+                this.meetingVertex = w;
+            }
+        }
+    }
+
+    /**
+     * Returns one of SolverOutcome.SOLVED, SolverOutcome.TIMEOUT, or SolverOutcome.UNSOLVABLE.
+     * @return SOLVED if the solver was able to complete all work in the time given.
+     * UNSOLVABLE if both searches ran out of vertices without meeting.
+     * TIMEOUT if the solver ran out of time.
+     */
+    public SolverOutcome outcome() {
+        return this.result;
+    }
+
+    /**
+     * A list of vertices corresponding to a solution.
+     * Should be empty if result was TIMEOUT or UNSOLVABLE
+     * @return
+     */
+    public List<Long> solution() {
+        return this.solutionList;
+    }
+
+    /**
+     * The total weight of the given solution,
+     * taken into account edge weight. Should be 0
+     * if result was TIMEOUT or UNSOLVABLE
+     * @return
+     */
+    public double solutionWeight() {
+        return this.solutionWeight;
+    }
+
+    /**
+     * The total number of priority queue dequeue operations, in both directions.
+     * @return
+     */
+    public int numStatesExplored() {
+        return this.dequeueOperation;
+    }
+
+    /**
+     * The total time spent in seconds by the constructor.
+     * @return
+     */
+    public double explorationTime() {
+        return this.timeSpent;
+    }
+
+}
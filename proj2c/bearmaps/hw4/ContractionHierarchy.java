@@ -0,0 +1,390 @@
+package bearmaps.hw4;
+
+import bearmaps.proj2ab.IntIndexMinPQ;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Contraction hierarchy over a symmetric IndexedAStarGraph, i.e. one where every
+ * edge v -> w has a matching edge w -> v of the same weight, as the street map's
+ * ways do.
+ *
+ * Preprocessing contracts the vertices one at a time, cheapest first by edge
+ * difference. Contracting v adds a shortcut u - w for every pair of remaining
+ * neighbors whose shortest path goes through v, unless a bounded witness search
+ * finds a path of the same length around v. Each shortcut records v as its middle
+ * vertex, so its chain of original edges is recovered by expanding u - v and
+ * v - w recursively.
+ *
+ * The result is kept as an upward graph in CSR form: the edges of vertex i are the
+ * edges and shortcuts to neighbors contracted after i. Queries are answered by
+ * ContractionHierarchySolver. Building it is slow on a large map, so it is meant
+ * to be built offline and stored with writeTo, and loaded with readFrom.
+ */
+public class ContractionHierarchy {
+
+    /** Vertices a witness search may settle while ordering vertices. */
+    private static final int SIMULATE_SETTLE_LIMIT = 5;
+    /** Vertices a witness search may settle while actually contracting. */
+    private static final int CONTRACT_SETTLE_LIMIT = 1000;
+    /** Middle vertex recorded for edges of the original graph. */
+    static final int NO_MIDDLE = -1;
+
+    private final IndexedAStarGraph graph;
+    // position of each vertex in the contraction order
+    private final int[] rank;
+    private final int[] upOffsets;
+    private final int[] upTargets;
+    private final double[] upWeights;
+    private final int[] upMiddles;
+    private final int numShortcuts;
+
+    /** Edges and shortcuts of one vertex while the hierarchy is being built. */
+    private static class ArcList {
+        private int size;
+        private int[] to = new int[4];
+        private double[] weight = new double[4];
+        private int[] middle = new int[4];
+
+        private int find(int w) {
+            for (int i = 0; i < size; i++) {
+                if (to[i] == w) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Add an arc to w, or shorten the existing one.
+         * @return true if a new arc was added
+         */
+        private boolean put(int w, double wt, int mid) {
+            int i = find(w);
+            if (i >= 0) {
+                if (wt < weight[i]) {
+                    weight[i] = wt;
+                    middle[i] = mid;
+                }
+                return false;
+            }
+            if (size == to.length) {
+                to = java.util.Arrays.copyOf(to, size * 2);
+                weight = java.util.Arrays.copyOf(weight, size * 2);
+                middle = java.util.Arrays.copyOf(middle, size * 2);
+            }
+            to[size] = w;
+            weight[size] = wt;
+            middle[size] = mid;
+            size++;
+            return true;
+        }
+
+        /** Remove the arc to w, if there is one. Does not keep the order of the others. */
+        private void remove(int w) {
+            int i = find(w);
+            if (i >= 0) {
+                size--;
+                to[i] = to[size];
+                weight[i] = weight[size];
+                middle[i] = middle[size];
+            }
+        }
+    }
+
+    /*
+     * Preprocessing state, released once the hierarchy is built. The arcs of an
+     * uncontracted vertex lead to the other uncontracted vertices around it; once
+     * a vertex is contracted they are frozen and become its upward edges.
+     */
+    private ArcList[] arcs;
+    private int[] deletedNeighbors;
+    // length of the longest chain of contracted vertices below each vertex
+    private int[] level;
+    private IndexedSearchState witness;
+    // targetStamp[v] == witness.generation iff v is a target of the current witness search
+    private int[] targetStamp;
+
+    /**
+     * Builds the hierarchy. Takes time roughly proportional to the number of
+     * vertices times the cost of the witness searches around each one.
+     * @param graph a symmetric graph
+     */
+    public ContractionHierarchy(IndexedAStarGraph graph) {
+        int n = graph.vertexCount();
+        this.graph = graph;
+        this.rank = new int[n];
+        this.arcs = new ArcList[n];
+        this.deletedNeighbors = new int[n];
+        this.level = new int[n];
+        this.witness = new IndexedSearchState(n);
+        this.targetStamp = new int[n];
+
+        for (int v = 0; v < n; v++) {
+            arcs[v] = new ArcList();
+            for (int e = graph.edgeStart(v); e < graph.edgeEnd(v); e++) {
+                int w = graph.edgeTarget(e);
+                if (w != v) {
+                    arcs[v].put(w, graph.edgeWeight(e), NO_MIDDLE);
+                }
+            }
+        }
+
+        IntIndexMinPQ order = new IntIndexMinPQ(n);
+        for (int v = 0; v < n; v++) {
+            order.add(v, priority(v));
+        }
+        int shortcuts = 0;
+        int nextRank = 0;
+        while (order.size() > 0) {
+            int v = order.removeSmallest();
+            // Lazy update: priorities go stale as neighbors are contracted
+            double p = priority(v);
+            if (order.size() > 0 && p > order.priority(order.getSmallest())) {
+                order.add(v, p);
+                continue;
+            }
+            shortcuts += contract(v, false);
+            rank[v] = nextRank++;
+            ArcList vArcs = arcs[v];
+            for (int i = 0; i < vArcs.size; i++) {
+                int u = vArcs.to[i];
+                arcs[u].remove(v);
+                deletedNeighbors[u]++;
+                level[u] = Math.max(level[u], level[v] + 1);
+            }
+            for (int i = 0; i < vArcs.size; i++) {
+                int u = vArcs.to[i];
+                order.changePriority(u, priority(u));
+            }
+        }
+        this.numShortcuts = shortcuts;
+
+        int numUpEdges = 0;
+        for (int v = 0; v < n; v++) {
+            numUpEdges += arcs[v].size;
+        }
+        upOffsets = new int[n + 1];
+        upTargets = new int[numUpEdges];
+        upWeights = new double[numUpEdges];
+        upMiddles = new int[numUpEdges];
+        int e = 0;
+        for (int v = 0; v < n; v++) {
+            upOffsets[v] = e;
+            ArcList vArcs = arcs[v];
+            for (int i = 0; i < vArcs.size; i++) {
+                upTargets[e] = vArcs.to[i];
+                upWeights[e] = vArcs.weight[i];
+                upMiddles[e] = vArcs.middle[i];
+                e++;
+            }
+        }
+        upOffsets[n] = e;
+
+        this.arcs = null;
+        this.deletedNeighbors = null;
+        this.level = null;
+        this.witness = null;
+        this.targetStamp = null;
+    }
+
+    private ContractionHierarchy(IndexedAStarGraph graph, int[] rank, int[] upOffsets, int[] upTargets,
+                                 double[] upWeights, int[] upMiddles, int numShortcuts) {
+        this.graph = graph;
+        this.rank = rank;
+        this.upOffsets = upOffsets;
+        this.upTargets = upTargets;
+        this.upWeights = upWeights;
+        this.upMiddles = upMiddles;
+        this.numShortcuts = numShortcuts;
+    }
+
+    /** Returns the number of bytes writeTo puts. */
+    public int serializedBytes() {
+        return 4 * 3 + 4 * rank.length + 4 * upOffsets.length + 16 * upTargets.length;
+    }
+
+    /**
+     * Puts the hierarchy in BUF, so readFrom loads it without contracting the graph
+     * again: the number of vertices, upward edges and shortcuts, then the upward
+     * weights, the ranks, the CSR offsets, and the upward targets and middle
+     * vertices, in BUF's byte order. The graph itself is not recorded.
+     */
+    public void writeTo(ByteBuffer buf) {
+        buf.putInt(rank.length).putInt(upTargets.length).putInt(numShortcuts);
+        buf.asDoubleBuffer().put(upWeights);
+        buf.position(buf.position() + 8 * upWeights.length);
+        for (int[] column : new int[][]{rank, upOffsets, upTargets, upMiddles}) {
+            buf.asIntBuffer().put(column);
+            buf.position(buf.position() + 4 * column.length);
+        }
+    }
+
+    /**
+     * Reads a hierarchy that writeTo put in BUF, leaving BUF just past it. The arrays
+     * are copied out of BUF, as queries read them on every step.
+     * @param graph the graph the hierarchy was built from
+     * @throws IllegalArgumentException if the hierarchy was built from a graph with
+     * a different number of vertices
+     */
+    public static ContractionHierarchy readFrom(ByteBuffer buf, IndexedAStarGraph graph) {
+        int n = buf.getInt();
+        int numUpEdges = buf.getInt();
+        int numShortcuts = buf.getInt();
+        if (n != graph.vertexCount()) {
+            throw new IllegalArgumentException("hierarchy of " + n + " vertices for a graph of "
+                    + graph.vertexCount());
+        }
+        double[] upWeights = new double[numUpEdges];
+        buf.asDoubleBuffer().get(upWeights);
+        buf.position(buf.position() + 8 * numUpEdges);
+        int[][] columns = {new int[n], new int[n + 1], new int[numUpEdges], new int[numUpEdges]};
+        for (int[] column : columns) {
+            buf.asIntBuffer().get(column);
+            buf.position(buf.position() + 4 * column.length);
+        }
+        return new ContractionHierarchy(graph, columns[0], columns[1], columns[2], upWeights, columns[3],
+                numShortcuts);
+    }
+
+    /**
+     * Contraction priority of v: shortcuts it would add minus the arcs it would
+     * remove, plus the number of neighbors already contracted and the depth of
+     * the hierarchy below v, so that contraction spreads evenly over the graph
+     * and queries climb few levels.
+     */
+    private double priority(int v) {
+        return contract(v, true) - arcs[v].size + deletedNeighbors[v] + level[v];
+    }
+
+    /**
+     * Find the shortcuts needed to contract v, adding them unless SIMULATE is set.
+     * Only pairs (u, w) with u listed before w are checked, as the graph is symmetric.
+     * @return the number of shortcuts needed
+     */
+    private int contract(int v, boolean simulate) {
+        int shortcuts = 0;
+        ArcList vArcs = arcs[v];
+        int settleLimit = simulate ? SIMULATE_SETTLE_LIMIT : CONTRACT_SETTLE_LIMIT;
+        for (int i = 0; i < vArcs.size - 1; i++) {
+            int u = vArcs.to[i];
+            double maxOut = 0;
+            for (int j = i + 1; j < vArcs.size; j++) {
+                maxOut = Math.max(maxOut, vArcs.weight[j]);
+            }
+            witnessSearch(u, v, vArcs, i + 1, vArcs.weight[i] + maxOut, settleLimit);
+            for (int j = i + 1; j < vArcs.size; j++) {
+                int w = vArcs.to[j];
+                double viaV = vArcs.weight[i] + vArcs.weight[j];
+                if (witness.isSeen(w) && witness.distTo[w] <= viaV) {
+                    continue;
+                }
+                shortcuts++;
+                if (!simulate) {
+                    arcs[u].put(w, viaV, v);
+                    arcs[w].put(u, viaV, v);
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    /**
+     * Dijkstra from SOURCE over the uncontracted vertices other than SKIP, looking
+     * for the targets listed in TARGETS from FIRSTTARGET on. Stops once they are
+     * all settled, the next distance exceeds MAXDIST or SETTLELIMIT vertices are
+     * settled; the distances it leaves behind are then upper bounds, which is
+     * still enough to prove that a witness exists.
+     */
+    private void witnessSearch(int source, int skip, ArcList targets, int firstTarget,
+                               double maxDist, int settleLimit) {
+        witness.nextGeneration();
+        for (int j = firstTarget; j < targets.size; j++) {
+            targetStamp[targets.to[j]] = witness.generation;
+        }
+        int targetsLeft = targets.size - firstTarget;
+        witness.update(source, 0.0, -1);
+        witness.pq.add(source, 0.0);
+        int settled = 0;
+        while (witness.pq.size() > 0 && settled < settleLimit) {
+            int x = witness.pq.removeSmallest();
+            if (witness.distTo[x] > maxDist) {
+                break;
+            }
+            witness.visited[x] = witness.generation;
+            settled++;
+            if (targetStamp[x] == witness.generation && --targetsLeft == 0) {
+                break;
+            }
+            ArcList xArcs = arcs[x];
+            for (int i = 0; i < xArcs.size; i++) {
+                int y = xArcs.to[i];
+                if (y == skip || witness.isVisited(y)) {
+                    continue;
+                }
+                double dist = witness.distTo[x] + xArcs.weight[i];
+                if (!witness.isSeen(y)) {
+                    witness.update(y, dist, x);
+                    witness.pq.add(y, dist);
+                } else if (dist < witness.distTo[y]) {
+                    witness.update(y, dist, x);
+                    witness.pq.changePriority(y, dist);
+                }
+            }
+        }
+    }
+
+    /** Returns the graph this hierarchy was built from. */
+    public IndexedAStarGraph graph() {
+        return graph;
+    }
+
+    /** Returns the number of shortcuts added during preprocessing. */
+    public int numShortcuts() {
+        return numShortcuts;
+    }
+
+    int vertexCount() {
+        return rank.length;
+    }
+
+    int rank(int v) {
+        return rank[v];
+    }
+
+    int upStart(int v) {
+        return upOffsets[v];
+    }
+
+    int upEnd(int v) {
+        return upOffsets[v + 1];
+    }
+
+    int upTarget(int e) {
+        return upTargets[e];
+    }
+
+    double upWeight(int e) {
+        return upWeights[e];
+    }
+
+    int upMiddle(int e) {
+        return upMiddles[e];
+    }
+
+    /**
+     * Finds the upward edge between two adjacent vertices of the hierarchy,
+     * which is stored with whichever of the two was contracted first.
+     * @return the upward edge slot
+     */
+    int findUpEdge(int v, int w) {
+        int lower = rank[v] < rank[w] ? v : w;
+        int higher = lower == v ? w : v;
+        for (int e = upOffsets[lower]; e < upOffsets[lower + 1]; e++) {
+            if (upTargets[e] == higher) {
+                return e;
+            }
+        }
+        throw new IllegalStateException("no hierarchy edge between " + v + " and " + w);
+    }
+}
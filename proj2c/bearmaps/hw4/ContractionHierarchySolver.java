@@ -0,0 +1,267 @@
+package bearmaps.hw4;
+
+import java.util.LinkedList;
+import java.util.List;
+import bearmaps.proj2ab.IntIndexMinPQ;
+import edu.princeton.cs.algs4.Stopwatch;
+
+/**
+ * Shortest paths on a ContractionHierarchy. Runs Dijkstra upward in the hierarchy
+ * from both ends, only following edges to vertices contracted later, and joins
+ * the two searches at the vertex where their distances add up to the least. The
+ * shortcuts on the joined path are then expanded back into original edges, so
+ * the solution lists the same vertices a search of the original graph would.
+ */
+public class ContractionHierarchySolver implements ShortestPathsSolver<Long> {
+
+    private double solutionWeight;
+    private LinkedList<Long> solutionList;
+    private double timeSpent;
+    private SolverOutcome result;
+    private int dequeueOperation;
+
+    /** Reusable forward and backward search state, one pair per thread. */
+    private static final ThreadLocal<IndexedSearchState[]> STATE = new ThreadLocal<>();
+
+    private ContractionHierarchy ch;
+    private double bestPathWeight;
+    private int meetingVertex;
+
+    /**
+     * Constructor which finds the solution,
+     * computing everything necessary for all other methods
+     * to return their results in constant time.
+     * @param ch
+     * @param start
+     * @param end
+     * @param timeout timeout limit in seconds
+     */
+    public ContractionHierarchySolver(ContractionHierarchy ch, long start, long end, double timeout) {
+        Stopwatch sw = new Stopwatch();
+        this.solutionList = new LinkedList<>();
+        this.solutionWeight = 0.0;
+        this.dequeueOperation = 0;
+        this.ch = ch;
+        IndexedAStarGraph graph = ch.graph();
+        int s = graph.indexOf(start);
+        int t = graph.indexOf(end);
+        if (s < 0 || t < 0) {
+            throw new IllegalArgumentException("start or end is not in the graph");
+        }
+
+        IndexedSearchState[] states = STATE.get();
+        int n = ch.vertexCount();
+        if (states == null || !states[0].fits(n)) {
+            states = new IndexedSearchState[]{new IndexedSearchState(n), new IndexedSearchState(n)};
+            STATE.set(states);
+        }
+        IndexedSearchState forward = states[0];
+        IndexedSearchState backward = states[1];
+        forward.nextGeneration();
+        backward.nextGeneration();
+
+        this.bestPathWeight = Double.POSITIVE_INFINITY;
+        this.meetingVertex = -1;
+        forward.update(s, 0.0, -1);
+        forward.pq.add(s, 0.0);
+        backward.update(t, 0.0, -1);
+        backward.pq.add(t, 0.0);
+        if (s == t) {
+            this.bestPathWeight = 0.0;
+            this.meetingVertex = s;
+        }
+
+        while (true) {
+            double forwardTop = topKey(forward.pq);
+            double backwardTop = topKey(backward.pq);
+            // Every upward path still to be found is at least as long as the smaller key
+            if (Math.min(forwardTop, backwardTop) >= this.bestPathWeight) {
+                break;
+            }
+
+            if (sw.elapsedTime() > timeout) {
+                this.result = SolverOutcome.TIMEOUT;
+                break;
+            }
+
+            if (forwardTop <= backwardTop) {
+                this.expand(forward, backward);
+            } else {
+                this.expand(backward, forward);
+            }
+        }
+
+        if (this.result == null && this.meetingVertex >= 0) {
+            this.result = SolverOutcome.SOLVED;
+            int[] path = this.unpack(forward, backward);
+            for (int v : path) {
+                this.solutionList.addLast(graph.idAt(v));
+            }
+            this.solutionWeight = this.bestPathWeight;
+        }
+
+        this.timeSpent = sw.elapsedTime();
+        if (this.result == null) {
+            this.result = SolverOutcome.UNSOLVABLE;
+        }
+        this.ch = null;
+    }
+
+    private static double topKey(IntIndexMinPQ pq) {
+        if (pq.size() == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return pq.priority(pq.getSmallest());
+    }
+
+    /**
+     * Settle the smallest vertex of one search and relax its upward edges.
+     * @param self the search being advanced
+     * @param other the search running in the opposite direction
+     */
+    private void expand(IndexedSearchState self, IndexedSearchState other) {
+        int v = self.pq.removeSmallest();
+        this.dequeueOperation++;
+        self.visited[v] = self.generation;
+
+        double curBestDistToV = self.distTo[v];
+        for (int e = ch.upStart(v); e < ch.upEnd(v); e++) {
+            int w = ch.upTarget(e);
+            if (self.isVisited(w)) {
+                continue;
+            }
+
+            double potentialDistToWUsingV = curBestDistToV + ch.upWeight(e);
+            if (!self.isSeen(w)) {
+                self.update(w, potentialDistToWUsingV, v);
+                self.pq.add(w, potentialDistToWUsingV);
+            } else if (potentialDistToWUsingV < self.distTo[w]) {
+                self.update(w, potentialDistToWUsingV, v);
+                self.pq.changePriority(w, potentialDistToWUsingV);
+            } else {
+                continue;
+            }
+
+            if (other.isSeen(w) && potentialDistToWUsingV + other.distTo[w] < this.bestPathWeight) {
+                this.bestPathWeight = potentialDistToWUsingV + other.distTo[w];
+                this.meetingVertex = w;
+            }
+        }
+    }
+
+    /**
+     * Joins the two halves of the path at the meeting vertex and expands every
+     * hierarchy edge on it into the original edges it stands for.
+     * @return dense indices of the vertices on the path, from start to end
+     */
+    private int[] unpack(IndexedSearchState forward, IndexedSearchState backward) {
+        LinkedList<Integer> hierarchyPath = new LinkedList<>();
+        for (int pos = this.meetingVertex; pos != -1; pos = forward.edgeTo[pos]) {
+            hierarchyPath.addFirst(pos);
+        }
+        for (int pos = backward.edgeTo[this.meetingVertex]; pos != -1; pos = backward.edgeTo[pos]) {
+            hierarchyPath.addLast(pos);
+        }
+
+        IntStack out = new IntStack();
+        IntStack pending = new IntStack();
+        Integer prev = null;
+        for (int v : hierarchyPath) {
+            if (prev == null) {
+                out.push(v);
+                prev = v;
+                continue;
+            }
+            // Expand prev - v depth first, left half before right half
+            pending.push(v);
+            int from = prev;
+            while (pending.size() > 0) {
+                int to = pending.peek();
+                int mid = ch.upMiddle(ch.findUpEdge(from, to));
+                if (mid == ContractionHierarchy.NO_MIDDLE) {
+                    out.push(to);
+                    from = pending.pop();
+                } else {
+                    pending.push(mid);
+                }
+            }
+            prev = v;
+        }
+        return out.toArray();
+    }
+
+    /** Minimal growable stack of ints for unpacking shortcuts. */
+    private static class IntStack {
+        private int[] items = new int[16];
+        private int size;
+
+        void push(int x) {
+            if (size == items.length) {
+                items = java.util.Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = x;
+        }
+
+        int pop() {
+            return items[--size];
+        }
+
+        int peek() {
+            return items[size - 1];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return java.util.Arrays.copyOf(items, size);
+        }
+    }
+
+    /**
+     * Returns one of SolverOutcome.SOLVED, SolverOutcome.TIMEOUT, or SolverOutcome.UNSOLVABLE.
+     * @return SOLVED if the solver was able to complete all work in the time given.
+     * UNSOLVABLE if both searches ran out of vertices without meeting.
+     * TIMEOUT if the solver ran out of time.
+     */
+    public SolverOutcome outcome() {
+        return this.result;
+    }
+
+    /**
+     * A list of vertices corresponding to a solution.
+     * Should be empty if result was TIMEOUT or UNSOLVABLE
+     * @return
+     */
+    public List<Long> solution() {
+        return this.solutionList;
+    }
+
+    /**
+     * The total weight of the given solution,
+     * taken into account edge weight. Should be 0
+     * if result was TIMEOUT or UNSOLVABLE
+     * @return
+     */
+    public double solutionWeight() {
+        return this.solutionWeight;
+    }
+
+    /**
+     * The total number of priority queue dequeue operations, in both directions.
+     * @return
+     */
+    public int numStatesExplored() {
+        return this.dequeueOperation;
+    }
+
+    /**
+     * The total time spent in seconds by the constructor.
+     * @return
+     */
+    public double explorationTime() {
+        return this.timeSpent;
+    }
+
+}
@@ -0,0 +1,273 @@
+package bearmaps.hw4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Many-to-many shortest path distances on a ContractionHierarchy, using buckets.
+ * Every shortest path in the hierarchy climbs from its source to a highest vertex
+ * and descends to its target, so running one exhaustive upward search from each
+ * target and one from each source is enough: each target leaves (target, distance)
+ * entries in a bucket at every vertex its search reaches, and a source's distance
+ * to a target is the least sum over the vertices both searches reach. The upward
+ * searches are small, so a matrix costs about N + M point-to-point queries rather
+ * than N * M. Both rounds of searches run in parallel on a fork-join pool.
+ *
+ * Without a hierarchy, computeByDijkstra runs one Dijkstra search of the graph
+ * from each source, stopping once it has settled every target, also in parallel.
+ */
+public class DistanceMatrix {
+
+    /** Reusable search state, one per thread. */
+    private static final ThreadLocal<IndexedSearchState> STATE = new ThreadLocal<>();
+
+    private DistanceMatrix() {
+    }
+
+    /** Vertices reached by an upward search and their distances from its source. */
+    private static class SearchSpace {
+        private final int[] vertices;
+        private final double[] distances;
+
+        private SearchSpace(int[] vertices, double[] distances) {
+            this.vertices = vertices;
+            this.distances = distances;
+        }
+    }
+
+    /**
+     * Computes the matrix on the common fork-join pool.
+     * @see #compute(ContractionHierarchy, long[], long[], ForkJoinPool)
+     */
+    public static double[][] compute(ContractionHierarchy ch, long[] sources, long[] targets) {
+        return compute(ch, sources, targets, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the shortest path distance from every source to every target.
+     * @param ch the hierarchy of the graph
+     * @param sources ids of the source vertices
+     * @param targets ids of the target vertices
+     * @param pool the pool the searches run on
+     * @return distances[i][j], the distance from sources[i] to targets[j], or
+     * positive infinity if there is no path
+     */
+    public static double[][] compute(ContractionHierarchy ch, long[] sources, long[] targets,
+                                     ForkJoinPool pool) {
+        IndexedAStarGraph graph = ch.graph();
+        int[] sourceIndices = indicesOf(graph, sources);
+        int[] targetIndices = indicesOf(graph, targets);
+
+        List<Callable<SearchSpace>> backward = new ArrayList<>(targets.length);
+        for (int t : targetIndices) {
+            backward.add(() -> upwardSearch(ch, t));
+        }
+        List<SearchSpace> targetSpaces = invokeAll(pool, backward);
+
+        // Buckets in CSR form: the entries of vertex v are [bucketOffsets[v], bucketOffsets[v + 1])
+        int n = ch.vertexCount();
+        int[] bucketOffsets = new int[n + 1];
+        for (SearchSpace space : targetSpaces) {
+            for (int v : space.vertices) {
+                bucketOffsets[v + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            bucketOffsets[v + 1] += bucketOffsets[v];
+        }
+        int[] bucketTargets = new int[bucketOffsets[n]];
+        double[] bucketDistances = new double[bucketOffsets[n]];
+        int[] next = Arrays.copyOf(bucketOffsets, n);
+        for (int j = 0; j < targetSpaces.size(); j++) {
+            SearchSpace space = targetSpaces.get(j);
+            for (int k = 0; k < space.vertices.length; k++) {
+                int slot = next[space.vertices[k]]++;
+                bucketTargets[slot] = j;
+                bucketDistances[slot] = space.distances[k];
+            }
+        }
+
+        List<Callable<double[]>> forward = new ArrayList<>(sources.length);
+        for (int s : sourceIndices) {
+            forward.add(() -> {
+                SearchSpace space = upwardSearch(ch, s);
+                double[] row = new double[targets.length];
+                Arrays.fill(row, Double.POSITIVE_INFINITY);
+                for (int k = 0; k < space.vertices.length; k++) {
+                    int v = space.vertices[k];
+                    for (int b = bucketOffsets[v]; b < bucketOffsets[v + 1]; b++) {
+                        double dist = space.distances[k] + bucketDistances[b];
+                        if (dist < row[bucketTargets[b]]) {
+                            row[bucketTargets[b]] = dist;
+                        }
+                    }
+                }
+                return row;
+            });
+        }
+        return invokeAll(pool, forward).toArray(new double[0][]);
+    }
+
+    /**
+     * Computes the matrix on the common fork-join pool without a hierarchy.
+     * @see #computeByDijkstra(IndexedAStarGraph, long[], long[], ForkJoinPool)
+     */
+    public static double[][] computeByDijkstra(IndexedAStarGraph graph, long[] sources, long[] targets) {
+        return computeByDijkstra(graph, sources, targets, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the shortest path distance from every source to every target, by one
+     * Dijkstra search from each source.
+     * @param graph the graph
+     * @param sources ids of the source vertices
+     * @param targets ids of the target vertices
+     * @param pool the pool the searches run on
+     * @return distances[i][j], the distance from sources[i] to targets[j], or
+     * positive infinity if there is no path
+     */
+    public static double[][] computeByDijkstra(IndexedAStarGraph graph, long[] sources, long[] targets,
+                                               ForkJoinPool pool) {
+        int[] sourceIndices = indicesOf(graph, sources);
+        int[] targetIndices = indicesOf(graph, targets);
+        boolean[] isTarget = new boolean[graph.vertexCount()];
+        int numTargets = 0;
+        for (int t : targetIndices) {
+            if (!isTarget[t]) {
+                isTarget[t] = true;
+                numTargets++;
+            }
+        }
+        int distinctTargets = numTargets;
+
+        List<Callable<double[]>> searches = new ArrayList<>(sources.length);
+        for (int s : sourceIndices) {
+            searches.add(() -> {
+                IndexedSearchState state = dijkstra(graph, s, isTarget, distinctTargets);
+                double[] row = new double[targets.length];
+                for (int j = 0; j < targetIndices.length; j++) {
+                    row[j] = state.isVisited(targetIndices[j])
+                            ? state.distTo[targetIndices[j]] : Double.POSITIVE_INFINITY;
+                }
+                return row;
+            });
+        }
+        return invokeAll(pool, searches).toArray(new double[0][]);
+    }
+
+    /**
+     * Runs Dijkstra from SOURCE over GRAPH until it has settled the NUMTARGETS vertices
+     * marked in ISTARGET or runs out of vertices.
+     * @return this thread's search state, holding the settled vertices' distances
+     */
+    private static IndexedSearchState dijkstra(IndexedAStarGraph graph, int source, boolean[] isTarget,
+                                               int numTargets) {
+        IndexedSearchState state = state(graph.vertexCount());
+        state.nextGeneration();
+        state.update(source, 0.0, -1);
+        state.pq.add(source, 0.0);
+        int targetsLeft = numTargets;
+        while (targetsLeft > 0 && state.pq.size() > 0) {
+            int v = state.pq.removeSmallest();
+            state.visited[v] = state.generation;
+            if (isTarget[v] && --targetsLeft == 0) {
+                break;
+            }
+            for (int e = graph.edgeStart(v); e < graph.edgeEnd(v); e++) {
+                int w = graph.edgeTarget(e);
+                if (state.isVisited(w)) {
+                    continue;
+                }
+                double dist = state.distTo[v] + graph.edgeWeight(e);
+                if (!state.isSeen(w)) {
+                    state.update(w, dist, v);
+                    state.pq.add(w, dist);
+                } else if (dist < state.distTo[w]) {
+                    state.update(w, dist, v);
+                    state.pq.changePriority(w, dist);
+                }
+            }
+        }
+        return state;
+    }
+
+    /** Returns this thread's search state, made to fit N vertices. */
+    private static IndexedSearchState state(int n) {
+        IndexedSearchState state = STATE.get();
+        if (state == null || !state.fits(n)) {
+            state = new IndexedSearchState(n);
+            STATE.set(state);
+        }
+        return state;
+    }
+
+    private static int[] indicesOf(IndexedAStarGraph graph, long[] ids) {
+        int[] indices = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            indices[i] = graph.indexOf(ids[i]);
+            if (indices[i] < 0) {
+                throw new IllegalArgumentException(ids[i] + " is not in the graph");
+            }
+        }
+        return indices;
+    }
+
+    private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while computing distances", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    /** Runs Dijkstra from SOURCE over the upward edges until it runs out of vertices. */
+    private static SearchSpace upwardSearch(ContractionHierarchy ch, int source) {
+        IndexedSearchState state = state(ch.vertexCount());
+        state.nextGeneration();
+        state.update(source, 0.0, -1);
+        state.pq.add(source, 0.0);
+
+        int size = 0;
+        int[] vertices = new int[64];
+        double[] distances = new double[64];
+        while (state.pq.size() > 0) {
+            int v = state.pq.removeSmallest();
+            state.visited[v] = state.generation;
+            if (size == vertices.length) {
+                vertices = Arrays.copyOf(vertices, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            vertices[size] = v;
+            distances[size] = state.distTo[v];
+            size++;
+
+            for (int e = ch.upStart(v); e < ch.upEnd(v); e++) {
+                int w = ch.upTarget(e);
+                if (state.isVisited(w)) {
+                    continue;
+                }
+                double dist = state.distTo[v] + ch.upWeight(e);
+                if (!state.isSeen(w)) {
+                    state.update(w, dist, v);
+                    state.pq.add(w, dist);
+                } else if (dist < state.distTo[w]) {
+                    state.update(w, dist, v);
+                    state.pq.changePriority(w, dist);
+                }
+            }
+        }
+        return new SearchSpace(Arrays.copyOf(vertices, size), Arrays.copyOf(distances, size));
+    }
+}
@@ -0,0 +1,17 @@
+package bearmaps.hw4;
+
+/**
+ * An AStarGraph over long vertex ids that can also be addressed by dense
+ * int indices in [0, vertexCount()). Outgoing edges of the vertex at index i
+ * occupy the edge slots [edgeStart(i), edgeEnd(i)).
+ */
+public interface IndexedAStarGraph extends AStarGraph<Long> {
+    int vertexCount();
+    int indexOf(long v);
+    long idAt(int i);
+    int edgeStart(int i);
+    int edgeEnd(int i);
+    int edgeTarget(int e);
+    double edgeWeight(int e);
+    double estimatedDistanceToGoalAt(int s, int goal);
+}
@@ -0,0 +1,65 @@
+package bearmaps.hw4;
+
+import bearmaps.proj2ab.IntIndexMinPQ;
+
+import java.util.Arrays;
+
+/**
+ * Per-vertex search state for solvers over dense vertex indices. The arrays
+ * are meant to be reused across queries: an entry is only valid if its stamp
+ * equals the current generation, so starting a new query never has to clear them.
+ * Nothing in the state belongs to a particular graph, so one state serves every
+ * graph with the same number of vertices, such as a graph and its LandmarkGraph.
+ */
+class IndexedSearchState {
+    // Best known total distance from source to given vertex
+    final double[] distTo;
+    // Best known predecessor of given vertex, -1 for the source
+    final int[] edgeTo;
+    // distTo/edgeTo of a vertex are valid iff seen[v] == generation
+    final int[] seen;
+    // a vertex has been dequeued iff visited[v] == generation
+    final int[] visited;
+    final IntIndexMinPQ pq;
+    int generation;
+
+    IndexedSearchState(int n) {
+        this.distTo = new double[n];
+        this.edgeTo = new int[n];
+        this.seen = new int[n];
+        this.visited = new int[n];
+        this.pq = new IntIndexMinPQ(n);
+        this.generation = 0;
+    }
+
+    /** Returns whether this state can search a graph of N vertices. */
+    boolean fits(int n) {
+        return this.distTo.length == n;
+    }
+
+    /** Starts a new query, invalidating every entry of the previous one. */
+    void nextGeneration() {
+        this.pq.clear();
+        if (this.generation == Integer.MAX_VALUE) {
+            Arrays.fill(this.seen, 0);
+            Arrays.fill(this.visited, 0);
+            this.generation = 0;
+        }
+        this.generation++;
+    }
+
+    boolean isSeen(int v) {
+        return this.seen[v] == this.generation;
+    }
+
+    boolean isVisited(int v) {
+        return this.visited[v] == this.generation;
+    }
+
+    /** Records a new best distance and predecessor for V. */
+    void update(int v, double dist, int from) {
+        this.distTo[v] = dist;
+        this.edgeTo[v] = from;
+        this.seen[v] = this.generation;
+    }
+}
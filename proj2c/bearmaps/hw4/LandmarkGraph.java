@@ -0,0 +1,223 @@
+package bearmaps.hw4;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Wraps a symmetric IndexedAStarGraph with an ALT (A*, landmarks, triangle
+ * inequality) heuristic. Preprocessing picks k landmarks by farthest-point
+ * selection and runs one Dijkstra from each, storing the distances. For any
+ * landmark L, d(v, goal) >= |d(L, goal) - d(L, v)| by the triangle inequality,
+ * so the largest of these bounds and the wrapped graph's own estimate is still
+ * a consistent heuristic, and usually a much tighter one on winding roads.
+ *
+ * Everything else is delegated, so the wrapper can be handed to AStarSolver or
+ * LongAStarSolver in place of the original graph. Costs 8 bytes per vertex per
+ * landmark, see bytesPerLandmark.
+ */
+public class LandmarkGraph implements IndexedAStarGraph {
+
+    private final IndexedAStarGraph graph;
+    private final int numLandmarks;
+    private final int[] landmarks;
+    // distance from landmark l to vertex v at landmarkDist[v * numLandmarks + l],
+    // so the bounds of one vertex sit next to each other
+    private final double[] landmarkDist;
+
+    /**
+     * Picks the landmarks and computes their distances to every vertex.
+     * @param graph a symmetric graph
+     * @param numLandmarks how many landmarks to use
+     */
+    public LandmarkGraph(IndexedAStarGraph graph, int numLandmarks) {
+        int n = graph.vertexCount();
+        this.graph = graph;
+        this.numLandmarks = Math.min(numLandmarks, n);
+        this.landmarks = new int[this.numLandmarks];
+        this.landmarkDist = new double[n * this.numLandmarks];
+
+        IndexedSearchState state = new IndexedSearchState(n);
+        // Smallest distance from each vertex to a landmark chosen so far
+        double[] nearestLandmark = new double[n];
+        Arrays.fill(nearestLandmark, Double.POSITIVE_INFINITY);
+
+        // Start from the vertex farthest from one in the largest component. Each
+        // landmark after is picked among the vertices the last search reached, so
+        // this keeps them all in the component that holds most of the roads.
+        int next = largestComponentVertex();
+        if (this.numLandmarks > 0) {
+            dijkstra(state, next);
+            next = farthest(state, null);
+        }
+        for (int l = 0; l < this.numLandmarks; l++) {
+            landmarks[l] = next;
+            dijkstra(state, next);
+            for (int v = 0; v < n; v++) {
+                double dist = state.isSeen(v) ? state.distTo[v] : Double.POSITIVE_INFINITY;
+                landmarkDist[v * this.numLandmarks + l] = dist;
+                nearestLandmark[v] = Math.min(nearestLandmark[v], dist);
+            }
+            next = farthest(state, nearestLandmark);
+        }
+    }
+
+    /** Returns a vertex of the largest connected component, or 0 if there are no vertices. */
+    private int largestComponentVertex() {
+        int n = graph.vertexCount();
+        boolean[] marked = new boolean[n];
+        int[] stack = new int[n];
+        int best = 0;
+        int bestSize = 0;
+        for (int s = 0; s < n; s++) {
+            if (marked[s]) {
+                continue;
+            }
+            marked[s] = true;
+            stack[0] = s;
+            int top = 1;
+            int size = 0;
+            while (top > 0) {
+                int v = stack[--top];
+                size++;
+                for (int e = graph.edgeStart(v); e < graph.edgeEnd(v); e++) {
+                    int w = graph.edgeTarget(e);
+                    if (!marked[w]) {
+                        marked[w] = true;
+                        stack[top++] = w;
+                    }
+                }
+            }
+            if (size > bestSize) {
+                bestSize = size;
+                best = s;
+            }
+        }
+        return best;
+    }
+
+    /** Settles every vertex reachable from SOURCE. */
+    private void dijkstra(IndexedSearchState state, int source) {
+        state.nextGeneration();
+        state.update(source, 0.0, -1);
+        state.pq.add(source, 0.0);
+        while (state.pq.size() > 0) {
+            int v = state.pq.removeSmallest();
+            state.visited[v] = state.generation;
+            for (int e = graph.edgeStart(v); e < graph.edgeEnd(v); e++) {
+                int w = graph.edgeTarget(e);
+                if (state.isVisited(w)) {
+                    continue;
+                }
+                double dist = state.distTo[v] + graph.edgeWeight(e);
+                if (!state.isSeen(w)) {
+                    state.update(w, dist, v);
+                    state.pq.add(w, dist);
+                } else if (dist < state.distTo[w]) {
+                    state.update(w, dist, v);
+                    state.pq.changePriority(w, dist);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the vertex reached by the last search that is farthest from every
+     * landmark, measured by NEARESTLANDMARK, or from the search's source if null.
+     */
+    private int farthest(IndexedSearchState state, double[] nearestLandmark) {
+        int best = 0;
+        double bestDist = -1;
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            if (!state.isSeen(v)) {
+                continue;
+            }
+            double dist = nearestLandmark == null ? state.distTo[v] : nearestLandmark[v];
+            if (dist > bestDist) {
+                bestDist = dist;
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    /** Returns the dense indices of the landmarks, in the order they were chosen. */
+    public int[] landmarks() {
+        return landmarks.clone();
+    }
+
+    /** Returns the bytes of distance data stored for each landmark. */
+    public long bytesPerLandmark() {
+        return 8L * graph.vertexCount();
+    }
+
+    /**
+     * Returns the largest of the landmark bounds and the wrapped graph's own
+     * estimate of the distance between the vertices at dense indices S and GOAL.
+     */
+    @Override
+    public double estimatedDistanceToGoalAt(int s, int goal) {
+        double best = graph.estimatedDistanceToGoalAt(s, goal);
+        int sBase = s * numLandmarks;
+        int goalBase = goal * numLandmarks;
+        for (int l = 0; l < numLandmarks; l++) {
+            double toS = landmarkDist[sBase + l];
+            double toGoal = landmarkDist[goalBase + l];
+            // A landmark in another component says nothing about this pair
+            if (toS == Double.POSITIVE_INFINITY || toGoal == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            best = Math.max(best, Math.abs(toGoal - toS));
+        }
+        return best;
+    }
+
+    @Override
+    public double estimatedDistanceToGoal(Long s, Long goal) {
+        return estimatedDistanceToGoalAt(graph.indexOf(s), graph.indexOf(goal));
+    }
+
+    @Override
+    public List<WeightedEdge<Long>> neighbors(Long v) {
+        return graph.neighbors(v);
+    }
+
+    @Override
+    public void forEachNeighbor(Long v, EdgeConsumer<Long> action) {
+        graph.forEachNeighbor(v, action);
+    }
+
+    @Override
+    public int vertexCount() {
+        return graph.vertexCount();
+    }
+
+    @Override
+    public int indexOf(long v) {
+        return graph.indexOf(v);
+    }
+
+    @Override
+    public long idAt(int i) {
+        return graph.idAt(i);
+    }
+
+    @Override
+    public int edgeStart(int i) {
+        return graph.edgeStart(i);
+    }
+
+    @Override
+    public int edgeEnd(int i) {
+        return graph.edgeEnd(i);
+    }
+
+    @Override
+    public int edgeTarget(int e) {
+        return graph.edgeTarget(e);
+    }
+
+    @Override
+    public double edgeWeight(int e) {
+        return graph.edgeWeight(e);
+    }
+}
@@ -0,0 +1,155 @@
+package bearmaps.hw4;
+
+import java.util.LinkedList;
+import java.util.List;
+import bearmaps.proj2ab.IntIndexMinPQ;
+import edu.princeton.cs.algs4.Stopwatch;
+
+/**
+ * A* specialized for graphs with dense vertex indices. The search state lives in
+ * int-indexed primitive arrays that are reused across queries on the same thread,
+ * see IndexedSearchState.
+ */
+public class LongAStarSolver implements ShortestPathsSolver<Long> {
+
+    private double solutionWeight;
+    private LinkedList<Long> solutionList;
+    private double timeSpent;
+    private SolverOutcome result;
+    private int dequeueOperation;
+
+    /** Reusable search state, one per thread since routing requests run concurrently. */
+    private static final ThreadLocal<IndexedSearchState> STATE = new ThreadLocal<>();
+
+    /**
+     * Constructor which finds the solution,
+     * computing everything necessary for all other methods
+     * to return their results in constant time.
+     * @param input
+     * @param start
+     * @param end
+     * @param timeout timeout limit in seconds
+     */
+    public LongAStarSolver(IndexedAStarGraph input, long start, long end, double timeout) {
+        Stopwatch sw = new Stopwatch();
+        this.solutionList = new LinkedList<>();
+        this.solutionWeight = 0.0;
+        this.dequeueOperation = 0;
+
+        IndexedSearchState state = STATE.get();
+        if (state == null || !state.fits(input.vertexCount())) {
+            state = new IndexedSearchState(input.vertexCount());
+            STATE.set(state);
+        }
+        state.nextGeneration();
+        int gen = state.generation;
+        double[] distTo = state.distTo;
+        int[] edgeTo = state.edgeTo;
+        int[] seen = state.seen;
+        int[] visited = state.visited;
+        IntIndexMinPQ pq = state.pq;
+
+        int s = input.indexOf(start);
+        int t = input.indexOf(end);
+        if (s < 0 || t < 0) {
+            throw new IllegalArgumentException("start or end is not in the graph");
+        }
+
+        pq.add(s, input.estimatedDistanceToGoalAt(s, t));
+        distTo[s] = 0.0;
+        edgeTo[s] = -1;
+        seen[s] = gen;
+
+        while (pq.size() > 0) {
+            if (pq.getSmallest() == t) {
+                this.result = SolverOutcome.SOLVED;
+                for (int pos = t; pos != -1; pos = edgeTo[pos]) {
+                    this.solutionList.addFirst(input.idAt(pos));
+                }
+                this.solutionWeight = distTo[t];
+                break;
+            }
+
+            if (sw.elapsedTime() > timeout) {
+                this.result = SolverOutcome.TIMEOUT;
+                break;
+            }
+
+            int v = pq.removeSmallest();
+            this.dequeueOperation++;
+            visited[v] = gen;
+
+            double curBestDistToV = distTo[v];
+            for (int e = input.edgeStart(v); e < input.edgeEnd(v); e++) {
+                int w = input.edgeTarget(e);
+                // never relax edges that point to already visited vertices
+                if (visited[w] == gen) {
+                    continue;
+                }
+
+                double potentialDistToWUsingV = curBestDistToV + input.edgeWeight(e);
+                if (seen[w] != gen) {
+                    seen[w] = gen;
+                    distTo[w] = potentialDistToWUsingV;
+                    edgeTo[w] = v;
+                    pq.add(w, potentialDistToWUsingV + input.estimatedDistanceToGoalAt(w, t));
+                } else if (potentialDistToWUsingV < distTo[w]) {
+                    distTo[w] = potentialDistToWUsingV;
+                    edgeTo[w] = v;
+                    pq.changePriority(w, potentialDistToWUsingV + input.estimatedDistanceToGoalAt(w, t));
+                }
+            }
+        }
+
+        this.timeSpent = sw.elapsedTime();
+        if (this.result == null) {
+            this.result = SolverOutcome.UNSOLVABLE;
+        }
+    }
+
+    /**
+     * Returns one of SolverOutcome.SOLVED, SolverOutcome.TIMEOUT, or SolverOutcome.UNSOLVABLE.
+     * @return SOLVED if the solver was able to complete all work in the time given.
+     * UNSOLVABLE if the priority queue became empty.
+     * TIMEOUT if the solver ran out of time.
+     */
+    public SolverOutcome outcome() {
+        return this.result;
+    }
+
+    /**
+     * A list of vertices corresponding to a solution.
+     * Should be empty if result was TIMEOUT or UNSOLVABLE
+     * @return
+     */
+    public List<Long> solution() {
+        return this.solutionList;
+    }
+
+    /**
+     * The total weight of the given solution,
+     * taken into account edge weight. Should be 0
+     * if result was TIMEOUT or UNSOLVABLE
+     * @return
+     */
+    public double solutionWeight() {
+        return this.solutionWeight;
+    }
+
+    /**
+     * The total number of priority queue dequeue operations.
+     * @return
+     */
+    public int numStatesExplored() {
+        return this.dequeueOperation;
+    }
+
+    /**
+     * The total time spent in seconds by the constructor.
+     * @return
+     */
+    public double explorationTime() {
+        return this.timeSpent;
+    }
+
+}
@@ -0,0 +1,255 @@
+package bearmaps.hw4.streetmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary snapshot of a StreetMapGraph, so the server can skip the XML parse on
+ * startup. The file is written once, ahead of time, by AugmentedStreetMapGraph's
+ * main, and is memory mapped when loaded: the vertex columns and CSR arrays of
+ * the graph are views on the mapping, so loading copies none of them, and only
+ * the strings are decoded. After the graph come the indexes a subclass of
+ * StreetMapGraph keeps over it, see StreetMapGraph.indexes, which it loads back
+ * instead of building them.
+ *
+ * Layout, all little-endian:
+ * <pre>
+ *   int magic, int version, long source length, long source last-modified,
+ *   int V, int E, int number of way names, int number of named vertices,
+ *   long[V] ids, double[V] lats, double[V] lons, double[E] edgeWeights,
+ *   int[V + 1] edgeOffsets, int[E] edgeTargets, int[E] edgeNameIds,
+ *   way names, then (int vertex, name) pairs for the named vertices,
+ *   int length of the indexes, -1 if there are none, then the indexes,
+ * </pre>
+ * where each string is an int byte length, -1 for null, followed by UTF-8 bytes.
+ * The 8-byte columns come first, right after the header, so every column is
+ * aligned to its element size. A snapshot whose version, source length or source
+ * timestamp does not match is stale and ignored.
+ */
+public class GraphSnapshot {
+
+    /** Appended to the OSM file's path to get the default snapshot path. */
+    public static final String SUFFIX = ".snapshot";
+    private static final int MAGIC = 0x424d5347;
+    /** Bump whenever the layout or how a column is computed changes, so old snapshots read as stale. */
+    private static final int VERSION = 4;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 * 4;
+
+    private GraphSnapshot() {
+    }
+
+    /**
+     * Returns the default snapshot path for an OSM file.
+     * @param osmPath path of the OSM XML file
+     * @return the path the snapshot of that file is written to
+     */
+    public static String pathFor(String osmPath) {
+        return osmPath + SUFFIX;
+    }
+
+    /**
+     * Checks whether a snapshot exists and was written from the current version
+     * of an OSM file by the current version of this format.
+     * @param osmPath path of the OSM XML file
+     * @param snapshotPath path of the snapshot
+     * @return true if the snapshot can be loaded in place of the OSM file
+     */
+    public static boolean isFresh(String osmPath, String snapshotPath) {
+        File source = new File(osmPath);
+        File snapshot = new File(snapshotPath);
+        if (!snapshot.isFile() || snapshot.length() < HEADER_BYTES) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                continue;
+            }
+            header.flip();
+            return header.getInt() == MAGIC && header.getInt() == VERSION
+                    && header.getLong() == source.length() && header.getLong() == source.lastModified();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes a snapshot of a graph and of the indexes it keeps. The file is written
+     * next to its destination and then moved into place, so a reader never sees a
+     * partial snapshot.
+     * @param g the graph, as read from OSMPATH
+     * @param osmPath path of the OSM XML file the graph was read from
+     * @param snapshotPath where to write the snapshot
+     */
+    public static void write(StreetMapGraph g, String osmPath, String snapshotPath) throws IOException {
+        int numVertices = g.vertexCount();
+        int numEdges = g.edgeCount();
+        byte[][] wayNames = new byte[g.wayNames.length][];
+        long size = HEADER_BYTES + 24L * numVertices + 4L * (numVertices + 1) + 16L * numEdges + 4;
+        for (int i = 0; i < wayNames.length; i++) {
+            wayNames[i] = encode(g.wayNames[i]);
+            size += 4 + (wayNames[i] == null ? 0 : wayNames[i].length);
+        }
+        int numNamed = 0;
+        for (String name : g.names) {
+            if (name != null) {
+                numNamed++;
+                size += 8 + encode(name).length;
+            }
+        }
+        ByteBuffer indexes = g.indexes();
+        if (indexes != null) {
+            size += indexes.remaining();
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("graph too large for a snapshot");
+        }
+
+        File source = new File(osmPath);
+        ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION).putLong(source.length()).putLong(source.lastModified());
+        buf.putInt(numVertices).putInt(numEdges).putInt(wayNames.length).putInt(numNamed);
+        buf.asLongBuffer().put(g.ids.duplicate());
+        buf.position(buf.position() + 8 * numVertices);
+        buf.asDoubleBuffer().put(g.lats.duplicate());
+        buf.position(buf.position() + 8 * numVertices);
+        buf.asDoubleBuffer().put(g.lons.duplicate());
+        buf.position(buf.position() + 8 * numVertices);
+        buf.asDoubleBuffer().put(g.edgeWeights.duplicate());
+        buf.position(buf.position() + 8 * numEdges);
+        buf.asIntBuffer().put(g.edgeOffsets.duplicate());
+        buf.position(buf.position() + 4 * (numVertices + 1));
+        buf.asIntBuffer().put(g.edgeTargets.duplicate());
+        buf.position(buf.position() + 4 * numEdges);
+        buf.asIntBuffer().put(g.edgeNameIds.duplicate());
+        buf.position(buf.position() + 4 * numEdges);
+        for (byte[] name : wayNames) {
+            putString(buf, name);
+        }
+        for (int i = 0; i < numVertices; i++) {
+            if (g.names[i] != null) {
+                buf.putInt(i);
+                putString(buf, encode(g.names[i]));
+            }
+        }
+        if (indexes == null) {
+            buf.putInt(-1);
+        } else {
+            buf.putInt(indexes.remaining());
+            buf.put(indexes);
+        }
+        buf.flip();
+
+        Path target = Paths.get(snapshotPath).toAbsolutePath();
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a graph from a snapshot. Does not check that it is fresh. The graph's
+     * columns and stored indexes are views on the mapped file, which stays mapped
+     * as long as the graph is reachable.
+     * @param snapshotPath path of the snapshot
+     * @return the graph the snapshot was written from
+     */
+    public static StreetMapGraph read(String snapshotPath) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(Paths.get(snapshotPath), StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer buf = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+            throw new IOException(snapshotPath + " is not a version " + VERSION + " graph snapshot");
+        }
+        buf.getLong();
+        buf.getLong();
+        int numVertices = buf.getInt();
+        int numEdges = buf.getInt();
+        int numWayNames = buf.getInt();
+        int numNamed = buf.getInt();
+
+        LongBuffer ids = section(buf, 8 * numVertices).asLongBuffer();
+        DoubleBuffer lats = section(buf, 8 * numVertices).asDoubleBuffer();
+        DoubleBuffer lons = section(buf, 8 * numVertices).asDoubleBuffer();
+        DoubleBuffer edgeWeights = section(buf, 8 * numEdges).asDoubleBuffer();
+        IntBuffer edgeOffsets = section(buf, 4 * (numVertices + 1)).asIntBuffer();
+        IntBuffer edgeTargets = section(buf, 4 * numEdges).asIntBuffer();
+        IntBuffer edgeNameIds = section(buf, 4 * numEdges).asIntBuffer();
+        String[] wayNames = new String[numWayNames];
+        for (int i = 0; i < numWayNames; i++) {
+            wayNames[i] = getString(buf);
+        }
+        String[] names = new String[numVertices];
+        for (int i = 0; i < numNamed; i++) {
+            int v = buf.getInt();
+            names[v] = getString(buf);
+        }
+        StreetMapGraph g = new StreetMapGraph(ids, lats, lons, names, edgeOffsets, edgeTargets,
+                edgeWeights, edgeNameIds, wayNames);
+        int indexBytes = buf.getInt();
+        if (indexBytes >= 0) {
+            g.storedIndexes = section(buf, indexBytes);
+        }
+        return g;
+    }
+
+    /** Returns the next BYTES bytes of BUF as a little-endian view, and skips past them. */
+    private static ByteBuffer section(ByteBuffer buf, int bytes) {
+        ByteBuffer section = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+        section.limit(bytes);
+        buf.position(buf.position() + bytes);
+        return section;
+    }
+
+    private static byte[] encode(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the bytes putString takes for S. */
+    public static int stringBytes(String s) {
+        return 4 + (s == null ? 0 : encode(s).length);
+    }
+
+    /** Puts S, which may be null, in BUF as strings are laid out in a snapshot. */
+    public static void putString(ByteBuffer buf, String s) {
+        putString(buf, encode(s));
+    }
+
+    private static void putString(ByteBuffer buf, byte[] bytes) {
+        if (bytes == null) {
+            buf.putInt(-1);
+        } else {
+            buf.putInt(bytes.length);
+            buf.put(bytes);
+        }
+    }
+
+    /** Reads a string that putString put in BUF. */
+    public static String getString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,944 @@
+package bearmaps.hw4.streetmap;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads an OSM XML file into a StreetMapGraph in four stages:
+ * <ol>
+ *   <li>The calling thread streams the file in fixed-size chunks and cuts each
+ *   chunk just before its last top-level &lt;node&gt;, &lt;way&gt; or
+ *   &lt;relation&gt;, so every batch holds whole elements.</li>
+ *   <li>Worker threads tokenize their batch and decode it straight into primitive
+ *   arrays: node ids and coordinates are parsed from the raw bytes, and the node
+ *   references of every highway are appended to one flat array per batch rather
+ *   than a list per way.</li>
+ *   <li>The calling thread takes the decoded batches back in file order, so the
+ *   result does not depend on scheduling. It keeps the highways' references and
+ *   spills every node to a temporary file, as most nodes of an extract, such as
+ *   the corners of buildings, never become vertices.</li>
+ *   <li>Once the whole file has been read, it reads the spilled nodes back, keeps
+ *   only those a highway references or that have a name, and assembles the vertex
+ *   columns and CSR edge arrays from them.</li>
+ * </ol>
+ * At most a couple of batches per worker are in flight at once. Apart from those,
+ * memory grows with the highways' references and the named nodes, which is to say
+ * with the graph, and not with the number of nodes in the file.
+ *
+ * The graph is the one GraphBuildingHandler used to build: every consecutive
+ * pair of nodes on an allowed highway becomes an edge in both directions, named
+ * after the way, and vertices with neither edges nor a name are dropped. Edge
+ * weights add StreetMapGraph.tieBreak to the great-circle length.
+ */
+public class OsmIngest {
+    /**
+     * Only allow for non-service roads; this prevents going on pedestrian streets as much as
+     * possible. Note that in Berkeley, many of the campus roads are tagged as motor vehicle
+     * roads, but in practice we walk all over them with such impunity that we forget cars can
+     * actually drive on them.
+     */
+    private static final Set<String> ALLOWED_HIGHWAY_TYPES = new HashSet<>(Arrays.asList
+            ("motorway", "trunk", "primary", "secondary", "tertiary", "unclassified",
+                    "residential", "living_street", "motorway_link", "trunk_link", "primary_link",
+                    "secondary_link", "tertiary_link"));
+
+    /* Element the tokenizer is inside of. */
+    private static final int OUTSIDE = 0;
+    private static final int IN_NODE = 1;
+    private static final int IN_WAY = 2;
+
+    /** Bytes read from the file per batch. */
+    private static final int BATCH_BYTES = 1 << 20;
+
+    private static final byte[] NODE = ascii("node");
+    private static final byte[] WAY = ascii("way");
+    private static final byte[] RELATION = ascii("relation");
+    private static final byte[] ND = ascii("nd");
+    private static final byte[] TAG = ascii("tag");
+    private static final byte[] ID = ascii("id");
+    private static final byte[] LAT = ascii("lat");
+    private static final byte[] LON = ascii("lon");
+    private static final byte[] REF = ascii("ref");
+    private static final byte[] K = ascii("k");
+    private static final byte[] V = ascii("v");
+
+    /** Powers of ten that doubles represent exactly. */
+    private static final double[] POW10 = new double[23];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private final String filename;
+    private final int numWorkers;
+    private long numNodes;
+    private long numWays;
+    private double seconds;
+
+    /**
+     * Prepares to read FILENAME with one worker per spare core.
+     * @param filename path of the OSM XML file
+     */
+    public OsmIngest(String filename) {
+        this(filename, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Prepares to read FILENAME.
+     * @param filename path of the OSM XML file
+     * @param numWorkers number of threads decoding batches
+     */
+    public OsmIngest(String filename, int numWorkers) {
+        this.filename = filename;
+        this.numWorkers = numWorkers;
+    }
+
+    /**
+     * Reads the file.
+     * @return the graph of the file's highways
+     * @throws IOException if the file cannot be read or is not well-formed
+     */
+    public StreetMapGraph read() throws IOException {
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(numWorkers);
+        ArrayDeque<Future<Batch>> inFlight = new ArrayDeque<>();
+        StreetMapGraph g;
+        try (Assembler assembler = new Assembler(); InputStream in = new FileInputStream(filename)) {
+            byte[] buf = new byte[BATCH_BYTES];
+            int len = 0;
+            while (true) {
+                int n = in.read(buf, len, buf.length - len);
+                if (n < 0) {
+                    break;
+                }
+                len += n;
+                if (len < buf.length) {
+                    continue;
+                }
+                int cut = lastCut(buf, len);
+                if (cut <= 0) {
+                    // One element fills the whole buffer
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                    continue;
+                }
+                byte[] chunk = Arrays.copyOf(buf, cut);
+                inFlight.add(workers.submit(() -> decode(chunk)));
+                System.arraycopy(buf, cut, buf, 0, len - cut);
+                len -= cut;
+                while (inFlight.size() > 2 * numWorkers) {
+                    assembler.add(take(inFlight.poll()));
+                }
+            }
+            if (len > 0) {
+                byte[] chunk = Arrays.copyOf(buf, len);
+                inFlight.add(workers.submit(() -> decode(chunk)));
+            }
+            while (!inFlight.isEmpty()) {
+                assembler.add(take(inFlight.poll()));
+            }
+            g = assembler.build();
+            this.numNodes = assembler.numNodes;
+            this.numWays = assembler.numWays;
+        } finally {
+            workers.shutdownNow();
+        }
+        this.seconds = (System.nanoTime() - start) / 1e9;
+        return g;
+    }
+
+    /** Returns the number of node elements in the file. */
+    public long numNodes() {
+        return numNodes;
+    }
+
+    /** Returns the number of way elements in the file, highways or not. */
+    public long numWays() {
+        return numWays;
+    }
+
+    /** Returns the time the last read took, in seconds. */
+    public double seconds() {
+        return seconds;
+    }
+
+    /** Returns the node elements read per second. */
+    public double nodesPerSecond() {
+        return numNodes / seconds;
+    }
+
+    /** Returns the way elements read per second. */
+    public double waysPerSecond() {
+        return numWays / seconds;
+    }
+
+    private static Batch take(Future<Batch> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while reading OSM file");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the offset of the last top-level element that starts in the first
+     * LEN bytes of BUF, or -1 if there is none. OSM never nests nodes, ways or
+     * relations, so any of their start tags outside a comment is at the top level.
+     */
+    private static int lastCut(byte[] buf, int len) {
+        for (int i = len - 1; i > 0; i--) {
+            if (buf[i] == '<' && (startsElement(buf, i + 1, len, NODE)
+                    || startsElement(buf, i + 1, len, WAY) || startsElement(buf, i + 1, len, RELATION))) {
+                int comment = commentStart(buf, i);
+                if (comment < 0) {
+                    return i;
+                }
+                i = comment;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the offset of the comment that the byte at I of B is in, or -1 if it
+     * is not in one. A comment cannot contain "--", so the nearest "<!--" or "-->"
+     * before I tells.
+     */
+    private static int commentStart(byte[] b, int i) {
+        for (int j = i - 1; j >= 2; j--) {
+            if (b[j] != '-' || b[j - 1] != '-') {
+                continue;
+            }
+            if (j + 1 < i && b[j + 1] == '>') {
+                return -1;
+            }
+            if (b[j - 2] == '!' && j >= 3 && b[j - 3] == '<') {
+                return j - 3;
+            }
+        }
+        return -1;
+    }
+
+    /** Checks whether the tag name starting at I in B is NAME. */
+    private static boolean startsElement(byte[] b, int i, int end, byte[] name) {
+        if (i + name.length >= end) {
+            return false;
+        }
+        for (int j = 0; j < name.length; j++) {
+            if (b[i + j] != name[j]) {
+                return false;
+            }
+        }
+        byte next = b[i + name.length];
+        return isSpace(next) || next == '>' || next == '/';
+    }
+
+    /** Nodes and highways decoded from one batch, in file order. */
+    private static class Batch {
+        private int numNodes;
+        private long[] nodeIds = new long[1024];
+        private double[] lats = new double[1024];
+        private double[] lons = new double[1024];
+        // named nodes, as positions in nodeIds
+        private int numNamed;
+        private int[] namedNodes = new int[64];
+        private final List<String> nodeNames = new ArrayList<>();
+
+        private int numWays;
+        // node references of the batch's highways, back to back
+        private int numRefs;
+        private long[] refs = new long[4096];
+        // highway i's references start at wayStarts[i] and end where the next begins
+        private int numHighways;
+        private int[] wayStarts = new int[64];
+        private final List<String> wayNames = new ArrayList<>();
+
+        private void addNode(long id, double lat, double lon, String name) {
+            if (numNodes == nodeIds.length) {
+                nodeIds = Arrays.copyOf(nodeIds, numNodes * 2);
+                lats = Arrays.copyOf(lats, numNodes * 2);
+                lons = Arrays.copyOf(lons, numNodes * 2);
+            }
+            if (name != null) {
+                if (numNamed == namedNodes.length) {
+                    namedNodes = Arrays.copyOf(namedNodes, numNamed * 2);
+                }
+                namedNodes[numNamed++] = numNodes;
+                nodeNames.add(name);
+            }
+            nodeIds[numNodes] = id;
+            lats[numNodes] = lat;
+            lons[numNodes] = lon;
+            numNodes++;
+        }
+
+        private void addRef(long ref) {
+            if (numRefs == refs.length) {
+                refs = Arrays.copyOf(refs, numRefs * 2);
+            }
+            refs[numRefs++] = ref;
+        }
+
+        private void addHighway(int start, String name) {
+            if (numHighways == wayStarts.length) {
+                wayStarts = Arrays.copyOf(wayStarts, numHighways * 2);
+            }
+            wayStarts[numHighways++] = start;
+            wayNames.add(name);
+        }
+
+        /** Returns the end of the references of highway W. */
+        private int wayEnd(int w) {
+            return w + 1 < numHighways ? wayStarts[w + 1] : numRefs;
+        }
+    }
+
+    /** Attributes of the start tag being tokenized, as offsets into the batch. */
+    private static class Attributes {
+        private int size;
+        private int[] keyStart = new int[8];
+        private int[] keyEnd = new int[8];
+        private int[] valueStart = new int[8];
+        private int[] valueEnd = new int[8];
+
+        private void add(int ks, int ke, int vs, int ve) {
+            if (size == keyStart.length) {
+                keyStart = Arrays.copyOf(keyStart, size * 2);
+                keyEnd = Arrays.copyOf(keyEnd, size * 2);
+                valueStart = Arrays.copyOf(valueStart, size * 2);
+                valueEnd = Arrays.copyOf(valueEnd, size * 2);
+            }
+            keyStart[size] = ks;
+            keyEnd[size] = ke;
+            valueStart[size] = vs;
+            valueEnd[size] = ve;
+            size++;
+        }
+
+        /** Returns the index of attribute NAME, or -1. */
+        private int find(byte[] b, byte[] name) {
+            for (int a = 0; a < size; a++) {
+                if (bytesEqual(b, keyStart[a], keyEnd[a], name)) {
+                    return a;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Tokenizes a batch of whole elements, keeping the nodes and the highways.
+     * Mirrors what GraphBuildingHandler did with the SAX events for each element.
+     */
+    private static Batch decode(byte[] b) throws IOException {
+        Batch batch = new Batch();
+        Attributes attrs = new Attributes();
+        int n = b.length;
+        int state = OUTSIDE;
+
+        long nodeId = 0;
+        double lat = 0;
+        double lon = 0;
+        String nodeName = null;
+        int wayStart = 0;
+        boolean validWay = false;
+        String wayName = "";
+
+        int i = 0;
+        while (true) {
+            while (i < n && b[i] != '<') {
+                i++;
+            }
+            if (++i >= n) {
+                break;
+            }
+            if (b[i] == '!') {
+                i = i + 1 < n && b[i + 1] == '-' ? skipPast(b, i, "-->") : skipPast(b, i, ">");
+                continue;
+            } else if (b[i] == '?') {
+                i = skipPast(b, i, "?>");
+                continue;
+            }
+
+            boolean endTag = b[i] == '/';
+            if (endTag) {
+                i++;
+            }
+            int nameStart = i;
+            while (i < n && !isSpace(b[i]) && b[i] != '>' && b[i] != '/') {
+                i++;
+            }
+            int nameEnd = i;
+            boolean selfClosing = false;
+            if (endTag) {
+                i = skipPast(b, i, ">");
+            } else {
+                attrs.size = 0;
+                i = parseAttributes(b, i, attrs);
+                selfClosing = b[i - 2] == '/';
+            }
+
+            if (bytesEqual(b, nameStart, nameEnd, NODE)) {
+                if (!endTag) {
+                    state = IN_NODE;
+                    nodeId = parseLong(b, attrs, attrs.find(b, ID));
+                    lat = parseDouble(b, attrs, attrs.find(b, LAT));
+                    lon = parseDouble(b, attrs, attrs.find(b, LON));
+                    nodeName = null;
+                }
+                if (endTag || selfClosing) {
+                    if (state == IN_NODE) {
+                        batch.addNode(nodeId, lat, lon, nodeName);
+                    }
+                    state = OUTSIDE;
+                }
+            } else if (bytesEqual(b, nameStart, nameEnd, WAY)) {
+                if (!endTag) {
+                    state = IN_WAY;
+                    batch.numWays++;
+                    wayStart = batch.numRefs;
+                    validWay = false;
+                    wayName = "";
+                }
+                if (endTag || selfClosing) {
+                    if (state == IN_WAY && validWay) {
+                        batch.addHighway(wayStart, wayName);
+                    } else if (state == IN_WAY) {
+                        batch.numRefs = wayStart;
+                    }
+                    state = OUTSIDE;
+                }
+            } else if (endTag) {
+                continue;
+            } else if (state == IN_WAY && bytesEqual(b, nameStart, nameEnd, ND)) {
+                batch.addRef(parseLong(b, attrs, attrs.find(b, REF)));
+            } else if (state == IN_WAY && bytesEqual(b, nameStart, nameEnd, TAG)) {
+                String k = value(b, attrs, attrs.find(b, K));
+                String v = value(b, attrs, attrs.find(b, V));
+                if ("highway".equals(k)) {
+                    validWay = ALLOWED_HIGHWAY_TYPES.contains(v);
+                } else if ("name".equals(k)) {
+                    wayName = v;
+                }
+            } else if (state == IN_NODE && bytesEqual(b, nameStart, nameEnd, TAG)) {
+                if ("name".equals(value(b, attrs, attrs.find(b, K)))) {
+                    nodeName = value(b, attrs, attrs.find(b, V));
+                }
+            }
+        }
+        // A way that was cut off by the end of the file never finished
+        if (state == IN_WAY) {
+            batch.numRefs = wayStart;
+        }
+        return batch;
+    }
+
+    /**
+     * Parses the attributes of a start tag, from just after its name.
+     * @return the offset just past the tag's closing '>'
+     */
+    private static int parseAttributes(byte[] b, int i, Attributes attrs) throws IOException {
+        int n = b.length;
+        while (true) {
+            while (i < n && isSpace(b[i])) {
+                i++;
+            }
+            if (i >= n) {
+                throw new IOException("unterminated start tag");
+            }
+            if (b[i] == '>') {
+                return i + 1;
+            }
+            if (b[i] == '/') {
+                if (i + 1 < n && b[i + 1] == '>') {
+                    return i + 2;
+                }
+                throw new IOException("malformed start tag");
+            }
+            int keyStart = i;
+            while (i < n && b[i] != '=' && !isSpace(b[i])) {
+                i++;
+            }
+            int keyEnd = i;
+            while (i < n && b[i] != '=') {
+                i++;
+            }
+            i++;
+            while (i < n && isSpace(b[i])) {
+                i++;
+            }
+            if (i >= n || (b[i] != '"' && b[i] != '\'')) {
+                throw new IOException("malformed attribute");
+            }
+            byte quote = b[i++];
+            int valueStart = i;
+            while (i < n && b[i] != quote) {
+                i++;
+            }
+            if (i >= n) {
+                throw new IOException("unterminated attribute value");
+            }
+            attrs.add(keyStart, keyEnd, valueStart, i);
+            i++;
+        }
+    }
+
+    /** Returns the offset just past the next occurrence of END at or after I. */
+    private static int skipPast(byte[] b, int i, String end) {
+        outer:
+        for (; i + end.length() <= b.length; i++) {
+            for (int j = 0; j < end.length(); j++) {
+                if (b[i + j] != end.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i + end.length();
+        }
+        return b.length;
+    }
+
+    /**
+     * Returns the value of attribute A with entities expanded and whitespace
+     * normalized as an XML parser would, or null if A is -1.
+     */
+    private static String value(byte[] b, Attributes attrs, int a) {
+        if (a < 0) {
+            return null;
+        }
+        int start = attrs.valueStart[a];
+        int end = attrs.valueEnd[a];
+        boolean plain = true;
+        for (int i = start; i < end && plain; i++) {
+            plain = b[i] != '&' && b[i] != '\t' && b[i] != '\n' && b[i] != '\r';
+        }
+        String raw = new String(b, start, end - start, StandardCharsets.UTF_8);
+        if (plain) {
+            return raw;
+        }
+        StringBuilder sb = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '\r') {
+                if (i + 1 < raw.length() && raw.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                sb.append(' ');
+            } else if (c == '\t' || c == '\n') {
+                sb.append(' ');
+            } else if (c == '&') {
+                int semi = raw.indexOf(';', i);
+                if (semi < 0) {
+                    sb.append(c);
+                    continue;
+                }
+                String entity = raw.substring(i + 1, semi);
+                if (entity.startsWith("#x")) {
+                    sb.appendCodePoint(Integer.parseInt(entity.substring(2), 16));
+                } else if (entity.startsWith("#")) {
+                    sb.appendCodePoint(Integer.parseInt(entity.substring(1)));
+                } else if (entity.equals("amp")) {
+                    sb.append('&');
+                } else if (entity.equals("lt")) {
+                    sb.append('<');
+                } else if (entity.equals("gt")) {
+                    sb.append('>');
+                } else if (entity.equals("quot")) {
+                    sb.append('"');
+                } else if (entity.equals("apos")) {
+                    sb.append('\'');
+                } else {
+                    sb.append(raw, i, semi + 1);
+                }
+                i = semi;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static long parseLong(byte[] b, Attributes attrs, int a) throws IOException {
+        if (a < 0) {
+            throw new IOException("missing numeric attribute");
+        }
+        int i = attrs.valueStart[a];
+        int end = attrs.valueEnd[a];
+        boolean negative = i < end && b[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            return slowParseLong(b, attrs, a);
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = b[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return slowParseLong(b, attrs, a);
+            }
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    private static long slowParseLong(byte[] b, Attributes attrs, int a) throws IOException {
+        try {
+            return Long.parseLong(value(b, attrs, a).trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("malformed number: " + value(b, attrs, a));
+        }
+    }
+
+    /**
+     * Parses a decimal attribute straight from its bytes. A value with at most 2^53
+     * as its digits and at most 22 decimals, which covers every OSM coordinate, is
+     * the quotient of two exactly representable doubles, and one division rounds it
+     * exactly as Double.parseDouble would. Anything else goes through parseDouble.
+     */
+    private static double parseDouble(byte[] b, Attributes attrs, int a) throws IOException {
+        if (a < 0) {
+            throw new IOException("missing numeric attribute");
+        }
+        int i = attrs.valueStart[a];
+        int end = attrs.valueEnd[a];
+        boolean negative = i < end && b[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int decimals = 0;
+        boolean seenDot = false;
+        boolean seenDigit = false;
+        for (; i < end; i++) {
+            int digit = b[i] - '0';
+            if (digit >= 0 && digit <= 9) {
+                if (mantissa > (1L << 53) / 10) {
+                    return slowParseDouble(b, attrs, a);
+                }
+                mantissa = mantissa * 10 + digit;
+                seenDigit = true;
+                if (seenDot) {
+                    decimals++;
+                }
+            } else if (b[i] == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                return slowParseDouble(b, attrs, a);
+            }
+        }
+        if (!seenDigit || mantissa > (1L << 53) || decimals >= POW10.length) {
+            return slowParseDouble(b, attrs, a);
+        }
+        double result = mantissa / POW10[decimals];
+        return negative ? -result : result;
+    }
+
+    private static double slowParseDouble(byte[] b, Attributes attrs, int a) throws IOException {
+        try {
+            return Double.parseDouble(value(b, attrs, a));
+        } catch (NumberFormatException e) {
+            throw new IOException("malformed number: " + value(b, attrs, a));
+        }
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static boolean bytesEqual(byte[] b, int start, int end, byte[] s) {
+        if (end - start != s.length) {
+            return false;
+        }
+        for (int j = 0; j < s.length; j++) {
+            if (b[start + j] != s[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Collects decoded batches in file order and builds the graph from them. The
+     * batches' highways are kept; their nodes are spilled to a temporary file, which
+     * is deleted when the assembler is closed.
+     */
+    private static class Assembler implements Closeable {
+        /** Bytes of a spilled node: id, lat, lon, and the index of its name in nodeNames or -1. */
+        private static final int NODE_BYTES = 8 + 8 + 8 + 4;
+        /** Bytes of spilled nodes written or read at once. */
+        private static final int SPILL_BUFFER_BYTES = NODE_BYTES * 32768;
+
+        private long numNodes;
+        private long numWays;
+        private final List<Batch> batches = new ArrayList<>();
+        private final FileChannel spill;
+        private final ByteBuffer spillBuffer = ByteBuffer.allocateDirect(SPILL_BUFFER_BYTES);
+        /** Names of the named nodes, and their ids, in file order. */
+        private final List<String> nodeNames = new ArrayList<>();
+        private long[] namedIds = new long[64];
+
+        private Assembler() throws IOException {
+            Path file = Files.createTempFile("osm-nodes", ".tmp");
+            this.spill = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        }
+
+        private void add(Batch batch) throws IOException {
+            numNodes += batch.numNodes;
+            numWays += batch.numWays;
+            int named = 0;
+            for (int j = 0; j < batch.numNodes; j++) {
+                int nameIndex = -1;
+                if (named < batch.numNamed && batch.namedNodes[named] == j) {
+                    nameIndex = nodeNames.size();
+                    if (nameIndex == namedIds.length) {
+                        namedIds = Arrays.copyOf(namedIds, nameIndex * 2);
+                    }
+                    namedIds[nameIndex] = batch.nodeIds[j];
+                    nodeNames.add(batch.nodeNames.get(named++));
+                }
+                if (spillBuffer.remaining() < NODE_BYTES) {
+                    flushSpill();
+                }
+                spillBuffer.putLong(batch.nodeIds[j]).putDouble(batch.lats[j]).putDouble(batch.lons[j])
+                        .putInt(nameIndex);
+            }
+            // Only the highways are kept; drop the nodes and spare capacity
+            batch.nodeIds = null;
+            batch.lats = null;
+            batch.lons = null;
+            batch.namedNodes = null;
+            batch.nodeNames.clear();
+            batch.refs = Arrays.copyOf(batch.refs, batch.numRefs);
+            batch.wayStarts = Arrays.copyOf(batch.wayStarts, batch.numHighways);
+            batches.add(batch);
+        }
+
+        private void flushSpill() throws IOException {
+            spillBuffer.flip();
+            while (spillBuffer.hasRemaining()) {
+                spill.write(spillBuffer);
+            }
+            spillBuffer.clear();
+        }
+
+        private StreetMapGraph build() throws IOException {
+            // Only nodes on a highway or with a name can become vertices
+            int numCandidates = nodeNames.size();
+            for (Batch batch : batches) {
+                numCandidates += batch.numRefs;
+            }
+            long[] ids = new long[numCandidates];
+            System.arraycopy(namedIds, 0, ids, 0, nodeNames.size());
+            int k = nodeNames.size();
+            for (Batch batch : batches) {
+                System.arraycopy(batch.refs, 0, ids, k, batch.numRefs);
+                k += batch.numRefs;
+            }
+            namedIds = null;
+            Arrays.parallelSort(ids);
+            int numIds = 0;
+            for (int j = 0; j < ids.length; j++) {
+                if (numIds == 0 || ids[j] != ids[numIds - 1]) {
+                    ids[numIds++] = ids[j];
+                }
+            }
+
+            // The first node with a given id wins, as it did in GraphBuildingHandler
+            double[] lats = new double[numIds];
+            double[] lons = new double[numIds];
+            String[] names = new String[numIds];
+            boolean[] filled = new boolean[numIds];
+            flushSpill();
+            spill.position(0);
+            while (true) {
+                int n = spill.read(spillBuffer);
+                if (n < 0 && spillBuffer.position() == 0) {
+                    break;
+                }
+                spillBuffer.flip();
+                while (spillBuffer.remaining() >= NODE_BYTES) {
+                    long id = spillBuffer.getLong();
+                    double lat = spillBuffer.getDouble();
+                    double lon = spillBuffer.getDouble();
+                    int nameIndex = spillBuffer.getInt();
+                    int v = Arrays.binarySearch(ids, 0, numIds, id);
+                    if (v >= 0 && !filled[v]) {
+                        filled[v] = true;
+                        lats[v] = lat;
+                        lons[v] = lon;
+                        names[v] = nameIndex >= 0 ? nodeNames.get(nameIndex) : null;
+                    }
+                }
+                spillBuffer.compact();
+                if (n < 0) {
+                    break;
+                }
+            }
+            spillBuffer.clear();
+
+            // Referenced ids of nodes not in the file are dropped
+            int numFilled = 0;
+            for (int v = 0; v < numIds; v++) {
+                if (filled[v]) {
+                    ids[numFilled] = ids[v];
+                    lats[numFilled] = lats[v];
+                    lons[numFilled] = lons[v];
+                    names[numFilled] = names[v];
+                    numFilled++;
+                }
+            }
+            numIds = numFilled;
+            filled = null;
+
+            // Resolve highway references to dense indices; -1 for nodes not in the file
+            int[] degree = new int[numIds];
+            List<int[]> refIndices = new ArrayList<>(batches.size());
+            for (Batch batch : batches) {
+                int[] idx = new int[batch.numRefs];
+                for (int j = 0; j < idx.length; j++) {
+                    idx[j] = Math.max(-1, Arrays.binarySearch(ids, 0, numIds, batch.refs[j]));
+                }
+                refIndices.add(idx);
+                for (int w = 0; w < batch.numHighways; w++) {
+                    for (int j = batch.wayStarts[w]; j < batch.wayEnd(w) - 1; j++) {
+                        if (idx[j] >= 0 && idx[j + 1] >= 0) {
+                            degree[idx[j]]++;
+                            degree[idx[j + 1]]++;
+                        }
+                    }
+                }
+                batch.refs = null;
+            }
+
+            // Drop vertices with neither edges nor a name
+            int[] newIndex = new int[numIds];
+            int numVertices = 0;
+            int numEdges = 0;
+            for (int v = 0; v < numIds; v++) {
+                if (degree[v] > 0 || names[v] != null) {
+                    newIndex[v] = numVertices++;
+                    numEdges += degree[v];
+                } else {
+                    newIndex[v] = -1;
+                }
+            }
+
+            Columns g = new Columns(numVertices, numEdges);
+            int e = 0;
+            for (int v = 0; v < numIds; v++) {
+                int u = newIndex[v];
+                if (u >= 0) {
+                    g.ids[u] = ids[v];
+                    g.lats[u] = lats[v];
+                    g.lons[u] = lons[v];
+                    g.names[u] = names[v];
+                    g.edgeOffsets[u] = e;
+                    e += degree[v];
+                }
+            }
+            g.edgeOffsets[numVertices] = e;
+
+            int[] next = Arrays.copyOf(g.edgeOffsets, numVertices);
+            Map<String, Integer> wayNameIds = new HashMap<>();
+            List<String> wayNameTable = new ArrayList<>();
+            for (int bi = 0; bi < batches.size(); bi++) {
+                Batch batch = batches.get(bi);
+                int[] idx = refIndices.get(bi);
+                for (int w = 0; w < batch.numHighways; w++) {
+                    String wayName = batch.wayNames.get(w);
+                    Integer nameId = wayNameIds.get(wayName);
+                    if (nameId == null) {
+                        nameId = wayNameTable.size();
+                        wayNameIds.put(wayName, nameId);
+                        wayNameTable.add(wayName);
+                    }
+                    for (int j = batch.wayStarts[w]; j < batch.wayEnd(w) - 1; j++) {
+                        if (idx[j] < 0 || idx[j + 1] < 0) {
+                            continue;
+                        }
+                        int from = newIndex[idx[j]];
+                        int to = newIndex[idx[j + 1]];
+                        addEdge(g, next[from]++, from, to, nameId);
+                        addEdge(g, next[to]++, to, from, nameId);
+                    }
+                }
+            }
+            return new StreetMapGraph(LongBuffer.wrap(g.ids), DoubleBuffer.wrap(g.lats), DoubleBuffer.wrap(g.lons),
+                    g.names, IntBuffer.wrap(g.edgeOffsets), IntBuffer.wrap(g.edgeTargets),
+                    DoubleBuffer.wrap(g.edgeWeights), IntBuffer.wrap(g.edgeNameIds),
+                    wayNameTable.toArray(new String[0]));
+        }
+
+        private static void addEdge(Columns g, int e, int from, int to, int nameId) {
+            g.edgeTargets[e] = to;
+            g.edgeWeights[e] = StreetMapGraph.distance(g.lons[from], g.lons[to], g.lats[from], g.lats[to])
+                    + StreetMapGraph.tieBreak(g.ids[from], g.ids[to]);
+            g.edgeNameIds[e] = nameId;
+        }
+
+        @Override
+        public void close() throws IOException {
+            spill.close();
+        }
+    }
+
+    /** The graph's vertex columns and CSR edge arrays, while they are filled in. */
+    private static class Columns {
+        private final long[] ids;
+        private final double[] lats;
+        private final double[] lons;
+        private final String[] names;
+        private final int[] edgeOffsets;
+        private final int[] edgeTargets;
+        private final double[] edgeWeights;
+        private final int[] edgeNameIds;
+
+        private Columns(int numVertices, int numEdges) {
+            this.ids = new long[numVertices];
+            this.lats = new double[numVertices];
+            this.lons = new double[numVertices];
+            this.names = new String[numVertices];
+            this.edgeOffsets = new int[numVertices + 1];
+            this.edgeTargets = new int[numEdges];
+            this.edgeWeights = new double[numEdges];
+            this.edgeNameIds = new int[numEdges];
+        }
+    }
+}
@@ -1,28 +1,115 @@
 package bearmaps.hw4.streetmap;
 
-import bearmaps.hw4.AStarGraph;
+import bearmaps.hw4.EdgeConsumer;
+import bearmaps.hw4.IndexedAStarGraph;
 import bearmaps.hw4.WeightedEdge;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.util.*;
 
-public class StreetMapGraph implements AStarGraph<Long> {
-    private Map<Long, Node> nodes = new HashMap<>();
-    private Map<Long, Set<WeightedEdge<Long>>> neighbors = new HashMap<>();
-
-    private StreetMapGraph() {
+/**
+ * Street graph backed by primitive columns, as assembled by OsmIngest or loaded
+ * from a GraphSnapshot. Every OSM id is remapped to a dense int index in [0, V),
+ * coordinates live in <code>DoubleBuffer</code> columns and edges are stored in
+ * compressed-sparse-row form: the outgoing edges of vertex i are the slots
+ * [edgeOffsets[i], edgeOffsets[i + 1]). The columns wrap arrays when the graph
+ * is parsed and are views on the mapped file when it is loaded from a snapshot;
+ * either way they are only read with absolute gets, so queries can share them.
+ */
+public class StreetMapGraph implements IndexedAStarGraph {
+    /*
+     * Vertex columns, indexed by dense vertex index. ids is sorted ascending.
+     * These and the edge columns are package-private for GraphSnapshot.
+     */
+    LongBuffer ids;
+    DoubleBuffer lats;
+    DoubleBuffer lons;
+    String[] names;
+
+    /* CSR edge columns, indexed by edge slot. */
+    IntBuffer edgeOffsets;
+    IntBuffer edgeTargets;
+    DoubleBuffer edgeWeights;
+    IntBuffer edgeNameIds;
+    /* Interned way names, indexed by edgeNameIds. */
+    String[] wayNames;
+
+    /* The index section of the snapshot the graph was loaded from, or null. */
+    ByteBuffer storedIndexes;
+
+    /** Creates a graph over the given columns, which it keeps rather than copies. */
+    StreetMapGraph(LongBuffer ids, DoubleBuffer lats, DoubleBuffer lons, String[] names,
+                   IntBuffer edgeOffsets, IntBuffer edgeTargets, DoubleBuffer edgeWeights,
+                   IntBuffer edgeNameIds, String[] wayNames) {
+        this.ids = ids;
+        this.lats = lats;
+        this.lons = lons;
+        this.names = names;
+        this.edgeOffsets = edgeOffsets;
+        this.edgeTargets = edgeTargets;
+        this.edgeWeights = edgeWeights;
+        this.edgeNameIds = edgeNameIds;
+        this.wayNames = wayNames;
     }
 
+    /**
+     * Reads the graph of an OSM file, from its snapshot if there is a fresh one
+     * at the default path, see GraphSnapshot.
+     * @param filename path of the OSM XML file
+     */
     public StreetMapGraph(String filename) {
-        StreetMapGraph smg = StreetMapGraph.readFromXML(filename);
-        this.nodes = smg.nodes;
-        this.neighbors = smg.neighbors;
+        this(filename, GraphSnapshot.pathFor(filename));
+    }
+
+    /**
+     * Reads the graph of an OSM file, from SNAPSHOTFILENAME if that is a fresh
+     * snapshot of it and from the XML otherwise.
+     * @param filename path of the OSM XML file
+     * @param snapshotFilename path of the snapshot, or null to always parse the XML
+     */
+    public StreetMapGraph(String filename, String snapshotFilename) {
+        StreetMapGraph smg = null;
+        if (snapshotFilename != null && GraphSnapshot.isFresh(filename, snapshotFilename)) {
+            try {
+                smg = GraphSnapshot.read(snapshotFilename);
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        if (smg == null) {
+            smg = StreetMapGraph.readFromXML(filename);
+        }
+        this.ids = smg.ids;
+        this.lats = smg.lats;
+        this.lons = smg.lons;
+        this.names = smg.names;
+        this.edgeOffsets = smg.edgeOffsets;
+        this.edgeTargets = smg.edgeTargets;
+        this.edgeWeights = smg.edgeWeights;
+        this.edgeNameIds = smg.edgeNameIds;
+        this.wayNames = smg.wayNames;
+        this.storedIndexes = smg.storedIndexes;
+    }
+
+    /**
+     * Returns the indexes a subclass keeps over this graph, serialized for a
+     * GraphSnapshot to store after the graph, or null if there are none.
+     */
+    protected ByteBuffer indexes() {
+        return null;
+    }
+
+    /**
+     * Returns what indexes() returned when the snapshot this graph was loaded from
+     * was written, as a read-only little-endian view on the snapshot, or null if the
+     * graph was parsed from XML or the snapshot stored no indexes.
+     */
+    protected ByteBuffer storedIndexes() {
+        return storedIndexes == null ? null : storedIndexes.duplicate().order(storedIndexes.order());
     }
 
     /**
@@ -31,24 +118,47 @@ public class StreetMapGraph implements AStarGraph<Long> {
      **/
     @Override
     public List<WeightedEdge<Long>> neighbors(Long v) {
-        Set<WeightedEdge<Long>> incidentSet = neighbors.get(v);
-        List<WeightedEdge<Long>> incidentList = new ArrayList<>();
-        for (WeightedEdge<Long> e : incidentSet) {
-            incidentList.add(e);
+        int i = indexOf(v);
+        List<WeightedEdge<Long>> incidentList = new ArrayList<>(edgeEnd(i) - edgeStart(i));
+        for (int e = edgeStart(i); e < edgeEnd(i); e++) {
+            WeightedEdge<Long> weightedEdge = new WeightedEdge<>(v, ids.get(edgeTargets.get(e)), edgeWeights.get(e));
+            weightedEdge.setName(wayNames[edgeNameIds.get(e)]);
+            incidentList.add(weightedEdge);
         }
 
         return incidentList;
     }
 
+    /**
+     * Visits the outgoing edges of V straight from the CSR columns. Assumes V
+     * exists in this graph.
+     */
+    @Override
+    public void forEachNeighbor(Long v, EdgeConsumer<Long> action) {
+        int i = indexOf(v);
+        for (int e = edgeStart(i); e < edgeEnd(i); e++) {
+            action.accept(ids.get(edgeTargets.get(e)), edgeWeights.get(e));
+        }
+    }
+
     /**
      * Returns the great-circle distance between S and GOAL. Assumes
      * S and GOAL exist in this graph.
      */
     @Override
     public double estimatedDistanceToGoal(Long s, Long goal) {
-        Node sNode = nodes.get(s);
-        Node goalNode = nodes.get(goal);
-        return distance(sNode.lon(), goalNode.lon(), sNode.lat(), goalNode.lat());
+        int sIdx = indexOf(s);
+        int goalIdx = indexOf(goal);
+        return distance(lons.get(sIdx), lons.get(goalIdx), lats.get(sIdx), lats.get(goalIdx));
+    }
+
+    /**
+     * Returns the great-circle distance between the vertices at dense
+     * indices S and GOAL.
+     */
+    @Override
+    public double estimatedDistanceToGoalAt(int s, int goal) {
+        return distance(lons.get(s), lons.get(goal), lats.get(s), lats.get(goal));
     }
 
     /**
@@ -57,8 +167,8 @@ public class StreetMapGraph implements AStarGraph<Long> {
      **/
     private Set<Long> vertices() {
         Set<Long> vertices = new HashSet<>();
-        for (long id : nodes.keySet()) {
-            vertices.add(id);
+        for (int i = 0; i < vertexCount(); i++) {
+            vertices.add(ids.get(i));
         }
 
         return vertices;
@@ -66,64 +176,16 @@ public class StreetMapGraph implements AStarGraph<Long> {
 
     /**
      * Factory method. Creates and returns a graph from an OSM XML
-     * file. Assumes file is correctly formatted.
+     * file, see OsmIngest. Returns an empty graph if the file cannot be read.
      */
     private static StreetMapGraph readFromXML(String filename) {
-        StreetMapGraph smg = new StreetMapGraph();
         try {
-            File inputFile = new File(filename);
-            FileInputStream inputStream = new FileInputStream(inputFile);
-            SAXParserFactory factory = SAXParserFactory.newInstance();
-            SAXParser saxParser = factory.newSAXParser();
-            GraphBuildingHandler gbh = new GraphBuildingHandler(smg);
-            saxParser.parse(inputStream, gbh);
-        } catch (ParserConfigurationException | SAXException | IOException e) {
+            return new OsmIngest(filename).read();
+        } catch (IOException e) {
             e.printStackTrace();
-        }
-
-        smg.clean();
-        return smg;
-    }
-
-    /** Adds a node to this graph, if it doesn't yet exist. **/
-    void addNode(Node node) {
-        if (!nodes.containsKey(node.id())) {
-            nodes.put(node.id(), node);
-            neighbors.put(node.id(), new HashSet<>());
-        }
-    }
-
-    /** Adds an edge to this graph, if FROMID and TOID are in this graph. Does
-     *  not add additional edge if edge already exists.
-     **/
-    void addWeightedEdge(long fromID, long toID, String name) {
-        if (nodes.containsKey(fromID) && nodes.containsKey(toID)) {
-            Node from = nodes.get(fromID);
-            Node to = nodes.get(toID);
-            double weight = distance(from.lon(), to.lon(), from.lat(), to.lat());
-
-            Set<WeightedEdge<Long>> edgeSet = neighbors.get(fromID);
-            WeightedEdge<Long> weightedEdge = new WeightedEdge<>(from.id(), to.id(), weight);
-            weightedEdge.setName(name);
-            edgeSet.add(weightedEdge);
-        }
-    }
-
-    /**
-     * Removes vertices with 0 out-degree from graph. Note that this will
-     * cause issues if edges are not bidirectional.
-     **/
-    private void clean() {
-        List<Long> toRemove = new ArrayList<>();
-        for (long id : nodes.keySet()) {
-            if (neighbors(id).size() == 0 && nodes.get(id).name() == null) {
-                toRemove.add(id);
-            }
-        }
-
-        for (long id : toRemove) {
-            nodes.remove(id);
-            neighbors.remove(id);
+            return new StreetMapGraph(LongBuffer.allocate(0), DoubleBuffer.allocate(0), DoubleBuffer.allocate(0),
+                    new String[0], IntBuffer.allocate(1), IntBuffer.allocate(0), DoubleBuffer.allocate(0),
+                    IntBuffer.allocate(0), new String[0]);
         }
     }
 
@@ -179,7 +241,7 @@ public class StreetMapGraph implements AStarGraph<Long> {
      *
      * @source Kevin Lowe & Antares Chen, and https://www.movable-type.co.uk/scripts/latlong.html
      **/
-    private double distance(double lonV, double lonW, double latV, double latW) {
+    static double distance(double lonV, double lonW, double latV, double latW) {
         double phi1 = Math.toRadians(latV);
         double phi2 = Math.toRadians(latW);
         double dphi = Math.toRadians(latW - latV);
@@ -191,16 +253,34 @@ public class StreetMapGraph implements AStarGraph<Long> {
         return 3963 * c;
     }
 
+    /**
+     * Returns the length, one of 2^20 multiples of 2^-44 miles up to about 6e-8 miles,
+     * that OsmIngest adds to the weight of the edge between the nodes with ids V and W,
+     * either way round. Without it, two routes can be exactly the same length, as on a
+     * grid, and which one a search returns then depends on the order it happens to
+     * explore them in, so A* and a contraction hierarchy could list different vertices.
+     * With it, two routes tie only if their added lengths sum to the same multiple,
+     * which is rare but not impossible. The added length shows in every edge weight,
+     * path weight and distance, at most about 0.1 mm per edge.
+     */
+    static double tieBreak(long v, long w) {
+        long h = Math.min(v, w) * 0x9E3779B97F4A7C15L ^ Math.max(v, w);
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 31;
+        return (1 + (h & ((1 << 20) - 1))) * 0x1p-44;
+    }
+
     /**
      * Gets the longitude of a vertex.
      * @param v The id of the vertex.
      * @return The longitude of the vertex.
      */
     public double lon(long v) {
-        if (!nodes.containsKey(v)) {
+        int i = indexOf(v);
+        if (i < 0) {
             return 0.0;
         }
-        return nodes.get(v).lon();
+        return lons.get(i);
     }
 
     /**
@@ -209,10 +289,11 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The latitude of the vertex.
      */
     public double lat(long v) {
-        if (!nodes.containsKey(v)) {
+        int i = indexOf(v);
+        if (i < 0) {
             return 0.0;
         }
-        return nodes.get(v).lat();
+        return lats.get(i);
     }
 
     /**
@@ -221,16 +302,136 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The name of the vertex.
      */
     public String name(long v) {
-        if (!nodes.containsKey(v)) {
+        int i = indexOf(v);
+        if (i < 0) {
             return null;
         }
-        return nodes.get(v).name();
+        return names[i];
+    }
+
+    /**
+     * Gets the number of vertices in the graph.
+     * @return The number of vertices; dense indices range over [0, vertexCount()).
+     */
+    @Override
+    public int vertexCount() {
+        return ids.limit();
+    }
+
+    /**
+     * Gets the number of directed edges in the graph.
+     * @return The number of edge slots in the CSR columns.
+     */
+    public int edgeCount() {
+        return edgeTargets.limit();
+    }
+
+    /**
+     * Gets the dense index of a vertex.
+     * @param v The id of the vertex.
+     * @return The dense index of the vertex, or a negative value if V is not in the graph.
+     */
+    @Override
+    public int indexOf(long v) {
+        int lo = 0;
+        int hi = vertexCount() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long id = ids.get(mid);
+            if (id < v) {
+                lo = mid + 1;
+            } else if (id > v) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * Gets the OSM id of the vertex at a dense index.
+     * @param i The dense index of the vertex.
+     * @return The id of the vertex.
+     */
+    @Override
+    public long idAt(int i) {
+        return ids.get(i);
+    }
+
+    /**
+     * Gets the longitude of the vertex at a dense index.
+     * @param i The dense index of the vertex.
+     * @return The longitude of the vertex.
+     */
+    public double lonAt(int i) {
+        return lons.get(i);
+    }
+
+    /**
+     * Gets the latitude of the vertex at a dense index.
+     * @param i The dense index of the vertex.
+     * @return The latitude of the vertex.
+     */
+    public double latAt(int i) {
+        return lats.get(i);
+    }
+
+    /**
+     * Gets the first outgoing edge slot of the vertex at a dense index.
+     * @param i The dense index of the vertex.
+     * @return The first edge slot of the vertex.
+     */
+    @Override
+    public int edgeStart(int i) {
+        return edgeOffsets.get(i);
+    }
+
+    /**
+     * Gets the slot one past the last outgoing edge of the vertex at a dense index.
+     * @param i The dense index of the vertex.
+     * @return The exclusive end edge slot of the vertex.
+     */
+    @Override
+    public int edgeEnd(int i) {
+        return edgeOffsets.get(i + 1);
+    }
+
+    /**
+     * Gets the dense index of the vertex an edge points to.
+     * @param e The edge slot.
+     * @return The dense index of the edge's destination.
+     */
+    @Override
+    public int edgeTarget(int e) {
+        return edgeTargets.get(e);
+    }
+
+    /**
+     * Gets the weight of an edge.
+     * @param e The edge slot.
+     * @return The great-circle length of the edge, plus its tieBreak.
+     */
+    @Override
+    public double edgeWeight(int e) {
+        return edgeWeights.get(e);
+    }
+
+    /**
+     * Gets the name of the way an edge belongs to.
+     * @param e The edge slot.
+     * @return The way name, possibly empty.
+     */
+    public String edgeName(int e) {
+        return wayNames[edgeNameIds.get(e)];
     }
 
     protected List<Node> getNodes() {
-        List<Node> nodes = new ArrayList<>();
-        for(Map.Entry<Long, Node> nodeEntry: this.nodes.entrySet()){
-            nodes.add(nodeEntry.getValue());
+        List<Node> nodes = new ArrayList<>(vertexCount());
+        for (int i = 0; i < vertexCount(); i++) {
+            Node node = Node.of(ids.get(i), lats.get(i), lons.get(i));
+            node.setName(names[i]);
+            nodes.add(node);
         }
         return nodes;
     }
@@ -0,0 +1,201 @@
+package bearmaps.lab9;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A path-compressed trie: a chain of nodes with one child each and no key is
+ * merged into a single edge labelled with a char[], so there is a node only
+ * where keys end or branch. Each node keeps the first characters of its
+ * children's labels in a sorted char[] and finds a child by binary search,
+ * with no boxed characters or hash table per node.
+ */
+public class RadixTrieSet implements TrieSet61B {
+
+    private static final char[] EMPTY_LABEL = new char[0];
+    private static final char[] NO_FIRSTS = new char[0];
+    private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+
+    // Root of the trie, reached by the empty label
+    private TrieNode root;
+
+    private static class TrieNode {
+        /** Characters on the edge into this node. */
+        private char[] label;
+        private boolean isKey;
+        /** firsts[i] is the first character of children[i].label; increasing. */
+        private char[] firsts = NO_FIRSTS;
+        private TrieNode[] children = NO_CHILDREN;
+
+        private TrieNode(char[] label) {
+            this.label = label;
+        }
+
+        /** Returns the index of the child whose label starts with C, or a negative number. */
+        private int find(char c) {
+            return Arrays.binarySearch(firsts, c);
+        }
+
+        private void insertChild(TrieNode child) {
+            int i = -find(child.label[0]) - 1;
+            int n = children.length;
+            char[] newFirsts = new char[n + 1];
+            TrieNode[] newChildren = new TrieNode[n + 1];
+            System.arraycopy(firsts, 0, newFirsts, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            newFirsts[i] = child.label[0];
+            newChildren[i] = child;
+            System.arraycopy(firsts, i, newFirsts, i + 1, n - i);
+            System.arraycopy(children, i, newChildren, i + 1, n - i);
+            firsts = newFirsts;
+            children = newChildren;
+        }
+    }
+
+    public RadixTrieSet() {
+        this.root = new TrieNode(EMPTY_LABEL);
+    }
+
+    @Override
+    public void clear() {
+        this.root = new TrieNode(EMPTY_LABEL);
+    }
+
+    @Override
+    public void add(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Input is null");
+        }
+        TrieNode node = this.root;
+        int pos = 0;
+        while (pos < key.length()) {
+            int i = node.find(key.charAt(pos));
+            if (i < 0) {
+                node.insertChild(new TrieNode(key.substring(pos).toCharArray()));
+                node = node.children[node.find(key.charAt(pos))];
+                pos = key.length();
+                break;
+            }
+            TrieNode child = node.children[i];
+            int matched = matchLength(child.label, key, pos);
+            if (matched < child.label.length) {
+                // Split the edge where the key leaves it
+                TrieNode middle = new TrieNode(Arrays.copyOf(child.label, matched));
+                child.label = Arrays.copyOfRange(child.label, matched, child.label.length);
+                middle.firsts = new char[]{child.label[0]};
+                middle.children = new TrieNode[]{child};
+                node.children[i] = middle;
+                child = middle;
+            }
+            node = child;
+            pos += matched;
+        }
+        node.isKey = true;
+    }
+
+    /** Returns how many characters of LABEL match KEY starting at POS. */
+    private static int matchLength(char[] label, String key, int pos) {
+        int n = Math.min(label.length, key.length() - pos);
+        int i = 0;
+        while (i < n && label[i] == key.charAt(pos + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Input is null");
+        }
+        TrieNode node = this.root;
+        int pos = 0;
+        while (pos < key.length()) {
+            int i = node.find(key.charAt(pos));
+            if (i < 0) {
+                return false;
+            }
+            node = node.children[i];
+            if (matchLength(node.label, key, pos) < node.label.length) {
+                return false;
+            }
+            pos += node.label.length;
+        }
+        return node.isKey;
+    }
+
+    @Override
+    public List<String> keysWithPrefix(String prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("Input is null");
+        }
+        List<String> result = new ArrayList<>();
+        TrieNode node = this.root;
+        StringBuilder sb = new StringBuilder(prefix);
+        int pos = 0;
+        while (pos < prefix.length()) {
+            int i = node.find(prefix.charAt(pos));
+            if (i < 0) {
+                return result;
+            }
+            node = node.children[i];
+            int matched = matchLength(node.label, prefix, pos);
+            if (pos + matched < prefix.length() && matched < node.label.length) {
+                return result;
+            }
+            // The prefix may end partway along this edge
+            sb.append(node.label, matched, node.label.length - matched);
+            pos += matched;
+        }
+        this.collect(node, sb, result);
+        return result;
+    }
+
+    /**
+     * Collect all keys at or below the node, in sorted order
+     * @param node current node
+     * @param sb the key of the node
+     * @param result result container
+     */
+    private void collect(TrieNode node, StringBuilder sb, List<String> result) {
+        if (node.isKey) {
+            result.add(sb.toString());
+        }
+        for (TrieNode child : node.children) {
+            int length = sb.length();
+            sb.append(child.label);
+            collect(child, sb, result);
+            sb.setLength(length);
+        }
+    }
+
+    /**
+     * Returns the longest key in the trie that is a prefix of KEY, or null if there
+     * is none.
+     */
+    @Override
+    public String longestPrefixOf(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Input is null");
+        }
+        TrieNode node = this.root;
+        int pos = 0;
+        int longest = node.isKey ? 0 : -1;
+        while (pos < key.length()) {
+            int i = node.find(key.charAt(pos));
+            if (i < 0) {
+                break;
+            }
+            node = node.children[i];
+            if (matchLength(node.label, key, pos) < node.label.length) {
+                break;
+            }
+            pos += node.label.length;
+            if (node.isKey) {
+                longest = pos;
+            }
+        }
+        return longest < 0 ? null : key.substring(0, longest);
+    }
+}
@@ -0,0 +1,83 @@
+package bearmaps.proj2ab;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the k int items of smallest priority offered to it, as a binary max
+ * heap on priority, so the largest kept priority is always at hand to bound a
+ * search. Items and priorities are kept in primitive arrays.
+ */
+public class BoundedMaxHeap {
+
+    // heap[0..size) holds items, with the largest priority at heap[0]
+    private final int[] items;
+    private final double[] priorities;
+    private int size;
+
+    public BoundedMaxHeap(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.items = new int[capacity];
+        this.priorities = new double[capacity];
+    }
+
+    /* Offers an item, which is kept if the heap is not full or if its priority is
+     * smaller than the largest kept, which it then replaces. */
+    public void offer(int item, double priority) {
+        if (this.size < this.items.length) {
+            int i = this.size++;
+            while (i > 0 && this.priorities[(i - 1) / 2] < priority) {
+                this.items[i] = this.items[(i - 1) / 2];
+                this.priorities[i] = this.priorities[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            this.items[i] = item;
+            this.priorities[i] = priority;
+        } else if (priority < this.priorities[0]) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= this.size) {
+                    break;
+                }
+                if (child + 1 < this.size && this.priorities[child + 1] > this.priorities[child]) {
+                    child++;
+                }
+                if (this.priorities[child] <= priority) {
+                    break;
+                }
+                this.items[i] = this.items[child];
+                this.priorities[i] = this.priorities[child];
+                i = child;
+            }
+            this.items[i] = item;
+            this.priorities[i] = priority;
+        }
+    }
+
+    /* Returns the priority an item must beat to be kept: the largest kept priority
+     * once the heap is full, and infinity before. */
+    public double bound() {
+        return this.size < this.items.length ? Double.POSITIVE_INFINITY : this.priorities[0];
+    }
+
+    /* Returns the number of items kept. */
+    public int size() {
+        return this.size;
+    }
+
+    /* Returns the items kept, smallest priority first. */
+    public int[] sortedItems() {
+        Integer[] byPriority = new Integer[this.size];
+        for (int i = 0; i < this.size; i++) {
+            byPriority[i] = i;
+        }
+        Arrays.sort(byPriority, (a, b) -> Double.compare(this.priorities[a], this.priorities[b]));
+        int[] sorted = new int[this.size];
+        for (int i = 0; i < this.size; i++) {
+            sorted[i] = this.items[byPriority[i]];
+        }
+        return sorted;
+    }
+}
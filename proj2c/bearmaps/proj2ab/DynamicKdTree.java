@@ -0,0 +1,156 @@
+package bearmaps.proj2ab;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A PointSet that points can be inserted into and removed from, kept as a forest
+ * of static KdTrees of doubling sizes: the tree at level i holds at most 2^i
+ * points. An insert builds a tree at the lowest empty level from the new point
+ * and the points of every level below, which it empties, so each point is
+ * rebuilt into a larger tree at most once per level and there are never more
+ * than log n trees. A remove only marks the point in its tree; a tree with more
+ * points removed than left is rebuilt from the points left. A search asks every
+ * tree and keeps the best answer. For nearest, each tree searches with the
+ * distance of the best answer so far as its bound, so past the largest tree
+ * most subtrees are pruned at once.
+ */
+public class DynamicKdTree implements PointSet {
+
+    /** levels[i] is the tree at level i, or null if the level is empty. */
+    private KdTree[] levels = new KdTree[1];
+    private int size;
+
+    public DynamicKdTree() {
+    }
+
+    /** Starts with POINTS, all in one tree. */
+    public DynamicKdTree(List<Point> points) {
+        if (points.isEmpty()) {
+            return;
+        }
+        int level = DynamicKdTree.levelFor(points.size());
+        this.levels = new KdTree[level + 1];
+        this.levels[level] = new KdTree(points);
+        this.size = points.size();
+    }
+
+    /** Returns the lowest level a tree of n points fits in. */
+    private static int levelFor(int n) {
+        return 32 - Integer.numberOfLeadingZeros(n - 1);
+    }
+
+    /** Adds a point at (x, y). A point may be added more than once. */
+    public void insert(double x, double y) {
+        List<Point> points = new ArrayList<>();
+        points.add(new Point(x, y));
+        int level = 0;
+        while (level < this.levels.length && this.levels[level] != null) {
+            this.levels[level].collect(points);
+            this.levels[level] = null;
+            level++;
+        }
+        if (level == this.levels.length) {
+            KdTree[] larger = new KdTree[level + 1];
+            System.arraycopy(this.levels, 0, larger, 0, level);
+            this.levels = larger;
+        }
+        this.levels[level] = new KdTree(points);
+        this.size++;
+    }
+
+    /** Removes one point at (x, y), returning false if there is none. */
+    public boolean remove(double x, double y) {
+        for (int level = 0; level < this.levels.length; level++) {
+            KdTree tree = this.levels[level];
+            if (tree == null || !tree.remove(x, y)) {
+                continue;
+            }
+            this.size--;
+            if (tree.size() == 0) {
+                this.levels[level] = null;
+            } else if (tree.numRemoved() > tree.size()) {
+                List<Point> points = new ArrayList<>(tree.size());
+                tree.collect(points);
+                this.levels[level] = new KdTree(points);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /** Returns the number of points. */
+    public int size() {
+        return this.size;
+    }
+
+    /** Returns the number of static trees the points are in. */
+    public int numTrees() {
+        int n = 0;
+        for (KdTree tree : this.levels) {
+            if (tree != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /** Returns the nearest point, or null if there are none. */
+    @Override
+    public Point nearest(double x, double y) {
+        KdTree.Goal goal = new KdTree.Goal(x, y);
+        KdTree bestTree = null;
+        int best = -1;
+        double bound = Double.POSITIVE_INFINITY;
+        // Largest first, so the smaller trees search with a near bound from the start
+        for (int level = this.levels.length - 1; level >= 0; level--) {
+            KdTree tree = this.levels[level];
+            if (tree == null) {
+                continue;
+            }
+            int i = tree.nearestWithin(goal, bound);
+            if (i >= 0) {
+                bestTree = tree;
+                best = i;
+                bound = tree.chord2(goal, i);
+            }
+        }
+        return bestTree == null ? null : bestTree.pointAt(best);
+    }
+
+    @Override
+    public List<Point> kNearest(double x, double y, int k) {
+        List<Point> result = new ArrayList<>();
+        for (KdTree tree : this.levels) {
+            if (tree != null) {
+                result.addAll(tree.kNearest(x, y, k));
+            }
+        }
+        Point goal = new Point(x, y);
+        result.sort(Comparator.comparingDouble(p -> Point.distance(goal, p)));
+        return new ArrayList<>(result.subList(0, Math.min(Math.max(k, 0), result.size())));
+    }
+
+    @Override
+    public List<Point> withinRadius(double x, double y, double r) {
+        List<Point> result = new ArrayList<>();
+        for (KdTree tree : this.levels) {
+            if (tree != null) {
+                result.addAll(tree.withinRadius(x, y, r));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Point> inBox(double ulx, double uly, double lrx, double lry) {
+        List<Point> result = new ArrayList<>();
+        for (KdTree tree : this.levels) {
+            if (tree != null) {
+                result.addAll(tree.inBox(ulx, uly, lrx, lry));
+            }
+        }
+        return result;
+    }
+}
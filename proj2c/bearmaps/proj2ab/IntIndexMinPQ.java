@@ -0,0 +1,141 @@
+package bearmaps.proj2ab;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Extrinsic min priority queue over the int items [0, capacity), stored as
+ * a binary heap of item indices. Priorities and heap positions are kept in
+ * primitive arrays indexed by item, so no operation boxes or allocates.
+ */
+public class IntIndexMinPQ {
+
+    // heap[1..size] holds items, heap[0] is unused so parent/child index can be easily calculated
+    private int[] heap;
+    // position of each item in the heap, or -1 if the item is not in the PQ
+    private int[] pos;
+    private double[] priorities;
+    private int size;
+
+    public IntIndexMinPQ(int capacity) {
+        this.heap = new int[capacity + 1];
+        this.pos = new int[capacity];
+        this.priorities = new double[capacity];
+        Arrays.fill(this.pos, -1);
+        this.size = 0;
+    }
+
+    /* Inserts an item with the given priority value. */
+    public void add(int item, double priority) {
+        if (this.contains(item)) {
+            throw new IllegalArgumentException("item already in PQ");
+        }
+        this.size++;
+        this.heap[this.size] = item;
+        this.pos[item] = this.size;
+        this.priorities[item] = priority;
+        this.floatUp(this.size);
+    }
+
+    /* Returns true if the PQ contains the given item. */
+    public boolean contains(int item) {
+        return this.pos[item] >= 0;
+    }
+
+    /* Returns the minimum item. */
+    public int getSmallest() {
+        if (this.size == 0) {
+            throw new NoSuchElementException("PQ is empty");
+        }
+        return this.heap[1];
+    }
+
+    /* Returns the priority the given item was added or changed with. */
+    public double priority(int item) {
+        return this.priorities[item];
+    }
+
+    /* Removes and returns the minimum item. */
+    public int removeSmallest() {
+        int smallest = this.getSmallest();
+        this.swap(1, this.size);
+        this.size--;
+        this.pos[smallest] = -1;
+        this.sinkDown(1);
+        return smallest;
+    }
+
+    /* Changes the priority of the given item. */
+    public void changePriority(int item, double priority) {
+        if (!this.contains(item)) {
+            throw new NoSuchElementException("No such element in the PQ");
+        }
+        double prevP = this.priorities[item];
+        this.priorities[item] = priority;
+        if (priority < prevP) {
+            this.floatUp(this.pos[item]);
+        } else if (priority > prevP) {
+            this.sinkDown(this.pos[item]);
+        }
+    }
+
+    /* Returns the number of items in the PQ. */
+    public int size() {
+        return this.size;
+    }
+
+    /* Removes every item, in time proportional to the number of items left in the PQ. */
+    public void clear() {
+        for (int i = 1; i <= this.size; i++) {
+            this.pos[this.heap[i]] = -1;
+        }
+        this.size = 0;
+    }
+
+    /**
+     * Float the item at heap index idx up until its parent is not larger
+     * @param idx current index
+     */
+    private void floatUp(int idx) {
+        while (idx > 1 && this.less(idx, idx / 2)) {
+            this.swap(idx, idx / 2);
+            idx = idx / 2;
+        }
+    }
+
+    /**
+     * Sink the item at heap index idx down until neither child is smaller
+     * @param idx current index
+     */
+    private void sinkDown(int idx) {
+        while (2 * idx <= this.size) {
+            int child = 2 * idx;
+            if (child < this.size && this.less(child + 1, child)) {
+                child++;
+            }
+            if (!this.less(child, idx)) {
+                break;
+            }
+            this.swap(idx, child);
+            idx = child;
+        }
+    }
+
+    private boolean less(int idx1, int idx2) {
+        return this.priorities[this.heap[idx1]] < this.priorities[this.heap[idx2]];
+    }
+
+    /**
+     * Swap two heap slots and update the position of both items
+     * @param idx1 heap index 1
+     * @param idx2 heap index 2
+     */
+    private void swap(int idx1, int idx2) {
+        int item1 = this.heap[idx1];
+        int item2 = this.heap[idx2];
+        this.heap[idx1] = item2;
+        this.heap[idx2] = item1;
+        this.pos[item2] = idx1;
+        this.pos[item1] = idx2;
+    }
+}
@@ -1,115 +1,658 @@
 package bearmaps.proj2ab;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * A static 2-d tree of longitude/latitude points, built all at once so it is
+ * balanced however the points are ordered. The coordinates are held in flat
+ * arrays in tree order: the subtree of subrange [lo, hi) has its splitting point
+ * at the median, (lo + hi) / 2, with its left subtree in [lo, mid) and its right
+ * subtree in (mid, hi), so there are no node objects. Levels split on x and y
+ * in turn.
+ *
+ * Searches do not call Point.distance as they go. Each point is also held as a
+ * unit vector, and points are compared by the squared straight-line distance
+ * between the vectors, the chord, which takes a few multiplications and orders
+ * points just as the great-circle distance does. Subtrees are pruned by lower
+ * bounds on the same squared chord, so the search measures everything in one
+ * metric, and only withinRadius checks its final candidates with Point.distance.
+ *
+ * Each point also keeps its index in the list the tree was built from, so a
+ * caller can find what a point stands for without looking the point up.
+ *
+ * Within the package, points can be removed, which only marks them so searches
+ * pass over them; DynamicKdTree rebuilds a tree once enough are marked.
+ */
 public class KdTree implements PointSet {
 
-    private KdTreeNode root;
-    private static final int orientationIdx = 0;
+    /** Earth radius in miles, as used by Point.distance. */
+    private static final double EARTH_RADIUS = 3963;
+    /** Relative slack for rounding when converting a radius to a squared chord. */
+    private static final double ROUNDING = 1e-6;
+    /** Queries a batch task answers itself rather than splitting. */
+    private static final int BATCH_GRAIN = 1024;
+    /** Batch goals are put on a grid of 2^15 by 2^15 cells, so a Z-order key is 30 bits. */
+    private static final int CELL_MASK = 0x7fff;
+
+    /** Longitude and latitude of each point, in tree order. */
+    private final double[] xs;
+    private final double[] ys;
+    /** Unit vector of each point, in tree order, with z towards the north pole. */
+    private final double[] unitXs;
+    private final double[] unitYs;
+    private final double[] unitZs;
+    /** Index in the input list of each point, in tree order. */
+    private final int[] indices;
+    /** Whether each point, in tree order, is removed, or null if none is. */
+    private boolean[] removed;
+    private int numRemoved;
 
     public KdTree(List<Point> points) {
         if (points == null || points.size() < 1) {
             throw new IllegalArgumentException("input points is invalid");
         }
+        int n = points.size();
+        this.xs = new double[n];
+        this.ys = new double[n];
+        this.indices = new int[n];
+        for (int i = 0; i < n; i++) {
+            this.xs[i] = points.get(i).getX();
+            this.ys[i] = points.get(i).getY();
+            this.indices[i] = i;
+        }
+        this.build(0, n, 0);
+        this.unitXs = new double[n];
+        this.unitYs = new double[n];
+        this.unitZs = new double[n];
+        for (int i = 0; i < n; i++) {
+            double lon = Math.toRadians(this.xs[i]);
+            double lat = Math.toRadians(this.ys[i]);
+            this.unitXs[i] = Math.cos(lat) * Math.cos(lon);
+            this.unitYs[i] = Math.cos(lat) * Math.sin(lon);
+            this.unitZs[i] = Math.sin(lat);
+        }
+    }
 
-        for (Point point : points) {
-            this.root = this.insert(point, this.root, KdTree.orientationIdx);
+    private KdTree(double[] xs, double[] ys, double[] unitXs, double[] unitYs, double[] unitZs, int[] indices) {
+        this.xs = xs;
+        this.ys = ys;
+        this.unitXs = unitXs;
+        this.unitYs = unitYs;
+        this.unitZs = unitZs;
+        this.indices = indices;
+    }
+
+    /** Returns the number of bytes writeTo puts. */
+    public int serializedBytes() {
+        return 4 + 44 * this.xs.length;
+    }
+
+    /**
+     * Puts the tree in BUF as it is laid out, so readFrom loads it without building
+     * it again: the number of points, then each array in tree order, in BUF's byte
+     * order. Removed points are not recorded.
+     */
+    public void writeTo(ByteBuffer buf) {
+        if (this.numRemoved > 0) {
+            throw new IllegalStateException("cannot write a tree with points removed");
+        }
+        buf.putInt(this.xs.length);
+        for (double[] column : new double[][]{this.xs, this.ys, this.unitXs, this.unitYs, this.unitZs}) {
+            buf.asDoubleBuffer().put(column);
+            buf.position(buf.position() + 8 * column.length);
         }
+        buf.asIntBuffer().put(this.indices);
+        buf.position(buf.position() + 4 * this.indices.length);
     }
 
     /**
-     * insert point into kd tree
-     * @param point point to insert
-     * @param current current position in the KD tree
-     * @param idx index used to retrieve comparator
-     * @return new root after insertion
+     * Reads a tree that writeTo put in BUF, leaving BUF just past it. The arrays are
+     * copied out of BUF, as searches read them on every step.
      */
-    private KdTreeNode insert(Point point, KdTreeNode current, int idx) {
-        if (current == null) {
-            return new KdTreeNode(new Point(point.getX(), point.getY()));
+    public static KdTree readFrom(ByteBuffer buf) {
+        int n = buf.getInt();
+        double[][] columns = new double[5][n];
+        for (double[] column : columns) {
+            buf.asDoubleBuffer().get(column);
+            buf.position(buf.position() + 8 * n);
         }
+        int[] indices = new int[n];
+        buf.asIntBuffer().get(indices);
+        buf.position(buf.position() + 4 * n);
+        return new KdTree(columns[0], columns[1], columns[2], columns[3], columns[4], indices);
+    }
 
-        // change 0 to 1 and vice versa, also can do i = 1 - i;
-        if (KdTree.comparePoints(current.point, point, idx) > 0) {
-            idx ^= 1;
-            current.left = this.insert(point, current.left, idx);
-        } else if (KdTree.comparePoints(current.point, point, idx) < 0) {
+    /**
+     * Arrange [lo, hi) as a subtree
+     * @param lo first index of the subtree
+     * @param hi index past the end of the subtree
+     * @param idx 0 to split on x first, 1 for y
+     */
+    private void build(int lo, int hi, int idx) {
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            this.select(lo, hi, mid, idx);
+            this.build(lo, mid, idx ^ 1);
+            // Loop on the right half, so the recursion is only as deep as the tree
+            lo = mid + 1;
             idx ^= 1;
-            current.right = this.insert(point, current.right, idx);
         }
-        return current;
     }
 
     /**
-     * Compare dimension based on orientation
-     * @param p1 point 1
-     * @param p2 point 2
-     * @param idx orientation index
-     * @return negative value if p1 < p2, positive if p1 > p2, 0 otherwise
+     * Rearrange [lo, hi) so the point at k is the one that would be there if the
+     * range were sorted on one coordinate, with none greater before it and none
+     * smaller after it
+     * @param idx 0 to select on x, 1 for y
      */
-    private static int comparePoints(Point p1, Point p2, int idx) {
-        double p1Pos = p1.getX();
-        double p2Pos = p2.getX();
-        if (idx == 1) {
-            p1Pos = p1.getY();
-            p2Pos = p2.getY();
+    private void select(int lo, int hi, int k, int idx) {
+        double[] keys = idx == 0 ? this.xs : this.ys;
+        hi--;
+        while (hi > lo) {
+            double pivot = keys[lo + (hi - lo) / 2];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    this.swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        double x = this.xs[i];
+        this.xs[i] = this.xs[j];
+        this.xs[j] = x;
+        double y = this.ys[i];
+        this.ys[i] = this.ys[j];
+        this.ys[j] = y;
+        int index = this.indices[i];
+        this.indices[i] = this.indices[j];
+        this.indices[j] = index;
+    }
+
+    /** A point searched from, with the values the search needs at hand. */
+    static class Goal {
+        private final double x;
+        private final double y;
+        private final double unitX;
+        private final double unitY;
+        private final double unitZ;
+        private final double cosLat;
+
+        Goal(double x, double y) {
+            this.x = x;
+            this.y = y;
+            double lon = Math.toRadians(x);
+            double lat = Math.toRadians(y);
+            this.cosLat = Math.cos(lat);
+            this.unitX = this.cosLat * Math.cos(lon);
+            this.unitY = this.cosLat * Math.sin(lon);
+            this.unitZ = Math.sin(lat);
         }
-        return Double.compare(p1Pos, p2Pos);
     }
 
     @Override
     public Point nearest(double x, double y) {
-        KdTreeNode best = this.root;
-        best = this.nearestInKDTree(this.root, new Point(x, y), best, KdTree.orientationIdx);
-        return best.point;
+        int i = this.nearestInTree(x, y);
+        return new Point(this.xs[i], this.ys[i]);
+    }
+
+    /**
+     * Returns the index of the nearest point in the list the tree was built from
+     * @param x x of the goal
+     * @param y y of the goal
+     */
+    public int nearestIndex(double x, double y) {
+        return this.indices[this.nearestInTree(x, y)];
+    }
+
+    /** Returns the position in tree order of the point nearest (x, y). */
+    private int nearestInTree(double x, double y) {
+        return this.nearestWithin(new Goal(x, y), Double.POSITIVE_INFINITY);
     }
 
     /**
-     * Get the nearest node from kdTree
-     * @param current current kd tree node to examine
+     * Returns the position in tree order of the point nearest the goal, if its
+     * squared chord is less than bound, or -1. Searching several trees, the bound
+     * from one lets the next prune from its root.
+     */
+    int nearestWithin(Goal goal, double bound) {
+        Nearest best = new Nearest();
+        best.chord2 = bound;
+        this.nearest(0, this.xs.length, 0, goal, best);
+        return best.index;
+    }
+
+    /** Returns the point at i in tree order. */
+    Point pointAt(int i) {
+        return new Point(this.xs[i], this.ys[i]);
+    }
+
+    /**
+     * Finds the nearest points of many goals on the common fork-join pool.
+     * @see #nearestIndices(double[], double[], ForkJoinPool)
+     */
+    public int[] nearestIndices(double[] x, double[] y) {
+        return this.nearestIndices(x, y, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Returns nearestIndex of each goal. The goals are put in Z-order, interleaving
+     * the bits of their coordinates, so goals answered one after another are near
+     * each other and walk mostly the same nodes, and runs of them are answered in
+     * parallel.
+     * @param x x[i] is x of goal i
+     * @param y y[i] is y of goal i
+     * @param pool the pool the searches run on
+     * @return result[i], the index of the point nearest goal i in the list the tree
+     * was built from
+     */
+    public int[] nearestIndices(double[] x, double[] y, ForkJoinPool pool) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("x and y differ in length");
+        }
+        int[] order = KdTree.zOrder(x, y);
+        int[] result = new int[x.length];
+        pool.invoke(new BatchTask(x, y, order, result, 0, order.length));
+        return result;
+    }
+
+    /** Returns the goals sorted by the Z-order of their coordinates within their bounding box. */
+    private static int[] zOrder(double[] x, double[] y) {
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < x.length; i++) {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        double scaleX = maxX > minX ? CELL_MASK / (maxX - minX) : 0;
+        double scaleY = maxY > minY ? CELL_MASK / (maxY - minY) : 0;
+        // Curve position above goal index, so sorting the keys sorts the goals
+        long[] keys = new long[x.length];
+        for (int i = 0; i < x.length; i++) {
+            long cell = KdTree.spread((int) ((x[i] - minX) * scaleX))
+                    | KdTree.spread((int) ((y[i] - minY) * scaleY)) << 1;
+            keys[i] = cell << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[x.length];
+        for (int i = 0; i < x.length; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /** Returns the low 15 bits of v spread out to the even bits of the result. */
+    private static long spread(int v) {
+        long bits = v & CELL_MASK;
+        bits = (bits | bits << 8) & 0x00ff00ffL;
+        bits = (bits | bits << 4) & 0x0f0f0f0fL;
+        bits = (bits | bits << 2) & 0x33333333L;
+        bits = (bits | bits << 1) & 0x55555555L;
+        return bits;
+    }
+
+    /** Answers the goals order[lo, hi), splitting them in halves while there are many. */
+    private class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] x;
+        private final double[] y;
+        private final int[] order;
+        private final int[] result;
+        private final int lo;
+        private final int hi;
+
+        private BatchTask(double[] x, double[] y, int[] order, int[] result, int lo, int hi) {
+            this.x = x;
+            this.y = y;
+            this.order = order;
+            this.result = result;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.hi - this.lo <= BATCH_GRAIN) {
+                for (int i = this.lo; i < this.hi; i++) {
+                    int goal = this.order[i];
+                    this.result[goal] = KdTree.this.nearestIndex(this.x[goal], this.y[goal]);
+                }
+                return;
+            }
+            int mid = (this.lo + this.hi) >>> 1;
+            invokeAll(new BatchTask(this.x, this.y, this.order, this.result, this.lo, mid),
+                    new BatchTask(this.x, this.y, this.order, this.result, mid, this.hi));
+        }
+    }
+
+    /** The nearest point found so far. */
+    private static class Nearest {
+        private int index = -1;
+        private double chord2 = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Search the subtree of [lo, hi) for a point nearer the goal than the best so far
+     * @param idx 0 if the subtree splits on x, 1 for y
      * @param goal goal point
-     * @param best current best distance node so far
-     * @param idx comparator index
-     * @return nearest point from the kd tree
+     * @param best the nearest point found so far, updated in place
+     */
+    private void nearest(int lo, int hi, int idx, Goal goal, Nearest best) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double chord2 = this.chord2(goal, mid);
+        if (chord2 < best.chord2 && !this.isRemoved(mid)) {
+            best.chord2 = chord2;
+            best.index = mid;
+        }
+
+        boolean goodIsLeft = this.goodIsLeft(goal, mid, idx);
+        if (goodIsLeft) {
+            this.nearest(lo, mid, idx ^ 1, goal, best);
+        } else {
+            this.nearest(mid + 1, hi, idx ^ 1, goal, best);
+        }
+        if (this.chord2ToSplit(goal, mid, idx) < best.chord2) {
+            if (goodIsLeft) {
+                this.nearest(mid + 1, hi, idx ^ 1, goal, best);
+            } else {
+                this.nearest(lo, mid, idx ^ 1, goal, best);
+            }
+        }
+    }
+
+    @Override
+    public List<Point> kNearest(double x, double y, int k) {
+        List<Point> result = new ArrayList<>();
+        for (int i : this.kNearestInTree(x, y, k)) {
+            result.add(new Point(this.xs[i], this.ys[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the indices in the list the tree was built from of the k points
+     * nearest (x, y), nearest first
      */
-    private KdTreeNode nearestInKDTree(KdTreeNode current, Point goal, KdTreeNode best, int idx) {
-        if (current == null) {
-            return best;
+    public int[] kNearestIndices(double x, double y, int k) {
+        return this.toIndices(this.kNearestInTree(x, y, k));
+    }
+
+    /** Returns the positions in tree order of the k points nearest (x, y), nearest first. */
+    private int[] kNearestInTree(double x, double y, int k) {
+        if (k < 1) {
+            return new int[0];
         }
+        BoundedMaxHeap nearest = new BoundedMaxHeap(k);
+        this.kNearest(0, this.xs.length, 0, new Goal(x, y), nearest);
+        return nearest.sortedItems();
+    }
 
-        if (Point.distance(current.point, goal) < Point.distance(best.point, goal)) {
-            best = current;
+    /** Replaces positions in tree order by indices in the input list. */
+    private int[] toIndices(int[] positions) {
+        for (int j = 0; j < positions.length; j++) {
+            positions[j] = this.indices[positions[j]];
         }
+        return positions;
+    }
 
-        KdTreeNode goodSide = current.right;
-        KdTreeNode badSide = current.left;
-        if (KdTree.comparePoints(goal, current.point, idx) < 0) {
-            goodSide = current.left;
-            badSide = current.right;
+    /**
+     * Offer the points of the subtree of [lo, hi) that could be among the k nearest
+     * @param idx 0 if the subtree splits on x, 1 for y
+     * @param goal goal point
+     * @param nearest the k nearest points found so far, by squared chord
+     */
+    private void kNearest(int lo, int hi, int idx, Goal goal, BoundedMaxHeap nearest) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (!this.isRemoved(mid)) {
+            nearest.offer(mid, this.chord2(goal, mid));
         }
-        int newIdx = idx ^ 1;
-        best = this.nearestInKDTree(goodSide, goal, best, newIdx);
 
-        double bestPossibleDis = 0;
-        if (idx == 0) {
-            bestPossibleDis = Math.pow(goal.getX() - current.point.getX(), 2);
+        boolean goodIsLeft = this.goodIsLeft(goal, mid, idx);
+        if (goodIsLeft) {
+            this.kNearest(lo, mid, idx ^ 1, goal, nearest);
         } else {
-            bestPossibleDis = Math.pow(goal.getY() - current.point.getY(), 2);
+            this.kNearest(mid + 1, hi, idx ^ 1, goal, nearest);
+        }
+        if (this.chord2ToSplit(goal, mid, idx) < nearest.bound()) {
+            if (goodIsLeft) {
+                this.kNearest(mid + 1, hi, idx ^ 1, goal, nearest);
+            } else {
+                this.kNearest(lo, mid, idx ^ 1, goal, nearest);
+            }
+        }
+    }
+
+    @Override
+    public List<Point> withinRadius(double x, double y, double r) {
+        List<Point> result = new ArrayList<>();
+        for (int i : this.withinRadiusInTree(x, y, r)) {
+            result.add(new Point(this.xs[i], this.ys[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the indices in the list the tree was built from of the points within
+     * r miles of (x, y), in no particular order
+     */
+    public int[] withinRadiusIndices(double x, double y, double r) {
+        return this.toIndices(this.withinRadiusInTree(x, y, r));
+    }
+
+    /** Returns the positions in tree order of the points within r miles of (x, y). */
+    private int[] withinRadiusInTree(double x, double y, double r) {
+        Positions result = new Positions();
+        if (r >= 0) {
+            // The squared chord of an arc of r miles, a little over so rounding loses no point
+            double angle = Math.min(r / EARTH_RADIUS, Math.PI);
+            double limit = 4 * Math.pow(Math.sin(angle / 2), 2) * (1 + ROUNDING);
+            this.withinRadius(0, this.xs.length, 0, new Goal(x, y), r, limit, result);
+        }
+        return Arrays.copyOf(result.items, result.size);
+    }
+
+    /** A growing list of positions in tree order. */
+    private static class Positions {
+        private int[] items = new int[16];
+        private int size;
+
+        private void add(int i) {
+            if (this.size == this.items.length) {
+                this.items = Arrays.copyOf(this.items, 2 * this.size);
+            }
+            this.items[this.size++] = i;
+        }
+    }
+
+    /**
+     * Collect the points of the subtree of [lo, hi) within r miles of the goal
+     * @param idx 0 if the subtree splits on x, 1 for y
+     * @param limit squared chord past which no point is within r miles
+     * @param result result container
+     */
+    private void withinRadius(int lo, int hi, int idx, Goal goal, double r, double limit,
+                              Positions result) {
+        if (lo >= hi) {
+            return;
         }
-        if (bestPossibleDis < Point.distance(best.point, goal)) {
-            best = this.nearestInKDTree(badSide, goal, best, newIdx);
+        int mid = (lo + hi) >>> 1;
+        if (this.chord2(goal, mid) <= limit && !this.isRemoved(mid)
+                && Point.distance(new Point(goal.x, goal.y), new Point(this.xs[mid], this.ys[mid])) <= r) {
+            result.add(mid);
         }
 
-        return best;
+        boolean goodIsLeft = this.goodIsLeft(goal, mid, idx);
+        boolean crossSplit = this.chord2ToSplit(goal, mid, idx) <= limit;
+        if (goodIsLeft || crossSplit) {
+            this.withinRadius(lo, mid, idx ^ 1, goal, r, limit, result);
+        }
+        if (!goodIsLeft || crossSplit) {
+            this.withinRadius(mid + 1, hi, idx ^ 1, goal, r, limit, result);
+        }
     }
 
-    private class KdTreeNode {
-        private KdTreeNode left;
-        private KdTreeNode right;
-        private Point point;
+    @Override
+    public List<Point> inBox(double ulx, double uly, double lrx, double lry) {
+        List<Point> result = new ArrayList<>();
+        this.inBox(0, this.xs.length, 0, ulx, uly, lrx, lry, result);
+        return result;
+    }
 
-        private KdTreeNode(Point p) {
-            this.point = p;
+    /**
+     * Collect the points of the subtree of [lo, hi) in the box
+     * @param idx 0 if the subtree splits on x, 1 for y
+     * @param result result container
+     */
+    private void inBox(int lo, int hi, int idx, double ulx, double uly, double lrx, double lry,
+                       List<Point> result) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double x = this.xs[mid];
+        double y = this.ys[mid];
+        if (x >= ulx && x <= lrx && y >= lry && y <= uly && !this.isRemoved(mid)) {
+            result.add(new Point(x, y));
+        }
+        // Points equal to the split may be on either side
+        double split = idx == 0 ? x : y;
+        if ((idx == 0 ? ulx : lry) <= split) {
+            this.inBox(lo, mid, idx ^ 1, ulx, uly, lrx, lry, result);
+        }
+        if ((idx == 0 ? lrx : uly) >= split) {
+            this.inBox(mid + 1, hi, idx ^ 1, ulx, uly, lrx, lry, result);
+        }
+    }
+
+    /**
+     * Mark one point at (x, y) removed, so searches pass over it
+     * @return false if there is no such point left
+     */
+    boolean remove(double x, double y) {
+        int i = this.find(0, this.xs.length, 0, x, y);
+        if (i < 0) {
+            return false;
+        }
+        if (this.removed == null) {
+            this.removed = new boolean[this.xs.length];
+        }
+        this.removed[i] = true;
+        this.numRemoved++;
+        return true;
+    }
+
+    /** Returns the position in tree order of a point at (x, y) not removed, or -1. */
+    private int find(int lo, int hi, int idx, double x, double y) {
+        if (lo >= hi) {
+            return -1;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (this.xs[mid] == x && this.ys[mid] == y && !this.isRemoved(mid)) {
+            return mid;
+        }
+        double split = idx == 0 ? this.xs[mid] : this.ys[mid];
+        double pos = idx == 0 ? x : y;
+        // Points equal to the split may be on either side
+        int found = pos <= split ? this.find(lo, mid, idx ^ 1, x, y) : -1;
+        if (found < 0 && pos >= split) {
+            found = this.find(mid + 1, hi, idx ^ 1, x, y);
+        }
+        return found;
+    }
+
+    private boolean isRemoved(int i) {
+        return this.removed != null && this.removed[i];
+    }
+
+    /** Returns the number of points not removed. */
+    int size() {
+        return this.xs.length - this.numRemoved;
+    }
+
+    /** Returns the number of points removed. */
+    int numRemoved() {
+        return this.numRemoved;
+    }
+
+    /** Add the points not removed to result. */
+    void collect(List<Point> result) {
+        for (int i = 0; i < this.xs.length; i++) {
+            if (!this.isRemoved(i)) {
+                result.add(new Point(this.xs[i], this.ys[i]));
+            }
+        }
+    }
+
+    /** Returns whether the goal is left of the split of the point at i. */
+    private boolean goodIsLeft(Goal goal, int i, int idx) {
+        return idx == 0 ? goal.x < this.xs[i] : goal.y < this.ys[i];
+    }
+
+    /** Returns the squared chord between the goal and the point at i. */
+    double chord2(Goal goal, int i) {
+        double dx = goal.unitX - this.unitXs[i];
+        double dy = goal.unitY - this.unitYs[i];
+        double dz = goal.unitZ - this.unitZs[i];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Returns a squared chord that no point on the far side of the split of the
+     * point at i, its meridian (idx 0) or parallel (idx 1), is nearer the goal than
+     */
+    private double chord2ToSplit(Goal goal, int i, int idx) {
+        double x = this.unitXs[i];
+        double y = this.unitYs[i];
+        double cosLat = Math.sqrt(x * x + y * y);
+        if (idx == 1) {
+            // The squared chord of the difference in latitude, written as
+            // (cos a - cos b)^2 + (sin a - sin b)^2 = 2 - 2cos(a - b) so nothing cancels
+            double dCos = goal.cosLat - cosLat;
+            double dSin = goal.unitZ - this.unitZs[i];
+            return dCos * dCos + dSin * dSin;
+        }
+        // The far side runs from the split to the antimeridian, and points across the
+        // antimeridian may be near the goal however far the split is, so a path to the
+        // far side crosses either the meridian of the split or the antimeridian. The
+        // squared distance to the plane of a meridian is at most the squared chord to
+        // it, and the antimeridian lies in the plane y = 0.
+        double antimeridian = goal.unitY * goal.unitY;
+        if (Math.abs(goal.x - this.xs[i]) >= 90 || cosLat == 0) {
+            return 0;
         }
+        double cross = (goal.unitY * x - goal.unitX * y) / cosLat;
+        return Math.min(cross * cross, antimeridian);
     }
 }
@@ -0,0 +1,68 @@
+package bearmaps.proj2ab;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+public class NaivePointSet implements PointSet {
+
+    private List<Point> pointSet;
+
+    public NaivePointSet(List<Point> points) {
+        this.pointSet = new ArrayList<>();
+        for (Point p : points) {
+            this.pointSet.add(new Point(p.getX(), p.getY()));
+        }
+
+    }
+
+    @Override
+    public Point nearest(double x, double y) {
+        if (this.pointSet == null || this.pointSet.size() == 0) {
+            return null;
+        }
+        Point currentPos = new Point(x, y);
+        Point nearestPoint = this.pointSet.get(0);
+        double minDis = Point.distance(currentPos, nearestPoint);
+
+        for (Point p : this.pointSet) {
+            double distant = Point.distance(currentPos, p);
+            if (distant < minDis) {
+                minDis = distant;
+                nearestPoint = p;
+            }
+        }
+        return nearestPoint;
+    }
+
+    @Override
+    public List<Point> kNearest(double x, double y, int k) {
+        Point currentPos = new Point(x, y);
+        List<Point> sorted = new ArrayList<>(this.pointSet);
+        sorted.sort(Comparator.comparingDouble(p -> Point.distance(currentPos, p)));
+        return new ArrayList<>(sorted.subList(0, Math.min(k, sorted.size())));
+    }
+
+    @Override
+    public List<Point> withinRadius(double x, double y, double r) {
+        Point currentPos = new Point(x, y);
+        List<Point> result = new ArrayList<>();
+        for (Point p : this.pointSet) {
+            if (Point.distance(currentPos, p) <= r) {
+                result.add(p);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Point> inBox(double ulx, double uly, double lrx, double lry) {
+        List<Point> result = new ArrayList<>();
+        for (Point p : this.pointSet) {
+            if (p.getX() >= ulx && p.getX() <= lrx && p.getY() >= lry && p.getY() <= uly) {
+                result.add(p);
+            }
+        }
+        return result;
+    }
+}
@@ -1,5 +1,22 @@
 package bearmaps.proj2ab;
 
+import java.util.List;
+
 public interface PointSet {
     Point nearest(double x, double y);
+
+    /** Returns the K points nearest (X, Y) by Point.distance, nearest first, or all
+     * the points if there are fewer.
+     */
+    List<Point> kNearest(double x, double y, int k);
+
+    /** Returns the points within R miles of (X, Y) by Point.distance, in no
+     * particular order.
+     */
+    List<Point> withinRadius(double x, double y, double r);
+
+    /** Returns the points in the box from upper left (ULX, ULY) to lower right
+     * (LRX, LRY), edges included, in no particular order.
+     */
+    List<Point> inBox(double ulx, double uly, double lrx, double lry);
 }
@@ -13,6 +13,8 @@ public class WeirdPointSet implements PointSet {
     private static final int ILIlILIILLI = 2;
     private static final int ILILILILILI = 3;
 
+    /** Answers the queries other than nearest, by brute force. */
+    private final NaivePointSet points;
     private illiilli iillilil;
     private illiilli ilililil = iillilil;
 
@@ -33,6 +35,7 @@ public class WeirdPointSet implements PointSet {
     }
 
     public WeirdPointSet(List<Point> iliillili) {
+        this.points = new NaivePointSet(iliillili);
         Collections.shuffle(iliillili);
         for (Point p : iliillili) {
             iillilil = add(p, iillilil, ILILLLIILLI);
@@ -158,4 +161,19 @@ public class WeirdPointSet implements PointSet {
 
         return iillilli;
     }
+
+    @Override
+    public List<Point> kNearest(double x, double y, int k) {
+        return this.points.kNearest(x, y, k);
+    }
+
+    @Override
+    public List<Point> withinRadius(double x, double y, double r) {
+        return this.points.withinRadius(x, y, r);
+    }
+
+    @Override
+    public List<Point> inBox(double ulx, double uly, double lrx, double lry) {
+        return this.points.inBox(ulx, uly, lrx, lry);
+    }
 }
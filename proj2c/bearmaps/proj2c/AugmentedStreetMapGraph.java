@@ -1,12 +1,19 @@
 package bearmaps.proj2c;
 
+import bearmaps.hw4.ContractionHierarchy;
+import bearmaps.hw4.LandmarkGraph;
+import bearmaps.hw4.streetmap.GraphSnapshot;
 import bearmaps.hw4.streetmap.Node;
 import bearmaps.hw4.streetmap.StreetMapGraph;
-import bearmaps.lab9.MyTrieSet;
+import bearmaps.lab9.RadixTrieSet;
 import bearmaps.lab9.TrieSet61B;
 import bearmaps.proj2ab.KdTree;
 import bearmaps.proj2ab.Point;
+import bearmaps.proj2c.utils.Constants;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.*;
 
 /**
@@ -18,43 +25,159 @@ import java.util.*;
  */
 public class AugmentedStreetMapGraph extends StreetMapGraph {
 
-    private Map<Point, Node> pointToNodeMap;
     private TrieSet61B trie;
     private KdTree kdTree;
+    /** Ids of the nodes in kdTree, in the order of its points. */
+    private long[] kdTreeIds;
     private Map<String, List<Node>> locationNameIdx;
+    private Autocomplete autocomplete;
+    /** Words of the location names, by vertex index. */
+    private TokenIndex tokenIndex;
+    /** Named locations, by cleaned name and position. */
+    private PlaceIndex placeIndex;
+    /** Null until it is loaded or built; written under hierarchyLock. */
+    private volatile ContractionHierarchy contractionHierarchy;
+    /** Held while the hierarchy is built, which can take a minute on a large map. */
+    private final Object hierarchyLock = new Object();
+    private LandmarkGraph landmarkGraph;
+
+    /** Bump whenever what indexes() puts changes, so stored indexes of the old form are rebuilt. */
+    private static final int INDEX_VERSION = 2;
+
+    /** Landmarks used by Router.Strategy.ALT. */
+    private static final int NUM_LANDMARKS = 16;
+
+    /** Most names a prefix search returns. */
+    public static final int MAX_COMPLETIONS = 50;
+
+    /** Most edits allowed between a fuzzy search and the names it finds. */
+    private static final int MAX_EDITS = 2;
+
+    /** Most time spent on one fuzzy search. */
+    private static final long FUZZY_BUDGET_NANOS = 20_000_000;
 
     public AugmentedStreetMapGraph(String dbPath) {
-        super(dbPath);
-        this.pointToNodeMap = new HashMap<>();
-        this.trie = new MyTrieSet();
-        this.locationNameIdx = new HashMap<>();
+        this(dbPath, GraphSnapshot.pathFor(dbPath));
+    }
 
-        List<Node> nodes = this.getNodes();
-        List<Point> points = new ArrayList<>();
+    /**
+     * Reads the graph as StreetMapGraph does. If it comes from a snapshot that stored
+     * this class's indexes, the cleaned names, the k-d tree and, if it was built, the
+     * contraction hierarchy are loaded from it; otherwise the names and the tree are
+     * built, and the hierarchy is left for contractionHierarchy to build.
+     * @param dbPath path of the OSM XML file
+     * @param snapshotPath path of the snapshot, or null to always parse the XML
+     */
+    public AugmentedStreetMapGraph(String dbPath, String snapshotPath) {
+        super(dbPath, snapshotPath);
+        int n = this.vertexCount();
+        String[] cleanedNames = new String[n];
+        ByteBuffer stored = this.storedIndexes();
+        if (stored != null && stored.getInt() == INDEX_VERSION) {
+            int numNamed = stored.getInt();
+            for (int i = 0; i < numNamed; i++) {
+                int v = stored.getInt();
+                cleanedNames[v] = GraphSnapshot.getString(stored);
+            }
+            this.kdTree = KdTree.readFrom(stored);
+            if (stored.getInt() != 0) {
+                this.contractionHierarchy = ContractionHierarchy.readFrom(stored, this);
+            }
+        } else {
+            List<Point> points = new ArrayList<>();
+            for (int v = 0; v < n; v++) {
+                String name = this.name(this.idAt(v));
+                if (name != null && !name.isEmpty()) {
+                    cleanedNames[v] = AugmentedStreetMapGraph.cleanString(name);
+                }
+                if (this.edgeEnd(v) > this.edgeStart(v)) {
+                    points.add(new Point(this.lonAt(v), this.latAt(v)));
+                }
+            }
+            this.kdTree = new KdTree(points);
+        }
+        // The points of the tree are the road nodes, in vertex order
+        List<Long> pointIds = new ArrayList<>();
+        for (int v = 0; v < n; v++) {
+            if (this.edgeEnd(v) > this.edgeStart(v)) {
+                pointIds.add(this.idAt(v));
+            }
+        }
+        this.kdTreeIds = pointIds.stream().mapToLong(Long::longValue).toArray();
 
-        for (Node node : nodes) {
-            String name = node.name();
-            if (name != null && !name.isEmpty()) {
-                String cleanedName = AugmentedStreetMapGraph.cleanString(name);
+        this.trie = new RadixTrieSet();
+        this.locationNameIdx = new HashMap<>();
+        List<Node> nodes = this.getNodes();
+        String[][] nameTokens = new String[n][];
+        double[] lons = new double[n];
+        double[] lats = new double[n];
+        for (int v = 0; v < n; v++) {
+            String cleanedName = cleanedNames[v];
+            if (cleanedName != null) {
                 this.trie.add(cleanedName);
-                if (this.locationNameIdx.containsKey(cleanedName)) {
-                    this.locationNameIdx.get(cleanedName).add(node);
-                } else {
-                    List<Node> nodeList = new ArrayList<>();
-                    nodeList.add(node);
-                    this.locationNameIdx.put(cleanedName, nodeList);
-                }
+                this.locationNameIdx.computeIfAbsent(cleanedName, k -> new ArrayList<>()).add(nodes.get(v));
+                nameTokens[v] = AugmentedStreetMapGraph.cleanedWords(cleanedName).toArray(new String[0]);
             }
+            lons[v] = this.lonAt(v);
+            lats[v] = this.latAt(v);
+        }
 
-            double lon = node.lon();
-            double lat = node.lat();
-            Point newPoint = new Point(lon, lat);
-            this.pointToNodeMap.put(newPoint, node);
-            if (!this.neighbors(node.id()).isEmpty()) {
-                points.add(newPoint);
+        // Names shared by more places, like chains, rank first
+        Map<String, Integer> weights = new HashMap<>();
+        for (Map.Entry<String, List<Node>> entry : this.locationNameIdx.entrySet()) {
+            weights.put(entry.getKey(), entry.getValue().size());
+        }
+        this.autocomplete = new Autocomplete(weights, MAX_COMPLETIONS);
+        this.tokenIndex = new TokenIndex(nameTokens);
+        this.placeIndex = new PlaceIndex(cleanedNames, lons, lats);
+    }
+
+    /**
+     * Returns the cleaned names, the k-d tree and the contraction hierarchy, for
+     * GraphSnapshot to store: INDEX_VERSION, the number of named vertices, each named
+     * vertex and its cleaned name, the tree as KdTree.writeTo puts it, then 1 and the
+     * hierarchy as ContractionHierarchy.writeTo puts it, or 0 if it was not built.
+     */
+    @Override
+    protected ByteBuffer indexes() {
+        ContractionHierarchy ch = this.contractionHierarchy;
+        int size = 8 + this.kdTree.serializedBytes() + 4 + (ch == null ? 0 : ch.serializedBytes());
+        int numNamed = 0;
+        for (int v = 0; v < this.vertexCount(); v++) {
+            String name = this.name(this.idAt(v));
+            if (name != null && !name.isEmpty()) {
+                size += 4 + GraphSnapshot.stringBytes(AugmentedStreetMapGraph.cleanString(name));
+                numNamed++;
+            }
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(INDEX_VERSION).putInt(numNamed);
+        for (int v = 0; v < this.vertexCount(); v++) {
+            String name = this.name(this.idAt(v));
+            if (name != null && !name.isEmpty()) {
+                buf.putInt(v);
+                GraphSnapshot.putString(buf, AugmentedStreetMapGraph.cleanString(name));
             }
         }
-        this.kdTree = new KdTree(points);
+        this.kdTree.writeTo(buf);
+        buf.putInt(ch == null ? 0 : 1);
+        if (ch != null) {
+            ch.writeTo(buf);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Offline tool: builds the graph and its indexes, contraction hierarchy included,
+     * from the OSM file given as the first argument, or Constants.OSM_DB_PATH, and
+     * writes a snapshot of them at the default path, where the server looks for it.
+     */
+    public static void main(String[] args) throws IOException {
+        String osmPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(osmPath, null);
+        g.contractionHierarchy();
+        GraphSnapshot.write(g, osmPath, GraphSnapshot.pathFor(osmPath));
     }
 
 
@@ -66,9 +189,112 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
      * @return The id of the node in the graph closest to the target.
      */
     public long closest(double lon, double lat) {
-        Point nearestPoint = this.kdTree.nearest(lon, lat);
-        Node node = this.pointToNodeMap.get(nearestPoint);
-        return node.id();
+        return this.kdTreeIds[this.kdTree.nearestIndex(lon, lat)];
+    }
+
+    /**
+     * Returns the vertex closest to each of many longitudes and latitudes, such as
+     * the points of a GPS trace. The lookups run in parallel, see KdTree.nearestIndices.
+     * @param lons The target longitudes.
+     * @param lats The target latitudes, as many as lons.
+     * @return ids[i], the id of the node closest to (lons[i], lats[i]).
+     */
+    public long[] closestBatch(double[] lons, double[] lats) {
+        int[] indices = this.kdTree.nearestIndices(lons, lats);
+        long[] ids = new long[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            ids[i] = this.kdTreeIds[indices[i]];
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the vertices closest to the given longitude and latitude, closest first,
+     * for snapping to one of several alternatives.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @param k The most vertices to return.
+     * @return The ids of the nodes.
+     */
+    public List<Long> closest(double lon, double lat, int k) {
+        return this.nodeIds(this.kdTree.kNearestIndices(lon, lat, k));
+    }
+
+    /**
+     * Returns the vertices within the given distance of a longitude and latitude, in no
+     * particular order.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @param miles The greatest distance, in miles.
+     * @return The ids of the nodes.
+     */
+    public List<Long> closestWithin(double lon, double lat, double miles) {
+        return this.nodeIds(this.kdTree.withinRadiusIndices(lon, lat, miles));
+    }
+
+    private List<Long> nodeIds(int[] indices) {
+        List<Long> ids = new ArrayList<>(indices.length);
+        for (int i : indices) {
+            ids.add(this.kdTreeIds[i]);
+        }
+        return ids;
+    }
+
+
+    /**
+     * Returns the contraction hierarchy of this graph, as loaded from the snapshot or
+     * else built on the first call. A call made while another thread is building it
+     * waits for that build.
+     * @return The contraction hierarchy used by Router.Strategy.CONTRACTION_HIERARCHIES.
+     */
+    public ContractionHierarchy contractionHierarchy() {
+        ContractionHierarchy ch = this.contractionHierarchy;
+        if (ch == null) {
+            synchronized (this.hierarchyLock) {
+                ch = this.contractionHierarchy;
+                if (ch == null) {
+                    ch = new ContractionHierarchy(this);
+                    this.contractionHierarchy = ch;
+                }
+            }
+        }
+        return ch;
+    }
+
+    /**
+     * Returns the contraction hierarchy of this graph without waiting for it.
+     * @return The hierarchy, or null if it has not been loaded or built yet.
+     */
+    public ContractionHierarchy contractionHierarchyIfReady() {
+        return this.contractionHierarchy;
+    }
+
+    /**
+     * Builds the contraction hierarchy on a background thread, unless it was loaded
+     * from the snapshot, so that the caller is not held up by it. Until it is ready,
+     * contractionHierarchyIfReady returns null. The server calls this at startup,
+     * see MapServerInitializer.
+     */
+    public void buildContractionHierarchyInBackground() {
+        if (this.contractionHierarchy != null) {
+            return;
+        }
+        Thread builder = new Thread(this::contractionHierarchy, "contraction-hierarchy");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+
+    /**
+     * Returns this graph wrapped with a landmark heuristic, choosing the
+     * landmarks on the first call.
+     * @return The graph used by Router.Strategy.ALT.
+     */
+    public synchronized LandmarkGraph landmarkGraph() {
+        if (this.landmarkGraph == null) {
+            this.landmarkGraph = new LandmarkGraph(this, NUM_LANDMARKS);
+        }
+        return this.landmarkGraph;
     }
 
 
@@ -92,6 +318,46 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
         return locationNames;
     }
 
+    /**
+     * Collects the names of the best OSM locations that prefix-match the query string,
+     * in time proportional to the length of the prefix plus LIMIT. Names shared by more
+     * locations come first.
+     * @param prefix Prefix string to be searched for. Could be any case, with our without
+     *               punctuation.
+     * @param limit The most names to return, at most MAX_COMPLETIONS.
+     * @return A <code>List</code> of the full names of the best locations whose cleaned
+     * name matches the cleaned <code>prefix</code>, best first, one per cleaned name.
+     */
+    public List<String> getLocationsByPrefix(String prefix, int limit) {
+        List<String> locationNames = new ArrayList<>();
+        for (String s : this.autocomplete.complete(AugmentedStreetMapGraph.cleanString(prefix), limit)) {
+            // Searching the full name finds the locations under its other spellings too
+            locationNames.add(this.locationNameIdx.get(s).get(0).name());
+        }
+        return locationNames;
+    }
+
+    /**
+     * Collects the names of the best OSM locations that prefix-match the query string
+     * with a few typos, nearest first and then as for getLocationsByPrefix. Prefixes of
+     * up to 2 characters must match exactly, up to 5 may have 1 edit and longer ones 2.
+     * Stops searching after FUZZY_BUDGET_NANOS, with the names found so far.
+     * @param prefix Prefix string to be searched for. Could be any case, with our without
+     *               punctuation.
+     * @param limit The most names to return, at most MAX_COMPLETIONS.
+     * @return A <code>List</code> of the full names of the best locations whose cleaned
+     * name nearly matches the cleaned <code>prefix</code>, one per cleaned name.
+     */
+    public List<String> getLocationsByFuzzyPrefix(String prefix, int limit) {
+        String cleanedPrefix = AugmentedStreetMapGraph.cleanString(prefix);
+        int maxEdits = Math.min(MAX_EDITS, cleanedPrefix.length() / 3);
+        List<String> locationNames = new ArrayList<>();
+        for (String s : this.autocomplete.completeFuzzy(cleanedPrefix, maxEdits, limit, FUZZY_BUDGET_NANOS)) {
+            locationNames.add(this.locationNameIdx.get(s).get(0).name());
+        }
+        return locationNames;
+    }
+
     /**
      * For Project Part III (gold points)
      * Collect all locations that match a cleaned <code>locationName</code>, and return
@@ -121,6 +387,85 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
         return result;
     }
 
+    /**
+     * Collect the locations whose names contain every word of a query, in any order,
+     * such as "pizza shattuck" for "Shattuck Pizza Company". Names with fewer other
+     * words come first, then names in alphabetical order.
+     * @param query The words searched for. Could be any case, with our without punctuation.
+     * @param limit The most locations to return.
+     * @return A list of locations, each a map of parameters for the Json response as for
+     * <code>getLocations</code>.
+     */
+    public List<Map<String, Object>> getLocationsByText(String query, int limit) {
+        Set<String> queryWords = AugmentedStreetMapGraph.words(query);
+        int[] matches = this.tokenIndex.search(queryWords.toArray(new String[0]));
+        String[] cleanedNames = new String[matches.length];
+        int[] otherWords = new int[matches.length];
+        Integer[] order = new Integer[matches.length];
+        for (int i = 0; i < matches.length; i++) {
+            String name = this.name(this.idAt(matches[i]));
+            cleanedNames[i] = AugmentedStreetMapGraph.cleanString(name);
+            otherWords[i] = AugmentedStreetMapGraph.words(name).size() - queryWords.size();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> otherWords[i])
+                .thenComparing(i -> cleanedNames[i]));
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, matches.length); i++) {
+            int v = matches[order[i]];
+            Map<String, Object> loc = new HashMap<>();
+            loc.put("lat", this.latAt(v));
+            loc.put("lon", this.lonAt(v));
+            loc.put("name", this.name(this.idAt(v)));
+            loc.put("id", this.idAt(v));
+            result.add(loc);
+        }
+        return result;
+    }
+
+
+    /**
+     * Collect the locations nearest a point whose cleaned names start with the cleaned
+     * prefix, without listing every location that matches.
+     * @param prefix Prefix string to be searched for. Could be any case, with our without
+     *               punctuation.
+     * @param lon The longitude of the point, such as the center of the view.
+     * @param lat The latitude of the point.
+     * @param limit The most locations to return.
+     * @return A list of locations, nearest first, each a map of parameters for the Json
+     * response as for <code>getLocations</code>, and also: <br>
+     * "distance" -> Number, The great-circle distance to the point in miles. <br>
+     */
+    public List<Map<String, Object>> getLocationsNear(String prefix, double lon, double lat, int limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int v : this.placeIndex.nearest(AugmentedStreetMapGraph.cleanString(prefix), lon, lat, limit)) {
+            Map<String, Object> loc = new HashMap<>();
+            loc.put("lat", this.latAt(v));
+            loc.put("lon", this.lonAt(v));
+            loc.put("name", this.name(this.idAt(v)));
+            loc.put("id", this.idAt(v));
+            loc.put("distance", Point.distance(new Point(lon, lat), new Point(this.lonAt(v), this.latAt(v))));
+            result.add(loc);
+        }
+        return result;
+    }
+
+    /** Returns the distinct words of the cleaned form of S. */
+    private static Set<String> words(String s) {
+        return AugmentedStreetMapGraph.cleanedWords(AugmentedStreetMapGraph.cleanString(s));
+    }
+
+    /** Returns the distinct words of CLEANEDNAME, a string already cleaned. */
+    private static Set<String> cleanedWords(String cleanedName) {
+        Set<String> words = new LinkedHashSet<>();
+        for (String word : cleanedName.split(" ")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
 
     /**
      * Useful for Part III. Do not modify.
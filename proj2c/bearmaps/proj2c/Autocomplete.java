@@ -0,0 +1,239 @@
+package bearmaps.proj2c;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A trie of weighted keys in which every node also holds the best completions
+ * below it, so the top completions of a prefix are found in time proportional to
+ * the length of the prefix plus the number asked for, however many keys share
+ * the prefix. Keys are ranked by weight, heaviest first, and then
+ * alphabetically; each node holds the ranks of at most maxCompletions keys.
+ * Misspelled prefixes are matched by walking the trie with the rows of the
+ * edit-distance table, one row per node.
+ */
+public class Autocomplete {
+
+    private static final char[] NO_LABELS = new char[0];
+    private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+
+    private final int maxCompletions;
+    /** keys[r] is the key of rank r. */
+    private final String[] keys;
+    private final TrieNode root;
+
+    private static class TrieNode {
+        /** Labels of the edges to the children, sorted, so a child is found by binary search. */
+        private char[] labels = NO_LABELS;
+        private TrieNode[] children = NO_CHILDREN;
+        private int numChildren;
+        /** Ranks of the best keys at or below this node, increasing. */
+        private int[] best = new int[1];
+        private int numBest;
+
+        private TrieNode child(char c) {
+            int i = Arrays.binarySearch(labels, 0, numChildren, c);
+            return i < 0 ? null : children[i];
+        }
+
+        private TrieNode addChild(char c) {
+            int i = Arrays.binarySearch(labels, 0, numChildren, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            i = -i - 1;
+            if (numChildren == labels.length) {
+                int capacity = Math.max(1, 2 * numChildren);
+                labels = Arrays.copyOf(labels, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(labels, i, labels, i + 1, numChildren - i);
+            System.arraycopy(children, i, children, i + 1, numChildren - i);
+            TrieNode child = new TrieNode();
+            labels[i] = c;
+            children[i] = child;
+            numChildren++;
+            return child;
+        }
+    }
+
+    /**
+     * Builds the index.
+     * @param weights the keys and their weights
+     * @param maxCompletions the most completions a query can return
+     */
+    public Autocomplete(Map<String, Integer> weights, int maxCompletions) {
+        if (maxCompletions < 1) {
+            throw new IllegalArgumentException("maxCompletions must be positive");
+        }
+        this.maxCompletions = maxCompletions;
+        keys = weights.keySet().toArray(new String[0]);
+        Arrays.sort(keys, Comparator.<String>comparingInt(weights::get).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        root = new TrieNode();
+        // Adding keys best first, the first maxCompletions ranks to reach a node are its best
+        for (int rank = 0; rank < keys.length; rank++) {
+            String key = keys[rank];
+            TrieNode node = root;
+            offer(node, rank);
+            for (int i = 0; i < key.length(); i++) {
+                node = node.addChild(key.charAt(i));
+                offer(node, rank);
+            }
+        }
+        trim(root);
+    }
+
+    private void offer(TrieNode node, int rank) {
+        if (node.numBest == maxCompletions) {
+            return;
+        }
+        if (node.numBest == node.best.length) {
+            node.best = Arrays.copyOf(node.best, Math.min(maxCompletions, 2 * node.numBest));
+        }
+        node.best[node.numBest++] = rank;
+    }
+
+    /** Shrinks the arrays of every node to fit, once the trie is built. */
+    private static void trim(TrieNode root) {
+        List<TrieNode> stack = new ArrayList<>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            TrieNode node = stack.remove(stack.size() - 1);
+            node.best = Arrays.copyOf(node.best, node.numBest);
+            if (node.numChildren < node.labels.length) {
+                node.labels = Arrays.copyOf(node.labels, node.numChildren);
+                node.children = Arrays.copyOf(node.children, node.numChildren);
+            }
+            stack.addAll(Arrays.asList(node.children));
+        }
+    }
+
+    /**
+     * Returns the best keys starting with PREFIX, best first.
+     * @param prefix the start of the keys
+     * @param limit the most keys to return; no more than maxCompletions are ever returned
+     */
+    public List<String> complete(String prefix, int limit) {
+        TrieNode node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.child(prefix.charAt(i));
+        }
+        if (node == null) {
+            return new ArrayList<>();
+        }
+        int n = Math.min(limit, node.numBest);
+        List<String> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(keys[node.best[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the best keys starting with a string within MAXEDITS edits of PREFIX,
+     * nearest first and then best first. Gives up on the search after BUDGETNANOS,
+     * returning the keys found so far.
+     * @param prefix the start of the keys, possibly misspelled
+     * @param maxEdits the most insertions, deletions and substitutions allowed
+     * @param limit the most keys to return; no more than maxCompletions are ever returned
+     * @param budgetNanos the most time to search for, in nanoseconds
+     */
+    public List<String> completeFuzzy(String prefix, int maxEdits, int limit, long budgetNanos) {
+        FuzzySearch search = new FuzzySearch(prefix, maxEdits, budgetNanos);
+        int[] row = new int[prefix.length() + 1];
+        for (int j = 0; j < row.length; j++) {
+            row[j] = j;
+        }
+        search.visit(root, row, 0);
+
+        List<Map.Entry<Integer, Integer>> found = new ArrayList<>(search.distances.entrySet());
+        found.sort(Map.Entry.<Integer, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+        int n = Math.min(Math.min(limit, maxCompletions), found.size());
+        List<String> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(keys[found.get(i).getKey()]);
+        }
+        return result;
+    }
+
+    /**
+     * A depth-first walk of the trie, carrying the row of the edit-distance table
+     * between the prefix and the string spelled by each node.
+     */
+    private static class FuzzySearch {
+        /** Nodes visited between checks of the clock. */
+        private static final int CHECK_EVERY = 256;
+
+        private final String prefix;
+        private final int maxEdits;
+        private final long start = System.nanoTime();
+        private final long budgetNanos;
+        /** rows[d] is the row of a node at depth d + 1, reused across nodes. */
+        private final List<int[]> rows = new ArrayList<>();
+        /** Ranks of the keys found, and their distances. */
+        private final Map<Integer, Integer> distances = new HashMap<>();
+        private int visited;
+        private boolean outOfTime;
+
+        private FuzzySearch(String prefix, int maxEdits, long budgetNanos) {
+            this.prefix = prefix;
+            this.maxEdits = maxEdits;
+            this.budgetNanos = budgetNanos;
+        }
+
+        private void visit(TrieNode node, int[] row, int depth) {
+            int m = prefix.length();
+            int distance = row[m];
+            int min = distance;
+            for (int d : row) {
+                min = Math.min(min, d);
+            }
+            if (distance <= maxEdits) {
+                for (int i = 0; i < node.numBest; i++) {
+                    distances.merge(node.best[i], distance, Math::min);
+                }
+                // No key below is nearer, and the best keys below are already taken
+                if (distance == min) {
+                    return;
+                }
+            }
+            if (min > maxEdits) {
+                return;
+            }
+            if (++visited % CHECK_EVERY == 0 && System.nanoTime() - start > budgetNanos) {
+                outOfTime = true;
+            }
+            if (outOfTime) {
+                return;
+            }
+            if (rows.size() == depth) {
+                rows.add(new int[m + 1]);
+            }
+            int[] next = rows.get(depth);
+            for (int c = 0; c < node.numChildren; c++) {
+                char label = node.labels[c];
+                next[0] = row[0] + 1;
+                for (int j = 1; j <= m; j++) {
+                    int substitute = row[j - 1] + (prefix.charAt(j - 1) == label ? 0 : 1);
+                    next[j] = Math.min(substitute, Math.min(row[j], next[j - 1]) + 1);
+                }
+                visit(node.children[c], next, depth + 1);
+            }
+        }
+    }
+
+    /** Returns the most completions a query can return. */
+    public int maxCompletions() {
+        return maxCompletions;
+    }
+
+    /** Returns the number of keys. */
+    public int size() {
+        return keys.length;
+    }
+}
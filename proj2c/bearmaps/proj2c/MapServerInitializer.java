@@ -22,6 +22,10 @@ public class MapServerInitializer {
     public static void initializeServer(Map<String, APIRouteHandler> apiHandlers){
 
         Constants.SEMANTIC_STREET_GRAPH = new AugmentedStreetMapGraph(Constants.OSM_DB_PATH);
+        /* A snapshot written by AugmentedStreetMapGraph.main holds the contraction hierarchy.
+         * Without one, contract the graph off the startup path; requests that want the
+         * hierarchy use other searches until it is ready, see Router. */
+        Constants.SEMANTIC_STREET_GRAPH.buildContractionHierarchyInBackground();
         staticFileLocation("/page");
         /* Allow for all origin requests (since this is not an authenticated server, we do not
          * care about CSRF).  */
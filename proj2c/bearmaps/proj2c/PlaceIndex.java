@@ -0,0 +1,224 @@
+package bearmaps.proj2c;
+
+import bearmaps.proj2ab.BoundedMaxHeap;
+
+import java.util.Arrays;
+
+/**
+ * Finds the places nearest a location among those whose names start with a
+ * prefix, without listing every place matching the prefix. The distinct names
+ * are sorted, so the names starting with a prefix are the ranks in one range.
+ * The places go in a k-d tree over three keys: x, y and name rank, split in
+ * turn. A search skips any subtree whose ranks lie outside the prefix's range,
+ * as well as those too far away, so it only looks at places that both match
+ * and are near.
+ *
+ * The tree is stored in flat arrays, built by splitting each subrange at its
+ * median, so the node of subrange [lo, hi) is at (lo + hi) / 2 and there are no
+ * node objects. Distances are measured on a local equirectangular projection,
+ * where a degree of longitude is shortened by the cosine of the mean latitude,
+ * which is close to exact over a city.
+ */
+public class PlaceIndex {
+
+    private static final int DIMENSIONS = 3;
+
+    /** The distinct names, sorted. */
+    private final String[] names;
+    private final double cosLat;
+    /** Coordinates, name rank and id of each place, in tree order. */
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] ranks;
+    private final int[] ids;
+
+    /**
+     * Builds the index.
+     * @param placeNames placeNames[i] is the name of place i, or null if i is not a place
+     * @param lons lons[i] is the longitude of place i
+     * @param lats lats[i] is the latitude of place i
+     */
+    public PlaceIndex(String[] placeNames, double[] lons, double[] lats) {
+        int n = 0;
+        double latSum = 0;
+        for (int i = 0; i < placeNames.length; i++) {
+            if (placeNames[i] != null) {
+                n++;
+                latSum += lats[i];
+            }
+        }
+        names = Arrays.stream(placeNames).filter(s -> s != null).distinct().sorted().toArray(String[]::new);
+        cosLat = n == 0 ? 1 : Math.cos(Math.toRadians(latSum / n));
+        xs = new double[n];
+        ys = new double[n];
+        ranks = new int[n];
+        ids = new int[n];
+        int j = 0;
+        for (int i = 0; i < placeNames.length; i++) {
+            if (placeNames[i] != null) {
+                xs[j] = lons[i] * cosLat;
+                ys[j] = lats[i];
+                ranks[j] = Arrays.binarySearch(names, placeNames[i]);
+                ids[j] = i;
+                j++;
+            }
+        }
+        build(0, n, 0);
+    }
+
+    /** Arranges [LO, HI) as a subtree split first on dimension DIM. */
+    private void build(int lo, int hi, int dim) {
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi, mid, dim);
+            int next = (dim + 1) % DIMENSIONS;
+            build(lo, mid, next);
+            // Loop on the right half, so the recursion is only as deep as the tree
+            lo = mid + 1;
+            dim = next;
+        }
+    }
+
+    /**
+     * Rearranges [LO, HI) so the K-th place has the key it would have if sorted on
+     * DIM, with no greater keys before it and no smaller ones after.
+     */
+    private void select(int lo, int hi, int k, int dim) {
+        hi--;
+        while (hi > lo) {
+            double pivot = key(lo + (hi - lo) / 2, dim);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (key(i, dim) < pivot) {
+                    i++;
+                }
+                while (key(j, dim) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private double key(int i, int dim) {
+        switch (dim) {
+            case 0:
+                return xs[i];
+            case 1:
+                return ys[i];
+            default:
+                return ranks[i];
+        }
+    }
+
+    private void swap(int i, int j) {
+        double x = xs[i];
+        xs[i] = xs[j];
+        xs[j] = x;
+        double y = ys[i];
+        ys[i] = ys[j];
+        ys[j] = y;
+        int rank = ranks[i];
+        ranks[i] = ranks[j];
+        ranks[j] = rank;
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+    }
+
+    /**
+     * Returns the places nearest a location whose names start with PREFIX, nearest first.
+     * @param prefix the start of the names
+     * @param lon the longitude of the location
+     * @param lat the latitude of the location
+     * @param k the most places to return
+     * @return the ids of the places
+     */
+    public int[] nearest(String prefix, double lon, double lat, int k) {
+        int first = lowerBound(prefix);
+        int last = lowerBound(prefix + Character.MAX_VALUE) - 1;
+        if (first > last || k < 1) {
+            return new int[0];
+        }
+        Search search = new Search(lon * cosLat, lat, first, last, k);
+        search.visit(0, xs.length, 0);
+        return search.ids();
+    }
+
+    /** Returns the rank of the first name that is at least S. */
+    private int lowerBound(String s) {
+        int i = Arrays.binarySearch(names, s);
+        return i < 0 ? -i - 1 : i;
+    }
+
+    /** A search for the nearest places with ranks in [first, last]. */
+    private class Search {
+        private final double x;
+        private final double y;
+        private final int first;
+        private final int last;
+        /** The nearest places found so far, by squared distance. */
+        private final BoundedMaxHeap nearest;
+
+        private Search(double x, double y, int first, int last, int k) {
+            this.x = x;
+            this.y = y;
+            this.first = first;
+            this.last = last;
+            this.nearest = new BoundedMaxHeap(k);
+        }
+
+        private void visit(int lo, int hi, int dim) {
+            if (lo >= hi) {
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            int rank = ranks[mid];
+            if (rank >= first && rank <= last) {
+                double dx = xs[mid] - x;
+                double dy = ys[mid] - y;
+                nearest.offer(mid, dx * dx + dy * dy);
+            }
+            int next = (dim + 1) % DIMENSIONS;
+            if (dim == 2) {
+                if (first <= rank) {
+                    visit(lo, mid, next);
+                }
+                if (last >= rank) {
+                    visit(mid + 1, hi, next);
+                }
+                return;
+            }
+            double diff = dim == 0 ? x - xs[mid] : y - ys[mid];
+            boolean leftFirst = diff < 0;
+            visit(leftFirst ? lo : mid + 1, leftFirst ? mid : hi, next);
+            if (diff * diff < nearest.bound()) {
+                visit(leftFirst ? mid + 1 : lo, leftFirst ? hi : mid, next);
+            }
+        }
+
+        /** Returns the ids of the places found, nearest first. */
+        private int[] ids() {
+            int[] places = nearest.sortedItems();
+            for (int i = 0; i < places.length; i++) {
+                places[i] = PlaceIndex.this.ids[places[i]];
+            }
+            return places;
+        }
+    }
+
+    /** Returns the number of places. */
+    public int size() {
+        return xs.length;
+    }
+}
@@ -0,0 +1,214 @@
+package bearmaps.proj2c;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of encoded rasters, so users looking at the same view share one
+ * composite and encode. A raster is keyed by its tile window, which fixes its
+ * depth and tiles, and by the version of the route drawn on it, or NO_ROUTE if
+ * no route crosses it. When the route changes, only the rasters it was drawn on
+ * go stale; they are dropped the next time the cache sees a newer version.
+ * Holds at most a budget of bytes of encoded text, dropping the least recently
+ * used rasters to stay under it. Safe to share between request threads.
+ */
+public class RasterCache {
+
+    /** Route version of rasters with no route drawn on them. */
+    public static final long NO_ROUTE = -1;
+
+    /** An encoded raster and its size in pixels. */
+    public static class Raster {
+        private final String encoded;
+        private final int width;
+        private final int height;
+
+        /**
+         * @param encoded the encoded image, as sent to the front end
+         * @param width the width of the image in pixels
+         * @param height the height of the image in pixels
+         */
+        public Raster(String encoded, int width, int height) {
+            this.encoded = encoded;
+            this.width = width;
+            this.height = height;
+        }
+
+        public String encoded() {
+            return encoded;
+        }
+
+        public int width() {
+            return width;
+        }
+
+        public int height() {
+            return height;
+        }
+    }
+
+    /** A tile window and the version of the route drawn on it. */
+    private static class Key {
+        private final String window;
+        private final long routeVersion;
+
+        private Key(String window, long routeVersion) {
+            this.window = window;
+            this.routeVersion = routeVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return routeVersion == other.routeVersion && window.equals(other.window);
+        }
+
+        @Override
+        public int hashCode() {
+            return window.hashCode() * 31 + Long.hashCode(routeVersion);
+        }
+    }
+
+    private final long maxBytes;
+    /** In access order, so the eldest entry is the least recently used; guarded by itself. */
+    private final LinkedHashMap<Key, Raster> rasters = new LinkedHashMap<>(16, 0.75f, true);
+    /** Bytes of the rasters in the cache; guarded by rasters. */
+    private long bytes;
+    /** Newest route version looked up; guarded by rasters. */
+    private long routeVersion = NO_ROUTE;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Creates an empty cache.
+     * @param maxBytes the most bytes of encoded text kept
+     */
+    public RasterCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a cached raster, or null if there is none.
+     * @param window identifies the depth and tiles of the raster
+     * @param routeVersion version of the route drawn on the raster, or NO_ROUTE
+     */
+    public Raster get(String window, long routeVersion) {
+        Raster raster;
+        synchronized (rasters) {
+            if (routeVersion > this.routeVersion) {
+                dropRoutesBefore(routeVersion);
+            }
+            raster = rasters.get(new Key(window, routeVersion));
+        }
+        (raster == null ? misses : hits).incrementAndGet();
+        return raster;
+    }
+
+    /**
+     * Caches a raster, unless its route has since been replaced.
+     * @param window identifies the depth and tiles of the raster
+     * @param routeVersion version of the route drawn on the raster, or NO_ROUTE
+     * @param raster the raster
+     */
+    public void put(String window, long routeVersion, Raster raster) {
+        long size = sizeOf(raster);
+        if (size > maxBytes) {
+            return;
+        }
+        synchronized (rasters) {
+            if (routeVersion != NO_ROUTE && routeVersion < this.routeVersion) {
+                return;
+            }
+            Raster old = rasters.put(new Key(window, routeVersion), raster);
+            if (old != null) {
+                bytes -= sizeOf(old);
+            }
+            bytes += size;
+            Iterator<Raster> it = rasters.values().iterator();
+            while (bytes > maxBytes) {
+                bytes -= sizeOf(it.next());
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /** Drops the rasters with a route older than VERSION drawn on them. */
+    private void dropRoutesBefore(long version) {
+        routeVersion = version;
+        Iterator<Map.Entry<Key, Raster>> it = rasters.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Raster> entry = it.next();
+            if (entry.getKey().routeVersion != NO_ROUTE && entry.getKey().routeVersion < version) {
+                bytes -= sizeOf(entry.getValue());
+                it.remove();
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    private static long sizeOf(Raster raster) {
+        // Base64 text is ASCII, stored a byte per character
+        return raster.encoded.length();
+    }
+
+    /** Drops every raster. Not counted as evictions. */
+    public void clear() {
+        synchronized (rasters) {
+            rasters.clear();
+            bytes = 0;
+        }
+    }
+
+    /** Returns the number of rasters cached. */
+    public int size() {
+        synchronized (rasters) {
+            return rasters.size();
+        }
+    }
+
+    /** Returns the bytes of encoded text cached. */
+    public long bytes() {
+        synchronized (rasters) {
+            return bytes;
+        }
+    }
+
+    /** Returns the number of lookups answered from the cache. */
+    public long hits() {
+        return hits.get();
+    }
+
+    /** Returns the number of lookups that found nothing. */
+    public long misses() {
+        return misses.get();
+    }
+
+    /** Returns the fraction of lookups answered from the cache, or 0 if there were none. */
+    public double hitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /** Returns the number of rasters dropped to stay under the byte budget. */
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /** Returns the number of rasters dropped because their route was replaced. */
+    public long invalidations() {
+        return invalidations.get();
+    }
+}
@@ -0,0 +1,224 @@
+package bearmaps.proj2c;
+
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.SolverOutcome;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of routes keyed by the ids of the nodes their endpoints snap
+ * to, so repeated requests between the same popular places skip the search and
+ * the directions. Entries are dropped least recently used first once the cache
+ * is full, and expire a fixed time after they were computed. Safe to share
+ * between request threads; a miss is computed outside the lock, so two threads
+ * missing on the same pair at once may both search.
+ *
+ * A cache holds routes of whichever graph they were computed on, so use one cache
+ * per graph.
+ */
+public class RouteCache {
+
+    /** A computed route: its nodes, its length and its driving directions. */
+    public static class Route {
+        private final List<Long> nodes;
+        private final double weight;
+        private final List<Router.NavigationDirection> directions;
+        private final long expiresAt;
+
+        private Route(List<Long> nodes, double weight,
+                      List<Router.NavigationDirection> directions, long expiresAt) {
+            this.nodes = Collections.unmodifiableList(nodes);
+            this.weight = weight;
+            this.directions = Collections.unmodifiableList(directions);
+            this.expiresAt = expiresAt;
+        }
+
+        /** Returns the ids of the nodes on the route, in order, or an empty list if there is none. */
+        public List<Long> nodes() {
+            return nodes;
+        }
+
+        /** Returns the length of the route in miles. */
+        public double weight() {
+            return weight;
+        }
+
+        /** Returns the driving directions along the route. */
+        public List<Router.NavigationDirection> directions() {
+            return directions;
+        }
+    }
+
+    /** The snapped endpoints of a route. */
+    private static class Key {
+        private final long src;
+        private final long dest;
+
+        private Key(long src, long dest) {
+            this.src = src;
+            this.dest = dest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return src == other.src && dest == other.dest;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(src) * 31 + Long.hashCode(dest);
+        }
+    }
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Router.Strategy strategy;
+    /** In access order, so the eldest entry is the least recently used; guarded by itself. */
+    private final LinkedHashMap<Key, Route> routes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates an empty cache that routes with A*.
+     * @param maxSize the most routes kept
+     * @param ttl how long a route is kept after it is computed
+     * @param unit the unit of TTL
+     */
+    public RouteCache(int maxSize, long ttl, TimeUnit unit) {
+        this(maxSize, ttl, unit, Router.Strategy.ASTAR);
+    }
+
+    /**
+     * Creates an empty cache.
+     * @param maxSize the most routes kept
+     * @param ttl how long a route is kept after it is computed
+     * @param unit the unit of TTL
+     * @param strategy the search algorithm used on a miss
+     */
+    public RouteCache(int maxSize, long ttl, TimeUnit unit, Router.Strategy strategy) {
+        if (maxSize < 1 || ttl < 0) {
+            throw new IllegalArgumentException("maxSize must be positive and ttl non-negative");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.strategy = strategy;
+        this.routes = new LinkedHashMap<Key, Route>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Route> eldest) {
+                if (size() > RouteCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the route from the node closest to a start location to the node
+     * closest to a destination, computing it if it is not cached.
+     * @param g The graph to use.
+     * @param stlon The longitude of the start location.
+     * @param stlat The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @return The route, with an empty node list if there is none.
+     */
+    public Route route(AugmentedStreetMapGraph g, double stlon, double stlat,
+                       double destlon, double destlat) {
+        return route(g, g.closest(stlon, stlat), g.closest(destlon, destlat));
+    }
+
+    /**
+     * Returns the route between two nodes, computing it if it is not cached.
+     * @param g The graph to use.
+     * @param src The id of the start node.
+     * @param dest The id of the destination node.
+     * @return The route, with an empty node list if there is none.
+     */
+    public Route route(AugmentedStreetMapGraph g, long src, long dest) {
+        Key key = new Key(src, dest);
+        long now = System.nanoTime();
+        synchronized (routes) {
+            Route cached = routes.get(key);
+            if (cached != null) {
+                if (now - cached.expiresAt < 0) {
+                    hits.incrementAndGet();
+                    return cached;
+                }
+                routes.remove(key);
+                evictions.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+
+        ShortestPathsSolver<Long> solver = strategy.solve(g, src, dest);
+        List<Long> nodes = solver.solution();
+        Route route = new Route(nodes, solver.solutionWeight(), Router.routeDirections(g, nodes),
+                System.nanoTime() + ttlNanos);
+        // A timed out search may succeed when the server is less busy
+        if (solver.outcome() != SolverOutcome.TIMEOUT) {
+            synchronized (routes) {
+                routes.put(key, route);
+            }
+        }
+        return route;
+    }
+
+    /** Drops every expired route. */
+    public void removeExpired() {
+        long now = System.nanoTime();
+        synchronized (routes) {
+            Iterator<Route> it = routes.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().expiresAt >= 0) {
+                    it.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /** Drops every route. Not counted as evictions. */
+    public void clear() {
+        synchronized (routes) {
+            routes.clear();
+        }
+    }
+
+    /** Returns the number of routes cached, including any that expired but were not yet dropped. */
+    public int size() {
+        synchronized (routes) {
+            return routes.size();
+        }
+    }
+
+    /** Returns the number of lookups answered from the cache. */
+    public long hits() {
+        return hits.get();
+    }
+
+    /** Returns the number of lookups that had to search. */
+    public long misses() {
+        return misses.get();
+    }
+
+    /** Returns the number of routes dropped because the cache was full or they expired. */
+    public long evictions() {
+        return evictions.get();
+    }
+}
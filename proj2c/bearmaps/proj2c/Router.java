@@ -1,7 +1,11 @@
 package bearmaps.proj2c;
 
-import bearmaps.hw4.AStarSolver;
-import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.BidirectionalAStarSolver;
+import bearmaps.hw4.ContractionHierarchy;
+import bearmaps.hw4.ContractionHierarchySolver;
+import bearmaps.hw4.DistanceMatrix;
+import bearmaps.hw4.LongAStarSolver;
+import bearmaps.hw4.ShortestPathsSolver;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -15,6 +19,72 @@ import java.util.regex.Pattern;
  */
 public class Router {
 
+    /** Seconds a single route search may take before it gives up. */
+    private static final double TIMEOUT = 20;
+
+    /**
+     * The search algorithms shortestPath can route with.
+     */
+    public enum Strategy {
+        /** A* searching forward from the start. */
+        ASTAR {
+            @Override
+            ShortestPathsSolver<Long> solve(AugmentedStreetMapGraph g, long src, long dest) {
+                return new LongAStarSolver(g, src, dest, TIMEOUT);
+            }
+        },
+        /** A* searching from both the start and the destination until the searches meet. */
+        BIDIRECTIONAL_ASTAR {
+            @Override
+            ShortestPathsSolver<Long> solve(AugmentedStreetMapGraph g, long src, long dest) {
+                return new BidirectionalAStarSolver(g, src, dest, TIMEOUT);
+            }
+        },
+        /**
+         * A* guided by landmark distances, see LandmarkGraph. The landmarks are
+         * chosen on first use.
+         */
+        ALT {
+            @Override
+            ShortestPathsSolver<Long> solve(AugmentedStreetMapGraph g, long src, long dest) {
+                return new LongAStarSolver(g.landmarkGraph(), src, dest, TIMEOUT);
+            }
+        },
+        /**
+         * Bidirectional search of the graph's contraction hierarchy, see
+         * AugmentedStreetMapGraph.contractionHierarchyIfReady. Until the hierarchy is
+         * ready, bidirectional A*, which finds the same routes.
+         */
+        CONTRACTION_HIERARCHIES {
+            @Override
+            ShortestPathsSolver<Long> solve(AugmentedStreetMapGraph g, long src, long dest) {
+                ContractionHierarchy ch = g.contractionHierarchyIfReady();
+                if (ch == null) {
+                    return BIDIRECTIONAL_ASTAR.solve(g, src, dest);
+                }
+                return new ContractionHierarchySolver(ch, src, dest, TIMEOUT);
+            }
+        };
+
+        abstract ShortestPathsSolver<Long> solve(AugmentedStreetMapGraph g, long src, long dest);
+    }
+
+    /**
+     * Return a List of longs representing the shortest path from the node
+     * closest to a start location and the node closest to the destination location,
+     * found with the default A* strategy.
+     * @param g The graph to use.
+     * @param stlon The longitude of the start location.
+     * @param stlat The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @return A list of node id's in the order visited on the shortest path.
+     */
+    public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
+                                          double destlon, double destlat) {
+        return shortestPath(g, stlon, stlat, destlon, destlat, Strategy.ASTAR);
+    }
+
     /**
      * Overloaded method for shortestPath that has flexibility to specify a solver
      * and returns a List of longs representing the shortest path from the node
@@ -24,13 +94,45 @@ public class Router {
      * @param stlat The latitude of the start location.
      * @param destlon The longitude of the destination location.
      * @param destlat The latitude of the destination location.
+     * @param strategy The search algorithm to use.
      * @return A list of node id's in the order visited on the shortest path.
      */
     public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
-                                          double destlon, double destlat) {
+                                          double destlon, double destlat, Strategy strategy) {
         long src = g.closest(stlon, stlat);
         long dest = g.closest(destlon, destlat);
-        return new AStarSolver<>(g, src, dest, 20).solution();
+        return strategy.solve(g, src, dest).solution();
+    }
+
+    /**
+     * Returns the shortest path distance from each of a set of start locations to
+     * each of a set of destinations, snapping every location to its closest node
+     * once. The searches run in parallel on the graph's contraction hierarchy, or, until
+     * it is ready, as one Dijkstra search from each start, see DistanceMatrix.
+     * @param g The graph to use.
+     * @param starts The (longitude, latitude) of each start location.
+     * @param dests The (longitude, latitude) of each destination.
+     * @return distances[i][j], the length in miles of the shortest path from the node
+     * closest to starts[i] to the node closest to dests[j], with the tie-breaking
+     * lengths of its edges, or positive infinity if there is none.
+     */
+    public static double[][] distanceMatrix(AugmentedStreetMapGraph g, double[][] starts,
+                                            double[][] dests) {
+        ContractionHierarchy ch = g.contractionHierarchyIfReady();
+        if (ch == null) {
+            return DistanceMatrix.computeByDijkstra(g, closest(g, starts), closest(g, dests));
+        }
+        return DistanceMatrix.compute(ch, closest(g, starts), closest(g, dests));
+    }
+
+    private static long[] closest(AugmentedStreetMapGraph g, double[][] locations) {
+        double[] lons = new double[locations.length];
+        double[] lats = new double[locations.length];
+        for (int i = 0; i < locations.length; i++) {
+            lons[i] = locations[i][0];
+            lats[i] = locations[i][1];
+        }
+        return g.closestBatch(lons, lats);
     }
 
     /**
@@ -51,12 +153,10 @@ public class Router {
         nd.direction = NavigationDirection.START;
         nd.distance = -1; // use negative value as flag to indicate route is invalid
         int curIdx = 1;
-        for (WeightedEdge<Long> edge : g.neighbors(route.get(prevIdx))) {
-            if (edge.to().equals(route.get(curIdx))) {
-                nd.way = Router.getDirection(edge.getName());
-                nd.distance = edge.weight();
-                break;
-            }
+        int firstEdge = Router.findEdge(g, route.get(prevIdx), route.get(curIdx));
+        if (firstEdge >= 0) {
+            nd.way = Router.getDirection(g.edgeName(firstEdge));
+            nd.distance = g.edgeWeight(firstEdge);
         }
 
         Router.directionValidation(nd);
@@ -66,20 +166,15 @@ public class Router {
             curIdx = nxtIdx - 1;
             Long nextNode = route.get(nxtIdx);
             Long curNode = route.get(curIdx);
-            WeightedEdge<Long> edge = null;
-            for (WeightedEdge<Long> we : g.neighbors(curNode)) {
-                if (we.to().equals(nextNode)) {
-                    edge = we;
-                    break;
-                }
-            }
+            int edge = Router.findEdge(g, curNode, nextNode);
 
-            if (edge == null) {
+            if (edge < 0) {
                 throw new IllegalArgumentException("Invalid route");
             }
 
-            if ((edge.getName().isEmpty() && !nd.way.equals(NavigationDirection.UNKNOWN_ROAD)) ||
-                    (!edge.getName().isEmpty() && !edge.getName().equals(nd.way))
+            String edgeName = g.edgeName(edge);
+            if ((edgeName.isEmpty() && !nd.way.equals(NavigationDirection.UNKNOWN_ROAD)) ||
+                    (!edgeName.isEmpty() && !edgeName.equals(nd.way))
             ) {
                 navigationDirects.add(nd);
                 nd = new NavigationDirection();
@@ -88,10 +183,10 @@ public class Router {
                         NavigationDirection.bearing(g.lon(prevNode), g.lon(curNode), g.lat(prevNode), g.lat(curNode)),
                         NavigationDirection.bearing(g.lon(curNode), g.lon(nextNode), g.lat(curNode), g.lat(nextNode))
                 );
-                nd.way = Router.getDirection(edge.getName());
-                nd.distance = edge.weight();
+                nd.way = Router.getDirection(edgeName);
+                nd.distance = g.edgeWeight(edge);
             } else {
-                nd.distance += edge.weight();
+                nd.distance += g.edgeWeight(edge);
             }
 
 
@@ -100,6 +195,27 @@ public class Router {
         return navigationDirects;
     }
 
+    /**
+     * Find the edge going from v to w without building neighbor lists.
+     * @param g The graph to use.
+     * @param v The id of the source vertex.
+     * @param w The id of the destination vertex.
+     * @return The edge slot of the first such edge, or -1 if there is none.
+     */
+    private static int findEdge(AugmentedStreetMapGraph g, long v, long w) {
+        int vIdx = g.indexOf(v);
+        int wIdx = g.indexOf(w);
+        if (vIdx < 0 || wIdx < 0) {
+            return -1;
+        }
+        for (int e = g.edgeStart(vIdx); e < g.edgeEnd(vIdx); e++) {
+            if (g.edgeTarget(e) == wIdx) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
     private static String getDirection(String name) {
         return (name == null || name.isEmpty()) ? NavigationDirection.UNKNOWN_ROAD : name;
     }
@@ -0,0 +1,211 @@
+package bearmaps.proj2c;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of decoded map tiles, so panning around the map does not decode the
+ * same PNGs from disk over and over. Tiles are keyed by their name without the
+ * extension, d{depth}_x{x}_y{y}, and stored as TYPE_INT_RGB images, which is
+ * what the raster is, so drawing one is a plain pixel copy. The cache holds at
+ * most a budget of bytes of pixels and drops the least recently used tiles to
+ * stay under it.
+ *
+ * Safe to share between request threads. Loading is single flight: a thread
+ * that misses on a tile another thread is decoding waits for that decode rather
+ * than starting its own. Cached images are shared, so callers must not draw on
+ * them.
+ */
+public class TileCache {
+
+    private static final String EXTENSION = ".png";
+
+    private final String root;
+    private final long maxBytes;
+    /** In access order, so the eldest entry is the least recently used; guarded by itself. */
+    private final LinkedHashMap<String, BufferedImage> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    /** Bytes of the tiles in the cache; guarded by tiles. */
+    private long bytes;
+    /** Decodes in progress, by key. */
+    private final Map<String, CompletableFuture<BufferedImage>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong decodes = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+
+    /**
+     * Creates an empty cache.
+     * @param root the directory holding the tile images, ending in a separator
+     * @param maxBytes the most bytes of decoded pixels kept
+     */
+    public TileCache(String root, long maxBytes) {
+        this.root = root;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a decoded tile, reading it from disk if it is not cached. Callers
+     * that know which tiles exist, from a TilePyramid, should not ask for the rest.
+     * @param fileName the tile's file name under the root, such as d2_x1_y3.png
+     * @return the tile, or null if it could not be read
+     */
+    public BufferedImage get(String fileName) {
+        String key = fileName.endsWith(EXTENSION)
+                ? fileName.substring(0, fileName.length() - EXTENSION.length()) : fileName;
+        BufferedImage tile = cached(key);
+        if (tile != null) {
+            hits.incrementAndGet();
+            return tile;
+        }
+        misses.incrementAndGet();
+
+        CompletableFuture<BufferedImage> load = new CompletableFuture<>();
+        CompletableFuture<BufferedImage> inFlight = loading.putIfAbsent(key, load);
+        if (inFlight != null) {
+            return inFlight.join();
+        }
+        try {
+            // Another thread may have finished loading it since the check above
+            tile = cached(key);
+            if (tile == null) {
+                tile = decode(root + fileName);
+                if (tile != null) {
+                    put(key, tile);
+                }
+            }
+            load.complete(tile);
+            return tile;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    private BufferedImage cached(String key) {
+        synchronized (tiles) {
+            return tiles.get(key);
+        }
+    }
+
+    /** Reads the image at PATH as TYPE_INT_RGB, or returns null if it is missing or cannot be read. */
+    private BufferedImage decode(String path) {
+        long start = System.nanoTime();
+        File file = new File(path);
+        if (!file.isFile()) {
+            return null;
+        }
+        BufferedImage img;
+        try {
+            img = ImageIO.read(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (img == null) {
+            return null;
+        }
+        if (img.getType() != BufferedImage.TYPE_INT_RGB) {
+            // Drawn over black, like the raster it is composited into
+            BufferedImage rgb = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics graphic = rgb.getGraphics();
+            graphic.drawImage(img, 0, 0, null);
+            graphic.dispose();
+            img = rgb;
+        }
+        decodes.incrementAndGet();
+        decodeNanos.addAndGet(System.nanoTime() - start);
+        return img;
+    }
+
+    private void put(String key, BufferedImage tile) {
+        long size = sizeOf(tile);
+        if (size > maxBytes) {
+            return;
+        }
+        synchronized (tiles) {
+            BufferedImage old = tiles.put(key, tile);
+            if (old != null) {
+                bytes -= sizeOf(old);
+            }
+            bytes += size;
+            Iterator<BufferedImage> it = tiles.values().iterator();
+            while (bytes > maxBytes) {
+                bytes -= sizeOf(it.next());
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static long sizeOf(BufferedImage tile) {
+        return 4L * tile.getWidth() * tile.getHeight();
+    }
+
+    /** Drops every tile. Not counted as evictions. */
+    public void clear() {
+        synchronized (tiles) {
+            tiles.clear();
+            bytes = 0;
+        }
+    }
+
+    /** Returns the number of tiles cached. */
+    public int size() {
+        synchronized (tiles) {
+            return tiles.size();
+        }
+    }
+
+    /** Returns the bytes of decoded pixels cached. */
+    public long bytes() {
+        synchronized (tiles) {
+            return bytes;
+        }
+    }
+
+    /** Returns the number of lookups answered from the cache. */
+    public long hits() {
+        return hits.get();
+    }
+
+    /** Returns the number of lookups that had to decode or wait for a decode. */
+    public long misses() {
+        return misses.get();
+    }
+
+    /** Returns the fraction of lookups answered from the cache, or 0 if there were none. */
+    public double hitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /** Returns the number of tiles dropped to stay under the byte budget. */
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /** Returns the number of tiles decoded from disk. */
+    public long decodes() {
+        return decodes.get();
+    }
+
+    /** Returns the mean time in milliseconds taken to decode a tile, or 0 if none were. */
+    public double meanDecodeMillis() {
+        long n = decodes.get();
+        return n == 0 ? 0 : decodeNanos.get() / 1e6 / n;
+    }
+}
@@ -0,0 +1,215 @@
+package bearmaps.proj2c;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Index of the map tiles, built once so a raster request does no logarithms
+ * and builds no strings. At depth d the root square is cut into 2^d by 2^d
+ * tiles named d{d}_x{x}_y{y}.png; this holds every tile's name, whether its
+ * file exists and how big it is, the longitudinal distance per pixel (LonDPP)
+ * of each depth, and the longitude and latitude of every tile edge.
+ */
+public class TilePyramid {
+
+    /** Deepest level of tiles. */
+    public static final int MAX_DEPTH = 7;
+
+    private final double rootUlLon, rootUlLat, rootLrLon, rootLrLat;
+    /** lonDPP[d] is the LonDPP of the tiles at depth d; decreasing. */
+    private final double[] lonDPP;
+    /** names[d][y][x] is the file name of tile (x, y) at depth d. */
+    private final String[][][] names;
+    /** fileSizes[d][y][x] is the size in bytes of that tile's file, or -1 if it is missing. */
+    private final long[][][] fileSizes;
+    /** edgeLons[d][x] is the longitude of the left edge of column x at depth d, for x up to 2^d. */
+    private final double[][] edgeLons;
+    /** edgeLats[d][y] is the latitude of the top edge of row y at depth d, for y up to 2^d. */
+    private final double[][] edgeLats;
+
+    /** The tiles of one depth covering a query box, and the box they cover. */
+    public class TileRange {
+        private final int depth, startX, startY, endX, endY;
+
+        private TileRange(int depth, int startX, int startY, int endX, int endY) {
+            this.depth = depth;
+            this.startX = startX;
+            this.startY = startY;
+            this.endX = endX;
+            this.endY = endY;
+        }
+
+        public int depth() {
+            return depth;
+        }
+
+        public int startX() {
+            return startX;
+        }
+
+        public int startY() {
+            return startY;
+        }
+
+        /** Returns the last column in the range, inclusive. */
+        public int endX() {
+            return endX;
+        }
+
+        /** Returns the last row in the range, inclusive. */
+        public int endY() {
+            return endY;
+        }
+
+        /** Returns the file names of the tiles, by row then column. */
+        public String[][] names() {
+            String[][] grid = new String[endY - startY + 1][];
+            for (int y = startY; y <= endY; y++) {
+                grid[y - startY] = Arrays.copyOfRange(TilePyramid.this.names[depth][y], startX, endX + 1);
+            }
+            return grid;
+        }
+
+        public double ulLon() {
+            return edgeLons[depth][startX];
+        }
+
+        public double ulLat() {
+            return edgeLats[depth][startY];
+        }
+
+        public double lrLon() {
+            return edgeLons[depth][endX + 1];
+        }
+
+        public double lrLat() {
+            return edgeLats[depth][endY + 1];
+        }
+    }
+
+    /**
+     * Builds the index of the tiles covering a root square.
+     * @param rootUlLon longitude of the root's upper left corner
+     * @param rootUlLat latitude of the root's upper left corner
+     * @param rootLrLon longitude of the root's lower right corner
+     * @param rootLrLat latitude of the root's lower right corner
+     * @param tileSize width of a tile in pixels
+     * @param imgRoot the directory of the tile files, ending in a separator, or null
+     *                to treat every tile as missing
+     */
+    public TilePyramid(double rootUlLon, double rootUlLat, double rootLrLon, double rootLrLat,
+                       int tileSize, String imgRoot) {
+        this.rootUlLon = rootUlLon;
+        this.rootUlLat = rootUlLat;
+        this.rootLrLon = rootLrLon;
+        this.rootLrLat = rootLrLat;
+        lonDPP = new double[MAX_DEPTH + 1];
+        names = new String[MAX_DEPTH + 1][][];
+        fileSizes = new long[MAX_DEPTH + 1][][];
+        edgeLons = new double[MAX_DEPTH + 1][];
+        edgeLats = new double[MAX_DEPTH + 1][];
+        for (int d = 0; d <= MAX_DEPTH; d++) {
+            int n = 1 << d;
+            lonDPP[d] = (rootLrLon - rootUlLon) / tileSize / n;
+            names[d] = new String[n][n];
+            fileSizes[d] = new long[n][n];
+            for (int y = 0; y < n; y++) {
+                for (int x = 0; x < n; x++) {
+                    names[d][y][x] = ("d" + d + "_x" + x + "_y" + y + ".png").intern();
+                }
+                Arrays.fill(fileSizes[d][y], -1);
+            }
+            edgeLons[d] = new double[n + 1];
+            edgeLats[d] = new double[n + 1];
+            for (int i = 0; i <= n; i++) {
+                edgeLons[d][i] = (rootUlLon - rootLrLon) / (0 - n) * i + rootUlLon;
+                edgeLats[d][i] = (rootUlLat - rootLrLat) / (0 - n) * i + rootUlLat;
+            }
+        }
+        File[] files = imgRoot == null ? null : new File(imgRoot).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                int[] dxy = parseName(file.getName());
+                if (dxy != null) {
+                    fileSizes[dxy[0]][dxy[2]][dxy[1]] = file.length();
+                }
+            }
+        }
+    }
+
+    /** Returns {depth, x, y} if NAME is the name of a tile in the pyramid, or else null. */
+    private static int[] parseName(String name) {
+        if (!name.startsWith("d") || !name.endsWith(".png")) {
+            return null;
+        }
+        String[] parts = name.substring(1, name.length() - ".png".length()).split("_");
+        if (parts.length != 3 || !parts[1].startsWith("x") || !parts[2].startsWith("y")) {
+            return null;
+        }
+        try {
+            int d = Integer.parseInt(parts[0]);
+            int x = Integer.parseInt(parts[1].substring(1));
+            int y = Integer.parseInt(parts[2].substring(1));
+            if (d < 0 || d > MAX_DEPTH || x < 0 || x >= 1 << d || y < 0 || y >= 1 << d) {
+                return null;
+            }
+            return new int[]{d, x, y};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the shallowest depth whose tiles have a LonDPP at most LONDPP, or the
+     * deepest if none do.
+     */
+    public int depthFor(double lonDPP) {
+        for (int d = 0; d < MAX_DEPTH; d++) {
+            if (this.lonDPP[d] <= lonDPP) {
+                return d;
+            }
+        }
+        return MAX_DEPTH;
+    }
+
+    /** Returns the LonDPP of the tiles at DEPTH. */
+    public double lonDPP(int depth) {
+        return lonDPP[depth];
+    }
+
+    /**
+     * Returns the tiles at DEPTH that intersect a query box, clamped to the root.
+     * A box that degrades to a line or a point still gets a tile.
+     */
+    public TileRange range(int depth, double ulLon, double ulLat, double lrLon, double lrLat) {
+        int n = 1 << depth;
+        int startX = (int) ((ulLon - rootUlLon) / (rootLrLon - rootUlLon) * n);
+        int endX = (int) Math.ceil((lrLon - rootUlLon) / (rootLrLon - rootUlLon) * n) - 1;
+        int startY = (int) ((rootUlLat - ulLat) / (rootUlLat - rootLrLat) * n);
+        int endY = (int) Math.ceil((rootUlLat - lrLat) / (rootUlLat - rootLrLat) * n) - 1;
+        startX = clamp(startX, n);
+        startY = clamp(startY, n);
+        endX = Math.max(startX, clamp(endX, n));
+        endY = Math.max(startY, clamp(endY, n));
+        return new TileRange(depth, startX, startY, endX, endY);
+    }
+
+    private static int clamp(int i, int n) {
+        return Math.min(n - 1, Math.max(i, 0));
+    }
+
+    /** Returns the file name of tile (X, Y) at DEPTH. */
+    public String name(int depth, int x, int y) {
+        return names[depth][y][x];
+    }
+
+    /** Checks whether the file of tile (X, Y) at DEPTH exists. */
+    public boolean exists(int depth, int x, int y) {
+        return fileSizes[depth][y][x] >= 0;
+    }
+
+    /** Returns the size in bytes of the file of tile (X, Y) at DEPTH, or -1 if it is missing. */
+    public long fileSize(int depth, int x, int y) {
+        return fileSizes[depth][y][x];
+    }
+}
@@ -0,0 +1,265 @@
+package bearmaps.proj2c;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An inverted index from words to the documents containing them, where a
+ * document is an int id. Each word's posting list, its documents in increasing
+ * order, is stored as gaps between documents written as varints, which for
+ * location names takes about a byte per posting. The list is cut into blocks of
+ * BLOCK_SIZE postings. A skip table holds each block's first document and where
+ * its bytes start, so a search can gallop over the blocks and decode only the
+ * ones it lands in. Documents containing every word of a query are found by
+ * intersecting the lists, advancing each list to the largest document the
+ * others are on.
+ */
+public class TokenIndex {
+
+    /** Postings per block. */
+    private static final int BLOCK_SIZE = 64;
+
+    private final Map<String, Integer> tokenIds = new HashMap<>();
+    /** postingCounts[t] is the number of documents containing token t. */
+    private int[] postingCounts;
+    /** The blocks of token t are firstBlocks[t] up to firstBlocks[t + 1]. */
+    private int[] firstBlocks;
+    /** blockStarts[b] is the first document of block b. */
+    private int[] blockStarts;
+    /** blockOffsets[b] is where the gaps after the first document of block b start in data. */
+    private int[] blockOffsets;
+    /** The gaps between successive documents of each block, as varints. */
+    private byte[] data;
+
+    /**
+     * Builds the index.
+     * @param docTokens docTokens[d] is the words of document d, or null if d has none;
+     *                  empty words are ignored
+     */
+    public TokenIndex(String[][] docTokens) {
+        // Documents are visited in increasing order, so each list comes out sorted
+        Map<String, PostingList> lists = new HashMap<>();
+        for (int d = 0; d < docTokens.length; d++) {
+            if (docTokens[d] == null) {
+                continue;
+            }
+            for (String token : docTokens[d]) {
+                if (!token.isEmpty()) {
+                    lists.computeIfAbsent(token, k -> new PostingList()).add(d);
+                }
+            }
+        }
+
+        int numTokens = lists.size();
+        int numBlocks = 0;
+        for (PostingList list : lists.values()) {
+            numBlocks += (list.size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        }
+        postingCounts = new int[numTokens];
+        firstBlocks = new int[numTokens + 1];
+        blockStarts = new int[numBlocks];
+        blockOffsets = new int[numBlocks];
+        data = new byte[1024];
+        int length = 0;
+        int block = 0;
+        for (Map.Entry<String, PostingList> entry : lists.entrySet()) {
+            int t = tokenIds.size();
+            tokenIds.put(entry.getKey(), t);
+            int[] list = entry.getValue().docs;
+            int size = entry.getValue().size;
+            postingCounts[t] = size;
+            firstBlocks[t] = block;
+            for (int i = 0; i < size; i++) {
+                if (i % BLOCK_SIZE == 0) {
+                    blockStarts[block] = list[i];
+                    blockOffsets[block] = length;
+                    block++;
+                    continue;
+                }
+                if (length + 5 > data.length) {
+                    data = Arrays.copyOf(data, 2 * data.length);
+                }
+                length = writeVarint(data, length, list[i] - list[i - 1]);
+            }
+        }
+        firstBlocks[numTokens] = block;
+        data = Arrays.copyOf(data, length);
+    }
+
+    /** The documents of a word, while the index is built. */
+    private static class PostingList {
+        private int[] docs = new int[4];
+        private int size;
+
+        /** Adds D, which is at least the last document added. */
+        private void add(int d) {
+            if (size > 0 && docs[size - 1] == d) {
+                return;
+            }
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, 2 * size);
+            }
+            docs[size++] = d;
+        }
+    }
+
+    /** Writes VALUE, at least 0, as a varint at POS and returns the position after it. */
+    private static int writeVarint(byte[] buf, int pos, int value) {
+        while ((value & ~0x7f) != 0) {
+            buf[pos++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+        return pos;
+    }
+
+    /** A position in a posting list, which only moves forward. */
+    private class Cursor {
+        private final int firstBlock;
+        private final int endBlock;
+        private final int count;
+        /** Index of the current posting in the list, or count once past the end. */
+        private int index;
+        private int block;
+        /** Where the gap to the next posting starts. */
+        private int pos;
+        private int doc;
+
+        private Cursor(int token) {
+            this.firstBlock = firstBlocks[token];
+            this.block = firstBlock;
+            this.endBlock = firstBlocks[token + 1];
+            this.count = postingCounts[token];
+            this.pos = blockOffsets[block];
+            this.doc = blockStarts[block];
+        }
+
+        private boolean done() {
+            return index == count;
+        }
+
+        private void next() {
+            index++;
+            if (index == count) {
+                return;
+            }
+            if (index % BLOCK_SIZE == 0) {
+                block++;
+                pos = blockOffsets[block];
+                doc = blockStarts[block];
+                return;
+            }
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                gap |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            doc += gap;
+        }
+
+        /** Moves to the first posting at least TARGET, or past the end if there is none. */
+        private void advanceTo(int target) {
+            if (done() || doc >= target) {
+                return;
+            }
+            // Gallop over the later blocks for the last one starting at most TARGET
+            int lo = block;
+            int step = 1;
+            int hi = block + 1;
+            while (hi < endBlock && blockStarts[hi] <= target) {
+                lo = hi;
+                step *= 2;
+                hi = block + step;
+            }
+            hi = Math.min(hi, endBlock);
+            while (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                if (blockStarts[mid] <= target) {
+                    lo = mid;
+                } else {
+                    hi = mid;
+                }
+            }
+            if (lo > block) {
+                block = lo;
+                index = (block - firstBlock) * BLOCK_SIZE;
+                pos = blockOffsets[block];
+                doc = blockStarts[block];
+            }
+            while (!done() && doc < target) {
+                next();
+            }
+        }
+    }
+
+    /**
+     * Returns the documents containing every one of TOKENS, in increasing order.
+     * Empty tokens are ignored, and a query with no others matches nothing.
+     * @param tokens the words searched for
+     */
+    public int[] search(String... tokens) {
+        int n = 0;
+        Cursor[] cursors = new Cursor[tokens.length];
+        for (String token : tokens) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            Integer t = tokenIds.get(token);
+            if (t == null) {
+                return new int[0];
+            }
+            cursors[n++] = new Cursor(t);
+        }
+        if (n == 0) {
+            return new int[0];
+        }
+        cursors = Arrays.copyOf(cursors, n);
+        // Lead with the shortest list, so the others are mostly skipped over
+        Arrays.sort(cursors, (a, b) -> Integer.compare(a.count, b.count));
+
+        int[] result = new int[cursors[0].count];
+        int size = 0;
+        Cursor lead = cursors[0];
+        while (!lead.done()) {
+            int candidate = lead.doc;
+            boolean all = true;
+            for (int i = 1; i < n; i++) {
+                cursors[i].advanceTo(candidate);
+                if (cursors[i].done()) {
+                    return Arrays.copyOf(result, size);
+                }
+                if (cursors[i].doc > candidate) {
+                    lead.advanceTo(cursors[i].doc);
+                    all = false;
+                    break;
+                }
+            }
+            if (all) {
+                result[size++] = candidate;
+                lead.next();
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /** Returns the number of documents containing TOKEN. */
+    public int documentCount(String token) {
+        Integer t = tokenIds.get(token);
+        return t == null ? 0 : postingCounts[t];
+    }
+
+    /** Returns the number of distinct words. */
+    public int size() {
+        return postingCounts.length;
+    }
+
+    /** Returns the bytes taken by the posting lists and their skip tables. */
+    public long bytes() {
+        return data.length + 4L * (blockStarts.length + blockOffsets.length + firstBlocks.length
+                + postingCounts.length);
+    }
+}
@@ -20,6 +20,8 @@ public class APIRouteHandlerFactory {
         handlerMap = new HashMap<>();
         handlerMap.put("raster", new RasterAPIHandler());
         handlerMap.put("route", new RoutingAPIHandler());
+        handlerMap.put("route_overlay", new RouteOverlayAPIHandler());
+        handlerMap.put("distance_matrix", new DistanceMatrixAPIHandler());
         handlerMap.put("clear_route", new ClearRouteAPIHandler());
         handlerMap.put("search", new SearchAPIHandler());
         handlerMap.put("", new RedirectAPIHandler());
@@ -0,0 +1,89 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.Router;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import bearmaps.proj2c.utils.Tuple;
+import spark.Request;
+import spark.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+/**
+ * Handles requests for the travel distances between many start locations and
+ * many destinations at once.
+ */
+public class DistanceMatrixAPIHandler extends APIRouteHandler<Tuple<double[][], double[][]>, Map<String, Object>> {
+
+    /** HTTP failed response. */
+    private static final int HALT_RESPONSE = 403;
+
+    /** Most locations accepted on either side of the matrix. */
+    private static final int MAX_LOCATIONS = 1000;
+
+    /**
+     * Each request has the following parameters, each a list of locations written
+     * as "lon,lat" pairs separated by semicolons:<br>
+     * sources : the start locations,<br> targets : the destinations.
+     */
+    @Override
+    protected Tuple<double[][], double[][]> parseRequestParams(Request request) {
+        return new Tuple<>(parseLocations(request.queryParams("sources")),
+                parseLocations(request.queryParams("targets")));
+    }
+
+    private static double[][] parseLocations(String param) {
+        if (param == null || param.isEmpty()) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+        }
+        String[] pairs = param.split(";");
+        if (pairs.length > MAX_LOCATIONS) {
+            halt(HALT_RESPONSE, "Request failed - at most " + MAX_LOCATIONS + " locations.");
+        }
+        double[][] locations = new double[pairs.length][];
+        for (int i = 0; i < pairs.length; i++) {
+            String[] lonLat = pairs[i].split(",");
+            try {
+                if (lonLat.length != 2) {
+                    throw new NumberFormatException(pairs[i]);
+                }
+                locations[i] = new double[]{Double.parseDouble(lonLat[0]), Double.parseDouble(lonLat[1])};
+            } catch (NumberFormatException e) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide lon,lat pairs.");
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Computes the distance from every source to every target.
+     * @param requestParams The sources and targets of the request.
+     * @param response : Not used by this function.
+     * @return A map of results for the front end as specified: <br>
+     * "distances" : List of rows, one per source, of the distance in miles to each
+     *               target, or null where the target cannot be reached.
+     */
+    @Override
+    protected Map<String, Object> processRequest(Tuple<double[][], double[][]> requestParams,
+                                                 Response response) {
+        double[][] distances = Router.distanceMatrix(SEMANTIC_STREET_GRAPH,
+                requestParams.getFirst(), requestParams.getSecond());
+        List<List<Double>> rows = new ArrayList<>(distances.length);
+        for (double[] distanceRow : distances) {
+            List<Double> row = new ArrayList<>(distanceRow.length);
+            for (double d : distanceRow) {
+                // JSON has no infinity
+                row.add(d == Double.POSITIVE_INFINITY ? null : d);
+            }
+            rows.add(row);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("distances", rows);
+        return result;
+    }
+}
@@ -1,19 +1,24 @@
 package bearmaps.proj2c.server.handler.impl;
 
 import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.RasterCache;
+import bearmaps.proj2c.TileCache;
+import bearmaps.proj2c.TilePyramid;
 import bearmaps.proj2c.server.handler.APIRouteHandler;
 import spark.Request;
 import spark.Response;
 import bearmaps.proj2c.utils.Constants;
+import bearmaps.proj2c.utils.PngEncoder;
+import bearmaps.proj2c.utils.RasterEncoder;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
+import java.awt.image.DataBufferInt;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
 import java.util.List;
+import java.util.stream.IntStream;
 
 import static bearmaps.proj2c.utils.Constants.*;
 
@@ -42,10 +47,65 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
     private static final String[] REQUIRED_RASTER_RESULT_PARAMS = {"render_grid", "raster_ul_lon",
             "raster_ul_lat", "raster_lr_lon", "raster_lr_lat", "depth", "query_success"};
 
+    /** Names, bounds and files of every tile, indexed once. */
+    private static final TilePyramid TILE_PYRAMID = new TilePyramid(ROOT_ULLON, ROOT_ULLAT,
+            ROOT_LRLON, ROOT_LRLAT, TILE_SIZE, IMG_ROOT);
 
+    /** Returns the index of the tiles, for tile range and file queries. */
+    public static TilePyramid tilePyramid() {
+        return TILE_PYRAMID;
+    }
+
+    /** Deflate level of the default PNG encoder. */
+    private static final int PNG_LEVEL = 1;
+
+    /** Bytes of decoded tiles kept in memory, 512 tiles of 256x256 pixels. */
+    private static final long TILE_CACHE_BYTES = 128L * 1024 * 1024;
+
+    /** Decoded tiles, shared by every request thread. */
+    private static final TileCache TILE_CACHE = new TileCache(IMG_ROOT, TILE_CACHE_BYTES);
+
+    /** Returns the tile cache, for its hit rate and decode times. */
+    public static TileCache tileCache() {
+        return TILE_CACHE;
+    }
+
+    /** Bytes of encoded rasters kept in memory. */
+    private static final long RASTER_CACHE_BYTES = 64L * 1024 * 1024;
+
+    /** How rastered images are encoded for the front end. */
+    private final RasterEncoder encoder;
+
+    /** Rasters encoded by this handler's encoder. */
+    private final RasterCache rasterCache = new RasterCache(RASTER_CACHE_BYTES);
+
+    /** Encodes rastered images as PNGs, favoring speed over size. */
+    public RasterAPIHandler() {
+        this(new PngEncoder(PNG_LEVEL, PngEncoder.Filter.UP));
+    }
+
+    /**
+     * @param encoder how to encode rastered images, such as a PngEncoder with another
+     *                level or a lossy JpegEncoder
+     */
+    public RasterAPIHandler(RasterEncoder encoder) {
+        this.encoder = encoder;
+    }
+
+    /** Returns the cache of encoded rasters, for its hit rate and size. */
+    public RasterCache rasterCache() {
+        return rasterCache;
+    }
+
+    /**
+     * Optional parameter: route=false leaves the route off the raster, for front
+     * ends that draw it themselves from the route overlay.
+     */
     @Override
     protected Map<String, Double> parseRequestParams(Request request) {
-        return getRequestParams(request, REQUIRED_RASTER_REQUEST_PARAMS);
+        Map<String, Double> params = getRequestParams(request, REQUIRED_RASTER_REQUEST_PARAMS);
+        params.put("route", "false".equals(request.queryParams("route")) ? 0.0 : 1.0);
+        return params;
     }
 
     /**
@@ -78,6 +138,9 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
      *                    string. <br>
      * "query_success" : Boolean, whether the query was able to successfully complete; don't
      *                    forget to set this to true on success! <br>
+     * "route_drawn"   : Boolean, whether the route will be drawn on the raster. <br>
+     * "tile_range"    : TilePyramid.TileRange, the tiles of render_grid, for rendering;
+     *                    removed before the response is sent. <br>
      */
     @Override
     public Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
@@ -91,138 +154,20 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
             results = queryFail();
             return results;
         }
-        int depth = RasterAPIHandler.getDepth(lrLon, ulLon, width);
-        int numOfGridPixelsPerDirection = (int) Math.pow(2, depth);
-        int startX = (int) ((ulLon - ROOT_ULLON) / (ROOT_LRLON - ROOT_ULLON) * numOfGridPixelsPerDirection);
-        int endX = (int) Math.ceil((lrLon - ROOT_ULLON) / (ROOT_LRLON - ROOT_ULLON) * numOfGridPixelsPerDirection) - 1;
-        int startY = (int) ((ROOT_ULLAT - ulLat) / (ROOT_ULLAT - ROOT_LRLAT) * numOfGridPixelsPerDirection);
-        int endY= (int) Math.ceil((ROOT_ULLAT - lrLat) / (ROOT_ULLAT - ROOT_LRLAT) * numOfGridPixelsPerDirection) - 1;
-        // Bound checking
-        startX = RasterAPIHandler.boundCheck(startX, 0, numOfGridPixelsPerDirection -1);
-        startY = RasterAPIHandler.boundCheck(startY, 0, numOfGridPixelsPerDirection -1);
-        endX = RasterAPIHandler.boundCheck(endX, 0, numOfGridPixelsPerDirection -1);
-        endY = RasterAPIHandler.boundCheck(endY, 0, numOfGridPixelsPerDirection -1);
-        // Deal with 1-D query: when query box degrades to a line or even a single point,
-        // we may get xFirst > xLast, xFirst == numOfTiles, etc. above)
-        endX = Math.max(startX, endX);
-        endY = Math.max(startY, endY);
-        String[][] files = RasterAPIHandler.getFileSequences(startX, startY, endX, endY, depth);
+        int depth = TILE_PYRAMID.depthFor(getLongitudinalDistancePerPixel(lrLon, ulLon, width));
+        TilePyramid.TileRange tiles = TILE_PYRAMID.range(depth, ulLon, ulLat, lrLon, lrLat);
         results.put("depth", depth);
-        results.put("render_grid", files);
+        results.put("render_grid", tiles.names());
         results.put("query_success", true);
-        results.put("raster_ul_lon", RasterAPIHandler.getLongitude(startX, numOfGridPixelsPerDirection));
-        results.put("raster_ul_lat", RasterAPIHandler.getLatitude(startY, numOfGridPixelsPerDirection));
-        results.put("raster_lr_lon", RasterAPIHandler.getLongitude(endX + 1, numOfGridPixelsPerDirection));
-        results.put("raster_lr_lat", RasterAPIHandler.getLatitude(endY + 1, numOfGridPixelsPerDirection));
+        results.put("raster_ul_lon", tiles.ulLon());
+        results.put("raster_ul_lat", tiles.ulLat());
+        results.put("raster_lr_lon", tiles.lrLon());
+        results.put("raster_lr_lat", tiles.lrLat());
+        results.put("route_drawn", !Double.valueOf(0.0).equals(requestParams.get("route")));
+        results.put("tile_range", tiles);
         return results;
     }
 
-    /**
-     * Get the required depth based on LonDPP
-     * @param lrLon lower right longitude
-     * @param ulLon upper left longitude
-     * @param width width of the given view area
-     * @return closest depth of view
-     */
-    private static int getDepth(double lrLon, double ulLon, double width) {
-        double requestedLonDPP = RasterAPIHandler.getLongitudinalDistancePerPixel(lrLon, ulLon, width);
-        int depth = (int) Math.ceil(Math.log((ROOT_LRLON - ROOT_ULLON) / TILE_SIZE / requestedLonDPP) / Math.log(2));
-        depth = RasterAPIHandler.boundCheck(depth, 0, 7);
-        return depth;
-    }
-
-    /**
-     * Make sure the input is within bound
-     * @param input input value
-     * @param lowerBound lower bound
-     * @param upperBound upper bound
-     * @return input if within bound
-     */
-    private static int boundCheck(int input, int lowerBound, int upperBound) {
-        return Math.min(upperBound, Math.max(input, lowerBound));
-    }
-
-    /**
-     * Convert the target grid position to geo position
-     * @param geoPos1 position 1's geo coordinate(latitude/longitude)
-     * @param gridPos1 position 1's grid coordinate(latitude/longitude)
-     * @param geoPos2 position 2's geo coordinate(latitude/longitude)
-     * @param gridPos2 position 2's grid coordinate(latitude/longitude)
-     * @param targetGridPos target position's grid coordinate/latitude/longitude)
-     * @return target position's geo coordinate
-     */
-    private static double convertGridCoordinateToGeoCoordinate(
-            double geoPos1, double gridPos1,
-            double geoPos2, double gridPos2,
-            double targetGridPos) {
-        return (geoPos1 - geoPos2) / (gridPos1 - gridPos2) * (targetGridPos - gridPos1)
-                + geoPos1;
-    }
-
-    /**
-     * Get the longitude based on x
-     * @param x x is relative to depth and files, top left corner is the original point
-     * @param xEnd xEnd is 2 ^ depth
-     * @return x's longtitude
-     */
-    private static double getLongitude(double x, int xEnd) {
-        return RasterAPIHandler.convertGridCoordinateToGeoCoordinate(ROOT_ULLON, 0,
-                ROOT_LRLON, xEnd, x);
-    }
-
-    /**
-     * Get the latitude based on y
-     * @param y is relative to depth and files, top left corner is the original point
-     * @param yEnd xEnd is 2 ^ depth
-     * @return y's latitude
-     */
-    private static double getLatitude(double y, int yEnd) {
-        return RasterAPIHandler.convertGridCoordinateToGeoCoordinate(ROOT_ULLAT, 0,
-                ROOT_LRLAT, yEnd, y);
-    }
-
-    /**
-     * Generate string representation of required image files
-     * @param startX x start sequence
-     * @param startY y start sequence
-     * @param endX x end sequence
-     * @param endY y end sequence
-     * @param depth depth of the view
-     * @return string representation of required image file
-     */
-    private static String[][] getFileSequences(int startX, int startY,
-            int endX, int endY, int depth) {
-
-        String[][] results = new String[endY - startY + 1][];
-        for (int y = startY; y <= endY; y++) {
-            String[] row = new String[endX - startX + 1];
-            for (int x = startX; x <= endX; x++) {
-                row[x - startX] = RasterAPIHandler.getFileName(x, y, depth);
-            }
-            results[y - startY] = row;
-        }
-        return results;
-    }
-
-    /**
-     * Get file name based on input
-     * @param x x sequence
-     * @param y y sequence
-     * @param depth view depth
-     * @return file name
-     */
-    private static String getFileName( int x, int y, int depth) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("d");
-        sb.append(depth);
-        sb.append("_x");
-        sb.append(x);
-        sb.append("_y");
-        sb.append(y);
-        sb.append(".png");
-        return sb.toString();
-    }
-
     /**
      * Given a query box or image, the LonDPP of that box or image is
      * LonDPP = (lower right longitude - upper left longitude) / width of the image (or box) in pixels
@@ -256,14 +201,74 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
         boolean rasterSuccess = validateRasteredImgParams(result);
 
         if (rasterSuccess) {
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            writeImagesToOutputStream(result, os);
-            String encodedImage = Base64.getEncoder().encodeToString(os.toByteArray());
-            result.put("b64_encoded_image_data", encodedImage);
+            // Read before the route, so a raster is never filed under a newer version than it shows
+            long version = ROUTE_VERSION.get();
+            List<Long> route = Boolean.FALSE.equals(result.get("route_drawn"))
+                    ? Collections.emptyList() : new ArrayList<>(ROUTE_LIST);
+            String[][] renderGrid = (String[][]) result.get("render_grid");
+            String[] lastRow = renderGrid[renderGrid.length - 1];
+            // The corner tiles' names fix the depth and the window
+            String window = renderGrid[0][0] + ":" + lastRow[lastRow.length - 1];
+            long routeVersion = routeCrosses(route, result) ? version : RasterCache.NO_ROUTE;
+
+            RasterCache.Raster raster = rasterCache.get(window, routeVersion);
+            if (raster == null) {
+                raster = renderRaster(result, route);
+                rasterCache.put(window, routeVersion, raster);
+            }
+            result.put("raster_width", raster.width());
+            result.put("raster_height", raster.height());
+            result.put("b64_encoded_image_data", raster.encoded());
+            result.put("raster_mime_type", encoder.mimeType());
         }
+        result.remove("tile_range");
         return super.buildJsonResponse(result);
     }
 
+    /** Composites and encodes the raster described by RESULT, with ROUTE drawn on it. */
+    private RasterCache.Raster renderRaster(Map<String, Object> result, List<Long> route) {
+        // Encoded straight into Base64 text, without a byte array of the image in between
+        StringOutputStream text = new StringOutputStream();
+        try (OutputStream os = Base64.getEncoder().wrap(text)) {
+            writeImagesToOutputStream(result, route, os);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return new RasterCache.Raster(text.toString(), (int) result.get("raster_width"),
+                (int) result.get("raster_height"));
+    }
+
+    /**
+     * Checks whether any of a route's stroke could land on the raster described by
+     * RESULT, by comparing bounding boxes.
+     */
+    private static boolean routeCrosses(List<Long> route, Map<String, Object> result) {
+        if (route.size() < 2) {
+            return false;
+        }
+        AugmentedStreetMapGraph graph = SEMANTIC_STREET_GRAPH;
+        double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (long v : route) {
+            minLon = Math.min(minLon, graph.lon(v));
+            maxLon = Math.max(maxLon, graph.lon(v));
+            minLat = Math.min(minLat, graph.lat(v));
+            maxLat = Math.max(maxLat, graph.lat(v));
+        }
+        String[][] renderGrid = (String[][]) result.get("render_grid");
+        double ullon = (double) result.get("raster_ul_lon");
+        double ullat = (double) result.get("raster_ul_lat");
+        double lrlon = (double) result.get("raster_lr_lon");
+        double lrlat = (double) result.get("raster_lr_lat");
+        // A full stroke width around the raster, in degrees
+        double lonMargin = Constants.ROUTE_STROKE_WIDTH_PX * (lrlon - ullon)
+                / (renderGrid[0].length * Constants.TILE_SIZE);
+        double latMargin = Constants.ROUTE_STROKE_WIDTH_PX * (ullat - lrlat)
+                / (renderGrid.length * Constants.TILE_SIZE);
+        return maxLon >= ullon - lonMargin && minLon <= lrlon + lonMargin
+                && maxLat >= lrlat - latMargin && minLat <= ullat + latMargin;
+    }
+
     private Map<String, Object> queryFail() {
         Map<String, Object> results = new HashMap<>();
         results.put("render_grid", null);
@@ -298,31 +303,36 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
     }
 
     /**
-     * Writes the images corresponding to rasteredImgParams to the output stream.
+     * Writes the images corresponding to rasteredImgParams, with ROUTE drawn on them,
+     * to the output stream.
      * In Spring 2016, students had to do this on their own, but in 2017,
      * we made this into provided code since it was just a bit too low level.
      */
     private  void writeImagesToOutputStream(Map<String, Object> rasteredImageParams,
-                                                  ByteArrayOutputStream os) {
+                                            List<Long> route, OutputStream os) {
         String[][] renderGrid = (String[][]) rasteredImageParams.get("render_grid");
+        TilePyramid.TileRange tiles = (TilePyramid.TileRange) rasteredImageParams.get("tile_range");
         int numVertTiles = renderGrid.length;
         int numHorizTiles = renderGrid[0].length;
 
         BufferedImage img = new BufferedImage(numHorizTiles * Constants.TILE_SIZE,
                 numVertTiles * Constants.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
         Graphics graphic = img.getGraphics();
-        int x = 0, y = 0;
-
-        for (int r = 0; r < numVertTiles; r += 1) {
-            for (int c = 0; c < numHorizTiles; c += 1) {
-                graphic.drawImage(getImage(Constants.IMG_ROOT + renderGrid[r][c]), x, y, null);
-                x += Constants.TILE_SIZE;
-                if (x >= img.getWidth()) {
-                    x = 0;
-                    y += Constants.TILE_SIZE;
-                }
+
+        // Tiles cover disjoint parts of the raster, so they can be copied in at once
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        IntStream.range(0, numVertTiles * numHorizTiles).parallel().forEach(i -> {
+            int r = i / numHorizTiles;
+            int c = i % numHorizTiles;
+            // Missing tiles are left black, known from the pyramid's index without going to the disk
+            if (!TILE_PYRAMID.exists(tiles.depth(), tiles.startX() + c, tiles.startY() + r)) {
+                return;
             }
-        }
+            BufferedImage tile = TILE_CACHE.get(renderGrid[r][c]);
+            if (tile != null) {
+                copyTile(tile, pixels, img.getWidth(), c * Constants.TILE_SIZE, r * Constants.TILE_SIZE);
+            }
+        });
 
         /* If there is a route, draw it. */
         double ullon = (double) rasteredImageParams.get("raster_ul_lon"); //tiles.get(0).ulp;
@@ -333,7 +343,6 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
         final double wdpp = (lrlon - ullon) / img.getWidth();
         final double hdpp = (ullat - lrlat) / img.getHeight();
         AugmentedStreetMapGraph graph = SEMANTIC_STREET_GRAPH;
-        List<Long> route = ROUTE_LIST;
 
         if (route != null && !route.isEmpty()) {
             Graphics2D g2d = (Graphics2D) graphic;
@@ -353,23 +362,46 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
         rasteredImageParams.put("raster_height", img.getHeight());
 
         try {
-            ImageIO.write(img, "png", os);
+            encoder.write(img, os);
         } catch (IOException e) {
             e.printStackTrace();
         }
 
     }
 
-    private BufferedImage getImage(String imgPath) {
-        BufferedImage tileImg = null;
-        if (tileImg == null) {
-            try {
-                File in = new File(imgPath);
-                tileImg = ImageIO.read(in);
-            } catch (IOException | NullPointerException e) {
-                e.printStackTrace();
+    /**
+     * Copies the pixels of a TYPE_INT_RGB tile into a raster RASTERWIDTH pixels wide,
+     * with the tile's upper left corner at (X, Y).
+     */
+    private static void copyTile(BufferedImage tile, int[] raster, int rasterWidth, int x, int y) {
+        int[] tilePixels = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+        int width = Math.min(tile.getWidth(), Constants.TILE_SIZE);
+        int height = Math.min(tile.getHeight(), Constants.TILE_SIZE);
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(tilePixels, row * tile.getWidth(), raster, (y + row) * rasterWidth + x, width);
+        }
+    }
+
+    /** Collects the bytes written to it, all ASCII, as a String. */
+    private static class StringOutputStream extends OutputStream {
+        private final StringBuilder sb = new StringBuilder();
+
+        @Override
+        public void write(int b) {
+            sb.append((char) (b & 0xff));
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            sb.ensureCapacity(sb.length() + len);
+            for (int i = off; i < off + len; i++) {
+                sb.append((char) (b[i] & 0xff));
             }
         }
-        return tileImg;
+
+        @Override
+        public String toString() {
+            return sb.toString();
+        }
     }
 }
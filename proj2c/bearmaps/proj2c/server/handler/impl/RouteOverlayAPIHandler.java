@@ -0,0 +1,90 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.TilePyramid;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import bearmaps.proj2c.utils.PolylineSimplifier;
+import spark.Request;
+import spark.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static bearmaps.proj2c.utils.Constants.*;
+
+/**
+ * Handles requests for the current route as a polyline, so the front end can
+ * draw it over base rasters that stay the same when the route changes. The line
+ * is simplified for the depth it will be drawn at.
+ */
+public class RouteOverlayAPIHandler extends APIRouteHandler<Map<String, Double>, Map<String, Object>> {
+
+    /**
+     * Each request has the following parameter:<br>
+     * depth : the depth of the raster the route will be drawn on.
+     */
+    private static final String[] REQUIRED_OVERLAY_REQUEST_PARAMS = {"depth"};
+
+    /** Pixels a simplified route may stray from the full one. */
+    private static final double TOLERANCE_PX = 0.5;
+
+    @Override
+    protected Map<String, Double> parseRequestParams(Request request) {
+        return getRequestParams(request, REQUIRED_OVERLAY_REQUEST_PARAMS);
+    }
+
+    /**
+     * Simplifies the current route for drawing at the requested depth.
+     * @param requestParams The depth of the request.
+     * @param response : Not used by this function.
+     * @return A map of results for the front end as specified: <br>
+     * "route_version" : Number, changes whenever the route does. <br>
+     * "depth"         : Number, the depth the route was simplified for. <br>
+     * "points"        : Number[], the longitude and latitude of each point on the
+     *                   simplified route, in turn: lon0, lat0, lon1, lat1, ...
+     */
+    @Override
+    protected Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
+        int depth = (int) Math.max(0, Math.min(TilePyramid.MAX_DEPTH, requestParams.get("depth")));
+        // Read before the route, so the version is never newer than the route sent
+        long version = ROUTE_VERSION.get();
+        List<Long> route = new ArrayList<>(ROUTE_LIST);
+
+        Map<String, Object> results = new HashMap<>();
+        results.put("route_version", version);
+        results.put("depth", depth);
+        results.put("points", simplify(SEMANTIC_STREET_GRAPH, route, depth));
+        return results;
+    }
+
+    /**
+     * Returns the points of a route, simplified to within TOLERANCE_PX pixels at
+     * DEPTH, as alternating longitudes and latitudes.
+     */
+    private static double[] simplify(AugmentedStreetMapGraph graph, List<Long> route, int depth) {
+        int n = route.size();
+        double lonDPP = (ROOT_LRLON - ROOT_ULLON) / TILE_SIZE / (1 << depth);
+        double latDPP = (ROOT_ULLAT - ROOT_LRLAT) / TILE_SIZE / (1 << depth);
+        double[] lons = new double[n];
+        double[] lats = new double[n];
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            long v = route.get(i);
+            lons[i] = graph.lon(v);
+            lats[i] = graph.lat(v);
+            // In pixels, where the tolerance is the same in both directions
+            xs[i] = lons[i] / lonDPP;
+            ys[i] = lats[i] / latDPP;
+        }
+        int[] kept = PolylineSimplifier.simplify(xs, ys, TOLERANCE_PX);
+        double[] points = new double[2 * kept.length];
+        for (int i = 0; i < kept.length; i++) {
+            points[2 * i] = lons[kept[i]];
+            points[2 * i + 1] = lats[kept[i]];
+        }
+        return points;
+    }
+}
@@ -1,5 +1,6 @@
 package bearmaps.proj2c.server.handler.impl;
 
+import bearmaps.proj2c.RouteCache;
 import bearmaps.proj2c.Router;
 import bearmaps.proj2c.server.handler.APIRouteHandler;
 import spark.Request;
@@ -8,9 +9,11 @@ import spark.Response;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
 import static bearmaps.proj2c.utils.Constants.ROUTE_LIST;
+import static bearmaps.proj2c.utils.Constants.ROUTE_VERSION;
 
 /**
  * Handles requests from the web browser for routes between locations. The
@@ -28,6 +31,21 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
     private static final String[] REQUIRED_ROUTE_REQUEST_PARAMS = {"start_lat", "start_lon",
             "end_lat", "end_lon"};
 
+    /** Most routes kept in the route cache. */
+    private static final int ROUTE_CACHE_SIZE = 4096;
+
+    /** Minutes a cached route is served for. */
+    private static final long ROUTE_CACHE_TTL_MINUTES = 30;
+
+    /** Routes by snapped endpoints, shared by every request thread. */
+    private static final RouteCache ROUTE_CACHE =
+            new RouteCache(ROUTE_CACHE_SIZE, ROUTE_CACHE_TTL_MINUTES, TimeUnit.MINUTES);
+
+    /** Returns the route cache, for its hit, miss and eviction counts. */
+    public static RouteCache routeCache() {
+        return ROUTE_CACHE;
+    }
+
     @Override
     protected Map<String, Double> parseRequestParams(Request request) {
         return getRequestParams(request, REQUIRED_ROUTE_REQUEST_PARAMS);
@@ -39,7 +57,7 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
      * completed for you.
      *
      * The route to draw on the map should be added to the end of
-     * bearmaps.proj2c.utils.Constants.ROUTE_LIST. This is a LinkedList of longs,
+     * bearmaps.proj2c.utils.Constants.ROUTE_LIST. This is a List of longs,
      * where each long corresponds to one point on the map.
      *
      * Street directions can also be provided in the form of text as a return
@@ -58,27 +76,26 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
      */
     @Override
     protected Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
-        List<Long> route = Router.shortestPath(
+        RouteCache.Route route = ROUTE_CACHE.route(
                 SEMANTIC_STREET_GRAPH,
                 requestParams.get("start_lon"), requestParams.get("start_lat"),
                 requestParams.get("end_lon"), requestParams.get("end_lat"));
-        ROUTE_LIST.addAll(route);
-        String directions = getDirectionsText();
+        ROUTE_LIST.addAll(route.nodes());
+        ROUTE_VERSION.incrementAndGet();
+        String directions = getDirectionsText(route.directions());
 
         Map<String, Object> routeParams = new HashMap<>();
-        routeParams.put("routing_success", !route.isEmpty());
+        routeParams.put("routing_success", !route.nodes().isEmpty());
         routeParams.put("directions_success", directions.length() > 0);
         routeParams.put("directions", directions);
         return routeParams;
     }
 
     /**
-     * Takes the route of this MapServer and converts it into an HTML friendly
+     * Takes the directions of a route and converts them into an HTML friendly
      * String to be passed to the frontend.
      */
-    private String getDirectionsText() {
-
-        List<Router.NavigationDirection> directions = Router.routeDirections(SEMANTIC_STREET_GRAPH, ROUTE_LIST);
+    private String getDirectionsText(List<Router.NavigationDirection> directions) {
         if (directions == null || directions.isEmpty()) {
             return "";
         }
@@ -1,52 +1,168 @@
 package bearmaps.proj2c.server.handler.impl;
 
+import bearmaps.proj2c.AugmentedStreetMapGraph;
 import bearmaps.proj2c.server.handler.APIRouteHandler;
 import spark.Request;
 import spark.Response;
-import bearmaps.proj2c.utils.Tuple;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
 
 /**
  * Created by rahul
  */
-public class SearchAPIHandler extends APIRouteHandler<Tuple<Set<String>, String>, Object> {
+public class SearchAPIHandler extends APIRouteHandler<Map<String, String>, Object> {
 
+    /** HTTP failed response. */
+    private static final int HALT_RESPONSE = 403;
 
+    /** Names returned for a prefix when the request gives no limit. */
+    private static final int DEFAULT_LIMIT = 10;
+
+    /**
+     * Each request has the following parameters:<br>
+     * term : the name or prefix searched for,<br>
+     * full : if present, return the locations named term rather than completions,<br>
+     * limit : optional, the most completions to return, at most
+     *         AugmentedStreetMapGraph.MAX_COMPLETIONS,<br>
+     * fuzzy : optional, if true, also complete names that differ from term by a few typos,<br>
+     * text : optional, if true, return the locations whose names contain every word of
+     *        term rather than completions,<br>
+     * lon, lat : optional, return the locations nearest this point whose names start with
+     *            term rather than completions,<br>
+     * ullon, ullat, lrlon, lrlat : optional, as for lon and lat, with the center of this
+     *                              view as the point.
+     */
     @Override
-    protected Tuple<Set<String>, String> parseRequestParams(Request request) {
-        return new Tuple<>(request.queryParams(), request.queryParams("term"));
+    protected Map<String, String> parseRequestParams(Request request) {
+        Map<String, String> params = new HashMap<>();
+        for (String param : request.queryParams()) {
+            params.put(param, request.queryParams(param));
+        }
+        if (params.get("term") == null) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+        }
+        return params;
     }
 
     @Override
-    protected Object processRequest(Tuple<Set<String>, String> requestParams, Response response) {
-        Set<String> reqParams = requestParams.getFirst();
-        String term = requestParams.getSecond();
+    protected Object processRequest(Map<String, String> requestParams, Response response) {
+        String term = requestParams.get("term");
         Object result;
         /* Search for actual location data. */
-        if (reqParams.contains("full")) {
+        if (requestParams.containsKey("full")) {
             result = getLocations(term);
+        } else if (hasParams(requestParams, "lon", "lat")) {
+            /* Search for the nearest locations matching the prefix. */
+            result = getLocationsNear(term, parseNumber(requestParams.get("lon")),
+                    parseNumber(requestParams.get("lat")), parseLimit(requestParams.get("limit")));
+        } else if (hasParams(requestParams, "ullon", "ullat", "lrlon", "lrlat")) {
+            double lon = (parseNumber(requestParams.get("ullon")) + parseNumber(requestParams.get("lrlon"))) / 2;
+            double lat = (parseNumber(requestParams.get("ullat")) + parseNumber(requestParams.get("lrlat"))) / 2;
+            result = getLocationsNear(term, lon, lat, parseLimit(requestParams.get("limit")));
+        } else if ("true".equals(requestParams.get("text"))) {
+            /* Search for locations with every word. */
+            result = getLocationsByText(term, parseLimit(requestParams.get("limit")));
+        } else if ("true".equals(requestParams.get("fuzzy"))) {
+            /* Search for strings nearly matching the prefix. */
+            result = getLocationsByFuzzyPrefix(term, parseLimit(requestParams.get("limit")));
         } else {
             /* Search for prefix matching strings. */
-            result = getLocationsByPrefix(term);
+            result = getLocationsByPrefix(term, parseLimit(requestParams.get("limit")));
         }
         return result;
     }
 
+    private static boolean hasParams(Map<String, String> params, String... names) {
+        for (String name : names) {
+            if (!params.containsKey(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double parseNumber(String param) {
+        try {
+            return Double.parseDouble(param);
+        } catch (NumberFormatException | NullPointerException e) {
+            halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+            return 0;
+        }
+    }
+
+    private static int parseLimit(String param) {
+        if (param == null) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            int limit = Integer.parseInt(param);
+            if (limit >= 1) {
+                return Math.min(limit, AugmentedStreetMapGraph.MAX_COMPLETIONS);
+            }
+        } catch (NumberFormatException e) {
+            // Halted below
+        }
+        halt(HALT_RESPONSE, "Incorrect parameters - limit must be a positive integer.");
+        return DEFAULT_LIMIT;
+    }
+
+    /**
+     * Collect the names of the best OSM locations that prefix-match the query string.
+     * @param prefix Prefix string to be searched for. Could be any case, with our without
+     *               punctuation.
+     * @param limit The most names to return.
+     * @return A <code>List</code> of the full names of the best locations whose cleaned name
+     * matches the cleaned <code>prefix</code>, best first.
+     */
+    public List<String> getLocationsByPrefix(String prefix, int limit) {
+
+        return SEMANTIC_STREET_GRAPH.getLocationsByPrefix(prefix, limit);
+    }
+
+    /**
+     * Collect the names of the best OSM locations that prefix-match the query string
+     * with a few typos.
+     * @param prefix Prefix string to be searched for, possibly misspelled. Could be any
+     *               case, with our without punctuation.
+     * @param limit The most names to return.
+     * @return A <code>List</code> of the full names of the best locations whose cleaned name
+     * nearly matches the cleaned <code>prefix</code>, nearest first.
+     */
+    public List<String> getLocationsByFuzzyPrefix(String prefix, int limit) {
+
+        return SEMANTIC_STREET_GRAPH.getLocationsByFuzzyPrefix(prefix, limit);
+    }
+
+    /**
+     * Collect the best locations whose names contain every word of a query.
+     * @param query The words searched for. Could be any case, with our without punctuation.
+     * @param limit The most locations to return.
+     * @return A list of locations, each a map of parameters for the Json response as for
+     * <code>getLocations</code>, best first.
+     */
+    public List<Map<String, Object>> getLocationsByText(String query, int limit) {
+
+        return SEMANTIC_STREET_GRAPH.getLocationsByText(query, limit);
+    }
+
     /**
-     * In linear time, collect all the names of OSM locations that prefix-match the query string.
+     * Collect the locations nearest a point whose names prefix-match the query string.
      * @param prefix Prefix string to be searched for. Could be any case, with our without
      *               punctuation.
-     * @return A <code>List</code> of the full names of locations whose cleaned name matches the
-     * cleaned <code>prefix</code>.
+     * @param lon The longitude of the point.
+     * @param lat The latitude of the point.
+     * @param limit The most locations to return.
+     * @return A list of locations, each a map of parameters for the Json response as for
+     * <code>getLocations</code> with their "distance" in miles, nearest first.
      */
-    public List<String> getLocationsByPrefix(String prefix) {
+    public List<Map<String, Object>> getLocationsNear(String prefix, double lon, double lat, int limit) {
 
-        return SEMANTIC_STREET_GRAPH.getLocationsByPrefix(prefix);
+        return SEMANTIC_STREET_GRAPH.getLocationsNear(prefix, lon, lat, limit);
     }
 
     /**
@@ -3,8 +3,9 @@ package bearmaps.proj2c.utils;
 import bearmaps.proj2c.AugmentedStreetMapGraph;
 
 import java.awt.*;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class holding all the constant values used throughout the project
@@ -44,6 +45,13 @@ public class Constants {
     /**
      * This is used to maintain a single List of route so that the same instance(object) is accessed
      * from everywhere in the code. Enum is a cleaner way to achieve such a singleton pattern.
+     * Copy-on-write, since request threads draw it while others replace it.
      */
-    public static final List<Long> ROUTE_LIST = new LinkedList<>();
+    public static final List<Long> ROUTE_LIST = new CopyOnWriteArrayList<>();
+
+    /**
+     * Incremented after every change to ROUTE_LIST, so rasters drawn with an
+     * older route can be told apart.
+     */
+    public static final AtomicLong ROUTE_VERSION = new AtomicLong();
 }
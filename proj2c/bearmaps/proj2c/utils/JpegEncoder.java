@@ -0,0 +1,49 @@
+package bearmaps.proj2c.utils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Lossy encoding of rastered images with the JDK's JPEG writer. Much smaller
+ * and faster to write than PNG, at the cost of smudged street labels.
+ */
+public class JpegEncoder implements RasterEncoder {
+
+    private final float quality;
+
+    /**
+     * @param quality between 0, smallest, and 1, best looking
+     */
+    public JpegEncoder(float quality) {
+        if (quality < 0 || quality > 1) {
+            throw new IllegalArgumentException("quality must be between 0 and 1");
+        }
+        this.quality = quality;
+    }
+
+    @Override
+    public String mimeType() {
+        return "image/jpeg";
+    }
+
+    @Override
+    public void write(BufferedImage img, OutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package bearmaps.proj2c.utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes TYPE_INT_RGB images as 8-bit RGB PNGs, with a chosen deflate level and
+ * row filter, on all cores. The rows are cut into strips, and each strip is
+ * filtered and deflated on its own, ending on a byte boundary with a sync flush
+ * so the strips join into one zlib stream. Each strip becomes one IDAT chunk, so
+ * the encoded image is never held in one piece. Splitting costs a little size,
+ * since a strip cannot refer back into the one before it.
+ */
+public class PngEncoder implements RasterEncoder {
+
+    /** The PNG row filters, each predicting a byte from its neighbors. */
+    public enum Filter {
+        NONE, SUB, UP, AVERAGE, PAETH,
+        /** Per row, whichever filter gives the smallest sum of absolute residuals. */
+        ADAPTIVE
+    }
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    /** Rows per strip: enough to keep deflate's window mostly full. */
+    private static final int STRIP_ROWS = 32;
+    private static final int BYTES_PER_PIXEL = 3;
+    private static final int BASE = 65521;
+
+    private final int level;
+    private final Filter filter;
+
+    /**
+     * @param level deflate level, 0 (store) to 9 (smallest)
+     * @param filter the row filter to apply before deflating
+     */
+    public PngEncoder(int level, Filter filter) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("level must be between 0 and 9");
+        }
+        this.level = level;
+        this.filter = filter;
+    }
+
+    @Override
+    public String mimeType() {
+        return "image/png";
+    }
+
+    @Override
+    public void write(BufferedImage img, OutputStream out) throws IOException {
+        if (img.getType() != BufferedImage.TYPE_INT_RGB) {
+            throw new IllegalArgumentException("expected a TYPE_INT_RGB image");
+        }
+        int width = img.getWidth();
+        int height = img.getHeight();
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        int numStrips = (height + STRIP_ROWS - 1) / STRIP_ROWS;
+        Strip[] strips = IntStream.range(0, numStrips).parallel()
+                .mapToObj(s -> encodeStrip(pixels, width, height, s, s == numStrips - 1))
+                .toArray(Strip[]::new);
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8; // bits per channel
+        header[9] = 2; // truecolor
+        writeChunk(data, "IHDR", header, 0, header.length);
+
+        long adler = 1;
+        for (int s = 0; s < numStrips; s++) {
+            Strip strip = strips[s];
+            adler = combineAdler(adler, strip.adler, strip.rawLength);
+            byte[] body = strip.deflated;
+            int length = strip.deflatedLength;
+            if (s == 0 || s == numStrips - 1) {
+                // The zlib header goes before the first strip, the checksum after the last
+                int start = s == 0 ? 2 : 0;
+                int extra = (s == numStrips - 1 ? 4 : 0) + start;
+                byte[] framed = new byte[length + extra];
+                System.arraycopy(body, 0, framed, start, length);
+                if (s == 0) {
+                    framed[0] = 0x78;
+                    framed[1] = (byte) 0x9c;
+                }
+                if (s == numStrips - 1) {
+                    putInt(framed, start + length, (int) adler);
+                }
+                body = framed;
+                length = framed.length;
+            }
+            writeChunk(data, "IDAT", body, 0, length);
+        }
+        writeChunk(data, "IEND", new byte[0], 0, 0);
+        data.flush();
+    }
+
+    /** The deflated bytes of a strip, and the length and checksum of its filtered rows. */
+    private static class Strip {
+        private final byte[] deflated;
+        private final int deflatedLength;
+        private final long adler;
+        private final int rawLength;
+
+        private Strip(byte[] deflated, int deflatedLength, long adler, int rawLength) {
+            this.deflated = deflated;
+            this.deflatedLength = deflatedLength;
+            this.adler = adler;
+            this.rawLength = rawLength;
+        }
+    }
+
+    private Strip encodeStrip(int[] pixels, int width, int height, int strip, boolean last) {
+        int rowBytes = width * BYTES_PER_PIXEL;
+        int firstRow = strip * STRIP_ROWS;
+        int endRow = Math.min(height, firstRow + STRIP_ROWS);
+        byte[] raw = new byte[(endRow - firstRow) * (rowBytes + 1)];
+        byte[] prev = new byte[rowBytes];
+        byte[] cur = new byte[rowBytes];
+        byte[] scratch = new byte[rowBytes];
+        if (firstRow > 0) {
+            toBytes(pixels, (firstRow - 1) * width, width, prev);
+        }
+        for (int y = firstRow; y < endRow; y++) {
+            toBytes(pixels, y * width, width, cur);
+            int pos = (y - firstRow) * (rowBytes + 1);
+            Filter rowFilter = filter == Filter.ADAPTIVE ? bestFilter(cur, prev, scratch) : filter;
+            raw[pos] = (byte) rowFilter.ordinal();
+            applyFilter(rowFilter, cur, prev, raw, pos + 1);
+            byte[] t = prev;
+            prev = cur;
+            cur = t;
+        }
+
+        Adler32 adler = new Adler32();
+        adler.update(raw, 0, raw.length);
+
+        Deflater deflater = new Deflater(level, true);
+        deflater.setStrategy(filter == Filter.NONE ? Deflater.DEFAULT_STRATEGY : Deflater.FILTERED);
+        deflater.setInput(raw);
+        byte[] out = new byte[Math.max(64, raw.length / 4)];
+        int length = 0;
+        if (last) {
+            deflater.finish();
+        }
+        while (true) {
+            if (length == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            length += last ? deflater.deflate(out, length, out.length - length)
+                    : deflater.deflate(out, length, out.length - length, Deflater.SYNC_FLUSH);
+            // A sync flush is done once all input is taken and it leaves room to spare
+            if (last ? deflater.finished() : deflater.needsInput() && length < out.length) {
+                break;
+            }
+        }
+        deflater.end();
+        return new Strip(out, length, adler.getValue(), raw.length);
+    }
+
+    /** Unpacks WIDTH pixels starting at OFFSET into RGB bytes. */
+    private static void toBytes(int[] pixels, int offset, int width, byte[] row) {
+        for (int i = 0, j = 0; i < width; i++, j += BYTES_PER_PIXEL) {
+            int rgb = pixels[offset + i];
+            row[j] = (byte) (rgb >> 16);
+            row[j + 1] = (byte) (rgb >> 8);
+            row[j + 2] = (byte) rgb;
+        }
+    }
+
+    /** Returns the filter whose residuals for CUR have the smallest sum of magnitudes. */
+    private static Filter bestFilter(byte[] cur, byte[] prev, byte[] scratch) {
+        Filter best = Filter.NONE;
+        long bestSum = Long.MAX_VALUE;
+        for (Filter f : Filter.values()) {
+            if (f == Filter.ADAPTIVE) {
+                continue;
+            }
+            applyFilter(f, cur, prev, scratch, 0);
+            long sum = 0;
+            for (byte b : scratch) {
+                sum += Math.abs(b);
+            }
+            if (sum < bestSum) {
+                bestSum = sum;
+                best = f;
+            }
+        }
+        return best;
+    }
+
+    /** Writes the residuals of row CUR, above which is PREV, to OUT starting at POS. */
+    private static void applyFilter(Filter f, byte[] cur, byte[] prev, byte[] out, int pos) {
+        int n = cur.length;
+        switch (f) {
+            case NONE:
+                System.arraycopy(cur, 0, out, pos, n);
+                break;
+            case SUB:
+                for (int i = 0; i < n; i++) {
+                    int left = i >= BYTES_PER_PIXEL ? cur[i - BYTES_PER_PIXEL] : 0;
+                    out[pos + i] = (byte) (cur[i] - left);
+                }
+                break;
+            case UP:
+                for (int i = 0; i < n; i++) {
+                    out[pos + i] = (byte) (cur[i] - prev[i]);
+                }
+                break;
+            case AVERAGE:
+                for (int i = 0; i < n; i++) {
+                    int left = i >= BYTES_PER_PIXEL ? cur[i - BYTES_PER_PIXEL] & 0xff : 0;
+                    out[pos + i] = (byte) (cur[i] - ((left + (prev[i] & 0xff)) >> 1));
+                }
+                break;
+            case PAETH:
+                for (int i = 0; i < n; i++) {
+                    int a = i >= BYTES_PER_PIXEL ? cur[i - BYTES_PER_PIXEL] & 0xff : 0;
+                    int b = prev[i] & 0xff;
+                    int c = i >= BYTES_PER_PIXEL ? prev[i - BYTES_PER_PIXEL] & 0xff : 0;
+                    out[pos + i] = (byte) (cur[i] - paeth(a, b, c));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("not a single filter: " + f);
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    /** Returns the Adler-32 of two byte sequences joined, given each one's checksum. */
+    private static long combineAdler(long adler1, long adler2, int length2) {
+        long rem = length2 % BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % BASE;
+        sum1 += (adler2 & 0xffff) + BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + BASE - rem;
+        sum1 %= BASE;
+        sum2 %= BASE;
+        return (sum2 << 16) | sum1;
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data, int offset,
+                                   int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, offset, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, offset, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void putInt(byte[] buf, int pos, int value) {
+        buf[pos] = (byte) (value >>> 24);
+        buf[pos + 1] = (byte) (value >>> 16);
+        buf[pos + 2] = (byte) (value >>> 8);
+        buf[pos + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,88 @@
+package bearmaps.proj2c.utils;
+
+import java.util.Arrays;
+
+/**
+ * Douglas-Peucker simplification of polylines: keeps the two ends, then keeps
+ * the point farthest from the chord between two kept points whenever it is
+ * more than a tolerance away, until every dropped point is within the
+ * tolerance of the simplified line.
+ */
+public class PolylineSimplifier {
+
+    private PolylineSimplifier() {
+    }
+
+    /**
+     * Simplifies the polyline through (xs[i], ys[i]).
+     * @param xs the x coordinates of the points
+     * @param ys the y coordinates of the points
+     * @param tolerance the farthest a dropped point may be from the simplified line
+     * @return the indices of the points kept, increasing, always including the ends
+     */
+    public static int[] simplify(double[] xs, double[] ys, double tolerance) {
+        int n = xs.length;
+        if (n <= 2) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        double toleranceSq = tolerance * tolerance;
+        // Spans [first, last] still to split, as pairs, so long routes cannot overflow the call stack
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        int kept = 2;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            int farthest = -1;
+            double farthestSq = toleranceSq;
+            for (int i = first + 1; i < last; i++) {
+                double dSq = segmentDistanceSq(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+                if (dSq > farthestSq) {
+                    farthestSq = dSq;
+                    farthest = i;
+                }
+            }
+            if (farthest < 0) {
+                continue;
+            }
+            keep[farthest] = true;
+            kept++;
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top++] = first;
+            stack[top++] = farthest;
+            stack[top++] = farthest;
+            stack[top++] = last;
+        }
+        int[] indices = new int[kept];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (keep[i]) {
+                indices[j++] = i;
+            }
+        }
+        return indices;
+    }
+
+    /** Returns the squared distance from (px, py) to the segment from (ax, ay) to (bx, by). */
+    private static double segmentDistanceSq(double px, double py, double ax, double ay,
+                                            double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSq;
+        t = Math.max(0, Math.min(1, t));
+        double ex = ax + t * dx - px;
+        double ey = ay + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+}
@@ -0,0 +1,21 @@
+package bearmaps.proj2c.utils;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes a rastered map image for the front end.
+ */
+public interface RasterEncoder {
+
+    /** Returns the MIME type of the encoded images, such as image/png. */
+    String mimeType();
+
+    /**
+     * Writes an encoded image to a stream, without closing it.
+     * @param img a TYPE_INT_RGB image
+     * @param out where to write the encoded bytes
+     */
+    void write(BufferedImage img, OutputStream out) throws IOException;
+}
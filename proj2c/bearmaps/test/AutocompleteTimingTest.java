@@ -0,0 +1,89 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Times prefix searches of 1 to 3 characters, including the JSON the server
+ * sends back: every match from the trie walk against the top ten from the
+ * ranked Autocomplete index. Then times fuzzy searches for misspelled prefixes
+ * of 4 to 8 characters.
+ */
+public class AutocompleteTimingTest {
+    private static final int LIMIT = 10;
+    private static final int REPEATS = 20;
+
+    public static void main(String[] args) {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(Constants.OSM_DB_PATH);
+        Gson gson = new Gson();
+        for (int length = 1; length <= 3; length++) {
+            List<String> prefixes = prefixesOf(graph, length);
+            long[] all = time(prefixes, p -> gson.toJson(graph.getLocationsByPrefix(p)));
+            long[] ranked = time(prefixes, p -> gson.toJson(graph.getLocationsByPrefix(p, LIMIT)));
+            System.out.println(String.format("%d-character prefixes (%d):", length, prefixes.size()));
+            System.out.println(String.format("  Every match: p50 %8.1f us, p99 %8.1f us",
+                    percentile(all, 0.5), percentile(all, 0.99)));
+            System.out.println(String.format("  Top %d:      p50 %8.1f us, p99 %8.1f us",
+                    LIMIT, percentile(ranked, 0.5), percentile(ranked, 0.99)));
+        }
+
+        Random random = new Random(61);
+        List<String> typos = new ArrayList<>();
+        for (int length = 4; length <= 8; length++) {
+            for (String prefix : prefixesOf(graph, length)) {
+                // Substitute one character
+                int i = random.nextInt(length);
+                typos.add(prefix.substring(0, i) + (char) ('a' + random.nextInt(26)) + prefix.substring(i + 1));
+            }
+        }
+        long[] fuzzy = time(typos, p -> gson.toJson(graph.getLocationsByFuzzyPrefix(p, LIMIT)));
+        System.out.println(String.format("Misspelled 4- to 8-character prefixes (%d):", typos.size()));
+        System.out.println(String.format("  Fuzzy top %d: p50 %8.1f us, p99 %8.1f us, max %8.1f us",
+                LIMIT, percentile(fuzzy, 0.5), percentile(fuzzy, 0.99), percentile(fuzzy, 1)));
+    }
+
+    /** Returns the distinct prefixes of LENGTH characters of the location names. */
+    private static List<String> prefixesOf(AugmentedStreetMapGraph graph, int length) {
+        Set<String> prefixes = new LinkedHashSet<>();
+        for (int i = 0; i < graph.vertexCount(); i++) {
+            String name = graph.name(graph.idAt(i));
+            if (name == null) {
+                continue;
+            }
+            String cleaned = name.replaceAll("[^a-zA-Z ]", "").toLowerCase();
+            if (cleaned.length() >= length) {
+                prefixes.add(cleaned.substring(0, length));
+            }
+        }
+        return new ArrayList<>(prefixes);
+    }
+
+    /** Returns the nanoseconds each search took, over every repeat. */
+    private static long[] time(List<String> prefixes, Function<String, String> search) {
+        long[] nanos = new long[prefixes.size() * REPEATS];
+        int i = 0;
+        for (int r = 0; r < REPEATS; r++) {
+            for (String prefix : prefixes) {
+                long start = System.nanoTime();
+                search.apply(prefix);
+                nanos[i++] = System.nanoTime() - start;
+            }
+        }
+        return nanos;
+    }
+
+    private static double percentile(long[] nanos, double p) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.min(sorted.length - 1, p * sorted.length)] / 1e3;
+    }
+}
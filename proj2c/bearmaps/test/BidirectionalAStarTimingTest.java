@@ -0,0 +1,66 @@
+package bearmaps.test;
+
+import bearmaps.hw4.BidirectionalAStarSolver;
+import bearmaps.hw4.LongAStarSolver;
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+
+/**
+ * Compares unidirectional and bidirectional A* on a fixed set of cross-town
+ * routes on the Berkeley street map, reporting the states explored and the
+ * wall time of each query in both modes.
+ */
+public class BidirectionalAStarTimingTest {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int REPEATS = 20;
+
+    /** Start and end coordinates (lon, lat, lon, lat) of the query pairs. */
+    private static final double[][] QUERIES = {
+        {-122.2990, 37.8890, -122.2130, 37.8240},
+        {-122.2600, 37.8700, -122.2350, 37.8300},
+        {-122.2900, 37.8300, -122.2200, 37.8850},
+        {-122.2727, 37.8716, -122.2585, 37.8719},
+        {-122.2400, 37.8900, -122.2950, 37.8250},
+        {-122.2680, 37.8560, -122.2510, 37.8780},
+    };
+
+    private static String time(StreetMapGraph g, long src, long dest, RouteQueries.SolverFactory factory) {
+        ShortestPathsSolver<Long> solver = factory.solve(g, src, dest);
+        long start = System.nanoTime();
+        for (int i = 0; i < REPEATS; i++) {
+            factory.solve(g, src, dest);
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / REPEATS;
+        return String.format("%7d states %8.3f ms (%.3f mi)", solver.numStatesExplored(), millis,
+                solver.solutionWeight());
+    }
+
+    private static long closest(StreetMapGraph g, double lon, double lat) {
+        long best = g.idAt(0);
+        double bestDist = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < g.vertexCount(); i++) {
+            if (g.edgeEnd(i) == g.edgeStart(i)) {
+                continue;
+            }
+            double dist = Math.pow(g.lonAt(i) - lon, 2) + Math.pow(g.latAt(i) - lat, 2);
+            if (dist < bestDist) {
+                bestDist = dist;
+                best = g.idAt(i);
+            }
+        }
+        return best;
+    }
+
+    public static void main(String[] args) {
+        StreetMapGraph g = new StreetMapGraph(OSM_DB_PATH);
+        for (double[] q : QUERIES) {
+            long src = closest(g, q[0], q[1]);
+            long dest = closest(g, q[2], q[3]);
+            System.out.println(String.format("%d -> %d", src, dest));
+            System.out.println("  A*               " + time(g, src, dest,
+                    (graph, s, t) -> new LongAStarSolver(graph, s, t, 20)));
+            System.out.println("  Bidirectional A* " + time(g, src, dest,
+                    (graph, s, t) -> new BidirectionalAStarSolver(graph, s, t, 20)));
+        }
+    }
+}
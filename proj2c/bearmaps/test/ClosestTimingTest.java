@@ -0,0 +1,120 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+import bearmaps.proj2ab.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static bearmaps.proj2c.utils.Constants.ROOT_LRLAT;
+import static bearmaps.proj2c.utils.Constants.ROOT_LRLON;
+import static bearmaps.proj2c.utils.Constants.ROOT_ULLAT;
+import static bearmaps.proj2c.utils.Constants.ROOT_ULLON;
+
+/**
+ * Times AugmentedStreetMapGraph.closest on random points of the map, and checks
+ * its answers against scanning every road node by haversine distance. Then times
+ * closestBatch on the same points, as random points and as a trace, where each
+ * point is near the last.
+ */
+public class ClosestTimingTest {
+    private static final int NUM_QUERIES = 200000;
+    /** The scan looks at every node on every query. */
+    private static final int NUM_SCAN_QUERIES = 200;
+    /** Typical distance in degrees between successive points of a trace, about 30 feet. */
+    private static final double TRACE_STEP = 1e-4;
+    private static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(Constants.OSM_DB_PATH);
+        List<Point> roadPoints = new ArrayList<>();
+        for (int i = 0; i < graph.vertexCount(); i++) {
+            long id = graph.idAt(i);
+            if (!graph.neighbors(id).isEmpty()) {
+                roadPoints.add(new Point(graph.lon(id), graph.lat(id)));
+            }
+        }
+        Random random = new Random(61);
+        double[][] queries = new double[NUM_QUERIES][];
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            queries[q] = new double[]{ROOT_ULLON + random.nextDouble() * (ROOT_LRLON - ROOT_ULLON),
+                ROOT_LRLAT + random.nextDouble() * (ROOT_ULLAT - ROOT_LRLAT)};
+        }
+
+        // Warm up, then time
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            graph.closest(queries[q][0], queries[q][1]);
+        }
+        long start = System.nanoTime();
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            graph.closest(queries[q][0], queries[q][1]);
+        }
+        double closestMicros = (System.nanoTime() - start) / 1e3 / NUM_QUERIES;
+
+        int mismatches = 0;
+        start = System.nanoTime();
+        for (int q = 0; q < NUM_SCAN_QUERIES; q++) {
+            Point goal = new Point(queries[q][0], queries[q][1]);
+            double best = Double.POSITIVE_INFINITY;
+            for (Point p : roadPoints) {
+                best = Math.min(best, Point.distance(goal, p));
+            }
+            long id = graph.closest(goal.getX(), goal.getY());
+            double found = Point.distance(goal, new Point(graph.lon(id), graph.lat(id)));
+            if (Math.abs(found - best) > 1e-12) {
+                mismatches++;
+            }
+        }
+        double scanMicros = (System.nanoTime() - start) / 1e3 / NUM_SCAN_QUERIES;
+
+        System.out.println(String.format("%d road nodes: closest %8.2f us, scan %10.1f us, %d of %d differ",
+                roadPoints.size(), closestMicros, scanMicros, mismatches, NUM_SCAN_QUERIES));
+
+        double[] lons = new double[NUM_QUERIES];
+        double[] lats = new double[NUM_QUERIES];
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            lons[q] = queries[q][0];
+            lats[q] = queries[q][1];
+        }
+        timeBatch("random points", graph, lons, lats);
+        double[] traceLons = new double[NUM_QUERIES];
+        double[] traceLats = new double[NUM_QUERIES];
+        traceLons[0] = (ROOT_ULLON + ROOT_LRLON) / 2;
+        traceLats[0] = (ROOT_ULLAT + ROOT_LRLAT) / 2;
+        for (int q = 1; q < NUM_QUERIES; q++) {
+            double lon = traceLons[q - 1] + random.nextGaussian() * TRACE_STEP;
+            double lat = traceLats[q - 1] + random.nextGaussian() * TRACE_STEP;
+            traceLons[q] = Math.max(ROOT_ULLON, Math.min(ROOT_LRLON, lon));
+            traceLats[q] = Math.max(ROOT_LRLAT, Math.min(ROOT_ULLAT, lat));
+        }
+        timeBatch("trace", graph, traceLons, traceLats);
+    }
+
+    /** Times closestBatch against calling closest on each point in turn, and checks they agree. */
+    private static void timeBatch(String label, AugmentedStreetMapGraph graph, double[] lons, double[] lats) {
+        // Let both paths be compiled before timing them
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            graph.closestBatch(lons, lats);
+            for (int q = 0; q < lons.length; q++) {
+                graph.closest(lons[q], lats[q]);
+            }
+        }
+        long start = System.nanoTime();
+        long[] batch = graph.closestBatch(lons, lats);
+        double batchMicros = (System.nanoTime() - start) / 1e3 / lons.length;
+        start = System.nanoTime();
+        int mismatches = 0;
+        for (int q = 0; q < lons.length; q++) {
+            if (graph.closest(lons[q], lats[q]) != batch[q]) {
+                mismatches++;
+            }
+        }
+        double loopMicros = (System.nanoTime() - start) / 1e3 / lons.length;
+        System.out.println(String.format("%-14s closestBatch %8.2f us, closest in turn %8.2f us per point, "
+                + "%d differ, %d threads", label, batchMicros, loopMicros, mismatches,
+                ForkJoinPool.commonPool().getParallelism()));
+    }
+}
@@ -0,0 +1,61 @@
+package bearmaps.test;
+
+import bearmaps.hw4.ContractionHierarchy;
+import bearmaps.hw4.ContractionHierarchySolver;
+import bearmaps.hw4.LongAStarSolver;
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+
+import java.util.Arrays;
+
+/**
+ * Compares LongAStarSolver with queries on a ContractionHierarchy over thousands
+ * of random routes on the Berkeley street map. Reports the preprocessing time,
+ * p50/p99 latency of both, and any route the two disagree on.
+ */
+public class ContractionHierarchyTimingTest {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_ROUTES = 5000;
+    private static final long SEED = 61;
+
+    private static String percentiles(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("p50 %7.3f ms   p99 %7.3f ms", sorted[sorted.length / 2] / 1e6,
+                sorted[(int) (sorted.length * 0.99)] / 1e6);
+    }
+
+    public static void main(String[] args) {
+        StreetMapGraph g = new StreetMapGraph(OSM_DB_PATH);
+        long start = System.nanoTime();
+        ContractionHierarchy ch = new ContractionHierarchy(g);
+        System.out.println(String.format("Preprocessing: %.3f s, %d shortcuts for %d edges",
+                (System.nanoTime() - start) / 1e9, ch.numShortcuts(), g.edgeCount()));
+
+        long[][] queries = RouteQueries.random(g, NUM_ROUTES, SEED);
+        long[] aStarNanos = new long[queries.length];
+        long[] chNanos = new long[queries.length];
+        int mismatches = 0;
+        for (int i = 0; i < queries.length; i++) {
+            long s = queries[i][0];
+            long t = queries[i][1];
+            start = System.nanoTime();
+            ShortestPathsSolver<Long> aStar = new LongAStarSolver(g, s, t, 20);
+            aStarNanos[i] = System.nanoTime() - start;
+            start = System.nanoTime();
+            ShortestPathsSolver<Long> hierarchy = new ContractionHierarchySolver(ch, s, t, 20);
+            chNanos[i] = System.nanoTime() - start;
+
+            if (aStar.outcome() != hierarchy.outcome()
+                    || Math.abs(aStar.solutionWeight() - hierarchy.solutionWeight()) > 1e-9
+                    || !aStar.solution().equals(hierarchy.solution())) {
+                mismatches++;
+                System.out.println(String.format("Mismatch %d -> %d: %.6f vs %.6f", s, t,
+                        aStar.solutionWeight(), hierarchy.solutionWeight()));
+            }
+        }
+        System.out.println("LongAStarSolver            " + percentiles(aStarNanos));
+        System.out.println("ContractionHierarchySolver " + percentiles(chNanos));
+        System.out.println(mismatches + " of " + queries.length + " routes differ");
+    }
+}
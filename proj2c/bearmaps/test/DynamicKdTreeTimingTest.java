@@ -0,0 +1,110 @@
+package bearmaps.test;
+
+import bearmaps.proj2ab.DynamicKdTree;
+import bearmaps.proj2ab.KdTree;
+import bearmaps.proj2ab.Point;
+import bearmaps.proj2ab.PointSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times DynamicKdTree against the static KdTree on a million points: nearest
+ * queries when it starts as one tree and when it is built by inserts, and a
+ * mixed workload of queries, inserts and removes. A KdTree takes a rebuild of
+ * every point to apply a single write.
+ */
+public class DynamicKdTreeTimingTest {
+    private static final int NUM_POINTS = 1000000;
+    private static final int NUM_QUERIES = 100000;
+    private static final int NUM_MIXED_OPS = 300000;
+    /** Percent of the mixed operations that insert, and that remove. */
+    private static final int INSERT_PERCENT = 10;
+    private static final int REMOVE_PERCENT = 10;
+
+    public static void main(String[] args) {
+        Random random = new Random(61);
+        List<Point> points = randomPoints(random, NUM_POINTS);
+        List<Point> queries = randomPoints(random, NUM_QUERIES);
+
+        long start = System.nanoTime();
+        KdTree kd = new KdTree(points);
+        double buildMillis = (System.nanoTime() - start) / 1e6;
+        System.out.println(String.format("%-32s build %8.1f ms, %10.0f nearest per s",
+                "KdTree", buildMillis, nearestPerSecond(kd, queries)));
+
+        start = System.nanoTime();
+        DynamicKdTree dynamic = new DynamicKdTree(points);
+        buildMillis = (System.nanoTime() - start) / 1e6;
+        System.out.println(String.format("%-32s build %8.1f ms, %10.0f nearest per s",
+                "DynamicKdTree, from a list", buildMillis, nearestPerSecond(dynamic, queries)));
+
+        start = System.nanoTime();
+        DynamicKdTree inserted = new DynamicKdTree();
+        for (Point p : points) {
+            inserted.insert(p.getX(), p.getY());
+        }
+        buildMillis = (System.nanoTime() - start) / 1e6;
+        System.out.println(String.format("%-32s build %8.1f ms, %10.0f nearest per s, %d trees",
+                "DynamicKdTree, by inserts", buildMillis, nearestPerSecond(inserted, queries),
+                inserted.numTrees()));
+
+        // Remove only points known to be there, so every remove does its work
+        List<Point> live = new ArrayList<>(points);
+        int queryCount = 0;
+        int writeCount = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < NUM_MIXED_OPS; i++) {
+            int op = random.nextInt(100);
+            if (op < INSERT_PERCENT) {
+                Point p = randomPoint(random);
+                dynamic.insert(p.getX(), p.getY());
+                live.add(p);
+                writeCount++;
+            } else if (op < INSERT_PERCENT + REMOVE_PERCENT) {
+                int j = random.nextInt(live.size());
+                Point p = live.get(j);
+                live.set(j, live.get(live.size() - 1));
+                live.remove(live.size() - 1);
+                dynamic.remove(p.getX(), p.getY());
+                writeCount++;
+            } else {
+                Point q = queries.get(i % NUM_QUERIES);
+                dynamic.nearest(q.getX(), q.getY());
+                queryCount++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%-32s %d queries and %d writes, %10.0f ops per s, %d trees",
+                "DynamicKdTree, mixed", queryCount, writeCount, NUM_MIXED_OPS / seconds, dynamic.numTrees()));
+        System.out.println(String.format("%-32s %10.0f nearest per s",
+                "DynamicKdTree, after the mix", nearestPerSecond(dynamic, queries)));
+    }
+
+    private static double nearestPerSecond(PointSet set, List<Point> queries) {
+        // Once to warm up, once to time
+        double seconds = 0;
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (Point q : queries) {
+                set.nearest(q.getX(), q.getY());
+            }
+            seconds = (System.nanoTime() - start) / 1e9;
+        }
+        return queries.size() / seconds;
+    }
+
+    /** Returns points spread over an area about the size of Berkeley. */
+    private static List<Point> randomPoints(Random random, int n) {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            points.add(randomPoint(random));
+        }
+        return points;
+    }
+
+    private static Point randomPoint(Random random) {
+        return new Point(-122.3 + random.nextDouble() * 0.1, 37.85 + random.nextDouble() * 0.08);
+    }
+}
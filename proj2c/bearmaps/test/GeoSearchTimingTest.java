@@ -0,0 +1,79 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+import bearmaps.proj2ab.Point;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static bearmaps.proj2c.utils.Constants.ROOT_LRLAT;
+import static bearmaps.proj2c.utils.Constants.ROOT_LRLON;
+import static bearmaps.proj2c.utils.Constants.ROOT_ULLAT;
+import static bearmaps.proj2c.utils.Constants.ROOT_ULLON;
+
+/**
+ * Times finding the ten locations nearest a random point whose names start with
+ * a 1 to 3 character prefix: the PlaceIndex search against listing every match
+ * and sorting the list by distance.
+ */
+public class GeoSearchTimingTest {
+    private static final int LIMIT = 10;
+    private static final int NUM_QUERIES = 2000;
+
+    public static void main(String[] args) {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(Constants.OSM_DB_PATH);
+        for (int length = 1; length <= 3; length++) {
+            Set<String> prefixSet = new LinkedHashSet<>();
+            for (int i = 0; i < graph.vertexCount(); i++) {
+                String name = graph.name(graph.idAt(i));
+                String cleaned = name == null ? "" : name.replaceAll("[^a-zA-Z ]", "").toLowerCase();
+                if (cleaned.length() >= length) {
+                    prefixSet.add(cleaned.substring(0, length));
+                }
+            }
+            List<String> prefixes = new ArrayList<>(prefixSet);
+            Random random = new Random(61);
+            List<double[]> points = new ArrayList<>();
+            for (int q = 0; q < NUM_QUERIES; q++) {
+                points.add(new double[]{ROOT_ULLON + random.nextDouble() * (ROOT_LRLON - ROOT_ULLON),
+                    ROOT_LRLAT + random.nextDouble() * (ROOT_ULLAT - ROOT_LRLAT)});
+            }
+
+            long start = System.nanoTime();
+            for (int q = 0; q < NUM_QUERIES; q++) {
+                double[] p = points.get(q);
+                graph.getLocationsNear(prefixes.get(q % prefixes.size()), p[0], p[1], LIMIT);
+            }
+            double indexMicros = (System.nanoTime() - start) / 1e3 / NUM_QUERIES;
+
+            start = System.nanoTime();
+            for (int q = 0; q < NUM_QUERIES; q++) {
+                double[] p = points.get(q);
+                filterNearest(graph, prefixes.get(q % prefixes.size()), p[0], p[1]);
+            }
+            double filterMicros = (System.nanoTime() - start) / 1e3 / NUM_QUERIES;
+
+            System.out.println(String.format("%d-character prefixes: index %10.1f us, filter %10.1f us",
+                    length, indexMicros, filterMicros));
+        }
+    }
+
+    /** Lists every location matching PREFIX and keeps the nearest. */
+    private static List<Map<String, Object>> filterNearest(AugmentedStreetMapGraph graph, String prefix,
+                                                           double lon, double lat) {
+        List<Map<String, Object>> locations = new ArrayList<>();
+        for (String name : new LinkedHashSet<>(graph.getLocationsByPrefix(prefix))) {
+            locations.addAll(graph.getLocations(name));
+        }
+        Point point = new Point(lon, lat);
+        locations.sort((a, b) -> Double.compare(
+                Point.distance(point, new Point((double) a.get("lon"), (double) a.get("lat"))),
+                Point.distance(point, new Point((double) b.get("lon"), (double) b.get("lat")))));
+        return locations.subList(0, Math.min(LIMIT, locations.size()));
+    }
+}
@@ -0,0 +1,44 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.GraphSnapshot;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+
+import java.io.File;
+
+/**
+ * Compares loading the Berkeley street map and building its indexes from XML
+ * with loading both from a binary snapshot, as the server does on startup.
+ */
+public class GraphSnapshotTimingTest {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int REPEATS = 5;
+
+    public static void main(String[] args) throws Exception {
+        File snapshot = File.createTempFile("berkeley", GraphSnapshot.SUFFIX);
+        snapshot.deleteOnExit();
+
+        long start = System.nanoTime();
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(OSM_DB_PATH, null);
+        System.out.println(String.format("First XML load:      %8.1f ms", (System.nanoTime() - start) / 1e6));
+        start = System.nanoTime();
+        GraphSnapshot.write(g, OSM_DB_PATH, snapshot.getPath());
+        System.out.println(String.format("Snapshot write:      %8.1f ms, %d bytes",
+                (System.nanoTime() - start) / 1e6, snapshot.length()));
+
+        start = System.nanoTime();
+        new AugmentedStreetMapGraph(OSM_DB_PATH, snapshot.getPath());
+        System.out.println(String.format("First snapshot load: %8.1f ms", (System.nanoTime() - start) / 1e6));
+
+        start = System.nanoTime();
+        for (int i = 0; i < REPEATS; i++) {
+            new AugmentedStreetMapGraph(OSM_DB_PATH, null);
+        }
+        System.out.println(String.format("XML load:            %8.1f ms", (System.nanoTime() - start) / 1e6 / REPEATS));
+        start = System.nanoTime();
+        for (int i = 0; i < REPEATS; i++) {
+            new AugmentedStreetMapGraph(OSM_DB_PATH, snapshot.getPath());
+        }
+        System.out.println(String.format("Snapshot load:       %8.1f ms",
+                (System.nanoTime() - start) / 1e6 / REPEATS));
+    }
+}
@@ -0,0 +1,174 @@
+package bearmaps.test;
+
+import bearmaps.proj2ab.KdTree;
+import bearmaps.proj2ab.NaivePointSet;
+import bearmaps.proj2ab.Point;
+import bearmaps.proj2ab.PointSet;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Times building each PointSet of a million points, and its nearest queries: the
+ * median-built KdTree, the KdTree it replaced that inserted points one at a time,
+ * kept here as LegacyKdTree, and NaivePointSet. Then times the kNearest,
+ * withinRadius and inBox queries of KdTree against NaivePointSet.
+ */
+public class KdTreeTimingTest {
+    private static final int NUM_POINTS = 1000000;
+    private static final int NUM_QUERIES = 100000;
+    /** The legacy tree and the naive set scan most points on every query. */
+    private static final int NUM_SLOW_QUERIES = 50;
+    /** NaivePointSet sorts every point by distance for kNearest. */
+    private static final int NUM_NAIVE_RANGE_QUERIES = 5;
+    private static final int K = 10;
+    /** About 500 of the million points lie within this radius, and in this box. */
+    private static final double RADIUS = 0.07;
+    private static final double BOX_SIZE = 0.0022;
+
+    /** KdTree as it was before it was built by medians. */
+    private static class LegacyKdTree implements PointSet {
+        private Node root;
+
+        private static class Node {
+            private Node left;
+            private Node right;
+            private Point point;
+
+            private Node(Point p) {
+                this.point = p;
+            }
+        }
+
+        LegacyKdTree(List<Point> points) {
+            for (Point point : points) {
+                root = insert(point, root, 0);
+            }
+        }
+
+        private Node insert(Point point, Node current, int idx) {
+            if (current == null) {
+                return new Node(new Point(point.getX(), point.getY()));
+            }
+            if (compare(current.point, point, idx) > 0) {
+                current.left = insert(point, current.left, idx ^ 1);
+            } else if (compare(current.point, point, idx) < 0) {
+                current.right = insert(point, current.right, idx ^ 1);
+            }
+            return current;
+        }
+
+        // It only ever answered nearest
+        @Override
+        public List<Point> kNearest(double x, double y, int k) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Point> withinRadius(double x, double y, double r) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Point> inBox(double ulx, double uly, double lrx, double lry) {
+            throw new UnsupportedOperationException();
+        }
+
+        private static int compare(Point p1, Point p2, int idx) {
+            return idx == 0 ? Double.compare(p1.getX(), p2.getX()) : Double.compare(p1.getY(), p2.getY());
+        }
+
+        @Override
+        public Point nearest(double x, double y) {
+            return nearest(root, new Point(x, y), root, 0).point;
+        }
+
+        private Node nearest(Node current, Point goal, Node best, int idx) {
+            if (current == null) {
+                return best;
+            }
+            if (Point.distance(current.point, goal) < Point.distance(best.point, goal)) {
+                best = current;
+            }
+            boolean goodIsLeft = compare(goal, current.point, idx) < 0;
+            best = nearest(goodIsLeft ? current.left : current.right, goal, best, idx ^ 1);
+            double bestPossible = idx == 0
+                    ? Math.pow(goal.getX() - current.point.getX(), 2)
+                    : Math.pow(goal.getY() - current.point.getY(), 2);
+            if (bestPossible < Point.distance(best.point, goal)) {
+                best = nearest(goodIsLeft ? current.right : current.left, goal, best, idx ^ 1);
+            }
+            return best;
+        }
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(61);
+        List<Point> points = randomPoints(random, NUM_POINTS);
+        List<Point> queries = randomPoints(random, NUM_QUERIES);
+
+        time("KdTree", KdTree::new, points, queries, NUM_QUERIES);
+        time("LegacyKdTree", LegacyKdTree::new, points, queries, NUM_SLOW_QUERIES);
+        time("NaivePointSet", NaivePointSet::new, points, queries, NUM_SLOW_QUERIES);
+
+        // As in OSM files, where nearby nodes tend to be listed together
+        List<Point> sorted = new ArrayList<>(points);
+        sorted.sort(Comparator.comparingDouble(Point::getX));
+        time("KdTree, points sorted", KdTree::new, sorted, queries, NUM_QUERIES);
+
+        PointSet kd = new KdTree(points);
+        PointSet naive = new NaivePointSet(points);
+        timeQueries("KdTree", kd, queries, NUM_QUERIES);
+        timeQueries("NaivePointSet", naive, queries, NUM_NAIVE_RANGE_QUERIES);
+    }
+
+    /** Times kNearest, withinRadius and inBox, at about the sizes snapping and POI lookup use. */
+    private static void timeQueries(String label, PointSet set, List<Point> queries, int numQueries) {
+        long start = System.nanoTime();
+        for (int i = 0; i < numQueries; i++) {
+            set.kNearest(queries.get(i).getX(), queries.get(i).getY(), K);
+        }
+        double kNearestSeconds = (System.nanoTime() - start) / 1e9;
+        start = System.nanoTime();
+        for (int i = 0; i < numQueries; i++) {
+            set.withinRadius(queries.get(i).getX(), queries.get(i).getY(), RADIUS);
+        }
+        double radiusSeconds = (System.nanoTime() - start) / 1e9;
+        start = System.nanoTime();
+        for (int i = 0; i < numQueries; i++) {
+            double x = queries.get(i).getX();
+            double y = queries.get(i).getY();
+            set.inBox(x, y + BOX_SIZE, x + BOX_SIZE, y);
+        }
+        double boxSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%-22s %10.1f kNearest(%d), %10.1f withinRadius(%.2f mi), "
+                        + "%10.1f inBox per s", label, numQueries / kNearestSeconds, K,
+                numQueries / radiusSeconds, RADIUS, numQueries / boxSeconds));
+    }
+
+    private static void time(String label, Function<List<Point>, PointSet> factory, List<Point> points,
+                             List<Point> queries, int numQueries) {
+        long start = System.nanoTime();
+        PointSet set = factory.apply(points);
+        double buildMillis = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        for (int i = 0; i < numQueries; i++) {
+            set.nearest(queries.get(i).getX(), queries.get(i).getY());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%-22s build %8.1f ms, %10.0f nearest per s",
+                label, buildMillis, numQueries / seconds));
+    }
+
+    /** Returns points spread over an area about the size of Berkeley. */
+    private static List<Point> randomPoints(Random random, int n) {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            points.add(new Point(-122.3 + random.nextDouble() * 0.1, 37.85 + random.nextDouble() * 0.08));
+        }
+        return points;
+    }
+}
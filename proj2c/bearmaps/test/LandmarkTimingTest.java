@@ -0,0 +1,58 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarGraph;
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.LandmarkGraph;
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+
+/**
+ * Runs AStarSolver over the same random routes on the Berkeley street map with
+ * the great-circle heuristic and with landmark heuristics of increasing size.
+ * Reports the states explored, query time and any route whose weight changes,
+ * then the preprocessing time and memory used per landmark.
+ */
+public class LandmarkTimingTest {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_ROUTES = 1000;
+    private static final int[] LANDMARK_COUNTS = {4, 8, 16, 32};
+    private static final long SEED = 61;
+
+    /**
+     * Runs every query and prints a summary, counting the routes whose weight
+     * differs from REFERENCE. Fills in REFERENCE instead if it is null.
+     * @return the weight of every route found
+     */
+    private static double[] report(String label, AStarGraph<Long> graph, long[][] queries, double[] reference) {
+        double[] weights = new double[queries.length];
+        long states = 0;
+        int mismatches = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < queries.length; i++) {
+            ShortestPathsSolver<Long> solver = new AStarSolver<>(graph, queries[i][0], queries[i][1], 20);
+            states += solver.numStatesExplored();
+            weights[i] = solver.solutionWeight();
+            if (reference != null && Math.abs(reference[i] - weights[i]) > 1e-9) {
+                mismatches++;
+            }
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / queries.length;
+        System.out.println(String.format("%-14s %9.1f states/route %8.3f ms/route %d wrong", label,
+                (double) states / queries.length, millis, mismatches));
+        return weights;
+    }
+
+    public static void main(String[] args) {
+        StreetMapGraph g = new StreetMapGraph(OSM_DB_PATH);
+        long[][] queries = RouteQueries.random(g, NUM_ROUTES, SEED);
+        double[] weights = report("great-circle", g, queries, null);
+        for (int k : LANDMARK_COUNTS) {
+            long start = System.nanoTime();
+            LandmarkGraph landmarks = new LandmarkGraph(g, k);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            report(k + " landmarks", landmarks, queries, weights);
+            System.out.println(String.format("               %.3f s to preprocess, %.1f KB per landmark",
+                    seconds, landmarks.bytesPerLandmark() / 1024.0));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.LongAStarSolver;
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+
+import java.util.Arrays;
+
+/**
+ * Compares the generic AStarSolver with the primitive LongAStarSolver on the
+ * Berkeley street map. Reports dequeues per second and the p50/p99 latency
+ * of a fixed set of random routes.
+ */
+public class LongAStarSolverTimingTest {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_ROUTES = 1000;
+    private static final int WARMUP_ROUTES = 200;
+    private static final long SEED = 61;
+
+    private static void report(String label, StreetMapGraph g, long[][] queries, RouteQueries.SolverFactory factory) {
+        for (int i = 0; i < WARMUP_ROUTES; i++) {
+            factory.solve(g, queries[i][0], queries[i][1]);
+        }
+        long[] nanos = new long[queries.length];
+        long dequeues = 0;
+        long total = 0;
+        for (int i = 0; i < queries.length; i++) {
+            long start = System.nanoTime();
+            ShortestPathsSolver<Long> solver = factory.solve(g, queries[i][0], queries[i][1]);
+            nanos[i] = System.nanoTime() - start;
+            total += nanos[i];
+            dequeues += solver.numStatesExplored();
+        }
+        Arrays.sort(nanos);
+        System.out.println(String.format("%-16s %12.0f dequeues/s   p50 %7.3f ms   p99 %7.3f ms", label,
+                dequeues / (total / 1e9), nanos[nanos.length / 2] / 1e6,
+                nanos[(int) (nanos.length * 0.99)] / 1e6));
+    }
+
+    public static void main(String[] args) {
+        StreetMapGraph g = new StreetMapGraph(OSM_DB_PATH);
+        long[][] queries = RouteQueries.random(g, NUM_ROUTES, SEED);
+        report("AStarSolver", g, queries, (graph, s, t) -> new AStarSolver<>(graph, s, t, 20));
+        report("LongAStarSolver", g, queries, (graph, s, t) -> new LongAStarSolver(graph, s, t, 20));
+    }
+}
@@ -0,0 +1,34 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.OsmIngest;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+
+/**
+ * Reads the Berkeley OSM file with OsmIngest using increasing numbers of
+ * workers and reports the nodes/sec and ways/sec throughput of each run.
+ */
+public class OsmIngestTimingTest {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int REPEATS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int maxWorkers = Runtime.getRuntime().availableProcessors();
+        // Warm up the tokenizer before timing anything
+        new OsmIngest(OSM_DB_PATH).read();
+        for (int workers = 1; workers <= maxWorkers; workers *= 2) {
+            double nodesPerSecond = 0;
+            double waysPerSecond = 0;
+            double seconds = 0;
+            StreetMapGraph g = null;
+            for (int i = 0; i < REPEATS; i++) {
+                OsmIngest ingest = new OsmIngest(OSM_DB_PATH, workers);
+                g = ingest.read();
+                nodesPerSecond += ingest.nodesPerSecond() / REPEATS;
+                waysPerSecond += ingest.waysPerSecond() / REPEATS;
+                seconds += ingest.seconds() / REPEATS;
+            }
+            System.out.println(String.format("%2d workers: %8.1f ms  %12.0f nodes/s  %10.0f ways/s  (%d vertices, %d edges)",
+                    workers, seconds * 1000, nodesPerSecond, waysPerSecond, g.vertexCount(), g.edgeCount()));
+        }
+    }
+}
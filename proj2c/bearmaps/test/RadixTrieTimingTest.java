@@ -0,0 +1,76 @@
+package bearmaps.test;
+
+import bearmaps.lab9.MyTrieSet;
+import bearmaps.lab9.RadixTrieSet;
+import bearmaps.lab9.TrieSet61B;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Compares the heap taken by the location-name trie, and the time of its prefix
+ * queries, between MyTrieSet and RadixTrieSet.
+ */
+public class RadixTrieTimingTest {
+    private static final int REPEATS = 20;
+
+    public static void main(String[] args) {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(Constants.OSM_DB_PATH);
+        Set<String> names = new LinkedHashSet<>();
+        long nameBytes = 0;
+        for (int i = 0; i < graph.vertexCount(); i++) {
+            String name = graph.name(graph.idAt(i));
+            if (name != null && names.add(name.replaceAll("[^a-zA-Z ]", "").toLowerCase())) {
+                nameBytes += 2L * name.length();
+            }
+        }
+        List<String> prefixes = new ArrayList<>();
+        for (String name : names) {
+            for (int length = 1; length <= 3 && length <= name.length(); length++) {
+                prefixes.add(name.substring(0, length));
+            }
+        }
+        // Let the graph go before measuring
+        graph = null;
+        usedHeap();
+        System.out.println(String.format("%d names, %.2f MB of characters", names.size(), nameBytes / 1e6));
+        report("MyTrieSet", MyTrieSet::new, names, prefixes);
+        report("RadixTrieSet", RadixTrieSet::new, names, prefixes);
+    }
+
+    private static void report(String label, Supplier<TrieSet61B> factory, Set<String> names,
+                               List<String> prefixes) {
+        long before = usedHeap();
+        TrieSet61B trie = factory.get();
+        for (String name : names) {
+            trie.add(name);
+        }
+        long bytes = usedHeap() - before;
+
+        long found = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < REPEATS; r++) {
+            for (String prefix : prefixes) {
+                found += trie.keysWithPrefix(prefix).size();
+            }
+        }
+        double micros = (System.nanoTime() - start) / 1e3 / REPEATS / prefixes.size();
+        System.out.println(String.format("%-12s %8.2f MB, %8.2f us per prefix query (%d found)",
+                label, bytes / 1e6, micros, found / REPEATS));
+        // Keep the trie reachable until it has been measured
+        trie.clear();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
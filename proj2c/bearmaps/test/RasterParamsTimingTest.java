@@ -0,0 +1,106 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.server.handler.impl.RasterAPIHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static bearmaps.proj2c.utils.Constants.ROOT_LRLAT;
+import static bearmaps.proj2c.utils.Constants.ROOT_LRLON;
+import static bearmaps.proj2c.utils.Constants.ROOT_ULLAT;
+import static bearmaps.proj2c.utils.Constants.ROOT_ULLON;
+import static bearmaps.proj2c.utils.Constants.TILE_SIZE;
+
+/**
+ * Times the request-parameter stage of rastering, which picks the depth and the
+ * tiles: the TilePyramid lookups in RasterAPIHandler against the logarithms and
+ * string building it replaced, kept here as legacyParams.
+ */
+public class RasterParamsTimingTest {
+    private static final int NUM_QUERIES = 10000;
+    private static final int REPEATS = 20;
+
+    private static List<Map<String, Double>> randomQueries() {
+        Random random = new Random(61);
+        List<Map<String, Double>> queries = new ArrayList<>();
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            double width = (ROOT_LRLON - ROOT_ULLON) * (0.005 + random.nextDouble() * 0.5);
+            double height = width * 0.6;
+            double ullon = ROOT_ULLON + random.nextDouble() * (ROOT_LRLON - ROOT_ULLON - width);
+            double ullat = ROOT_ULLAT - random.nextDouble() * (ROOT_ULLAT - ROOT_LRLAT - height);
+            Map<String, Double> params = new HashMap<>();
+            params.put("ullon", ullon);
+            params.put("ullat", ullat);
+            params.put("lrlon", ullon + width);
+            params.put("lrlat", ullat - height);
+            params.put("w", 1200.0);
+            params.put("h", 720.0);
+            queries.add(params);
+        }
+        return queries;
+    }
+
+    /** The parameter stage as it was before TilePyramid, minus input validation. */
+    private static Map<String, Object> legacyParams(Map<String, Double> params) {
+        double ulLon = params.get("ullon");
+        double ulLat = params.get("ullat");
+        double lrLon = params.get("lrlon");
+        double lrLat = params.get("lrlat");
+        double lonDPP = (lrLon - ulLon) / params.get("w");
+        int depth = (int) Math.ceil(Math.log((ROOT_LRLON - ROOT_ULLON) / TILE_SIZE / lonDPP) / Math.log(2));
+        depth = Math.min(7, Math.max(depth, 0));
+        int n = (int) Math.pow(2, depth);
+        int startX = (int) ((ulLon - ROOT_ULLON) / (ROOT_LRLON - ROOT_ULLON) * n);
+        int endX = (int) Math.ceil((lrLon - ROOT_ULLON) / (ROOT_LRLON - ROOT_ULLON) * n) - 1;
+        int startY = (int) ((ROOT_ULLAT - ulLat) / (ROOT_ULLAT - ROOT_LRLAT) * n);
+        int endY = (int) Math.ceil((ROOT_ULLAT - lrLat) / (ROOT_ULLAT - ROOT_LRLAT) * n) - 1;
+        startX = Math.min(n - 1, Math.max(startX, 0));
+        startY = Math.min(n - 1, Math.max(startY, 0));
+        endX = Math.max(startX, Math.min(n - 1, Math.max(endX, 0)));
+        endY = Math.max(startY, Math.min(n - 1, Math.max(endY, 0)));
+        String[][] grid = new String[endY - startY + 1][];
+        for (int y = startY; y <= endY; y++) {
+            String[] row = new String[endX - startX + 1];
+            for (int x = startX; x <= endX; x++) {
+                row[x - startX] = new StringBuilder().append("d").append(depth).append("_x").append(x)
+                        .append("_y").append(y).append(".png").toString();
+            }
+            grid[y - startY] = row;
+        }
+        Map<String, Object> results = new HashMap<>();
+        results.put("depth", depth);
+        results.put("render_grid", grid);
+        results.put("query_success", true);
+        results.put("raster_ul_lon", (ROOT_ULLON - ROOT_LRLON) / (0 - n) * startX + ROOT_ULLON);
+        results.put("raster_ul_lat", (ROOT_ULLAT - ROOT_LRLAT) / (0 - n) * startY + ROOT_ULLAT);
+        results.put("raster_lr_lon", (ROOT_ULLON - ROOT_LRLON) / (0 - n) * (endX + 1) + ROOT_ULLON);
+        results.put("raster_lr_lat", (ROOT_ULLAT - ROOT_LRLAT) / (0 - n) * (endY + 1) + ROOT_ULLAT);
+        return results;
+    }
+
+    public static void main(String[] args) {
+        List<Map<String, Double>> queries = randomQueries();
+        RasterAPIHandler rasterer = new RasterAPIHandler();
+        long sink = 0;
+        for (int r = 0; r < REPEATS; r++) {
+            long start = System.nanoTime();
+            for (Map<String, Double> params : queries) {
+                sink += ((String[][]) legacyParams(params).get("render_grid")).length;
+            }
+            double legacy = (System.nanoTime() - start) / 1e3 / NUM_QUERIES;
+            start = System.nanoTime();
+            for (Map<String, Double> params : queries) {
+                sink += ((String[][]) rasterer.processRequest(params, null).get("render_grid")).length;
+            }
+            double pyramid = (System.nanoTime() - start) / 1e3 / NUM_QUERIES;
+            if (r == REPEATS - 1) {
+                System.out.println(String.format("Before: %6.3f us per request", legacy));
+                System.out.println(String.format("After:  %6.3f us per request", pyramid));
+            }
+        }
+        System.out.println("(" + sink + ")");
+    }
+}
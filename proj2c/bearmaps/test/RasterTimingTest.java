@@ -0,0 +1,83 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.TileCache;
+import bearmaps.proj2c.server.handler.impl.RasterAPIHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static bearmaps.proj2c.utils.Constants.ROOT_LRLAT;
+import static bearmaps.proj2c.utils.Constants.ROOT_LRLON;
+import static bearmaps.proj2c.utils.Constants.ROOT_ULLAT;
+import static bearmaps.proj2c.utils.Constants.ROOT_ULLON;
+
+/**
+ * Times rastering the viewports of a user panning around the map, tile loading
+ * and PNG encoding included, with the tile cache cold and then warm.
+ */
+public class RasterTimingTest {
+    private static final int NUM_REQUESTS = 50;
+
+    /** Exposes the rendering step, which the server runs when writing the response. */
+    private static class TimedRasterer extends RasterAPIHandler {
+        Object render(Map<String, Object> result) {
+            return buildJsonResponse(result);
+        }
+    }
+
+    /** Returns a user panning around at one zoom level, a random step at a time. */
+    private static List<Map<String, Double>> panningViewports(long seed) {
+        Random random = new Random(seed);
+        double width = (ROOT_LRLON - ROOT_ULLON) * 0.1;
+        double height = width * 0.6;
+        double ullon = ROOT_ULLON + (ROOT_LRLON - ROOT_ULLON - width) / 2;
+        double ullat = ROOT_ULLAT - (ROOT_ULLAT - ROOT_LRLAT - height) / 2;
+        List<Map<String, Double>> viewports = new ArrayList<>();
+        for (int i = 0; i < NUM_REQUESTS; i++) {
+            ullon = Math.min(Math.max(ullon + (random.nextDouble() - 0.5) * width * 0.5, ROOT_ULLON),
+                    ROOT_LRLON - width);
+            ullat = Math.max(Math.min(ullat + (random.nextDouble() - 0.5) * height * 0.5, ROOT_ULLAT),
+                    ROOT_LRLAT + height);
+            Map<String, Double> params = new HashMap<>();
+            params.put("ullon", ullon);
+            params.put("ullat", ullat);
+            params.put("lrlon", ullon + width);
+            params.put("lrlat", ullat - height);
+            params.put("w", 1200.0);
+            params.put("h", 720.0);
+            viewports.add(params);
+        }
+        return viewports;
+    }
+
+    private static double timeRequests(TimedRasterer rasterer, List<Map<String, Double>> viewports) {
+        long start = System.nanoTime();
+        for (Map<String, Double> params : viewports) {
+            rasterer.render(rasterer.processRequest(params, null));
+        }
+        return (System.nanoTime() - start) / 1e6 / viewports.size();
+    }
+
+    public static void main(String[] args) {
+        TimedRasterer rasterer = new TimedRasterer();
+        TileCache cache = RasterAPIHandler.tileCache();
+        // Warm up the JIT on a different set of viewports
+        timeRequests(rasterer, panningViewports(1));
+
+        List<Map<String, Double>> viewports = panningViewports(2);
+        cache.clear();
+        long hits = cache.hits();
+        long misses = cache.misses();
+        double cold = timeRequests(rasterer, viewports);
+        hits = cache.hits() - hits;
+        misses = cache.misses() - misses;
+        System.out.println(String.format("Cold cache: %8.2f ms per request, hit rate %.2f, %.2f ms per decode",
+                cold, (double) hits / (hits + misses), cache.meanDecodeMillis()));
+        double warm = timeRequests(rasterer, viewports);
+        System.out.println(String.format("Warm cache: %8.2f ms per request, %d tiles, %d MB",
+                warm, cache.size(), cache.bytes() / (1024 * 1024)));
+    }
+}
@@ -0,0 +1,79 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Router;
+import bearmaps.proj2c.server.handler.impl.RasterAPIHandler;
+import bearmaps.proj2c.server.handler.impl.RouteOverlayAPIHandler;
+import bearmaps.proj2c.utils.Constants;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Times what the front end waits for after the route changes: a fresh raster
+ * with the route drawn in, against a cached route-free raster plus the route
+ * overlay.
+ */
+public class RouteChangeTimingTest {
+    private static final int NUM_ROUTES = 30;
+
+    /** Exposes the rendering step, which the server runs when writing the response. */
+    private static class TimedRasterer extends RasterAPIHandler {
+        Object render(Map<String, Double> params) {
+            return buildJsonResponse(processRequest(params, null));
+        }
+    }
+
+    /** Exposes the overlay request. */
+    private static class TimedOverlay extends RouteOverlayAPIHandler {
+        Object overlay(int depth) {
+            Map<String, Double> params = new HashMap<>();
+            params.put("depth", (double) depth);
+            return buildJsonResponse(processRequest(params, null));
+        }
+    }
+
+    public static void main(String[] args) {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(Constants.OSM_DB_PATH);
+        Constants.SEMANTIC_STREET_GRAPH = graph;
+        TimedRasterer rasterer = new TimedRasterer();
+        TimedOverlay overlay = new TimedOverlay();
+
+        // A downtown view at depth 4
+        Map<String, Double> view = new HashMap<>();
+        view.put("ullon", -122.2798);
+        view.put("ullat", 37.8786);
+        view.put("lrlon", -122.2468);
+        view.put("lrlat", 37.8612);
+        view.put("w", 1200.0);
+        view.put("h", 720.0);
+        Map<String, Double> baseView = new HashMap<>(view);
+        baseView.put("route", 0.0);
+
+        Random random = new Random(61);
+        double rasterMillis = 0;
+        double overlayMillis = 0;
+        for (int i = 0; i < NUM_ROUTES; i++) {
+            List<Long> route = Router.shortestPath(graph,
+                    -122.2798 + random.nextDouble() * 0.033, 37.8612 + random.nextDouble() * 0.0174,
+                    -122.2798 + random.nextDouble() * 0.033, 37.8612 + random.nextDouble() * 0.0174);
+            Constants.ROUTE_LIST.clear();
+            Constants.ROUTE_LIST.addAll(route);
+            Constants.ROUTE_VERSION.incrementAndGet();
+
+            long start = System.nanoTime();
+            rasterer.render(view);
+            rasterMillis += (System.nanoTime() - start) / 1e6;
+            start = System.nanoTime();
+            rasterer.render(baseView);
+            overlay.overlay(4);
+            overlayMillis += (System.nanoTime() - start) / 1e6;
+        }
+        System.out.println(String.format("Raster with route drawn in: %8.2f ms per route change",
+                rasterMillis / NUM_ROUTES));
+        System.out.println(String.format("Base raster and overlay:    %8.2f ms per route change",
+                overlayMillis / NUM_ROUTES));
+    }
+}
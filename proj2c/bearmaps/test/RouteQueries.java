@@ -0,0 +1,42 @@
+package bearmaps.test;
+
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Helpers shared by the tests that compare shortest path solvers on a street map.
+ */
+final class RouteQueries {
+
+    /** Builds a solver for one query, so the same harness can run each kind. */
+    interface SolverFactory {
+        ShortestPathsSolver<Long> solve(StreetMapGraph g, long start, long end);
+    }
+
+    private RouteQueries() {
+    }
+
+    /**
+     * Returns N (start, end) pairs of node ids drawn from the nodes with edges,
+     * the same pairs for the same SEED.
+     */
+    static long[][] random(StreetMapGraph g, int n, long seed) {
+        List<Integer> routable = new ArrayList<>();
+        for (int i = 0; i < g.vertexCount(); i++) {
+            if (g.edgeEnd(i) > g.edgeStart(i)) {
+                routable.add(i);
+            }
+        }
+        Random random = new Random(seed);
+        long[][] queries = new long[n][2];
+        for (long[] q : queries) {
+            q[0] = g.idAt(routable.get(random.nextInt(routable.size())));
+            q[1] = g.idAt(routable.get(random.nextInt(routable.size())));
+        }
+        return queries;
+    }
+}
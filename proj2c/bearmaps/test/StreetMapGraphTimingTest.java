@@ -0,0 +1,128 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarGraph;
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compares the compact CSR street graph against the previous layout of one
+ * HashMap of nodes plus one HashMap of edge sets. Reports retained heap and the
+ * time taken to scan every adjacency list and to run a fixed set of A* routes.
+ */
+public class StreetMapGraphTimingTest {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_ROUTES = 200;
+    private static final long SEED = 61;
+
+    /** Replica of the map-backed layout used before the graph was compacted. */
+    private static class MapStreetGraph implements AStarGraph<Long> {
+        private Map<Long, double[]> coordinates = new HashMap<>();
+        private Map<Long, Set<WeightedEdge<Long>>> neighbors = new HashMap<>();
+
+        private MapStreetGraph(StreetMapGraph g) {
+            for (int i = 0; i < g.vertexCount(); i++) {
+                long id = g.idAt(i);
+                coordinates.put(id, new double[]{g.lonAt(i), g.latAt(i)});
+                Set<WeightedEdge<Long>> edgeSet = new HashSet<>();
+                for (int e = g.edgeStart(i); e < g.edgeEnd(i); e++) {
+                    WeightedEdge<Long> edge = new WeightedEdge<>(id, g.idAt(g.edgeTarget(e)), g.edgeWeight(e));
+                    edge.setName(g.edgeName(e));
+                    edgeSet.add(edge);
+                }
+                neighbors.put(id, edgeSet);
+            }
+        }
+
+        @Override
+        public List<WeightedEdge<Long>> neighbors(Long v) {
+            return new ArrayList<>(neighbors.get(v));
+        }
+
+        @Override
+        public double estimatedDistanceToGoal(Long s, Long goal) {
+            double[] sCoord = coordinates.get(s);
+            double[] goalCoord = coordinates.get(goal);
+            double phi1 = Math.toRadians(sCoord[1]);
+            double phi2 = Math.toRadians(goalCoord[1]);
+            double dphi = Math.toRadians(goalCoord[1] - sCoord[1]);
+            double dlambda = Math.toRadians(goalCoord[0] - sCoord[0]);
+            double a = Math.sin(dphi / 2.0) * Math.sin(dphi / 2.0);
+            a += Math.cos(phi1) * Math.cos(phi2) * Math.sin(dlambda / 2.0) * Math.sin(dlambda / 2.0);
+            return 3963 * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static double timeScan(AStarGraph<Long> g, StreetMapGraph ids) {
+        Stopwatch sw = new Stopwatch();
+        double sum = 0;
+        for (int i = 0; i < ids.vertexCount(); i++) {
+            for (WeightedEdge<Long> e : g.neighbors(ids.idAt(i))) {
+                sum += e.weight();
+            }
+        }
+        if (sum < 0) {
+            System.out.println(sum);
+        }
+        return sw.elapsedTime();
+    }
+
+    private static double timeRoutes(AStarGraph<Long> g, long[][] queries) {
+        Stopwatch sw = new Stopwatch();
+        for (long[] q : queries) {
+            new AStarSolver<>(g, q[0], q[1], 20);
+        }
+        return sw.elapsedTime();
+    }
+
+    public static void main(String[] args) {
+        long before = usedHeap();
+        StreetMapGraph compact = new StreetMapGraph(OSM_DB_PATH);
+        long compactBytes = usedHeap() - before;
+
+        before = usedHeap();
+        MapStreetGraph maps = new MapStreetGraph(compact);
+        long mapBytes = usedHeap() - before;
+
+        List<Integer> routable = new ArrayList<>();
+        for (int i = 0; i < compact.vertexCount(); i++) {
+            if (compact.edgeEnd(i) > compact.edgeStart(i)) {
+                routable.add(i);
+            }
+        }
+        Random random = new Random(SEED);
+        long[][] queries = new long[NUM_ROUTES][2];
+        for (long[] q : queries) {
+            q[0] = compact.idAt(routable.get(random.nextInt(routable.size())));
+            q[1] = compact.idAt(routable.get(random.nextInt(routable.size())));
+        }
+
+        System.out.println(String.format("%d vertices, %d edges", compact.vertexCount(), compact.edgeCount()));
+        System.out.println(String.format("Retained heap: maps %.1f MB, compact %.1f MB",
+                mapBytes / 1e6, compactBytes / 1e6));
+        // warm up both code paths before timing
+        timeScan(maps, compact);
+        timeScan(compact, compact);
+        System.out.println(String.format("Adjacency scan: maps %.3f s, compact %.3f s",
+                timeScan(maps, compact), timeScan(compact, compact)));
+        System.out.println(String.format("%d A* routes: maps %.3f s, compact %.3f s", NUM_ROUTES,
+                timeRoutes(maps, queries), timeRoutes(compact, queries)));
+    }
+}
@@ -0,0 +1,157 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.Autocomplete;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Tests Autocomplete against sorting every matching key. */
+public class TestAutocomplete {
+
+    @Test
+    public void testRanksByWeightThenName() {
+        Map<String, Integer> weights = new HashMap<>();
+        weights.put("starbucks", 12);
+        weights.put("safeway", 3);
+        weights.put("shattuck avenue", 3);
+        weights.put("sather gate", 1);
+        weights.put("peets coffee", 7);
+        Autocomplete autocomplete = new Autocomplete(weights, 10);
+        assertEquals(Arrays.asList("starbucks", "safeway", "shattuck avenue", "sather gate"),
+                autocomplete.complete("s", 10));
+        assertEquals(Arrays.asList("starbucks", "safeway"), autocomplete.complete("s", 2));
+        assertEquals(Arrays.asList("safeway", "sather gate"), autocomplete.complete("sa", 10));
+        assertEquals(Collections.singletonList("peets coffee"), autocomplete.complete("peets coffee", 10));
+        assertEquals(Collections.emptyList(), autocomplete.complete("peets coffees", 10));
+        assertEquals(Collections.emptyList(), autocomplete.complete("x", 10));
+        assertEquals(Arrays.asList("starbucks", "peets coffee"), autocomplete.complete("", 2));
+    }
+
+    @Test
+    public void testNeverReturnsMoreThanMax() {
+        Map<String, Integer> weights = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            weights.put("street " + i, 1);
+        }
+        Autocomplete autocomplete = new Autocomplete(weights, 5);
+        assertEquals(5, autocomplete.complete("street", 20).size());
+        assertEquals(Arrays.asList("street 0", "street 1", "street 10", "street 11", "street 12"),
+                autocomplete.complete("str", 20));
+    }
+
+    @Test
+    public void testFuzzyRanksByDistanceThenWeight() {
+        Map<String, Integer> weights = new HashMap<>();
+        weights.put("shattuck avenue", 3);
+        weights.put("shattuck square", 1);
+        weights.put("starbucks", 12);
+        weights.put("safeway", 5);
+        Autocomplete autocomplete = new Autocomplete(weights, 10);
+        assertEquals(Arrays.asList("shattuck avenue", "shattuck square"),
+                autocomplete.completeFuzzy("shatuck", 1, 10, Long.MAX_VALUE));
+        assertEquals(Arrays.asList("starbucks"), autocomplete.completeFuzzy("starbuck", 0, 10, Long.MAX_VALUE));
+        assertEquals(Arrays.asList("starbucks"), autocomplete.completeFuzzy("stabrucks", 2, 10, Long.MAX_VALUE));
+        assertEquals(Collections.emptyList(), autocomplete.completeFuzzy("sfway", 1, 10, Long.MAX_VALUE));
+        assertEquals(Arrays.asList("safeway"), autocomplete.completeFuzzy("sfway", 2, 10, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testFuzzyRandomAgainstEditDistance() {
+        Random random = new Random(61);
+        Map<String, Integer> weights = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            weights.put(randomString(random, 1 + random.nextInt(8)), random.nextInt(20));
+        }
+        Autocomplete autocomplete = new Autocomplete(weights, 15);
+        for (int i = 0; i < 200; i++) {
+            String prefix = randomString(random, random.nextInt(6));
+            int maxEdits = random.nextInt(3);
+            Map<String, Integer> distances = new HashMap<>();
+            for (String key : weights.keySet()) {
+                int distance = Integer.MAX_VALUE;
+                for (int j = 0; j <= key.length(); j++) {
+                    distance = Math.min(distance, editDistance(prefix, key.substring(0, j)));
+                }
+                if (distance <= maxEdits) {
+                    distances.put(key, distance);
+                }
+            }
+            List<String> expected = new ArrayList<>(distances.keySet());
+            expected.sort((a, b) -> !distances.get(a).equals(distances.get(b))
+                    ? distances.get(a) - distances.get(b)
+                    : weights.get(a).equals(weights.get(b)) ? a.compareTo(b) : weights.get(b) - weights.get(a));
+            int limit = 1 + random.nextInt(20);
+            assertEquals(expected.subList(0, Math.min(expected.size(), Math.min(limit, 15))),
+                    autocomplete.completeFuzzy(prefix, maxEdits, limit, Long.MAX_VALUE));
+        }
+    }
+
+    private static int editDistance(String a, String b) {
+        int[] costs = new int[b.length() + 1];
+        for (int j = 0; j < costs.length; j++) {
+            costs[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            costs[0] = i;
+            int nw = i - 1;
+            for (int j = 1; j <= b.length(); j++) {
+                int cj = Math.min(1 + Math.min(costs[j], costs[j - 1]),
+                        a.charAt(i - 1) == b.charAt(j - 1) ? nw : nw + 1);
+                nw = costs[j];
+                costs[j] = cj;
+            }
+        }
+        return costs[b.length()];
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(4)));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testRandomAgainstSorting() {
+        Random random = new Random(61);
+        Map<String, Integer> weights = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder key = new StringBuilder();
+            int length = 1 + random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                key.append((char) ('a' + random.nextInt(4)));
+            }
+            weights.put(key.toString(), random.nextInt(20));
+        }
+        Autocomplete autocomplete = new Autocomplete(weights, 15);
+        for (int i = 0; i < 200; i++) {
+            StringBuilder prefix = new StringBuilder();
+            int length = random.nextInt(4);
+            for (int j = 0; j < length; j++) {
+                prefix.append((char) ('a' + random.nextInt(4)));
+            }
+            List<String> expected = new ArrayList<>();
+            for (String key : weights.keySet()) {
+                if (key.startsWith(prefix.toString())) {
+                    expected.add(key);
+                }
+            }
+            expected.sort((a, b) -> weights.get(a).equals(weights.get(b))
+                    ? a.compareTo(b) : weights.get(b) - weights.get(a));
+            int limit = 1 + random.nextInt(20);
+            List<String> actual = autocomplete.complete(prefix.toString(), limit);
+            assertTrue(actual.size() <= 15);
+            assertEquals(expected.subList(0, Math.min(expected.size(), Math.min(limit, 15))), actual);
+        }
+    }
+}
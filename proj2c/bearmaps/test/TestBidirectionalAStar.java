@@ -0,0 +1,86 @@
+package bearmaps.test;
+
+import bearmaps.hw4.BidirectionalAStarSolver;
+import bearmaps.hw4.LongAStarSolver;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks BidirectionalAStarSolver against LongAStarSolver. */
+public class TestBidirectionalAStar {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_ROUTES = 300;
+    private static final long SEED = 61;
+    /** Two roads that never meet: 1 - 2 - 3 and 4 - 5. */
+    private static final String SPLIT_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<osm version=\"0.6\">\n"
+            + " <node id=\"1\" lat=\"38.1\" lon=\"0.1\"/>\n"
+            + " <node id=\"2\" lat=\"38.2\" lon=\"0.1\"/>\n"
+            + " <node id=\"3\" lat=\"38.3\" lon=\"0.1\"/>\n"
+            + " <node id=\"4\" lat=\"38.1\" lon=\"0.2\"/>\n"
+            + " <node id=\"5\" lat=\"38.3\" lon=\"0.2\"/>\n"
+            + " <way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/>"
+            + "<tag k=\"highway\" v=\"residential\"/></way>\n"
+            + " <way id=\"11\"><nd ref=\"4\"/><nd ref=\"5\"/><tag k=\"highway\" v=\"residential\"/></way>\n"
+            + "</osm>\n";
+    private static StreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new StreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    @Test
+    public void testRandomRoutes() {
+        for (long[] q : RouteQueries.random(graph, NUM_ROUTES, SEED)) {
+            String query = q[0] + " -> " + q[1];
+            LongAStarSolver expected = new LongAStarSolver(graph, q[0], q[1], 20);
+            BidirectionalAStarSolver actual = new BidirectionalAStarSolver(graph, q[0], q[1], 20);
+            assertEquals(query, expected.outcome(), actual.outcome());
+            assertEquals(query, expected.solutionWeight(), actual.solutionWeight(), 1e-9);
+            assertEquals(query, expected.solution(), actual.solution());
+        }
+    }
+
+    @Test
+    public void testStartIsEnd() {
+        long v = RouteQueries.random(graph, 1, SEED)[0][0];
+        BidirectionalAStarSolver solver = new BidirectionalAStarSolver(graph, v, v, 20);
+        assertEquals(SolverOutcome.SOLVED, solver.outcome());
+        assertEquals(Collections.singletonList(v), solver.solution());
+        assertEquals(0.0, solver.solutionWeight(), 0);
+    }
+
+    @Test
+    public void testUnreachable() throws Exception {
+        File source = File.createTempFile("split", ".osm.xml");
+        source.deleteOnExit();
+        Files.write(source.toPath(), SPLIT_XML.getBytes(StandardCharsets.UTF_8));
+        StreetMapGraph split = new StreetMapGraph(source.getPath(), null);
+
+        BidirectionalAStarSolver solver = new BidirectionalAStarSolver(split, 1, 5, 20);
+        assertEquals(SolverOutcome.UNSOLVABLE, solver.outcome());
+        assertTrue(solver.solution().isEmpty());
+        assertEquals(0.0, solver.solutionWeight(), 0);
+        assertEquals(new LongAStarSolver(split, 1, 5, 20).outcome(), solver.outcome());
+
+        // Still finds routes within either road
+        solver = new BidirectionalAStarSolver(split, 3, 1, 20);
+        assertEquals(SolverOutcome.SOLVED, solver.outcome());
+        assertEquals(new LongAStarSolver(split, 3, 1, 20).solution(), solver.solution());
+    }
+}
@@ -0,0 +1,125 @@
+package bearmaps.test;
+
+import bearmaps.hw4.ContractionHierarchy;
+import bearmaps.hw4.ContractionHierarchySolver;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Router;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that Router.Strategy.CONTRACTION_HIERARCHIES finds the same routes and
+ * directions as the default A* strategy, and that a hierarchy read back from
+ * ContractionHierarchy.writeTo answers as the one written.
+ */
+public class TestContractionHierarchy {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_ROUTES = 200;
+    private static final long SEED = 61;
+    /**
+     * Two routes of exactly the same length from 1 to 4, one through 2 and one
+     * through 3, mirrored across the equator, and a spur from 4 to 5.
+     */
+    private static final String TIED_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<osm version=\"0.6\">\n"
+            + " <node id=\"1\" lat=\"0.0\" lon=\"-0.01\"/>\n"
+            + " <node id=\"2\" lat=\"0.01\" lon=\"0.0\"/>\n"
+            + " <node id=\"3\" lat=\"-0.01\" lon=\"0.0\"/>\n"
+            + " <node id=\"4\" lat=\"0.0\" lon=\"0.01\"/>\n"
+            + " <node id=\"5\" lat=\"0.0\" lon=\"0.02\"/>\n"
+            + " <way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"4\"/>"
+            + "<tag k=\"highway\" v=\"residential\"/><tag k=\"name\" v=\"North Street\"/></way>\n"
+            + " <way id=\"11\"><nd ref=\"1\"/><nd ref=\"3\"/><nd ref=\"4\"/>"
+            + "<tag k=\"highway\" v=\"residential\"/><tag k=\"name\" v=\"South Street\"/></way>\n"
+            + " <way id=\"12\"><nd ref=\"4\"/><nd ref=\"5\"/>"
+            + "<tag k=\"highway\" v=\"residential\"/><tag k=\"name\" v=\"East Street\"/></way>\n"
+            + "</osm>\n";
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        // Router falls back to bidirectional A* until the hierarchy is ready
+        graph.contractionHierarchy();
+        initialized = true;
+    }
+
+    /** Routes from (lon, lat) START to END with both strategies and checks they agree. */
+    private static void checkSameRoute(AugmentedStreetMapGraph g, double[] start, double[] end) {
+        String query = Arrays.toString(start) + " -> " + Arrays.toString(end);
+        List<Long> expected = Router.shortestPath(g, start[0], start[1], end[0], end[1],
+                Router.Strategy.ASTAR);
+        List<Long> actual = Router.shortestPath(g, start[0], start[1], end[0], end[1],
+                Router.Strategy.CONTRACTION_HIERARCHIES);
+        assertEquals("Route " + query, expected, actual);
+        assertEquals("Directions " + query, directions(g, expected), directions(g, actual));
+    }
+
+    private static List<String> directions(AugmentedStreetMapGraph g, List<Long> route) {
+        List<String> directions = new ArrayList<>();
+        if (route.isEmpty()) {
+            return directions;
+        }
+        for (Router.NavigationDirection nd : Router.routeDirections(g, route)) {
+            directions.add(nd.toString());
+        }
+        return directions;
+    }
+
+    @Test
+    public void testRandomRoutes() {
+        for (long[] q : RouteQueries.random(graph, NUM_ROUTES, SEED)) {
+            checkSameRoute(graph, new double[]{graph.lon(q[0]), graph.lat(q[0])},
+                    new double[]{graph.lon(q[1]), graph.lat(q[1])});
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() {
+        ContractionHierarchy ch = graph.contractionHierarchy();
+        ByteBuffer buf = ByteBuffer.allocate(ch.serializedBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        ch.writeTo(buf);
+        assertEquals(0, buf.remaining());
+        buf.flip();
+        ContractionHierarchy read = ContractionHierarchy.readFrom(buf, graph);
+        assertEquals(0, buf.remaining());
+        assertEquals(ch.numShortcuts(), read.numShortcuts());
+        for (long[] q : RouteQueries.random(graph, NUM_ROUTES, SEED)) {
+            ContractionHierarchySolver expected = new ContractionHierarchySolver(ch, q[0], q[1], 20);
+            ContractionHierarchySolver actual = new ContractionHierarchySolver(read, q[0], q[1], 20);
+            assertEquals(expected.outcome(), actual.outcome());
+            assertEquals(expected.solution(), actual.solution());
+            assertEquals(expected.solutionWeight(), actual.solutionWeight(), 0);
+        }
+    }
+
+    @Test
+    public void testTiedRoutes() throws Exception {
+        File source = File.createTempFile("tied", ".osm.xml");
+        source.deleteOnExit();
+        Files.write(source.toPath(), TIED_XML.getBytes(StandardCharsets.UTF_8));
+        AugmentedStreetMapGraph tied = new AugmentedStreetMapGraph(source.getPath());
+        tied.contractionHierarchy();
+        double[][] nodes = {{-0.01, 0.0}, {0.0, 0.01}, {0.0, -0.01}, {0.01, 0.0}, {0.02, 0.0}};
+        for (double[] start : nodes) {
+            for (double[] end : nodes) {
+                checkSameRoute(tied, start, end);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package bearmaps.test;
+
+import bearmaps.hw4.DistanceMatrix;
+import bearmaps.hw4.LongAStarSolver;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Router;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks Router.distanceMatrix against one A* search per pair, and the Dijkstra
+ * fallback it uses before the contraction hierarchy is ready against the hierarchy.
+ */
+public class TestDistanceMatrix {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_STARTS = 12;
+    private static final int NUM_DESTS = 15;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    private static double[][] randomLocations(Random random, int n) {
+        double[][] locations = new double[n][];
+        for (int i = 0; i < n; i++) {
+            locations[i] = new double[]{-122.2998 + random.nextDouble() * 0.0879,
+                    37.8228 + random.nextDouble() * 0.0694};
+        }
+        return locations;
+    }
+
+    @Test
+    public void testMatchesAStar() {
+        Random random = new Random(61);
+        double[][] starts = randomLocations(random, NUM_STARTS);
+        double[][] dests = randomLocations(random, NUM_DESTS);
+        double[][] distances = Router.distanceMatrix(graph, starts, dests);
+        assertEquals(NUM_STARTS, distances.length);
+        for (int i = 0; i < NUM_STARTS; i++) {
+            assertEquals(NUM_DESTS, distances[i].length);
+            long start = graph.closest(starts[i][0], starts[i][1]);
+            for (int j = 0; j < NUM_DESTS; j++) {
+                long dest = graph.closest(dests[j][0], dests[j][1]);
+                LongAStarSolver solver = new LongAStarSolver(graph, start, dest, 20);
+                double expected = solver.outcome() == SolverOutcome.SOLVED
+                        ? solver.solutionWeight() : Double.POSITIVE_INFINITY;
+                assertEquals("Distance " + i + " -> " + j, expected, distances[i][j], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testDijkstraMatchesHierarchy() {
+        Random random = new Random(62);
+        long[] sources = new long[NUM_STARTS];
+        long[] targets = new long[NUM_DESTS];
+        for (int i = 0; i < NUM_STARTS; i++) {
+            double[] location = randomLocations(random, 1)[0];
+            sources[i] = graph.closest(location[0], location[1]);
+        }
+        for (int j = 0; j < NUM_DESTS; j++) {
+            double[] location = randomLocations(random, 1)[0];
+            targets[j] = graph.closest(location[0], location[1]);
+        }
+        // A repeated target, and a source that is also a target
+        targets[1] = targets[0];
+        sources[0] = targets[2];
+        double[][] expected = DistanceMatrix.compute(graph.contractionHierarchy(), sources, targets);
+        double[][] actual = DistanceMatrix.computeByDijkstra(graph, sources, targets);
+        for (int i = 0; i < NUM_STARTS; i++) {
+            for (int j = 0; j < NUM_DESTS; j++) {
+                assertEquals("Distance " + i + " -> " + j, expected[i][j], actual[i][j], 1e-9);
+            }
+        }
+        assertEquals(0.0, actual[0][2], 0);
+    }
+
+    @Test
+    public void testSameStartAndDest() {
+        double[][] locations = {{-122.2585, 37.8719}, {-122.2727, 37.8716}};
+        double[][] distances = Router.distanceMatrix(graph, locations, locations);
+        assertEquals(0.0, distances[0][0], 0);
+        assertEquals(0.0, distances[1][1], 0);
+        assertEquals(distances[0][1], distances[1][0], 1e-9);
+    }
+}
@@ -0,0 +1,116 @@
+package bearmaps.test;
+
+import bearmaps.proj2ab.DynamicKdTree;
+import bearmaps.proj2ab.NaivePointSet;
+import bearmaps.proj2ab.Point;
+import bearmaps.proj2ab.PointSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Tests DynamicKdTree against a NaivePointSet of the same points. */
+public class TestDynamicKdTree {
+
+    @Test
+    public void testSimple() {
+        DynamicKdTree tree = new DynamicKdTree();
+        assertNull(tree.nearest(-122.25, 37.87));
+        tree.insert(-122.26, 37.87);
+        tree.insert(-122.24, 37.86);
+        tree.insert(-122.24, 37.86);
+        assertEquals(3, tree.size());
+        assertEquals(new Point(-122.24, 37.86), tree.nearest(-122.2, 37.8));
+        assertTrue(tree.remove(-122.24, 37.86));
+        assertEquals(new Point(-122.24, 37.86), tree.nearest(-122.2, 37.8));
+        assertTrue(tree.remove(-122.24, 37.86));
+        assertFalse(tree.remove(-122.24, 37.86));
+        assertEquals(new Point(-122.26, 37.87), tree.nearest(-122.2, 37.8));
+        assertTrue(tree.remove(-122.26, 37.87));
+        assertEquals(0, tree.size());
+        assertNull(tree.nearest(-122.25, 37.87));
+    }
+
+    @Test
+    public void testInsertsAgainstNaive() {
+        Random random = new Random(61);
+        DynamicKdTree tree = new DynamicKdTree();
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Point p = randomPoint(random);
+            tree.insert(p.getX(), p.getY());
+            points.add(p);
+            if (i % 500 == 499) {
+                checkAgainstNaive(random, tree, points);
+            }
+        }
+        // One tree per bit of the number of points
+        assertEquals(Integer.bitCount(5000), tree.numTrees());
+    }
+
+    @Test
+    public void testMixedAgainstNaive() {
+        Random random = new Random(61);
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            points.add(randomPoint(random));
+        }
+        DynamicKdTree tree = new DynamicKdTree(points);
+        for (int i = 0; i < 20000; i++) {
+            if (random.nextInt(3) > 0 && !points.isEmpty()) {
+                Point p = points.remove(random.nextInt(points.size()));
+                assertTrue(tree.remove(p.getX(), p.getY()));
+            } else {
+                Point p = randomPoint(random);
+                tree.insert(p.getX(), p.getY());
+                points.add(p);
+            }
+            if (i % 1000 == 999) {
+                assertEquals(points.size(), tree.size());
+                checkAgainstNaive(random, tree, points);
+            }
+        }
+        assertFalse(tree.remove(-100, 10));
+    }
+
+    private static void checkAgainstNaive(Random random, PointSet tree, List<Point> points) {
+        PointSet naive = new NaivePointSet(points);
+        for (int i = 0; i < 50; i++) {
+            Point p = randomPoint(random);
+            if (points.isEmpty()) {
+                assertNull(tree.nearest(p.getX(), p.getY()));
+                continue;
+            }
+            // Compare distances, as ties may come out either way
+            assertEquals(Point.distance(p, naive.nearest(p.getX(), p.getY())),
+                    Point.distance(p, tree.nearest(p.getX(), p.getY())), 1e-12);
+            List<Point> expected = naive.kNearest(p.getX(), p.getY(), 5);
+            List<Point> actual = tree.kNearest(p.getX(), p.getY(), 5);
+            assertEquals(expected.size(), actual.size());
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(Point.distance(p, expected.get(j)), Point.distance(p, actual.get(j)), 1e-12);
+            }
+            assertEquals(sorted(naive.withinRadius(p.getX(), p.getY(), 0.3)),
+                    sorted(tree.withinRadius(p.getX(), p.getY(), 0.3)));
+            assertEquals(sorted(naive.inBox(p.getX(), p.getY() + 0.01, p.getX() + 0.01, p.getY())),
+                    sorted(tree.inBox(p.getX(), p.getY() + 0.01, p.getX() + 0.01, p.getY())));
+        }
+    }
+
+    private static List<Point> sorted(List<Point> points) {
+        List<Point> result = new ArrayList<>(points);
+        result.sort(Comparator.comparingDouble(Point::getX).thenComparingDouble(Point::getY));
+        return result;
+    }
+
+    private static Point randomPoint(Random random) {
+        return new Point(-122.3 + random.nextDouble() * 0.1, 37.85 + random.nextDouble() * 0.08);
+    }
+}
@@ -0,0 +1,124 @@
+package bearmaps.test;
+
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.GraphSnapshot;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Router;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+import static bearmaps.proj2c.utils.Constants.ROOT_LRLAT;
+import static bearmaps.proj2c.utils.Constants.ROOT_LRLON;
+import static bearmaps.proj2c.utils.Constants.ROOT_ULLAT;
+import static bearmaps.proj2c.utils.Constants.ROOT_ULLON;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round-trips the tiny graph through a snapshot and checks that the loaded
+ * graph matches the one parsed from XML, and checks that the Berkeley graph
+ * answers searches and routes the same with indexes loaded from a snapshot as
+ * with indexes built from the XML.
+ */
+public class TestGraphSnapshot {
+    private static final String OSM_DB_PATH_TINY = "../library-sp19/data/proj2c_xml/tiny-clean.osm.xml";
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        File snapshot = File.createTempFile("tiny", GraphSnapshot.SUFFIX);
+        snapshot.deleteOnExit();
+        StreetMapGraph fromXML = new StreetMapGraph(OSM_DB_PATH_TINY, null);
+        GraphSnapshot.write(fromXML, OSM_DB_PATH_TINY, snapshot.getPath());
+        assertTrue(GraphSnapshot.isFresh(OSM_DB_PATH_TINY, snapshot.getPath()));
+
+        StreetMapGraph fromSnapshot = GraphSnapshot.read(snapshot.getPath());
+        assertEquals(fromXML, fromSnapshot);
+        assertEquals(fromXML.vertexCount(), fromSnapshot.vertexCount());
+        assertEquals(fromXML.edgeCount(), fromSnapshot.edgeCount());
+        for (int i = 0; i < fromXML.vertexCount(); i++) {
+            long id = fromXML.idAt(i);
+            assertEquals(id, fromSnapshot.idAt(i));
+            assertEquals(fromXML.lon(id), fromSnapshot.lon(id), 0);
+            assertEquals(fromXML.lat(id), fromSnapshot.lat(id), 0);
+            assertEquals(fromXML.name(id), fromSnapshot.name(id));
+            List<WeightedEdge<Long>> expected = fromXML.neighbors(id);
+            List<WeightedEdge<Long>> actual = fromSnapshot.neighbors(id);
+            assertEquals(expected.size(), actual.size());
+            for (int e = 0; e < expected.size(); e++) {
+                assertEquals(expected.get(e).to(), actual.get(e).to());
+                assertEquals(expected.get(e).weight(), actual.get(e).weight(), 0);
+                assertEquals(expected.get(e).getName(), actual.get(e).getName());
+            }
+        }
+    }
+
+    @Test
+    public void testIndexesRoundTrip() throws Exception {
+        File snapshot = File.createTempFile("berkeley", GraphSnapshot.SUFFIX);
+        File bare = File.createTempFile("berkeley", GraphSnapshot.SUFFIX);
+        snapshot.deleteOnExit();
+        bare.deleteOnExit();
+        AugmentedStreetMapGraph fromXML = new AugmentedStreetMapGraph(OSM_DB_PATH, null);
+        fromXML.contractionHierarchy();
+        GraphSnapshot.write(fromXML, OSM_DB_PATH, snapshot.getPath());
+        GraphSnapshot.write(new StreetMapGraph(OSM_DB_PATH, null), OSM_DB_PATH, bare.getPath());
+        // The cleaned names, the k-d tree and the hierarchy are stored after the graph
+        assertTrue(snapshot.length() > bare.length());
+        GraphSnapshot.read(snapshot.getPath());
+
+        AugmentedStreetMapGraph fromSnapshot = new AugmentedStreetMapGraph(OSM_DB_PATH, snapshot.getPath());
+        Random random = new Random(7);
+        for (int q = 0; q < 1000; q++) {
+            double lon = ROOT_ULLON + random.nextDouble() * (ROOT_LRLON - ROOT_ULLON);
+            double lat = ROOT_LRLAT + random.nextDouble() * (ROOT_ULLAT - ROOT_LRLAT);
+            assertEquals(fromXML.closest(lon, lat), fromSnapshot.closest(lon, lat));
+            assertEquals(fromXML.closest(lon, lat, 5), fromSnapshot.closest(lon, lat, 5));
+        }
+        assertEquals(fromXML.contractionHierarchy().numShortcuts(),
+                fromSnapshot.contractionHierarchy().numShortcuts());
+        for (long[] q : RouteQueries.random(fromXML, 100, 7)) {
+            double[] start = {fromXML.lon(q[0]), fromXML.lat(q[0])};
+            double[] end = {fromXML.lon(q[1]), fromXML.lat(q[1])};
+            assertEquals(Router.shortestPath(fromXML, start[0], start[1], end[0], end[1],
+                    Router.Strategy.CONTRACTION_HIERARCHIES),
+                    Router.shortestPath(fromSnapshot, start[0], start[1], end[0], end[1],
+                    Router.Strategy.CONTRACTION_HIERARCHIES));
+        }
+        for (int v = 0; v < fromXML.vertexCount(); v++) {
+            String name = fromXML.name(fromXML.idAt(v));
+            if (name == null || name.isEmpty()) {
+                continue;
+            }
+            assertEquals(fromXML.getLocations(name), fromSnapshot.getLocations(name));
+            String prefix = name.substring(0, Math.min(2, name.length()));
+            assertEquals(fromXML.getLocationsByPrefix(prefix), fromSnapshot.getLocationsByPrefix(prefix));
+            assertEquals(fromXML.getLocationsByPrefix(prefix, 10), fromSnapshot.getLocationsByPrefix(prefix, 10));
+            assertEquals(fromXML.getLocationsByText(name, 10), fromSnapshot.getLocationsByText(name, 10));
+            assertEquals(fromXML.getLocationsNear(prefix, fromXML.lonAt(v), fromXML.latAt(v), 10),
+                    fromSnapshot.getLocationsNear(prefix, fromXML.lonAt(v), fromXML.latAt(v), 10));
+        }
+    }
+
+    @Test
+    public void testStaleSnapshotIsIgnored() throws Exception {
+        File source = File.createTempFile("tiny", ".osm.xml");
+        File snapshot = File.createTempFile("tiny", GraphSnapshot.SUFFIX);
+        source.deleteOnExit();
+        snapshot.deleteOnExit();
+        StreetMapGraph fromXML = new StreetMapGraph(OSM_DB_PATH_TINY, null);
+        GraphSnapshot.write(fromXML, source.getPath(), snapshot.getPath());
+        assertTrue(GraphSnapshot.isFresh(source.getPath(), snapshot.getPath()));
+
+        // The snapshot records the source's length and timestamp; any edit makes it stale
+        java.nio.file.Files.write(source.toPath(), new byte[]{'\n'});
+        assertFalse(GraphSnapshot.isFresh(source.getPath(), snapshot.getPath()));
+        assertFalse(GraphSnapshot.isFresh(OSM_DB_PATH_TINY, snapshot.getPath() + ".missing"));
+    }
+}
@@ -0,0 +1,251 @@
+package bearmaps.test;
+
+import bearmaps.proj2ab.KdTree;
+import bearmaps.proj2ab.NaivePointSet;
+import bearmaps.proj2ab.Point;
+import bearmaps.proj2ab.PointSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Tests KdTree against NaivePointSet. */
+public class TestKdTree {
+
+    @Test
+    public void testSimple() {
+        Point p1 = new Point(-122.26, 37.87);
+        Point p2 = new Point(-122.25, 37.88);
+        Point p3 = new Point(-122.25, 37.88);
+        Point p4 = new Point(-122.24, 37.86);
+        List<Point> points = List.of(p1, p2, p3, p4);
+        KdTree kd = new KdTree(points);
+        assertEquals(p2, kd.nearest(-122.251, 37.881));
+        assertEquals(p4, kd.nearest(-122.2, 37.8));
+        assertEquals(p1, kd.nearest(-122.26, 37.87));
+    }
+
+    @Test
+    public void testRandomAgainstNaive() {
+        Random random = new Random(61);
+        List<Point> points = randomPoints(random, 20000);
+        checkAgainstNaive(random, points);
+    }
+
+    @Test
+    public void testSortedAgainstNaive() {
+        // OSM lists nodes roughly in order; the tree must not degrade
+        Random random = new Random(61);
+        List<Point> points = randomPoints(random, 20000);
+        points.sort(Comparator.comparingDouble(Point::getX).thenComparingDouble(Point::getY));
+        checkAgainstNaive(random, points);
+    }
+
+    @Test
+    public void testGridAgainstNaive() {
+        // Many points share each coordinate
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            for (int j = 0; j < 60; j++) {
+                points.add(new Point(-122.3 + i * 0.001, 37.85 + j * 0.001));
+            }
+        }
+        checkAgainstNaive(new Random(61), points);
+    }
+
+    private static void checkAgainstNaive(Random random, List<Point> points) {
+        PointSet kd = new KdTree(points);
+        PointSet naive = new NaivePointSet(points);
+        for (Point p : randomPoints(random, 500)) {
+            Point expected = naive.nearest(p.getX(), p.getY());
+            Point actual = kd.nearest(p.getX(), p.getY());
+            // Compare distances, as ties may come out either way
+            assertEquals(Point.distance(p, expected), Point.distance(p, actual), 1e-12);
+        }
+    }
+
+    @Test
+    public void testWideAreaAgainstNaive() {
+        // Far from the equator a degree of longitude is short, and near the poles very short
+        Random random = new Random(61);
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            points.add(new Point(-150 + random.nextDouble() * 170, -89 + random.nextDouble() * 178));
+        }
+        checkWideAreaAgainstNaive(random, points, -150, 170);
+    }
+
+    @Test
+    public void testAntimeridian() {
+        // The nearest point is across the antimeridian, beyond a split the goal is left of
+        List<Point> points = List.of(new Point(-175, 0), new Point(-170, 0), new Point(179.9, 0));
+        PointSet kd = new KdTree(points);
+        assertEquals(new Point(179.9, 0), kd.nearest(-179.9, 0));
+        assertEquals(List.of(new Point(179.9, 0)), kd.kNearest(-179.9, 0, 1));
+        assertEquals(List.of(new Point(179.9, 0)), kd.withinRadius(-179.9, 0, 50));
+        // And the same from the other side
+        PointSet mirrored = new KdTree(List.of(new Point(175, 0), new Point(170, 0), new Point(-179.9, 0)));
+        assertEquals(new Point(-179.9, 0), mirrored.nearest(179.9, 0));
+
+        Random random = new Random(61);
+        List<Point> straddling = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            double x = 170 + random.nextDouble() * 20;
+            straddling.add(new Point(x > 180 ? x - 360 : x, -60 + random.nextDouble() * 120));
+        }
+        checkWideAreaAgainstNaive(random, straddling, 160, 40);
+    }
+
+    /**
+     * Checks nearest, kNearest and withinRadius against NaivePointSet for goals with
+     * x from minX to minX + width, taken back into [-180, 180]
+     */
+    private static void checkWideAreaAgainstNaive(Random random, List<Point> points, double minX,
+                                                  double width) {
+        PointSet kd = new KdTree(points);
+        PointSet naive = new NaivePointSet(points);
+        for (int i = 0; i < 100; i++) {
+            double x = minX + random.nextDouble() * width;
+            Point p = new Point(x > 180 ? x - 360 : x, -90 + random.nextDouble() * 180);
+            Point expected = naive.nearest(p.getX(), p.getY());
+            Point actual = kd.nearest(p.getX(), p.getY());
+            assertEquals(Point.distance(p, expected), Point.distance(p, actual), 1e-9);
+            List<Point> expectedK = naive.kNearest(p.getX(), p.getY(), 5);
+            List<Point> actualK = kd.kNearest(p.getX(), p.getY(), 5);
+            for (int j = 0; j < 5; j++) {
+                assertEquals(Point.distance(p, expectedK.get(j)), Point.distance(p, actualK.get(j)), 1e-9);
+            }
+            assertEquals(sorted(naive.withinRadius(p.getX(), p.getY(), 300)),
+                    sorted(kd.withinRadius(p.getX(), p.getY(), 300)));
+        }
+    }
+
+    @Test
+    public void testNearestIndices() {
+        Random random = new Random(61);
+        List<Point> points = randomPoints(random, 20000);
+        KdTree kd = new KdTree(points);
+        List<Point> goals = randomPoints(random, 5000);
+        double[] x = new double[goals.size()];
+        double[] y = new double[goals.size()];
+        for (int i = 0; i < goals.size(); i++) {
+            x[i] = goals.get(i).getX();
+            y[i] = goals.get(i).getY();
+        }
+        int[] indices = kd.nearestIndices(x, y);
+        assertEquals(goals.size(), indices.length);
+        for (int i = 0; i < goals.size(); i++) {
+            assertEquals(kd.nearestIndex(x[i], y[i]), indices[i]);
+            assertEquals(kd.nearest(x[i], y[i]), points.get(indices[i]));
+        }
+        assertEquals(0, kd.nearestIndices(new double[0], new double[0]).length);
+        // All goals at one place
+        int[] same = kd.nearestIndices(new double[]{x[0], x[0]}, new double[]{y[0], y[0]});
+        assertEquals(indices[0], same[0]);
+        assertEquals(indices[0], same[1]);
+    }
+
+    @Test
+    public void testRangeIndices() {
+        Random random = new Random(61);
+        List<Point> points = new ArrayList<>(randomPoints(random, 2000));
+        // Points at the same place are told apart by index
+        points.add(new Point(-122.25, 37.87));
+        points.add(new Point(-122.25, 37.87));
+        KdTree kd = new KdTree(points);
+        int[] nearest = kd.kNearestIndices(-122.25, 37.87, 2);
+        assertEquals(2, nearest.length);
+        assertEquals(points.size() - 1, Math.max(nearest[0], nearest[1]));
+        assertEquals(points.size() - 2, Math.min(nearest[0], nearest[1]));
+        for (Point p : randomPoints(random, 50)) {
+            List<Point> expected = kd.kNearest(p.getX(), p.getY(), 10);
+            int[] indices = kd.kNearestIndices(p.getX(), p.getY(), 10);
+            assertEquals(expected.size(), indices.length);
+            for (int i = 0; i < indices.length; i++) {
+                assertEquals(expected.get(i), points.get(indices[i]));
+            }
+            List<Point> within = new ArrayList<>();
+            for (int i : kd.withinRadiusIndices(p.getX(), p.getY(), 0.3)) {
+                within.add(points.get(i));
+            }
+            assertEquals(sorted(kd.withinRadius(p.getX(), p.getY(), 0.3)), sorted(within));
+        }
+    }
+
+    @Test
+    public void testKNearestAgainstNaive() {
+        Random random = new Random(61);
+        List<Point> points = randomPoints(random, 2000);
+        PointSet kd = new KdTree(points);
+        PointSet naive = new NaivePointSet(points);
+        for (int k : new int[]{1, 2, 10, 100}) {
+            for (Point p : randomPoints(random, 25)) {
+                List<Point> expected = naive.kNearest(p.getX(), p.getY(), k);
+                List<Point> actual = kd.kNearest(p.getX(), p.getY(), k);
+                assertEquals(k, actual.size());
+                for (int i = 0; i < k; i++) {
+                    assertEquals(Point.distance(p, expected.get(i)), Point.distance(p, actual.get(i)), 1e-12);
+                }
+            }
+        }
+        // Asking for more points than there are returns them all
+        PointSet small = new KdTree(points.subList(0, 5));
+        assertEquals(5, small.kNearest(-122.25, 37.87, 10).size());
+        assertEquals(0, small.kNearest(-122.25, 37.87, 0).size());
+    }
+
+    @Test
+    public void testWithinRadiusAgainstNaive() {
+        Random random = new Random(61);
+        List<Point> points = randomPoints(random, 20000);
+        PointSet kd = new KdTree(points);
+        PointSet naive = new NaivePointSet(points);
+        for (double r : new double[]{0, 0.05, 0.3, 2, 100}) {
+            for (Point p : randomPoints(random, 50)) {
+                assertEquals(sorted(naive.withinRadius(p.getX(), p.getY(), r)),
+                        sorted(kd.withinRadius(p.getX(), p.getY(), r)));
+            }
+        }
+    }
+
+    @Test
+    public void testInBoxAgainstNaive() {
+        Random random = new Random(61);
+        List<Point> points = new ArrayList<>(randomPoints(random, 20000));
+        // Points on the edges of the box are in it
+        points.add(new Point(-122.28, 37.86));
+        points.add(new Point(-122.26, 37.88));
+        PointSet kd = new KdTree(points);
+        PointSet naive = new NaivePointSet(points);
+        List<Point> edges = kd.inBox(-122.28, 37.88, -122.26, 37.86);
+        assertEquals(sorted(naive.inBox(-122.28, 37.88, -122.26, 37.86)), sorted(edges));
+        assertTrue(edges.contains(new Point(-122.28, 37.86)));
+        assertTrue(edges.contains(new Point(-122.26, 37.88)));
+        for (int i = 0; i < 200; i++) {
+            double ulx = -122.3 + random.nextDouble() * 0.1;
+            double lry = 37.85 + random.nextDouble() * 0.08;
+            double lrx = ulx + random.nextDouble() * 0.03;
+            double uly = lry + random.nextDouble() * 0.03;
+            assertEquals(sorted(naive.inBox(ulx, uly, lrx, lry)), sorted(kd.inBox(ulx, uly, lrx, lry)));
+        }
+    }
+
+    private static List<Point> sorted(List<Point> points) {
+        List<Point> result = new ArrayList<>(points);
+        result.sort(Comparator.comparingDouble(Point::getX).thenComparingDouble(Point::getY));
+        return result;
+    }
+
+    private static List<Point> randomPoints(Random random, int n) {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            points.add(new Point(-122.3 + random.nextDouble() * 0.1, 37.85 + random.nextDouble() * 0.08));
+        }
+        return points;
+    }
+}
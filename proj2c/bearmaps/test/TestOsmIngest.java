@@ -0,0 +1,323 @@
+package bearmaps.test;
+
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.OsmIngest;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the graphs OsmIngest reads against the SAX handler it replaced, on a
+ * generated file of several batches with entities, comments, duplicate node ids,
+ * references to missing nodes and a way longer than a batch, and on small files
+ * with hand-checked graphs.
+ */
+public class TestOsmIngest {
+    private static final int NUM_NODES = 40000;
+    private static final int NUM_WAYS = 8000;
+    /** OsmIngest reads the file in batches of this many bytes. */
+    private static final int BATCH_BYTES = 1 << 20;
+    private static final String[] HIGHWAYS = {"residential", "primary", "tertiary_link", "footway",
+        "service", "living_street"};
+    private static final String[] NAMES = {"Shattuck Avenue", "Ben &amp; Jerry&apos;s", "&lt;Oxford&gt; St",
+        "&quot;The&quot; Alley", "Caf&#233; Way", "Smile &#x263A; Row", "Tab\tand\nnewline  Road",
+        "Haste  Street", "Semi;colon &amp;amp; Lane"};
+
+    private static File generated;
+
+    /** The graph GraphBuildingHandler built, which OsmIngest should match. */
+    private static class ReferenceGraph extends DefaultHandler {
+        private static final Set<String> ALLOWED_HIGHWAY_TYPES = new HashSet<>(Arrays.asList
+                ("motorway", "trunk", "primary", "secondary", "tertiary", "unclassified",
+                        "residential", "living_street", "motorway_link", "trunk_link", "primary_link",
+                        "secondary_link", "tertiary_link"));
+        private final Map<Long, double[]> coordinates = new HashMap<>();
+        private final Map<Long, String> names = new HashMap<>();
+        /** "target|way name" of every edge out of each node, duplicates and all. */
+        private final Map<Long, List<String>> edges = new HashMap<>();
+
+        private String activeState = "";
+        private long nodeId;
+        private double[] nodeCoordinates;
+        private String nodeName;
+        private boolean validWay = false;
+        private List<Long> nodePath = new ArrayList<>();
+        private String wayName = "";
+
+        static ReferenceGraph read(File file) throws Exception {
+            ReferenceGraph graph = new ReferenceGraph();
+            SAXParserFactory.newInstance().newSAXParser().parse(file, graph);
+            // Drop nodes with neither edges nor a name
+            for (long id : new ArrayList<>(graph.coordinates.keySet())) {
+                if (graph.edges.get(id).isEmpty() && graph.names.get(id) == null) {
+                    graph.coordinates.remove(id);
+                    graph.names.remove(id);
+                    graph.edges.remove(id);
+                }
+            }
+            return graph;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (qName.equals("node")) {
+                activeState = "node";
+                nodeId = Long.parseLong(attributes.getValue("id"));
+                nodeCoordinates = new double[]{Double.parseDouble(attributes.getValue("lon")),
+                    Double.parseDouble(attributes.getValue("lat"))};
+                nodeName = null;
+            } else if (qName.equals("way")) {
+                activeState = "way";
+            } else if (activeState.equals("way") && qName.equals("nd")) {
+                nodePath.add(Long.parseLong(attributes.getValue("ref")));
+            } else if (activeState.equals("way") && qName.equals("tag")) {
+                String k = attributes.getValue("k");
+                String v = attributes.getValue("v");
+                if (k.equals("highway")) {
+                    validWay = ALLOWED_HIGHWAY_TYPES.contains(v);
+                } else if (k.equals("name")) {
+                    wayName = v;
+                }
+            } else if (activeState.equals("node") && qName.equals("tag")
+                    && attributes.getValue("k").equals("name")) {
+                nodeName = attributes.getValue("v");
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (qName.equals("way")) {
+                if (validWay) {
+                    for (int i = 0; i < nodePath.size() - 1; i++) {
+                        addEdge(nodePath.get(i), nodePath.get(i + 1));
+                        addEdge(nodePath.get(i + 1), nodePath.get(i));
+                    }
+                }
+                clearStates();
+            } else if (qName.equals("node")) {
+                // The first node with an id wins
+                if (!coordinates.containsKey(nodeId)) {
+                    coordinates.put(nodeId, nodeCoordinates);
+                    names.put(nodeId, nodeName);
+                    edges.put(nodeId, new ArrayList<>());
+                }
+                clearStates();
+            }
+        }
+
+        private void addEdge(long from, long to) {
+            if (coordinates.containsKey(from) && coordinates.containsKey(to)) {
+                edges.get(from).add(to + "|" + wayName);
+            }
+        }
+
+        private void clearStates() {
+            activeState = "";
+            validWay = false;
+            nodePath = new ArrayList<>();
+            wayName = "";
+        }
+    }
+
+    @BeforeClass
+    public static void generate() throws Exception {
+        generated = File.createTempFile("generated", ".osm.xml");
+        generated.deleteOnExit();
+        Files.write(generated.toPath(), generatedXML(new Random(61)).getBytes(StandardCharsets.UTF_8));
+        assertTrue("The file should span several batches", generated.length() > 3 * BATCH_BYTES);
+    }
+
+    /**
+     * Returns an OSM file of NUM_NODES nodes around Berkeley, a few of them repeated,
+     * and NUM_WAYS ways over them. Everything up to the first batch boundary is
+     * ASCII, so a comment full of node elements can be placed across it by length.
+     */
+    private static String generatedXML(Random random) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<!-- generated for TestOsmIngest -->\n");
+        xml.append("<osm version=\"0.6\" generator=\"test\">\n");
+        xml.append(" <bounds minlat=\"37.8\" minlon=\"-122.3\" maxlat=\"37.9\" maxlon=\"-122.2\"/>\n");
+        boolean straddled = false;
+        for (int i = 0; i < NUM_NODES; i++) {
+            if (!straddled && xml.length() > BATCH_BYTES - 1000) {
+                // The last node start tag before the boundary is commented out
+                xml.append("<!--\n");
+                for (int j = 0; j < 40; j++) {
+                    xml.append(String.format(" <node id=\"%d\" lat=\"37.85\" lon=\"-122.25\">"
+                            + "<tag k=\"name\" v=\"Commented Out\"/></node>\n", 900000000 + j));
+                }
+                xml.append("-->\n");
+                straddled = true;
+            }
+            long id = 1000 + i;
+            String lat = String.format("%.7f", 37.8 + random.nextDouble() * 0.1);
+            String lon = String.format("%.7f", -122.3 + random.nextDouble() * 0.1);
+            switch (i % 7) {
+                case 0:
+                    xml.append(String.format(" <node id=\"%d\" lat=\"%s\" lon=\"%s\">\n"
+                            + "  <tag k=\"name\" v=\"%s\"/>\n  <tag k=\"amenity\" v=\"cafe\"/>\n </node>\n",
+                            id, lat, lon, NAMES[random.nextInt(NAMES.length)]));
+                    break;
+                case 1:
+                    xml.append(String.format(" <node  lon = '%s'\tid='%d'\n  lat=\"%s\" version=\"2\"/>\n",
+                            lon, id, lat));
+                    break;
+                case 2:
+                    xml.append(String.format(" <node id=\"%d\" lat=\"%s\" lon=\"%s\"></node>"
+                            + "<!-- <node id=\"%d\" lat=\"0\" lon=\"0\"/> -->\n", id, lat, lon, id));
+                    break;
+                case 3:
+                    // Coordinates the fast path hands back to Double.parseDouble
+                    xml.append(String.format(" <node id=\"%d\" lat=\"%se0\" lon=\"%s00000000000000000000\"/>\n",
+                            id, lat, lon));
+                    break;
+                default:
+                    xml.append(String.format(" <node id=\"%d\" lat=\"%s\" lon=\"%s\"/>\n", id, lat, lon));
+            }
+            if (i % 1000 == 999) {
+                // A later node with an id already used is ignored
+                xml.append(String.format(" <node id=\"%d\" lat=\"0.5\" lon=\"0.5\">"
+                        + "<tag k=\"name\" v=\"Duplicate\"/></node>\n", 1000 + random.nextInt(i)));
+            }
+        }
+        if (!straddled) {
+            throw new IllegalStateException("the nodes never reached the first batch boundary");
+        }
+        xml.append(" <node id=\"7\" lat=\"37.87\" lon=\"-122.27\"><tag k=\"name\" v=\"Caf\u00e9 \u2615\"/></node>\n");
+
+        for (int w = 0; w < NUM_WAYS; w++) {
+            xml.append(String.format(" <way id=\"%d\" visible='true'>\n", 5000 + w));
+            int length = 2 + random.nextInt(6);
+            long ref = 1000 + random.nextInt(NUM_NODES);
+            for (int j = 0; j < length; j++) {
+                if (random.nextInt(20) == 0) {
+                    // No node has this id
+                    xml.append(String.format("  <nd ref=\"%d\"/>\n", 800000000 + random.nextInt(1000)));
+                } else if (random.nextInt(30) == 0) {
+                    xml.append("  <!-- a comment inside a way -->\n");
+                } else {
+                    ref = Math.min(1000 + NUM_NODES - 1, Math.max(1000, ref + random.nextInt(21) - 10));
+                    xml.append(String.format("  <nd ref=\"%d\"/>\n", ref));
+                }
+            }
+            if (w % 50 == 0) {
+                // A segment already on this way
+                xml.append(String.format("  <nd ref=\"%d\"/>\n  <nd ref=\"%d\"/>\n", ref - 1, ref));
+                xml.append(String.format("  <nd ref=\"%d\"/>\n  <nd ref=\"%d\"/>\n", ref - 1, ref));
+            }
+            if (random.nextInt(10) > 0) {
+                xml.append(String.format("  <tag k=\"highway\" v=\"%s\"/>\n",
+                        HIGHWAYS[random.nextInt(HIGHWAYS.length)]));
+            }
+            if (random.nextInt(4) > 0) {
+                xml.append(String.format("  <tag k='name' v='%s'/>\n", NAMES[random.nextInt(NAMES.length)]));
+            }
+            xml.append(" </way>\n");
+        }
+
+        // One way longer than a whole batch
+        xml.append(" <way id=\"4000\">\n");
+        for (int j = 0; 2 * j < BATCH_BYTES / 20; j++) {
+            xml.append(String.format("  <nd ref=\"%d\"/>\n  <nd ref=\"%d\"/>\n", 1000 + j % NUM_NODES, 7));
+        }
+        xml.append("  <tag k=\"highway\" v=\"trunk\"/>\n  <tag k=\"name\" v=\"Long &amp; Winding Road\"/>\n </way>\n");
+
+        // Relations are not ways, whatever their tags say
+        xml.append(" <relation id=\"9\">\n  <member type=\"way\" ref=\"5000\" role=\"\"/>\n"
+                + "  <nd ref=\"1000\"/>\n  <tag k=\"highway\" v=\"residential\"/>\n </relation>\n");
+        xml.append("</osm>\n");
+        return xml.toString();
+    }
+
+    /** Checks that the graph OsmIngest reads from FILE with NUMWORKERS workers is EXPECTED. */
+    private static void checkMatches(ReferenceGraph expected, File file, int numWorkers) throws Exception {
+        StreetMapGraph actual = new OsmIngest(file.getPath(), numWorkers).read();
+        assertEquals(expected.coordinates.size(), actual.vertexCount());
+        for (int i = 0; i < actual.vertexCount(); i++) {
+            long id = actual.idAt(i);
+            assertTrue("Unexpected node " + id, expected.coordinates.containsKey(id));
+            assertEquals("Longitude of " + id, expected.coordinates.get(id)[0], actual.lon(id), 0);
+            assertEquals("Latitude of " + id, expected.coordinates.get(id)[1], actual.lat(id), 0);
+            assertEquals("Name of " + id, expected.names.get(id), actual.name(id));
+
+            List<String> edges = new ArrayList<>();
+            for (WeightedEdge<Long> e : actual.neighbors(id)) {
+                edges.add(e.to() + "|" + e.getName());
+                // The great-circle length, plus at most about 6e-8 to break ties
+                double length = actual.estimatedDistanceToGoal(id, e.to());
+                assertEquals("Weight of " + id + " -> " + e.to(), length, e.weight(), 1e-7);
+            }
+            List<String> expectedEdges = new ArrayList<>(expected.edges.get(id));
+            Collections.sort(edges);
+            Collections.sort(expectedEdges);
+            assertEquals("Edges of " + id, expectedEdges, edges);
+        }
+    }
+
+    @Test
+    public void testGeneratedFile() throws Exception {
+        ReferenceGraph expected = ReferenceGraph.read(generated);
+        checkMatches(expected, generated, 1);
+        checkMatches(expected, generated, 3);
+    }
+
+    @Test
+    public void testSmallFile() throws Exception {
+        File source = File.createTempFile("small", ".osm.xml");
+        source.deleteOnExit();
+        Files.write(source.toPath(), ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<osm>\n"
+                + " <node id=\"1\" lat=\"38.1\" lon=\"0.1\"><tag k=\"name\" v=\"A &amp; B\"/></node>\n"
+                + " <!-- <node id=\"2\" lat=\"0\" lon=\"0\"/> -->\n"
+                + " <node id=\"2\" lat=\"38.2\" lon=\"0.2\"/>\n"
+                + " <node id=\"2\" lat=\"0.0\" lon=\"0.0\"><tag k=\"name\" v=\"Ignored\"/></node>\n"
+                + " <node id=\"3\" lat=\"38.3\" lon=\"0.3\"/>\n"
+                + " <node id=\"4\" lat=\"38.4\" lon=\"0.4\"/>\n"
+                + " <way id=\"10\"><nd ref=\"1\"/><nd ref=\"99\"/><nd ref=\"2\"/><nd ref=\"3\"/>"
+                + "<tag k=\"highway\" v=\"primary\"/><tag k=\"name\" v=\"&lt;Main&gt;\"/></way>\n"
+                + " <way id=\"11\"><nd ref=\"3\"/><nd ref=\"4\"/><tag k=\"highway\" v=\"footway\"/></way>\n"
+                + "</osm>\n").getBytes(StandardCharsets.UTF_8));
+        StreetMapGraph g = new OsmIngest(source.getPath(), 1).read();
+
+        // 1 keeps its name although 99 is missing, and 4 is only on a footway
+        assertEquals(3, g.vertexCount());
+        assertEquals("A & B", g.name(1L));
+        assertEquals(38.2, g.lat(2L), 0);
+        assertEquals(0.2, g.lon(2L), 0);
+        assertEquals(null, g.name(2L));
+        assertTrue(g.neighbors(1L).isEmpty());
+        assertEquals(new TreeSet<>(Arrays.asList(3L)), targets(g, 2L));
+        assertEquals(new TreeSet<>(Arrays.asList(2L)), targets(g, 3L));
+        assertEquals("<Main>", g.neighbors(2L).get(0).getName());
+        assertEquals(ReferenceGraph.read(source).coordinates.size(), g.vertexCount());
+    }
+
+    private static Set<Long> targets(StreetMapGraph g, long id) {
+        Set<Long> targets = new TreeSet<>();
+        for (WeightedEdge<Long> e : g.neighbors(id)) {
+            targets.add(e.to());
+        }
+        return targets;
+    }
+}
@@ -0,0 +1,82 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.PlaceIndex;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/** Tests PlaceIndex against sorting every matching place by distance. */
+public class TestPlaceIndex {
+
+    @Test
+    public void testNearestMatching() {
+        String[] names = {"starbucks", null, "safeway", "starbucks", "peets coffee", "starbucks"};
+        double[] lons = {-122.26, -122.25, -122.25, -122.24, -122.25, -122.30};
+        double[] lats = {37.87, 37.87, 37.87, 37.87, 37.87, 37.87};
+        PlaceIndex index = new PlaceIndex(names, lons, lats);
+        assertEquals(5, index.size());
+        assertArrayEquals(new int[]{3, 0}, index.nearest("star", -122.245, 37.87, 2));
+        assertArrayEquals(new int[]{2, 3, 0, 5}, index.nearest("s", -122.25, 37.87, 10));
+        assertArrayEquals(new int[]{4}, index.nearest("peets coffee", -122.30, 37.87, 10));
+        assertArrayEquals(new int[0], index.nearest("peets coffees", -122.30, 37.87, 10));
+        assertArrayEquals(new int[0], index.nearest("x", -122.30, 37.87, 10));
+    }
+
+    @Test
+    public void testRandomAgainstSorting() {
+        Random random = new Random(61);
+        int n = 5000;
+        String[] names = new String[n];
+        double[] lons = new double[n];
+        double[] lats = new double[n];
+        for (int i = 0; i < n; i++) {
+            if (random.nextInt(5) > 0) {
+                names[i] = randomString(random, 1 + random.nextInt(5));
+            }
+            lons[i] = -122.3 + random.nextDouble() * 0.1;
+            lats[i] = 37.85 + random.nextDouble() * 0.08;
+        }
+        PlaceIndex index = new PlaceIndex(names, lons, lats);
+        double cosLat = Math.cos(Math.toRadians(37.89));
+        for (int q = 0; q < 300; q++) {
+            String prefix = randomString(random, random.nextInt(3));
+            double lon = -122.3 + random.nextDouble() * 0.1;
+            double lat = 37.85 + random.nextDouble() * 0.08;
+            int k = 1 + random.nextInt(20);
+            List<Integer> matching = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                if (names[i] != null && names[i].startsWith(prefix)) {
+                    matching.add(i);
+                }
+            }
+            matching.sort((a, b) -> Double.compare(
+                    distanceSq(lons[a], lats[a], lon, lat, cosLat), distanceSq(lons[b], lats[b], lon, lat, cosLat)));
+            int[] actual = index.nearest(prefix, lon, lat, k);
+            assertEquals(Math.min(k, matching.size()), actual.length);
+            for (int i = 0; i < actual.length; i++) {
+                // Compare distances, as ties may come out in either order
+                assertEquals(distanceSq(lons[matching.get(i)], lats[matching.get(i)], lon, lat, cosLat),
+                        distanceSq(lons[actual[i]], lats[actual[i]], lon, lat, cosLat), 1e-6);
+            }
+        }
+    }
+
+    private static double distanceSq(double lon1, double lat1, double lon2, double lat2, double cosLat) {
+        double dx = (lon1 - lon2) * cosLat;
+        double dy = lat1 - lat2;
+        return dx * dx + dy * dy;
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(4)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.utils.PngEncoder;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/** Checks that images written by PngEncoder decode to the same pixels. */
+public class TestPngEncoder {
+
+    private static BufferedImage randomImage(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(new Color(230, 225, 215));
+        g.fillRect(0, 0, width, height);
+        for (int i = 0; i < 50; i++) {
+            g.setColor(new Color(random.nextInt(0x1000000)));
+            g.drawLine(random.nextInt(width), random.nextInt(height),
+                    random.nextInt(width), random.nextInt(height));
+        }
+        // Some noise, so every filter has something to predict
+        for (int i = 0; i < width * height / 20; i++) {
+            img.setRGB(random.nextInt(width), random.nextInt(height), random.nextInt(0x1000000));
+        }
+        g.dispose();
+        return img;
+    }
+
+    private static void assertRoundTrip(BufferedImage img, PngEncoder encoder) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.write(img, out);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(img.getWidth(), decoded.getWidth());
+        assertEquals(img.getHeight(), decoded.getHeight());
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                assertEquals("Pixel (" + x + ", " + y + ")",
+                        img.getRGB(x, y) & 0xffffff, decoded.getRGB(x, y) & 0xffffff);
+            }
+        }
+    }
+
+    @Test
+    public void testEveryFilter() throws Exception {
+        BufferedImage img = randomImage(300, 200, 61);
+        for (PngEncoder.Filter filter : PngEncoder.Filter.values()) {
+            assertRoundTrip(img, new PngEncoder(6, filter));
+        }
+    }
+
+    @Test
+    public void testEveryLevel() throws Exception {
+        BufferedImage img = randomImage(256, 512, 62);
+        for (int level = 0; level <= 9; level++) {
+            assertRoundTrip(img, new PngEncoder(level, PngEncoder.Filter.ADAPTIVE));
+        }
+    }
+
+    @Test
+    public void testOddSizes() throws Exception {
+        // One strip, one row, one column, and a strip boundary plus a row
+        int[][] sizes = {{5, 7}, {40, 1}, {1, 40}, {17, 33}};
+        for (int[] size : sizes) {
+            assertRoundTrip(randomImage(size[0], size[1], size[0]), new PngEncoder(1, PngEncoder.Filter.PAETH));
+        }
+    }
+}
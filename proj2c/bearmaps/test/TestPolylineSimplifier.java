@@ -0,0 +1,56 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.utils.PolylineSimplifier;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Tests PolylineSimplifier. */
+public class TestPolylineSimplifier {
+
+    @Test
+    public void testDropsCollinearPoints() {
+        double[] xs = {0, 1, 2, 3, 3, 3};
+        double[] ys = {0, 0, 0, 0, 1, 2};
+        assertArrayEquals(new int[]{0, 3, 5}, PolylineSimplifier.simplify(xs, ys, 0.1));
+    }
+
+    @Test
+    public void testKeepsEndsOfShortLines() {
+        assertArrayEquals(new int[]{}, PolylineSimplifier.simplify(new double[0], new double[0], 1));
+        assertArrayEquals(new int[]{0}, PolylineSimplifier.simplify(new double[]{4}, new double[]{2}, 1));
+        assertArrayEquals(new int[]{0, 2},
+                PolylineSimplifier.simplify(new double[]{0, 1, 2}, new double[]{0, 0.5, 0}, 1));
+    }
+
+    @Test
+    public void testWithinTolerance() {
+        Random random = new Random(61);
+        int n = 5000;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 1; i < n; i++) {
+            xs[i] = xs[i - 1] + random.nextDouble();
+            ys[i] = ys[i - 1] + random.nextDouble() - 0.5;
+        }
+        double tolerance = 2;
+        int[] kept = PolylineSimplifier.simplify(xs, ys, tolerance);
+        assertTrue(kept.length < n / 4);
+        // Every dropped point is near the segment between the kept points around it
+        for (int k = 0; k + 1 < kept.length; k++) {
+            int a = kept[k];
+            int b = kept[k + 1];
+            for (int i = a + 1; i < b; i++) {
+                double dx = xs[b] - xs[a];
+                double dy = ys[b] - ys[a];
+                double t = ((xs[i] - xs[a]) * dx + (ys[i] - ys[a]) * dy) / (dx * dx + dy * dy);
+                t = Math.max(0, Math.min(1, t));
+                double d = Math.hypot(xs[a] + t * dx - xs[i], ys[a] + t * dy - ys[i]);
+                assertTrue(d <= tolerance + 1e-9);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package bearmaps.test;
+
+import bearmaps.lab9.RadixTrieSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Tests RadixTrieSet, against a TreeSet for random keys. */
+public class TestRadixTrieSet {
+
+    @Test
+    public void testClear() {
+        RadixTrieSet t = new RadixTrieSet();
+        for (int i = 0; i < 455; i++) {
+            t.add("hi" + i);
+            assertTrue(t.contains("hi" + i));
+        }
+        t.clear();
+        for (int i = 0; i < 455; i++) {
+            assertFalse(t.contains("hi" + i));
+        }
+    }
+
+    @Test
+    public void testSplitsEdges() {
+        RadixTrieSet t = new RadixTrieSet();
+        t.add("sam");
+        t.add("same");
+        t.add("sad");
+        t.add("sap");
+        t.add("awls");
+        assertTrue(t.contains("sam"));
+        assertTrue(t.contains("same"));
+        assertFalse(t.contains("sa"));
+        assertFalse(t.contains("samee"));
+        assertEquals(Arrays.asList("sad", "sam", "same", "sap"), t.keysWithPrefix("sa"));
+        assertEquals(Arrays.asList("sam", "same"), t.keysWithPrefix("sam"));
+        assertEquals(Arrays.asList("awls"), t.keysWithPrefix("aw"));
+        assertEquals(new ArrayList<>(), t.keysWithPrefix("sax"));
+        assertEquals(new ArrayList<>(), t.keysWithPrefix("awlss"));
+    }
+
+    @Test
+    public void testLongestPrefixOf() {
+        RadixTrieSet t = new RadixTrieSet();
+        t.add("shattuck");
+        t.add("shattuck avenue");
+        t.add("she");
+        assertEquals("shattuck", t.longestPrefixOf("shattuck ave"));
+        assertEquals("shattuck avenue", t.longestPrefixOf("shattuck avenue north"));
+        assertEquals("she", t.longestPrefixOf("shells"));
+        assertNull(t.longestPrefixOf("shat"));
+        assertNull(t.longestPrefixOf("telegraph"));
+        t.add("");
+        assertEquals("", t.longestPrefixOf("shat"));
+    }
+
+    @Test
+    public void testRandomAgainstTreeSet() {
+        Random random = new Random(61);
+        RadixTrieSet t = new RadixTrieSet();
+        TreeSet<String> expected = new TreeSet<>();
+        for (int i = 0; i < 3000; i++) {
+            String key = randomString(random, 1 + random.nextInt(8));
+            t.add(key);
+            expected.add(key);
+        }
+        for (int i = 0; i < 500; i++) {
+            String key = randomString(random, 1 + random.nextInt(8));
+            assertEquals(expected.contains(key), t.contains(key));
+
+            String prefix = randomString(random, random.nextInt(4));
+            List<String> withPrefix = new ArrayList<>();
+            for (String s : expected.tailSet(prefix)) {
+                if (!s.startsWith(prefix)) {
+                    break;
+                }
+                withPrefix.add(s);
+            }
+            assertEquals(withPrefix, t.keysWithPrefix(prefix));
+
+            String longest = null;
+            for (int j = key.length(); j > 0 && longest == null; j--) {
+                if (expected.contains(key.substring(0, j))) {
+                    longest = key.substring(0, j);
+                }
+            }
+            assertEquals(longest, t.longestPrefixOf(key));
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.RasterCache;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/** Tests RasterCache. */
+public class TestRasterCache {
+
+    private static RasterCache.Raster raster(int length) {
+        return new RasterCache.Raster(new String(new char[length]).replace('\0', 'A'), 256, 256);
+    }
+
+    @Test
+    public void testHitsByWindowAndRoute() {
+        RasterCache cache = new RasterCache(1000);
+        RasterCache.Raster plain = raster(10);
+        RasterCache.Raster routed = raster(10);
+        cache.put("d1_x0_y0.png:d1_x1_y1.png", RasterCache.NO_ROUTE, plain);
+        cache.put("d1_x0_y0.png:d1_x1_y1.png", 3, routed);
+        assertSame(plain, cache.get("d1_x0_y0.png:d1_x1_y1.png", RasterCache.NO_ROUTE));
+        assertSame(routed, cache.get("d1_x0_y0.png:d1_x1_y1.png", 3));
+        assertNull(cache.get("d2_x0_y0.png:d2_x1_y1.png", RasterCache.NO_ROUTE));
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(20, cache.bytes());
+    }
+
+    @Test
+    public void testNewRouteDropsOnlyRoutedRasters() {
+        RasterCache cache = new RasterCache(1000);
+        RasterCache.Raster plain = raster(10);
+        cache.put("a", RasterCache.NO_ROUTE, plain);
+        cache.put("b", 1, raster(10));
+        cache.put("c", 1, raster(10));
+        assertNull(cache.get("b", 2));
+        assertEquals(2, cache.invalidations());
+        assertEquals(1, cache.size());
+        assertSame(plain, cache.get("a", RasterCache.NO_ROUTE));
+        // A raster drawn with a replaced route is not kept
+        cache.put("c", 1, raster(10));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testByteBudget() {
+        RasterCache cache = new RasterCache(25);
+        RasterCache.Raster a = raster(10);
+        cache.put("a", RasterCache.NO_ROUTE, a);
+        cache.put("b", RasterCache.NO_ROUTE, raster(10));
+        cache.get("a", RasterCache.NO_ROUTE);
+        cache.put("c", RasterCache.NO_ROUTE, raster(10));
+        assertEquals(1, cache.evictions());
+        assertNull(cache.get("b", RasterCache.NO_ROUTE));
+        assertSame(a, cache.get("a", RasterCache.NO_ROUTE));
+        cache.put("d", RasterCache.NO_ROUTE, raster(30));
+        assertNull(cache.get("d", RasterCache.NO_ROUTE));
+    }
+}
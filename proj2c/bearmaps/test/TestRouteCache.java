@@ -0,0 +1,72 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.RouteCache;
+import bearmaps.proj2c.Router;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/** Tests RouteCache on the tiny graph. */
+public class TestRouteCache {
+    private static final String OSM_DB_PATH_TINY = "../library-sp19/data/proj2c_xml/tiny-clean.osm.xml";
+    private static AugmentedStreetMapGraph graphTiny;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graphTiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        initialized = true;
+    }
+
+    @Test
+    public void testMatchesRouter() {
+        RouteCache cache = new RouteCache(10, 1, TimeUnit.HOURS);
+        RouteCache.Route route = cache.route(graphTiny, 0.2, 38.2, 0.6, 38.6);
+        assertEquals(Arrays.asList(22L, 46L, 66L), route.nodes());
+        assertEquals(Router.routeDirections(graphTiny, route.nodes()), route.directions());
+    }
+
+    @Test
+    public void testHitsBySnappedEndpoints() {
+        RouteCache cache = new RouteCache(10, 1, TimeUnit.HOURS);
+        RouteCache.Route first = cache.route(graphTiny, 0.2, 38.2, 0.6, 38.6);
+        // Different locations snapping to the same nodes share the entry
+        RouteCache.Route second = cache.route(graphTiny, 0.21, 38.19, 0.59, 38.61);
+        assertSame(first, second);
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        RouteCache cache = new RouteCache(2, 1, TimeUnit.HOURS);
+        RouteCache.Route a = cache.route(graphTiny, 22L, 66L);
+        cache.route(graphTiny, 22L, 11L);
+        cache.route(graphTiny, 22L, 66L);
+        cache.route(graphTiny, 41L, 46L);
+        assertEquals(1, cache.evictions());
+        assertEquals(2, cache.size());
+        assertSame(a, cache.route(graphTiny, 22L, 66L));
+        assertEquals(2, cache.hits());
+    }
+
+    @Test
+    public void testExpires() {
+        RouteCache cache = new RouteCache(10, 0, TimeUnit.SECONDS);
+        RouteCache.Route first = cache.route(graphTiny, 22L, 66L);
+        RouteCache.Route second = cache.route(graphTiny, 22L, 66L);
+        assertEquals(first.nodes(), second.nodes());
+        assertEquals(0, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(1, cache.evictions());
+    }
+}
@@ -0,0 +1,101 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.TileCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/** Tests TileCache on small generated tiles. */
+public class TestTileCache {
+    private static final int TILE_SIZE = 16;
+    private static final long TILE_BYTES = 4L * TILE_SIZE * TILE_SIZE;
+    private String root;
+
+    @Before
+    public void setUp() throws Exception {
+        File dir = Files.createTempDirectory("tiles").toFile();
+        dir.deleteOnExit();
+        for (int x = 0; x < 4; x++) {
+            BufferedImage img = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_4BYTE_ABGR);
+            img.setRGB(0, 0, 0xff000000 | x);
+            File file = new File(dir, "d2_x" + x + "_y0.png");
+            file.deleteOnExit();
+            ImageIO.write(img, "png", file);
+        }
+        root = dir.getPath() + File.separator;
+    }
+
+    @Test
+    public void testDecodesOnce() {
+        TileCache cache = new TileCache(root, 10 * TILE_BYTES);
+        BufferedImage first = cache.get("d2_x1_y0.png");
+        assertEquals(BufferedImage.TYPE_INT_RGB, first.getType());
+        assertEquals(1, first.getRGB(0, 0) & 0xffffff);
+        assertSame(first, cache.get("d2_x1_y0.png"));
+        assertEquals(1, cache.decodes());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(0.5, cache.hitRate(), 1e-12);
+        assertEquals(TILE_BYTES, cache.bytes());
+    }
+
+    @Test
+    public void testByteBudget() {
+        TileCache cache = new TileCache(root, 2 * TILE_BYTES);
+        BufferedImage x0 = cache.get("d2_x0_y0.png");
+        cache.get("d2_x1_y0.png");
+        cache.get("d2_x0_y0.png");
+        cache.get("d2_x2_y0.png");
+        // x1 was the least recently used
+        assertEquals(1, cache.evictions());
+        assertEquals(2, cache.size());
+        assertEquals(2 * TILE_BYTES, cache.bytes());
+        assertSame(x0, cache.get("d2_x0_y0.png"));
+        cache.get("d2_x1_y0.png");
+        assertEquals(4, cache.decodes());
+    }
+
+    @Test
+    public void testMissingTile() {
+        TileCache cache = new TileCache(root, 10 * TILE_BYTES);
+        assertNull(cache.get("d7_x0_y0.png"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneDecode() throws Exception {
+        int numThreads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            for (int round = 0; round < 20; round++) {
+                TileCache cache = new TileCache(root, 10 * TILE_BYTES);
+                List<Callable<BufferedImage>> tasks = new ArrayList<>();
+                for (int i = 0; i < numThreads; i++) {
+                    tasks.add(() -> cache.get("d2_x3_y0.png"));
+                }
+                List<Future<BufferedImage>> results = pool.invokeAll(tasks);
+                BufferedImage first = results.get(0).get();
+                for (Future<BufferedImage> result : results) {
+                    assertSame(first, result.get());
+                }
+                assertEquals(1, cache.decodes());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.TilePyramid;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Tests TilePyramid on a unit root square. */
+public class TestTilePyramid {
+    private static final double DOUBLE_THRESHOLD = 0.000000001;
+
+    @Test
+    public void testDepthFor() {
+        TilePyramid pyramid = new TilePyramid(0, 1, 1, 0, 256, null);
+        assertEquals(0, pyramid.depthFor(1.0));
+        assertEquals(0, pyramid.depthFor(1.0 / 256));
+        assertEquals(1, pyramid.depthFor(1.0 / 256 - 1e-12));
+        assertEquals(3, pyramid.depthFor(1.0 / 2048));
+        assertEquals(TilePyramid.MAX_DEPTH, pyramid.depthFor(1e-9));
+    }
+
+    @Test
+    public void testRange() {
+        TilePyramid pyramid = new TilePyramid(0, 1, 1, 0, 256, null);
+        TilePyramid.TileRange range = pyramid.range(2, 0.3, 0.9, 0.6, 0.45);
+        assertEquals(1, range.startX());
+        assertEquals(2, range.endX());
+        assertEquals(0, range.startY());
+        assertEquals(2, range.endY());
+        String[][] expected = {
+            {"d2_x1_y0.png", "d2_x2_y0.png"},
+            {"d2_x1_y1.png", "d2_x2_y1.png"},
+            {"d2_x1_y2.png", "d2_x2_y2.png"}};
+        assertArrayEquals(expected, range.names());
+        assertSame(pyramid.name(2, 1, 0), range.names()[0][0]);
+        assertEquals(0.25, range.ulLon(), DOUBLE_THRESHOLD);
+        assertEquals(1.0, range.ulLat(), DOUBLE_THRESHOLD);
+        assertEquals(0.75, range.lrLon(), DOUBLE_THRESHOLD);
+        assertEquals(0.25, range.lrLat(), DOUBLE_THRESHOLD);
+    }
+
+    @Test
+    public void testRangeClampsAndDegenerates() {
+        TilePyramid pyramid = new TilePyramid(0, 1, 1, 0, 256, null);
+        TilePyramid.TileRange outside = pyramid.range(1, -5, 5, 5, -5);
+        assertEquals(0, outside.startX());
+        assertEquals(1, outside.endX());
+        assertEquals(0, outside.startY());
+        assertEquals(1, outside.endY());
+        TilePyramid.TileRange point = pyramid.range(3, 0.5, 0.5, 0.5, 0.5);
+        assertEquals(point.startX(), point.endX());
+        assertEquals(point.startY(), point.endY());
+    }
+
+    @Test
+    public void testFiles() throws Exception {
+        File dir = Files.createTempDirectory("tiles").toFile();
+        dir.deleteOnExit();
+        String[] names = {"d1_x1_y0.png", "d9_x0_y0.png", "d1_x2_y0.png", "notes.txt"};
+        for (String name : names) {
+            File file = new File(dir, name);
+            file.deleteOnExit();
+            Files.write(file.toPath(), new byte[12]);
+        }
+        TilePyramid pyramid = new TilePyramid(0, 1, 1, 0, 256, dir.getPath() + File.separator);
+        assertTrue(pyramid.exists(1, 1, 0));
+        assertEquals(12, pyramid.fileSize(1, 1, 0));
+        assertFalse(pyramid.exists(1, 0, 1));
+        assertEquals(-1, pyramid.fileSize(0, 0, 0));
+    }
+}
@@ -0,0 +1,77 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.TokenIndex;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/** Tests TokenIndex against scanning every document. */
+public class TestTokenIndex {
+
+    @Test
+    public void testMatchesEveryWord() {
+        String[][] docs = {
+            {"telegraph", "cafe"},
+            null,
+            {"shattuck", "pizza", "company"},
+            {"cafe", "strada"},
+            {"pizza", "on", "telegraph"},
+            {"telegraph", "avenue", "cafe"},
+        };
+        TokenIndex index = new TokenIndex(docs);
+        assertArrayEquals(new int[]{0, 5}, index.search("telegraph", "cafe"));
+        assertArrayEquals(new int[]{0, 5}, index.search("cafe", "telegraph"));
+        assertArrayEquals(new int[]{2}, index.search("pizza", "shattuck"));
+        assertArrayEquals(new int[]{0, 3, 5}, index.search("cafe", ""));
+        assertArrayEquals(new int[0], index.search("pizza", "cafe"));
+        assertArrayEquals(new int[0], index.search("telegraph", "bagels"));
+        assertArrayEquals(new int[0], index.search());
+        assertEquals(3, index.documentCount("telegraph"));
+        assertEquals(8, index.size());
+    }
+
+    @Test
+    public void testRandomAgainstScan() {
+        Random random = new Random(61);
+        // Few words over many documents, so the lists span many blocks
+        String[][] docs = new String[20000][];
+        for (int d = 0; d < docs.length; d++) {
+            if (random.nextInt(10) == 0) {
+                continue;
+            }
+            docs[d] = new String[1 + random.nextInt(4)];
+            for (int i = 0; i < docs[d].length; i++) {
+                docs[d][i] = randomWord(random);
+            }
+        }
+        TokenIndex index = new TokenIndex(docs);
+        for (int q = 0; q < 300; q++) {
+            String[] query = new String[1 + random.nextInt(3)];
+            for (int i = 0; i < query.length; i++) {
+                query[i] = randomWord(random);
+            }
+            List<Integer> expected = new ArrayList<>();
+            for (int d = 0; d < docs.length; d++) {
+                if (docs[d] != null && Arrays.asList(docs[d]).containsAll(Arrays.asList(query))) {
+                    expected.add(d);
+                }
+            }
+            int[] actual = index.search(query);
+            assertEquals(expected.size(), actual.length);
+            for (int i = 0; i < actual.length; i++) {
+                assertEquals((int) expected.get(i), actual[i]);
+            }
+        }
+    }
+
+    /** Returns a word, with common words far more likely than rare ones. */
+    private static String randomWord(Random random) {
+        return "w" + (int) Math.pow(random.nextInt(40), 2);
+    }
+}
@@ -0,0 +1,80 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.TokenIndex;
+import bearmaps.proj2c.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times building a TokenIndex of the location names, and searching it for one to
+ * three words of a name, against checking the words of every name.
+ */
+public class TokenIndexTimingTest {
+    private static final int NUM_QUERIES = 10000;
+    private static final int BUILDS = 10;
+
+    public static void main(String[] args) {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(Constants.OSM_DB_PATH);
+        String[][] docs = new String[graph.vertexCount()][];
+        List<Integer> named = new ArrayList<>();
+        long postings = 0;
+        for (int i = 0; i < docs.length; i++) {
+            String name = graph.name(graph.idAt(i));
+            if (name != null && !name.isEmpty()) {
+                docs[i] = Arrays.stream(name.replaceAll("[^a-zA-Z ]", "").toLowerCase().split(" "))
+                        .filter(w -> !w.isEmpty()).distinct().toArray(String[]::new);
+                named.add(i);
+                postings += docs[i].length;
+            }
+        }
+
+        TokenIndex index = null;
+        long start = System.nanoTime();
+        for (int b = 0; b < BUILDS; b++) {
+            index = new TokenIndex(docs);
+        }
+        double buildMillis = (System.nanoTime() - start) / 1e6 / BUILDS;
+        System.out.println(String.format("%d names, %d words, %d postings", named.size(), index.size(), postings));
+        System.out.println(String.format("Build: %8.2f ms; %d bytes, against %d as int[]",
+                buildMillis, index.bytes(), 4 * postings));
+
+        for (int words = 1; words <= 3; words++) {
+            List<String[]> queries = new ArrayList<>();
+            Random random = new Random(61);
+            while (queries.size() < NUM_QUERIES) {
+                String[] doc = docs[named.get(random.nextInt(named.size()))];
+                if (doc.length >= words) {
+                    List<String> shuffled = new ArrayList<>(Arrays.asList(doc));
+                    Collections.shuffle(shuffled, random);
+                    queries.add(shuffled.subList(0, words).toArray(new String[0]));
+                }
+            }
+
+            long found = 0;
+            start = System.nanoTime();
+            for (String[] query : queries) {
+                found += index.search(query).length;
+            }
+            double indexSeconds = (System.nanoTime() - start) / 1e9;
+
+            long scanned = 0;
+            start = System.nanoTime();
+            for (String[] query : queries.subList(0, NUM_QUERIES / 100)) {
+                for (int d : named) {
+                    if (Arrays.asList(docs[d]).containsAll(Arrays.asList(query))) {
+                        scanned++;
+                    }
+                }
+            }
+            double scanSeconds = (System.nanoTime() - start) / 1e9 * 100;
+
+            System.out.println(String.format("%d-word queries: index %10.0f per s, scan %8.0f per s (%d found)",
+                    words, NUM_QUERIES / indexSeconds, NUM_QUERIES / scanSeconds, found));
+        }
+    }
+}
@@ -25,6 +25,13 @@ $(function() {
     var updatePending = false;
     var route_params = {};
     var map;
+    var overlay;
+    // Simplified route as lon0, lat0, lon1, lat1, ..., and the depth it was simplified for,
+    // or -1 before the route is first fetched
+    var route_points = [];
+    var route_depth = -1;
+    // Depth of the raster on the screen, or -1 before the first one arrives
+    var raster_depth = -1;
     var dest;
     var markers = [];
     var host;
@@ -57,6 +64,7 @@ $(function() {
     }
     const raster_server = host + '/raster';
     const route_server = host + '/route';
+    const route_overlay_server = host + '/route_overlay';
     const clear_route = host + '/clear_route';
     const search = host + '/search';
 
@@ -92,6 +100,8 @@ $(function() {
         var params = get_view_bounds();
         params.w = w;
         params.h = h;
+        // The route is drawn on the overlay, so rasters stay the same when it changes
+        params.route = false;
         console.log(params);
         $warningsContainer.empty();
         $.get({
@@ -102,7 +112,8 @@ $(function() {
                 console.log(data);
                 if (data.query_success) {
                     $loadingStatus.hide();
-                    map.src = 'data:image/png;base64,' + data.b64_encoded_image_data;
+                    map.src = 'data:' + (data.raster_mime_type || 'image/png') + ';base64,' +
+                        data.b64_encoded_image_data;
                     console.log('Updating map with image length: ' +
                                 data.b64_encoded_image_data.length);
                     ullon_bound = data.raster_ul_lon;
@@ -111,7 +122,15 @@ $(function() {
                     lrlat_bound = data.raster_lr_lat;
                     img_w = data.raster_width;
                     img_h = data.raster_height;
+                    raster_depth = data.depth;
                     getInProgress = false;
+                    // The first raster also fetches the route, which the server may
+                    // have kept from before the page was loaded
+                    if (route_depth === -1 || (route_points.length > 0 && route_depth !== data.depth)) {
+                        updateRouteOverlay();
+                    } else {
+                        drawRouteOverlay();
+                    }
 
                     var warnings = [];
                     if (data.depth !== depth) {
@@ -163,6 +182,7 @@ $(function() {
         history.replaceState(null, null, document.location.pathname + '#' + newHash);
 
         map.style.transform = 'translateX(' + tx + 'px) translateY(' + ty + 'px)';
+        overlay.style.transform = map.style.transform;
         for (var i = 0; i < markers.length; i++) {
             const marker = markers[i];
             const marker_tx = (marker.lon - computed.ullon) / londpp;
@@ -174,6 +194,47 @@ $(function() {
             computed.lrlon > lrlon_bound || computed.lrlat < lrlat_bound;
     }
 
+    /* Draws the route over the current raster, in the raster's pixels. */
+    function drawRouteOverlay() {
+        if (img_w === undefined) {
+            return;
+        }
+        overlay.width = img_w;
+        overlay.height = img_h;
+        var ctx = overlay.getContext('2d');
+        ctx.clearRect(0, 0, overlay.width, overlay.height);
+        if (route_points.length < 4) {
+            return;
+        }
+        var xScale = img_w / (lrlon_bound - ullon_bound);
+        var yScale = img_h / (ullat_bound - lrlat_bound);
+        ctx.strokeStyle = 'rgba(108, 181, 230, 0.78)';
+        ctx.lineWidth = 5;
+        ctx.lineCap = 'round';
+        ctx.lineJoin = 'round';
+        ctx.beginPath();
+        ctx.moveTo((route_points[0] - ullon_bound) * xScale, (ullat_bound - route_points[1]) * yScale);
+        for (var i = 2; i < route_points.length; i += 2) {
+            ctx.lineTo((route_points[i] - ullon_bound) * xScale, (ullat_bound - route_points[i + 1]) * yScale);
+        }
+        ctx.stroke();
+    }
+
+    /* Fetches the route simplified for the depth of the raster on the screen and draws it. */
+    function updateRouteOverlay() {
+        $.get({
+            async: true,
+            url: route_overlay_server,
+            data: {depth: raster_depth === -1 ? depth : raster_depth},
+            success: function(data) {
+                route_points = data.points;
+                route_depth = data.depth;
+                drawRouteOverlay();
+            },
+            dataType: 'json'
+        });
+    }
+
     function updateRoute() {
         $.get({
             async: true,
@@ -181,7 +242,7 @@ $(function() {
             data: route_params,
             success: function(data) {
                 data = JSON.parse(data);
-                updateImg();
+                updateRouteOverlay();
                 if (data.directions_success) {
                     $directionsText.html(data.directions);
                 } else {
@@ -303,6 +364,7 @@ $(function() {
     /* ══════════════════════════════════ ೋღ SETUP ღೋ ════════════════════════════════ */
 
     map = document.getElementById('map');
+    overlay = document.getElementById('route-overlay');
     dest = document.getElementById('dest');
     dest.style.visibility = 'hidden';
     loadCookies();
@@ -389,7 +451,8 @@ $(function() {
             success: function() {
                 dest.style.visibility = 'hidden';
                 $directionsText.html('No routing directions to display.');
-                updateImg();
+                route_points = [];
+                drawRouteOverlay();
             },
         });
     });